@@ -0,0 +1,68 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+/**
+ * Class presents an alert fired by a rule for an entity (job, stage, executor)
+ */
+public class SparkMonitoringAlert {
+	private String ruleName;
+	private String expression;
+	private String applicationId;
+	private String entity;
+	private double value;
+	private long firedTimeMilis;
+	private long lastSeenTimeMilis;
+	private boolean active = true;
+
+	public String getRuleName() {
+		return ruleName;
+	}
+	public void setRuleName(String ruleName) {
+		this.ruleName = ruleName;
+	}
+	public String getExpression() {
+		return expression;
+	}
+	public void setExpression(String expression) {
+		this.expression = expression;
+	}
+	public String getApplicationId() {
+		return applicationId;
+	}
+	public void setApplicationId(String applicationId) {
+		this.applicationId = applicationId;
+	}
+	public String getEntity() {
+		return entity;
+	}
+	public void setEntity(String entity) {
+		this.entity = entity;
+	}
+	public double getValue() {
+		return value;
+	}
+	public void setValue(double value) {
+		this.value = value;
+	}
+	public long getFiredTimeMilis() {
+		return firedTimeMilis;
+	}
+	public void setFiredTimeMilis(long firedTimeMilis) {
+		this.firedTimeMilis = firedTimeMilis;
+	}
+	public long getLastSeenTimeMilis() {
+		return lastSeenTimeMilis;
+	}
+	public void setLastSeenTimeMilis(long lastSeenTimeMilis) {
+		this.lastSeenTimeMilis = lastSeenTimeMilis;
+	}
+	/**
+	 * @return true while the condition of the rule still holds
+	 */
+	public boolean isActive() {
+		return active;
+	}
+	public void setActive(boolean active) {
+		this.active = active;
+	}
+
+}
@@ -0,0 +1,166 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluate the alert rules against each new snapshot of jobs, stages and
+ * executors. An entity is evaluated only if it changed since the previous
+ * snapshot (or is still running, its duration grows), so the cost is
+ * proportional to the changed entities, not to the history.
+ * An alert fires once per rule and entity, and stays listed when its
+ * condition does not hold anymore.
+ */
+public class SparkMonitoringAlertEvaluator {
+	private final Map<String, SparkMonitoringAlertRule> rules = new LinkedHashMap<>();
+	// fingerprint of the last evaluated state of each entity
+	private final Map<String, String> fingerprints;
+	// alerts by rule and entity, oldest first
+	private final Map<String, SparkMonitoringAlert> alerts;
+
+	/**
+	 * @param maxEntities
+	 *            maximum number of entity fingerprints kept
+	 * @param maxAlerts
+	 *            maximum number of alerts kept, the oldest are dropped
+	 */
+	public SparkMonitoringAlertEvaluator(final int maxEntities, final int maxAlerts) {
+		fingerprints = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > maxEntities;
+			}
+		};
+		alerts = new LinkedHashMap<String, SparkMonitoringAlert>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SparkMonitoringAlert> eldest) {
+				return size() > maxAlerts;
+			}
+		};
+	}
+
+	/**
+	 * Add or replace a rule, all entities are evaluated again at the next snapshot
+	 */
+	public synchronized void addRule(SparkMonitoringAlertRule rule) {
+		rules.put(rule.getName(), rule);
+		fingerprints.clear();
+	}
+
+	/**
+	 * Remove a rule and its alerts
+	 *
+	 * @return false if there is no such rule
+	 */
+	public synchronized boolean removeRule(String name) {
+		if (rules.remove(name) == null) {
+			return false;
+		}
+		Iterator<SparkMonitoringAlert> it = alerts.values().iterator();
+		while (it.hasNext()) {
+			if (name.equals(it.next().getRuleName())) {
+				it.remove();
+			}
+		}
+		return true;
+	}
+
+	public synchronized List<SparkMonitoringAlertRule> getRules() {
+		return new ArrayList<>(rules.values());
+	}
+
+	/**
+	 * @return alerts, oldest first
+	 */
+	public synchronized List<SparkMonitoringAlert> getAlerts() {
+		return new ArrayList<>(alerts.values());
+	}
+
+	public synchronized void clearAlerts() {
+		alerts.clear();
+	}
+
+	public void evaluateJobs(String prefix, String applicationId, List<SparkMonitoringJob> lsJob) {
+		long now = System.currentTimeMillis();
+		for (SparkMonitoringJob job : lsJob) {
+			String fingerprint = job.getStatus() + "|" + job.getNumCompletedTasks() + "|" + job.getNumFailedTasks()
+					+ "|" + job.getCompletionTimeMilis();
+			evaluate(prefix, applicationId, SparkMonitoringAlertRule.JOB, job.getId(), fingerprint,
+					"RUNNING".equals(job.getStatus()), job, now);
+		}
+	}
+
+	public void evaluateStages(String prefix, String applicationId, List<SparkMonitoringStage> lsStage) {
+		long now = System.currentTimeMillis();
+		for (SparkMonitoringStage stage : lsStage) {
+			String fingerprint = stage.getStatus() + "|" + stage.getNumCompletedTasks() + "|"
+					+ stage.getNumFailedTasks() + "|" + stage.getMemoryBytesSpilled() + "|"
+					+ stage.getDiskBytesSpilled() + "|" + stage.getInputBytes() + "|" + stage.getShuffleReadBytes()
+					+ "|" + stage.getShuffleWriteBytes();
+			evaluate(prefix, applicationId, SparkMonitoringAlertRule.STAGE,
+					stage.getId() + "." + stage.getAttemptId(), fingerprint, "ACTIVE".equals(stage.getStatus()),
+					stage, now);
+		}
+	}
+
+	public void evaluateExecutors(String prefix, String applicationId, List<SparkMonitoringExecutor> lsExecutor) {
+		long now = System.currentTimeMillis();
+		for (SparkMonitoringExecutor executor : lsExecutor) {
+			String fingerprint = executor.getTotalTasks() + "|" + executor.getFailedTasks() + "|"
+					+ executor.getTotalDuration() + "|" + executor.getTotalGCTime() + "|" + executor.getMemoryUsed();
+			evaluate(prefix, applicationId, SparkMonitoringAlertRule.EXECUTOR, executor.getId(), fingerprint, false,
+					executor, now);
+		}
+	}
+
+	/**
+	 * Evaluate the rules of the entity type if the entity changed
+	 *
+	 * @param running
+	 *            true to evaluate even if not changed, its duration grows
+	 */
+	private synchronized void evaluate(String prefix, String applicationId, String entityType, String entityId,
+			String fingerprint, boolean running, Object entity, long now) {
+		if (rules.isEmpty()) {
+			return;
+		}
+		String entityKey = prefix + "|" + applicationId + "|" + entityType + "|" + entityId;
+		if (!running && fingerprint.equals(fingerprints.get(entityKey))) {
+			return;
+		}
+		fingerprints.put(entityKey, fingerprint);
+		for (SparkMonitoringAlertRule rule : rules.values()) {
+			if (!rule.getEntityType().equals(entityType)) {
+				continue;
+			}
+			double value = rule.getValue(entity, now);
+			String alertKey = rule.getName() + "|" + entityKey;
+			SparkMonitoringAlert alert = alerts.get(alertKey);
+			if (rule.matches(value)) {
+				if (alert == null || !alert.isActive()) {
+					// fire again only if the condition stopped holding in between
+					alert = new SparkMonitoringAlert();
+					alert.setRuleName(rule.getName());
+					alert.setExpression(rule.getExpression());
+					alert.setApplicationId(applicationId);
+					alert.setEntity(entityType + " " + entityId);
+					alert.setFiredTimeMilis(now);
+					alerts.remove(alertKey);
+					alerts.put(alertKey, alert);
+				}
+				alert.setValue(value);
+				alert.setLastSeenTimeMilis(now);
+			} else if (alert != null) {
+				alert.setActive(false);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Threshold alert rule, compiled once from an expression such as
+ * "stage.failedTasks > 10", "job.duration > 10min", "stage.spill > 5GB" or
+ * "executor.gcRatio > 10%".
+ * Durations are in seconds, sizes in bytes, ratios between 0 and 1.
+ */
+public class SparkMonitoringAlertRule {
+	public static final String JOB = "job";
+	public static final String STAGE = "stage";
+	public static final String EXECUTOR = "executor";
+
+	private static final Pattern EXPRESSION = Pattern.compile(
+			"\\s*(job|stage|executor)\\.(\\w+)\\s*(>=|<=|==|>|<)\\s*([0-9.]+)\\s*([a-zA-Z%]*)\\s*");
+
+	/**
+	 * Value of a metric of an entity
+	 */
+	private interface Metric {
+		double get(Object entity, long now);
+	}
+
+	private static final Map<String, Metric> METRICS = new HashMap<>();
+
+	static {
+		METRICS.put(JOB + ".duration", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				SparkMonitoringJob job = (SparkMonitoringJob) entity;
+				if (job.getSubmisstionTimeMilis() == null) {
+					return 0;
+				}
+				long end = job.getCompletionTimeMilis() != null ? job.getCompletionTimeMilis() : now;
+				return (end - job.getSubmisstionTimeMilis()) / 1000D;
+			}
+		});
+		METRICS.put(JOB + ".failedTasks", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringJob) entity).getNumFailedTasks();
+			}
+		});
+		METRICS.put(JOB + ".numTasks", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringJob) entity).getNumTasks();
+			}
+		});
+		METRICS.put(STAGE + ".failedTasks", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringStage) entity).getNumFailedTasks();
+			}
+		});
+		METRICS.put(STAGE + ".duration", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				SparkMonitoringStage stage = (SparkMonitoringStage) entity;
+				if (stage.getSubmissionTimeMilis() == null) {
+					return 0;
+				}
+				long end = stage.getCompletionTimeMilis() != null ? stage.getCompletionTimeMilis() : now;
+				return (end - stage.getSubmissionTimeMilis()) / 1000D;
+			}
+		});
+		METRICS.put(STAGE + ".spill", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				SparkMonitoringStage stage = (SparkMonitoringStage) entity;
+				return stage.getMemoryBytesSpilled() + stage.getDiskBytesSpilled();
+			}
+		});
+		METRICS.put(STAGE + ".diskSpill", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringStage) entity).getDiskBytesSpilled();
+			}
+		});
+		METRICS.put(STAGE + ".inputBytes", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringStage) entity).getInputBytes();
+			}
+		});
+		METRICS.put(STAGE + ".shuffleReadBytes", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringStage) entity).getShuffleReadBytes();
+			}
+		});
+		METRICS.put(STAGE + ".shuffleWriteBytes", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringStage) entity).getShuffleWriteBytes();
+			}
+		});
+		METRICS.put(EXECUTOR + ".gcRatio", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringExecutor) entity).getGCRatio();
+			}
+		});
+		METRICS.put(EXECUTOR + ".failedTasks", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringExecutor) entity).getFailedTasks();
+			}
+		});
+		METRICS.put(EXECUTOR + ".memoryUsed", new Metric() {
+			@Override
+			public double get(Object entity, long now) {
+				return ((SparkMonitoringExecutor) entity).getMemoryUsed();
+			}
+		});
+	}
+
+	private final String name;
+	private final String expression;
+	private final String entityType;
+	private final Metric metric;
+	private final String operator;
+	private final double threshold;
+
+	private SparkMonitoringAlertRule(String name, String expression, String entityType, Metric metric,
+			String operator, double threshold) {
+		this.name = name;
+		this.expression = expression;
+		this.entityType = entityType;
+		this.metric = metric;
+		this.operator = operator;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Compile a rule
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	public static SparkMonitoringAlertRule compile(String name, String expression) {
+		Matcher matcher = EXPRESSION.matcher(expression);
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Wrong alert rule '" + expression
+					+ "', expected: <job|stage|executor>.<metric> <operator> <value>[unit]");
+		}
+		String entityType = matcher.group(1);
+		Metric metric = METRICS.get(entityType + "." + matcher.group(2));
+		if (metric == null) {
+			throw new IllegalArgumentException("Unknown metric " + entityType + "." + matcher.group(2)
+					+ ", one of " + METRICS.keySet());
+		}
+		double threshold = Double.parseDouble(matcher.group(4)) * getUnit(matcher.group(5));
+		return new SparkMonitoringAlertRule(name, expression.trim(), entityType, metric, matcher.group(3),
+				threshold);
+	}
+
+	private static double getUnit(String unit) {
+		switch (unit.toLowerCase()) {
+		case "":
+		case "s":
+		case "b":
+			return 1;
+		case "ms":
+			return 0.001;
+		case "min":
+			return 60;
+		case "h":
+			return 3600;
+		case "kb":
+			return 1024D;
+		case "mb":
+			return 1024D * 1024;
+		case "gb":
+			return 1024D * 1024 * 1024;
+		case "tb":
+			return 1024D * 1024 * 1024 * 1024;
+		case "%":
+			return 0.01;
+		default:
+			throw new IllegalArgumentException("Unknown unit " + unit);
+		}
+	}
+
+	/**
+	 * @return value of the metric of this rule for an entity of its type
+	 */
+	public double getValue(Object entity, long now) {
+		return metric.get(entity, now);
+	}
+
+	public boolean matches(double value) {
+		switch (operator) {
+		case ">":
+			return value > threshold;
+		case ">=":
+			return value >= threshold;
+		case "<":
+			return value < threshold;
+		case "<=":
+			return value <= threshold;
+		default:
+			return value == threshold;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	public String getEntityType() {
+		return entityType;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+}
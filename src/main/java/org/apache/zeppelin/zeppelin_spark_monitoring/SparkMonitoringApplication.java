@@ -13,6 +13,8 @@ public class SparkMonitoringApplication {
 	private Double duration;
 	private Boolean completed;
 	private String sparkUser;
+	private Long startTimeMilis;
+	private Long endTimeMilis;
 	
 	public String getId() {
 		return id;
@@ -56,5 +58,17 @@ public class SparkMonitoringApplication {
 	public void setSparkUser(String sparkUser) {
 		this.sparkUser = sparkUser;
 	}
+	public Long getStartTimeMilis() {
+		return startTimeMilis;
+	}
+	public void setStartTimeMilis(Long startTimeMilis) {
+		this.startTimeMilis = startTimeMilis;
+	}
+	public Long getEndTimeMilis() {
+		return endTimeMilis;
+	}
+	public void setEndTimeMilis(Long endTimeMilis) {
+		this.endTimeMilis = endTimeMilis;
+	}
 	
 }
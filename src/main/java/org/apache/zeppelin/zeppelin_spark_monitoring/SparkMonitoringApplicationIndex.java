@@ -0,0 +1,281 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the applications of one prefix (one Spark driver or History Server),
+ * keyed by application id. The least recently used applications are evicted
+ * when the index is full.
+ * Ids and names of the applications, and ids of the jobs and stages seen for
+ * each application, are also kept in tries for autocompletion. The tries of
+ * an application are dropped under the memory budget, they fill again as its
+ * jobs and stages are fetched.
+ */
+public class SparkMonitoringApplicationIndex implements SparkMonitoringMemoryBudget.Account {
+	/** latest started running application, latest started one if none is running */
+	public static final String POLICY_LATEST_RUNNING = "latest-running";
+	/** latest started application */
+	public static final String POLICY_LATEST = "latest";
+	/** last application of the latest listing, the behaviour before the index */
+	public static final String POLICY_LAST_LISTED = "last-listed";
+
+	private final Map<String, SparkMonitoringApplication> applications;
+	private final String policy;
+	private String lastListedId;
+	private final SparkMonitoringTrie applicationWords = new SparkMonitoringTrie();
+	private final Map<String, SparkMonitoringTrie> jobIds = new HashMap<>();
+	private final Map<String, SparkMonitoringTrie> stageIds = new HashMap<>();
+	// last access of the job and stage ids, by application
+	private final Map<String, Long> idsAccess = new HashMap<>();
+
+	/**
+	 * @param maxSize
+	 *            maximum number of applications kept
+	 * @param policy
+	 *            policy to select the default application
+	 */
+	public SparkMonitoringApplicationIndex(final int maxSize, String policy) {
+		this.policy = policy;
+		// access order for LRU eviction
+		this.applications = new LinkedHashMap<String, SparkMonitoringApplication>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SparkMonitoringApplication> eldest) {
+				if (size() > maxSize) {
+					evicted(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public synchronized void put(SparkMonitoringApplication application) {
+		applications.put(application.getId(), application);
+		lastListedId = application.getId();
+		applicationWords.add(application.getId());
+		applicationWords.add(application.getName());
+	}
+
+	private void evicted(SparkMonitoringApplication application) {
+		applicationWords.remove(application.getId());
+		jobIds.remove(application.getId());
+		stageIds.remove(application.getId());
+		idsAccess.remove(application.getId());
+		// the name stays while another application has it
+		for (SparkMonitoringApplication app : applications.values()) {
+			if (app != application && app.getName() != null && app.getName().equals(application.getName())) {
+				return;
+			}
+		}
+		applicationWords.remove(application.getName());
+	}
+
+	public synchronized void addJobIds(String applicationId, Collection<String> ids) {
+		addIds(jobIds, applicationId, ids);
+	}
+
+	public synchronized void addStageIds(String applicationId, Collection<String> ids) {
+		addIds(stageIds, applicationId, ids);
+	}
+
+	private void addIds(Map<String, SparkMonitoringTrie> tries, String applicationId, Collection<String> ids) {
+		if (!applications.containsKey(applicationId)) {
+			// not indexed, or evicted meanwhile
+			return;
+		}
+		idsAccess.put(applicationId, System.currentTimeMillis());
+		SparkMonitoringTrie trie = tries.get(applicationId);
+		if (trie == null) {
+			trie = new SparkMonitoringTrie();
+			tries.put(applicationId, trie);
+		}
+		for (String id : ids) {
+			trie.add(id);
+		}
+	}
+
+	/**
+	 * Complete an application id or name, from the index only
+	 */
+	public List<String> completeApplication(String prefix, int limit) {
+		return applicationWords.complete(prefix, limit);
+	}
+
+	/**
+	 * Complete a job id of an application, from the index only
+	 */
+	public synchronized List<String> completeJobId(String applicationId, String prefix, int limit) {
+		SparkMonitoringTrie trie = jobIds.get(applicationId);
+		if (trie != null) {
+			idsAccess.put(applicationId, System.currentTimeMillis());
+		}
+		return trie != null ? trie.complete(prefix, limit) : new ArrayList<String>();
+	}
+
+	/**
+	 * Complete a stage id of an application, from the index only
+	 */
+	public synchronized List<String> completeStageId(String applicationId, String prefix, int limit) {
+		SparkMonitoringTrie trie = stageIds.get(applicationId);
+		if (trie != null) {
+			idsAccess.put(applicationId, System.currentTimeMillis());
+		}
+		return trie != null ? trie.complete(prefix, limit) : new ArrayList<String>();
+	}
+
+	@Override
+	public String getName() {
+		return "job and stage ids";
+	}
+
+	/**
+	 * @return estimated bytes of the job and stage ids
+	 */
+	@Override
+	public synchronized long estimateBytes() {
+		long bytes = 0;
+		for (String applicationId : idsAccess.keySet()) {
+			bytes += estimateIdsBytes(applicationId);
+		}
+		return bytes;
+	}
+
+	private long estimateIdsBytes(String applicationId) {
+		SparkMonitoringTrie jobTrie = jobIds.get(applicationId);
+		SparkMonitoringTrie stageTrie = stageIds.get(applicationId);
+		return (jobTrie != null ? jobTrie.estimateBytes() : 0) + (stageTrie != null ? stageTrie.estimateBytes() : 0);
+	}
+
+	@Override
+	public synchronized void addCandidates(List<SparkMonitoringMemoryBudget.Candidate> candidates) {
+		for (Map.Entry<String, Long> entry : idsAccess.entrySet()) {
+			candidates.add(new SparkMonitoringMemoryBudget.Candidate(this, entry.getKey(),
+					estimateIdsBytes(entry.getKey()), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Drop the job and stage ids of an application
+	 */
+	@Override
+	public synchronized long evict(String applicationId) {
+		long bytes = estimateIdsBytes(applicationId);
+		jobIds.remove(applicationId);
+		stageIds.remove(applicationId);
+		idsAccess.remove(applicationId);
+		return bytes;
+	}
+
+	public synchronized SparkMonitoringApplication get(String id) {
+		return applications.get(id);
+	}
+
+	public synchronized int size() {
+		return applications.size();
+	}
+
+	public synchronized boolean isEmpty() {
+		return applications.isEmpty();
+	}
+
+	/**
+	 * Search applications, null criteria are ignored
+	 *
+	 * @param name
+	 *            part of the application name, case insensitive
+	 * @param user
+	 *            spark user
+	 * @param minStartTime
+	 *            applications started at or after, in milliseconds
+	 * @param maxStartTime
+	 *            applications started at or before, in milliseconds
+	 * @return matched applications, latest started first
+	 */
+	public synchronized List<SparkMonitoringApplication> search(String name, String user, Long minStartTime,
+			Long maxStartTime) {
+		String lowerName = name != null ? name.toLowerCase() : null;
+		List<SparkMonitoringApplication> lsApplication = new ArrayList<>();
+		for (SparkMonitoringApplication app : applications.values()) {
+			if (lowerName != null && (app.getName() == null || !app.getName().toLowerCase().contains(lowerName))) {
+				continue;
+			}
+			if (user != null && !user.equals(app.getSparkUser())) {
+				continue;
+			}
+			long startTime = app.getStartTimeMilis() != null ? app.getStartTimeMilis() : 0L;
+			if (minStartTime != null && startTime < minStartTime) {
+				continue;
+			}
+			if (maxStartTime != null && startTime > maxStartTime) {
+				continue;
+			}
+			lsApplication.add(app);
+		}
+		Collections.sort(lsApplication, LATEST_FIRST);
+		return lsApplication;
+	}
+
+	/**
+	 * Get the application used when a command does not name one
+	 */
+	public synchronized SparkMonitoringApplication getDefault() {
+		if (POLICY_LAST_LISTED.equalsIgnoreCase(policy)) {
+			return lastListedId != null ? applications.get(lastListedId) : null;
+		}
+		SparkMonitoringApplication latest = null;
+		SparkMonitoringApplication latestRunning = null;
+		for (SparkMonitoringApplication app : applications.values()) {
+			if (latest == null || LATEST_FIRST.compare(app, latest) < 0) {
+				latest = app;
+			}
+			if (!Boolean.TRUE.equals(app.getCompleted())
+					&& (latestRunning == null || LATEST_FIRST.compare(app, latestRunning) < 0)) {
+				latestRunning = app;
+			}
+		}
+		if (POLICY_LATEST_RUNNING.equalsIgnoreCase(policy) && latestRunning != null) {
+			return latestRunning;
+		}
+		return latest;
+	}
+
+	/**
+	 * Resolve an application by id, or by name when no id matches
+	 *
+	 * @return application or null if not found
+	 */
+	public synchronized SparkMonitoringApplication resolve(String idOrName) {
+		SparkMonitoringApplication app = applications.get(idOrName);
+		if (app != null) {
+			return app;
+		}
+		// the latest started of the applications with this name
+		SparkMonitoringApplication latest = null;
+		for (SparkMonitoringApplication candidate : applications.values()) {
+			if (idOrName.equals(candidate.getName())
+					&& (latest == null || LATEST_FIRST.compare(candidate, latest) < 0)) {
+				latest = candidate;
+			}
+		}
+		return latest;
+	}
+
+	private static final Comparator<SparkMonitoringApplication> LATEST_FIRST = new Comparator<SparkMonitoringApplication>() {
+		@Override
+		public int compare(SparkMonitoringApplication o1, SparkMonitoringApplication o2) {
+			long t1 = o1.getStartTimeMilis() != null ? o1.getStartTimeMilis() : 0L;
+			long t2 = o2.getStartTimeMilis() != null ? o2.getStartTimeMilis() : 0L;
+			return Long.compare(t2, t1);
+		}
+	};
+
+}
@@ -0,0 +1,83 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Job counts and durations of an application, for /applications/summary.
+ * The summary of a completed application never changes, it is cached.
+ */
+public class SparkMonitoringApplicationSummary implements Serializable, SparkMonitoringMemoryBudget.Sized {
+	private static final long serialVersionUID = 1L;
+
+	private final String applicationId;
+	private int jobs;
+	private int runningJobs;
+	private int failedJobs;
+	private long totalJobMillis;
+	private long maxJobMillis;
+
+	private SparkMonitoringApplicationSummary(String applicationId) {
+		this.applicationId = applicationId;
+	}
+
+	/**
+	 * @param now
+	 *            end of the running jobs, in milliseconds
+	 */
+	public static SparkMonitoringApplicationSummary create(String applicationId, List<SparkMonitoringJob> lsJob,
+			long now) {
+		SparkMonitoringApplicationSummary summary = new SparkMonitoringApplicationSummary(applicationId);
+		for (SparkMonitoringJob job : lsJob) {
+			summary.jobs++;
+			if ("RUNNING".equalsIgnoreCase(job.getStatus())) {
+				summary.runningJobs++;
+			} else if ("FAILED".equalsIgnoreCase(job.getStatus())) {
+				summary.failedJobs++;
+			}
+			if (job.getSubmisstionTimeMilis() != null) {
+				long end = job.getCompletionTimeMilis() != null ? job.getCompletionTimeMilis() : now;
+				long duration = Math.max(0L, end - job.getSubmisstionTimeMilis());
+				summary.totalJobMillis += duration;
+				summary.maxJobMillis = Math.max(summary.maxJobMillis, duration);
+			}
+		}
+		return summary;
+	}
+
+	public String getApplicationId() {
+		return applicationId;
+	}
+
+	public int getJobs() {
+		return jobs;
+	}
+
+	public int getRunningJobs() {
+		return runningJobs;
+	}
+
+	public int getFailedJobs() {
+		return failedJobs;
+	}
+
+	/**
+	 * @return sum of the durations of the jobs, in milliseconds
+	 */
+	public long getTotalJobMillis() {
+		return totalJobMillis;
+	}
+
+	/**
+	 * @return duration of the longest job, in milliseconds
+	 */
+	public long getMaxJobMillis() {
+		return maxJobMillis;
+	}
+
+	@Override
+	public long estimateBytes() {
+		return 64 + SparkMonitoringStringPool.estimateBytes(applicationId);
+	}
+
+}
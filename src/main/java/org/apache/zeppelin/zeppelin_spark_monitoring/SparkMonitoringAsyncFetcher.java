@@ -0,0 +1,624 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking http GET of the REST api: the requests are sent and read on
+ * asynchronous channels by a few threads, whatever the number of requests in
+ * flight. At most maxInFlight requests are sent to an endpoint (host:port) at
+ * a time, the next ones wait in a queue. The response is passed line by line
+ * to a callback, the next bytes are only read once the callback took the
+ * previous ones, so a slow consumer slows the server down instead of
+ * buffering the response. The connections are kept open for the next
+ * requests to the same endpoint.
+ */
+public class SparkMonitoringAsyncFetcher {
+
+	/**
+	 * Receiver of a response, called by the threads of the fetcher
+	 */
+	public interface Callback {
+		/**
+		 * Status of the response, before the lines of the body
+		 */
+		void response(int statusCode);
+
+		/**
+		 * A line of the body of a 200 response, without the line terminator
+		 */
+		void line(String line) throws Exception;
+
+		void completed();
+
+		void failed(Exception e);
+	}
+
+	private static final int BUFFER_SIZE = 16384;
+	private static final int MAX_HEADER_LENGTH = 65536;
+
+	private final AsynchronousChannelGroup group;
+	private final ScheduledExecutorService timer;
+	private final int maxInFlight;
+	private final long timeoutMillis;
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong reusedConnections = new AtomicLong();
+
+	/**
+	 * @param threads
+	 *            number of threads reading the responses
+	 * @param maxInFlight
+	 *            maximum number of requests in flight per endpoint
+	 * @param timeoutMillis
+	 *            maximum time of a request, from its send to the end of its
+	 *            response
+	 */
+	public SparkMonitoringAsyncFetcher(int threads, int maxInFlight, long timeoutMillis) throws IOException {
+		this.group = AsynchronousChannelGroup.withFixedThreadPool(threads, Executors.defaultThreadFactory());
+		this.timer = Executors.newSingleThreadScheduledExecutor();
+		this.maxInFlight = maxInFlight;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Send a GET request, or queue it if maxInFlight requests are in flight to
+	 * the endpoint. Does not wait for the response.
+	 *
+	 * @param url
+	 *            http://host:port/path?query
+	 * @throws IOException
+	 *             if the url is not a http url
+	 */
+	public void fetch(String url, Callback callback) throws IOException {
+		URI uri;
+		try {
+			uri = new URI(url);
+		} catch (URISyntaxException e) {
+			throw new IOException("Wrong url " + url, e);
+		}
+		if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+			throw new IOException("Not a http url: " + url);
+		}
+		int port = uri.getPort() >= 0 ? uri.getPort() : 80;
+		String key = uri.getHost() + ":" + port;
+		Endpoint endpoint = endpoints.get(key);
+		if (endpoint == null) {
+			endpoint = new Endpoint(key, new InetSocketAddress(uri.getHost(), port));
+			Endpoint previous = endpoints.putIfAbsent(key, endpoint);
+			if (previous != null) {
+				endpoint = previous;
+			}
+		}
+		String target = (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath())
+				+ (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+		Exchange exchange = new Exchange(endpoint, url, target, callback);
+		requests.incrementAndGet();
+		boolean send;
+		synchronized (endpoint) {
+			send = endpoint.inFlight < maxInFlight;
+			if (send) {
+				endpoint.inFlight++;
+			} else {
+				endpoint.pending.add(exchange);
+			}
+		}
+		if (send) {
+			start(exchange);
+		}
+	}
+
+	/**
+	 * @return requests sent or queued since the start
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return requests sent on a connection kept open by a previous request
+	 */
+	public long getReusedConnections() {
+		return reusedConnections.get();
+	}
+
+	/**
+	 * @return requests in flight and queued to an endpoint (host:port)
+	 */
+	public int[] getLoad(String endpointKey) {
+		Endpoint endpoint = endpoints.get(endpointKey);
+		if (endpoint == null) {
+			return new int[] { 0, 0 };
+		}
+		synchronized (endpoint) {
+			return new int[] { endpoint.inFlight, endpoint.pending.size() };
+		}
+	}
+
+	/**
+	 * Close the connections, the queued requests fail
+	 */
+	public void close() {
+		for (Endpoint endpoint : endpoints.values()) {
+			Queue<Exchange> pending;
+			synchronized (endpoint) {
+				pending = new ArrayDeque<>(endpoint.pending);
+				endpoint.pending.clear();
+			}
+			for (Exchange exchange : pending) {
+				exchange.callback.failed(new IOException("Fetcher is closed"));
+			}
+		}
+		timer.shutdownNow();
+		try {
+			group.shutdownNow();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	private void start(final Exchange exchange) {
+		exchange.timeout = timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				fail(exchange, new IOException("Timeout fetching " + exchange.url));
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+		AsynchronousSocketChannel channel = exchange.endpoint.pollIdle();
+		if (channel != null) {
+			exchange.reused = true;
+			reusedConnections.incrementAndGet();
+			send(exchange, channel);
+		} else {
+			connect(exchange);
+		}
+	}
+
+	private void connect(final Exchange exchange) {
+		final AsynchronousSocketChannel channel;
+		try {
+			channel = AsynchronousSocketChannel.open(group);
+		} catch (IOException e) {
+			fail(exchange, e);
+			return;
+		}
+		exchange.channel = channel;
+		channel.connect(exchange.endpoint.address, exchange, new CompletionHandler<Void, Exchange>() {
+			@Override
+			public void completed(Void result, Exchange attachment) {
+				send(exchange, channel);
+			}
+
+			@Override
+			public void failed(Throwable e, Exchange attachment) {
+				fail(exchange, toIOException(e));
+			}
+		});
+	}
+
+	private void send(final Exchange exchange, final AsynchronousSocketChannel channel) {
+		exchange.channel = channel;
+		if (exchange.done.get()) {
+			// timed out while connecting
+			close(channel);
+			return;
+		}
+		String request = "GET " + exchange.target + " HTTP/1.1\r\n" + "Host: " + exchange.endpoint.key + "\r\n"
+				+ "Accept: application/json\r\n" + "\r\n";
+		final ByteBuffer buffer = ByteBuffer.wrap(request.getBytes(StandardCharsets.ISO_8859_1));
+		channel.write(buffer, exchange, new CompletionHandler<Integer, Exchange>() {
+			@Override
+			public void completed(Integer written, Exchange attachment) {
+				if (buffer.hasRemaining()) {
+					channel.write(buffer, exchange, this);
+				} else {
+					read(exchange, channel, ByteBuffer.allocate(BUFFER_SIZE));
+				}
+			}
+
+			@Override
+			public void failed(Throwable e, Exchange attachment) {
+				retryOrFail(exchange, channel, e);
+			}
+		});
+	}
+
+	private void read(final Exchange exchange, final AsynchronousSocketChannel channel, final ByteBuffer buffer) {
+		channel.read(buffer, exchange, new CompletionHandler<Integer, Exchange>() {
+			@Override
+			public void completed(Integer read, Exchange attachment) {
+				if (exchange.done.get()) {
+					return;
+				}
+				if (read < 0) {
+					if (exchange.parser.isUntilClose()) {
+						try {
+							exchange.parser.endOfInput();
+						} catch (Exception e) {
+							fail(exchange, e);
+							return;
+						}
+						finish(exchange, channel, false);
+					} else {
+						retryOrFail(exchange, channel, new IOException("Connection closed by the server"));
+					}
+					return;
+				}
+				buffer.flip();
+				try {
+					exchange.parser.feed(buffer);
+				} catch (Exception e) {
+					fail(exchange, e);
+					return;
+				}
+				if (exchange.parser.isComplete()) {
+					finish(exchange, channel, exchange.parser.isKeepAlive());
+				} else {
+					// read the next bytes only once the previous ones are consumed
+					buffer.clear();
+					channel.read(buffer, exchange, this);
+				}
+			}
+
+			@Override
+			public void failed(Throwable e, Exchange attachment) {
+				retryOrFail(exchange, channel, e);
+			}
+		});
+	}
+
+	/**
+	 * A kept open connection may have been closed by the server meanwhile:
+	 * send the request again on a new connection if nothing was received
+	 */
+	private void retryOrFail(Exchange exchange, AsynchronousSocketChannel channel, Throwable e) {
+		if (exchange.reused && !exchange.parser.isStarted() && !exchange.done.get()) {
+			exchange.reused = false;
+			close(channel);
+			connect(exchange);
+		} else {
+			fail(exchange, toIOException(e));
+		}
+	}
+
+	private void finish(Exchange exchange, AsynchronousSocketChannel channel, boolean keepAlive) {
+		if (!exchange.done.compareAndSet(false, true)) {
+			return;
+		}
+		exchange.timeout.cancel(false);
+		if (keepAlive) {
+			exchange.endpoint.offerIdle(channel, maxInFlight);
+		} else {
+			close(channel);
+		}
+		try {
+			exchange.callback.completed();
+		} finally {
+			release(exchange.endpoint);
+		}
+	}
+
+	private void fail(Exchange exchange, Exception e) {
+		if (!exchange.done.compareAndSet(false, true)) {
+			return;
+		}
+		if (exchange.timeout != null) {
+			exchange.timeout.cancel(false);
+		}
+		if (exchange.channel != null) {
+			close(exchange.channel);
+		}
+		try {
+			exchange.callback.failed(e);
+		} finally {
+			release(exchange.endpoint);
+		}
+	}
+
+	/**
+	 * Send the next queued request of an endpoint, in place of a completed
+	 * one
+	 */
+	private void release(Endpoint endpoint) {
+		Exchange next;
+		synchronized (endpoint) {
+			next = endpoint.pending.poll();
+			if (next == null) {
+				endpoint.inFlight--;
+			}
+		}
+		if (next != null) {
+			start(next);
+		}
+	}
+
+	private static void close(AsynchronousSocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// closed anyway
+		}
+	}
+
+	private static IOException toIOException(Throwable e) {
+		return e instanceof IOException ? (IOException) e : new IOException(e);
+	}
+
+	/**
+	 * Requests in flight, queued requests and open connections of a host:port
+	 */
+	private static class Endpoint {
+		private final String key;
+		private final InetSocketAddress address;
+		private int inFlight;
+		private final Queue<Exchange> pending = new ArrayDeque<>();
+		private final Queue<AsynchronousSocketChannel> idle = new ArrayDeque<>();
+
+		Endpoint(String key, InetSocketAddress address) {
+			this.key = key;
+			this.address = address;
+		}
+
+		synchronized AsynchronousSocketChannel pollIdle() {
+			AsynchronousSocketChannel channel;
+			while ((channel = idle.poll()) != null) {
+				if (channel.isOpen()) {
+					return channel;
+				}
+			}
+			return null;
+		}
+
+		synchronized void offerIdle(AsynchronousSocketChannel channel, int maxIdle) {
+			if (idle.size() < maxIdle) {
+				idle.add(channel);
+			} else {
+				close(channel);
+			}
+		}
+	}
+
+	/**
+	 * A request and its response
+	 */
+	private static class Exchange {
+		private final Endpoint endpoint;
+		private final String url;
+		private final String target;
+		private final Callback callback;
+		private final ResponseParser parser;
+		private final AtomicBoolean done = new AtomicBoolean(false);
+		private volatile AsynchronousSocketChannel channel;
+		private volatile ScheduledFuture<?> timeout;
+		private boolean reused;
+
+		Exchange(Endpoint endpoint, String url, String target, Callback callback) {
+			this.endpoint = endpoint;
+			this.url = url;
+			this.target = target;
+			this.callback = callback;
+			this.parser = new ResponseParser(callback);
+		}
+	}
+
+	/**
+	 * Incremental parser of a http response: status line, headers, then a body
+	 * delimited by its length, by chunks or by the end of the connection
+	 */
+	private static class ResponseParser {
+		private static final int STATUS = 0;
+		private static final int HEADERS = 1;
+		private static final int BODY = 2;
+		private static final int CHUNK_SIZE = 3;
+		private static final int CHUNK_END = 4;
+		private static final int TRAILERS = 5;
+		private static final int COMPLETE = 6;
+
+		private final Callback callback;
+		private int state = STATUS;
+		private boolean started;
+		private int statusCode;
+		private boolean http11;
+		private boolean connectionClose;
+		private boolean chunked;
+		private long contentLength = -1;
+		// bytes of the body left in the current chunk or in the whole body
+		private long remaining;
+		private boolean untilClose;
+		// current line, of the headers or of the body
+		private byte[] line = new byte[256];
+		private int lineLength;
+
+		ResponseParser(Callback callback) {
+			this.callback = callback;
+		}
+
+		void feed(ByteBuffer buffer) throws Exception {
+			if (buffer.hasRemaining()) {
+				started = true;
+			}
+			while (buffer.hasRemaining() && state != COMPLETE) {
+				if (state == BODY) {
+					body(buffer);
+					continue;
+				}
+				// status line, headers, chunk sizes and trailers are read by line
+				byte b = buffer.get();
+				if (b != '\n') {
+					if (lineLength >= MAX_HEADER_LENGTH) {
+						throw new IOException("Header line too long");
+					}
+					append(b);
+					continue;
+				}
+				String text = new String(line, 0, lineLength, StandardCharsets.ISO_8859_1).trim();
+				lineLength = 0;
+				headerLine(text);
+			}
+		}
+
+		private void headerLine(String text) throws Exception {
+			switch (state) {
+			case STATUS:
+				String[] parts = text.split(" ", 3);
+				if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+					throw new IOException("Wrong status line: " + text);
+				}
+				http11 = !"HTTP/1.0".equals(parts[0]);
+				statusCode = Integer.parseInt(parts[1]);
+				state = HEADERS;
+				break;
+			case HEADERS:
+				if (!text.isEmpty()) {
+					header(text);
+					break;
+				}
+				if (statusCode < 200) {
+					// interim response, the final one follows
+					state = STATUS;
+					break;
+				}
+				callback.response(statusCode);
+				if (statusCode == 204 || statusCode == 304) {
+					state = COMPLETE;
+				} else if (chunked) {
+					state = CHUNK_SIZE;
+				} else if (contentLength >= 0) {
+					remaining = contentLength;
+					state = remaining > 0 ? BODY : COMPLETE;
+				} else {
+					untilClose = true;
+					remaining = Long.MAX_VALUE;
+					state = BODY;
+				}
+				break;
+			case CHUNK_SIZE:
+				int extension = text.indexOf(';');
+				remaining = Long.parseLong(extension >= 0 ? text.substring(0, extension).trim() : text, 16);
+				state = remaining > 0 ? BODY : TRAILERS;
+				break;
+			case CHUNK_END:
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (text.isEmpty()) {
+					endOfBody();
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		private void header(String text) {
+			int colon = text.indexOf(':');
+			if (colon <= 0) {
+				return;
+			}
+			String name = text.substring(0, colon).trim().toLowerCase(Locale.US);
+			String value = text.substring(colon + 1).trim();
+			if ("content-length".equals(name)) {
+				contentLength = Long.parseLong(value);
+			} else if ("transfer-encoding".equals(name)) {
+				chunked = value.toLowerCase(Locale.US).contains("chunked");
+			} else if ("connection".equals(name)) {
+				connectionClose = "close".equalsIgnoreCase(value);
+			}
+		}
+
+		/**
+		 * Split the bytes of the body in lines: '\n' is never part of a
+		 * multi-byte character, a line is decoded once complete
+		 */
+		private void body(ByteBuffer buffer) throws Exception {
+			int count = (int) Math.min(buffer.remaining(), remaining);
+			for (int i = 0; i < count; i++) {
+				byte b = buffer.get();
+				if (b == '\n') {
+					bodyLine();
+				} else {
+					append(b);
+				}
+			}
+			if (!untilClose) {
+				remaining -= count;
+				if (remaining == 0) {
+					if (chunked) {
+						state = CHUNK_END;
+					} else {
+						endOfBody();
+					}
+				}
+			}
+		}
+
+		private void bodyLine() throws Exception {
+			int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+			lineLength = 0;
+			if (statusCode == 200) {
+				callback.line(new String(line, 0, length, StandardCharsets.UTF_8));
+			}
+		}
+
+		private void endOfBody() throws Exception {
+			if (lineLength > 0) {
+				bodyLine();
+			}
+			state = COMPLETE;
+		}
+
+		private void append(byte b) {
+			if (lineLength == line.length) {
+				line = Arrays.copyOf(line, 2 * line.length);
+			}
+			line[lineLength++] = b;
+		}
+
+		boolean isStarted() {
+			return started;
+		}
+
+		boolean isComplete() {
+			return state == COMPLETE;
+		}
+
+		/**
+		 * @return true if the body ends with the connection, and it is being
+		 *         read: the end of the connection completes the response
+		 */
+		boolean isUntilClose() {
+			return untilClose && state == BODY;
+		}
+
+		/**
+		 * End of a body delimited by the end of the connection
+		 */
+		void endOfInput() throws Exception {
+			endOfBody();
+		}
+
+		boolean isKeepAlive() {
+			return http11 && !connectionClose && !untilClose;
+		}
+	}
+
+}
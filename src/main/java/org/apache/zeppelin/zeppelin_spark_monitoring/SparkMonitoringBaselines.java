@@ -0,0 +1,308 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling baselines of the recurring jobs (by normalized description) and
+ * stages (by name) of all prefixes: an exponentially weighted mean and
+ * variance of their duration, input bytes, shuffle bytes and failed tasks,
+ * updated in constant time by each completion. A completion far from the
+ * baseline of its shape (|z-score| over the threshold) is an outlier until
+ * the next completion of the same shape.
+ * A baseline is a few primitive arrays, the least recently updated ones are
+ * dropped over the maximum.
+ */
+public class SparkMonitoringBaselines {
+	public static final String JOB = "job";
+	public static final String STAGE = "stage";
+	/** metrics of a baseline, a job has no input and shuffle bytes */
+	public static final String[] METRICS = { "duration", "input bytes", "shuffle bytes", "failed tasks" };
+	private static final int DURATION = 0;
+	private static final int INPUT_BYTES = 1;
+	private static final int SHUFFLE_BYTES = 2;
+	private static final int FAILED_TASKS = 3;
+	/** completions of a shape before its outliers are reported */
+	public static final int WARMUP = 5;
+	// minimum deviation, as a ratio of the mean (and at least 1): a stable metric is not an outlier at every jitter
+	private static final double MIN_RELATIVE_DEVIATION = 0.05;
+	// applications of which the completions are tracked, to add each completion once
+	private static final int MAX_APPLICATIONS = 1000;
+
+	/**
+	 * Baseline of a job or stage shape
+	 */
+	private static class Baseline {
+		private final double[] means = new double[METRICS.length];
+		private final double[] variances = new double[METRICS.length];
+		private final int[] counts = new int[METRICS.length];
+	}
+
+	/**
+	 * Completion far from its baseline
+	 */
+	public static class Anomaly {
+		private final String prefix;
+		private final String kind;
+		private final String name;
+		private final String applicationId;
+		private final String id;
+		private final String metric;
+		private final double value;
+		private final double mean;
+		private final double deviation;
+		private final double zScore;
+		private final long time;
+
+		Anomaly(String prefix, String kind, String name, String applicationId, String id, String metric,
+				double value, double mean, double deviation, double zScore, long time) {
+			this.prefix = prefix;
+			this.kind = kind;
+			this.name = name;
+			this.applicationId = applicationId;
+			this.id = id;
+			this.metric = metric;
+			this.value = value;
+			this.mean = mean;
+			this.deviation = deviation;
+			this.zScore = zScore;
+			this.time = time;
+		}
+
+		public String getPrefix() {
+			return prefix;
+		}
+		/**
+		 * @return job or stage
+		 */
+		public String getKind() {
+			return kind;
+		}
+		public String getName() {
+			return name;
+		}
+		public String getApplicationId() {
+			return applicationId;
+		}
+		public String getId() {
+			return id;
+		}
+		public String getMetric() {
+			return metric;
+		}
+		public double getValue() {
+			return value;
+		}
+		/**
+		 * @return mean of the baseline before the completion
+		 */
+		public double getMean() {
+			return mean;
+		}
+		/**
+		 * @return standard deviation of the baseline before the completion
+		 */
+		public double getDeviation() {
+			return deviation;
+		}
+		public double getZScore() {
+			return zScore;
+		}
+		/**
+		 * @return time of the completion, in milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	private final double alpha;
+	private final double threshold;
+	private final int maxBaselines;
+	// least recently updated first
+	private final LinkedHashMap<String, Baseline> baselines = new LinkedHashMap<>(16, 0.75f, true);
+	// current outliers, by shape and metric
+	private final Map<String, Anomaly> anomalies = new LinkedHashMap<>();
+	// completions already added, by prefix, application and kind
+	private final LinkedHashMap<String, BitSet> added = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param alpha
+	 *            weight of a new completion, between 0 and 1
+	 * @param threshold
+	 *            minimum |z-score| of an outlier
+	 * @param maxBaselines
+	 *            maximum number of shapes tracked
+	 */
+	public SparkMonitoringBaselines(double alpha, double threshold, int maxBaselines) {
+		if (alpha <= 0 || alpha >= 1) {
+			throw new IllegalArgumentException("Alpha must be between 0 and 1: " + alpha);
+		}
+		this.alpha = alpha;
+		this.threshold = threshold;
+		this.maxBaselines = maxBaselines;
+	}
+
+	/**
+	 * Add the jobs completed since the previous update, in order of completion
+	 */
+	public synchronized void addJobs(String prefix, String applicationId, List<SparkMonitoringJob> lsJob) {
+		BitSet done = getAdded(prefix + "|" + applicationId + "|" + JOB);
+		List<SparkMonitoringJob> completed = new ArrayList<>();
+		for (SparkMonitoringJob job : lsJob) {
+			int id = parseId(job.getId());
+			if (id < 0 || done.get(id) || job.getCompletionTimeMilis() == null || job.getSubmisstionTimeMilis() == null
+					|| !("SUCCEEDED".equals(job.getStatus()) || "FAILED".equals(job.getStatus()))) {
+				continue;
+			}
+			done.set(id);
+			completed.add(job);
+		}
+		// the server lists the latest first
+		Collections.sort(completed, new Comparator<SparkMonitoringJob>() {
+			@Override
+			public int compare(SparkMonitoringJob o1, SparkMonitoringJob o2) {
+				return o1.getCompletionTimeMilis().compareTo(o2.getCompletionTimeMilis());
+			}
+		});
+		double[] values = new double[METRICS.length];
+		for (SparkMonitoringJob job : completed) {
+			values[DURATION] = job.getCompletionTimeMilis() - job.getSubmisstionTimeMilis();
+			values[INPUT_BYTES] = Double.NaN;
+			values[SHUFFLE_BYTES] = Double.NaN;
+			values[FAILED_TASKS] = job.getNumFailedTasks();
+			String name = SparkMonitoringJobProfiles.normalize(job.getDescription() != null
+					&& !"null".equals(job.getDescription()) ? job.getDescription() : job.getName());
+			add(prefix, JOB, name, applicationId, job.getId(), values, job.getCompletionTimeMilis());
+		}
+	}
+
+	/**
+	 * Add the stages completed since the previous update, in order of
+	 * completion
+	 */
+	public synchronized void addStages(String prefix, String applicationId, List<SparkMonitoringStage> lsStage) {
+		BitSet done = getAdded(prefix + "|" + applicationId + "|" + STAGE);
+		List<SparkMonitoringStage> completed = new ArrayList<>();
+		for (SparkMonitoringStage stage : lsStage) {
+			int id = parseId(stage.getId());
+			if (id < 0 || done.get(id) || stage.getCompletionTimeMilis() == null
+					|| stage.getSubmissionTimeMilis() == null
+					|| !("COMPLETE".equals(stage.getStatus()) || "FAILED".equals(stage.getStatus()))) {
+				continue;
+			}
+			done.set(id);
+			completed.add(stage);
+		}
+		Collections.sort(completed, new Comparator<SparkMonitoringStage>() {
+			@Override
+			public int compare(SparkMonitoringStage o1, SparkMonitoringStage o2) {
+				return o1.getCompletionTimeMilis().compareTo(o2.getCompletionTimeMilis());
+			}
+		});
+		double[] values = new double[METRICS.length];
+		for (SparkMonitoringStage stage : completed) {
+			values[DURATION] = stage.getCompletionTimeMilis() - stage.getSubmissionTimeMilis();
+			values[INPUT_BYTES] = stage.getInputBytes();
+			values[SHUFFLE_BYTES] = stage.getShuffleReadBytes() + stage.getShuffleWriteBytes();
+			values[FAILED_TASKS] = stage.getNumFailedTasks();
+			add(prefix, STAGE, SparkMonitoringJobProfiles.normalize(stage.getName()), applicationId, stage.getId(),
+					values, stage.getCompletionTimeMilis());
+		}
+	}
+
+	private BitSet getAdded(String key) {
+		BitSet done = added.get(key);
+		if (done == null) {
+			done = new BitSet();
+			added.put(key, done);
+			if (added.size() > MAX_APPLICATIONS) {
+				added.remove(added.keySet().iterator().next());
+			}
+		}
+		return done;
+	}
+
+	private static int parseId(String id) {
+		try {
+			return Integer.parseInt(id);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private void add(String prefix, String kind, String name, String applicationId, String id, double[] values,
+			long time) {
+		String key = prefix + "|" + kind + "|" + name;
+		Baseline baseline = baselines.get(key);
+		if (baseline == null) {
+			baseline = new Baseline();
+			baselines.put(key, baseline);
+			if (baselines.size() > maxBaselines) {
+				baselines.remove(baselines.keySet().iterator().next());
+			}
+		}
+		for (int m = 0; m < METRICS.length; m++) {
+			double value = values[m];
+			if (Double.isNaN(value)) {
+				continue;
+			}
+			String anomalyKey = key + "|" + METRICS[m];
+			if (baseline.counts[m] == 0) {
+				baseline.means[m] = value;
+				baseline.counts[m] = 1;
+				continue;
+			}
+			double mean = baseline.means[m];
+			double deviation = Math.max(Math.sqrt(baseline.variances[m]),
+					Math.max(1, MIN_RELATIVE_DEVIATION * Math.abs(mean)));
+			double zScore = (value - mean) / deviation;
+			if (baseline.counts[m] >= WARMUP && Math.abs(zScore) >= threshold) {
+				anomalies.remove(anomalyKey);
+				anomalies.put(anomalyKey, new Anomaly(prefix, kind, name, applicationId, id, METRICS[m], value, mean,
+						deviation, zScore, time));
+			} else {
+				anomalies.remove(anomalyKey);
+			}
+			// exponentially weighted mean and variance
+			double diff = value - mean;
+			double increment = alpha * diff;
+			baseline.means[m] = mean + increment;
+			baseline.variances[m] = (1 - alpha) * (baseline.variances[m] + diff * increment);
+			if (baseline.counts[m] < Integer.MAX_VALUE) {
+				baseline.counts[m]++;
+			}
+		}
+		// at most one outlier per shape and metric, the oldest are dropped
+		if (anomalies.size() > maxBaselines) {
+			anomalies.remove(anomalies.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * @return current outliers, largest |z-score| first
+	 */
+	public synchronized List<Anomaly> getAnomalies() {
+		List<Anomaly> lsAnomaly = new ArrayList<>(anomalies.values());
+		Collections.sort(lsAnomaly, new Comparator<Anomaly>() {
+			@Override
+			public int compare(Anomaly o1, Anomaly o2) {
+				return Double.compare(Math.abs(o2.zScore), Math.abs(o1.zScore));
+			}
+		});
+		return lsAnomaly;
+	}
+
+	/**
+	 * @return number of job and stage shapes tracked
+	 */
+	public synchronized int size() {
+		return baselines.size();
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read a file written by SparkMonitoringColumnarWriter, row group by row group
+ */
+public class SparkMonitoringColumnarReader implements Closeable {
+	private final DataInputStream in;
+	private final List<String> columns = new ArrayList<>();
+	private final StringBuilder types = new StringBuilder();
+	private Object[][] group = new Object[0][];
+	private int groupIndex;
+
+	public SparkMonitoringColumnarReader(Path file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+		byte[] magic = new byte[SparkMonitoringColumnarWriter.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, SparkMonitoringColumnarWriter.MAGIC)
+				|| in.read() != SparkMonitoringColumnarWriter.VERSION) {
+			in.close();
+			throw new IOException("Not a columnar export file: " + file);
+		}
+		int numColumns = (int) readVarLong(in);
+		for (int i = 0; i < numColumns; i++) {
+			types.append((char) in.read());
+			byte[] name = new byte[(int) readVarLong(in)];
+			in.readFully(name);
+			columns.add(new String(name, SparkMonitoringColumnarWriter.UTF_8));
+		}
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return next row, null at the end of the file
+	 */
+	public Object[] next() throws IOException {
+		if (groupIndex >= group.length) {
+			readGroup();
+			if (group.length == 0) {
+				return null;
+			}
+		}
+		return group[groupIndex++];
+	}
+
+	private void readGroup() throws IOException {
+		int numRows = (int) readVarLong(in);
+		group = new Object[numRows][columns.size()];
+		groupIndex = 0;
+		if (numRows == 0) {
+			// end of the file
+			return;
+		}
+		for (int c = 0; c < columns.size(); c++) {
+			byte[] compressed = new byte[(int) readVarLong(in)];
+			in.readFully(compressed);
+			InputStream column = new ByteArrayInputStream(inflate(compressed));
+			long previous = 0;
+			for (int r = 0; r < numRows; r++) {
+				long value = readVarLong(column);
+				if (value == 0) {
+					continue;
+				}
+				if (types.charAt(c) == SparkMonitoringExportWriter.TYPE_LONG) {
+					long zigzag = value - 1;
+					previous += (zigzag >>> 1) ^ -(zigzag & 1);
+					group[r][c] = previous;
+				} else {
+					byte[] bytes = new byte[(int) value - 1];
+					new DataInputStream(column).readFully(bytes);
+					group[r][c] = new String(bytes, SparkMonitoringColumnarWriter.UTF_8);
+				}
+			}
+		}
+	}
+
+	private static byte[] inflate(byte[] compressed) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			ByteArrayOutputStream data = new ByteArrayOutputStream(compressed.length * 4);
+			byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				int size = inflater.inflate(buffer);
+				if (size == 0 && inflater.needsInput()) {
+					throw new EOFException("Truncated column");
+				}
+				data.write(buffer, 0, size);
+			}
+			return data.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static long readVarLong(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
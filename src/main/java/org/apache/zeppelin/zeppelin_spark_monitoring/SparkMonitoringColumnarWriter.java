@@ -0,0 +1,130 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Export rows in a compressed columnar binary format. Rows are buffered in
+ * groups of ROW_GROUP_SIZE, each group is written column by column, each
+ * column deflated on its own.
+ * <pre>
+ * file      : magic "SMCOL" version(1) varint(columns) (type name)* group* varint(0)
+ * name      : varint(length) utf-8 bytes
+ * group     : varint(rows) (varint(length) deflated column)*
+ * long value: varint(0) for null, else varint(zigzag(delta to previous value) + 1)
+ * string    : varint(0) for null, else varint(length + 1) utf-8 bytes
+ * </pre>
+ * Read with SparkMonitoringColumnarReader.
+ */
+public class SparkMonitoringColumnarWriter extends SparkMonitoringExportWriter {
+	public static final byte[] MAGIC = { 'S', 'M', 'C', 'O', 'L' };
+	public static final int VERSION = 1;
+	public static final int ROW_GROUP_SIZE = 4096;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteArrayOutputStream[] columnBuffers;
+	private final long[] previousValues;
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final byte[] deflateBuffer = new byte[8192];
+	private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+	private int groupRows;
+
+	public SparkMonitoringColumnarWriter(Path file, List<String> columns, String types) throws IOException {
+		super(file, columns, types);
+		columnBuffers = new ByteArrayOutputStream[columns.size()];
+		for (int i = 0; i < columnBuffers.length; i++) {
+			columnBuffers[i] = new ByteArrayOutputStream();
+		}
+		previousValues = new long[columns.size()];
+		header.write(MAGIC);
+		header.write(VERSION);
+		writeVarLong(header, columns.size());
+		for (int i = 0; i < columns.size(); i++) {
+			header.write(types.charAt(i));
+			byte[] name = columns.get(i).getBytes(UTF_8);
+			writeVarLong(header, name.length);
+			header.write(name);
+		}
+		write(header.toByteArray());
+	}
+
+	@Override
+	protected void doWriteRow(Object[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			ByteArrayOutputStream column = columnBuffers[i];
+			if (values[i] == null) {
+				writeVarLong(column, 0);
+			} else if (types.charAt(i) == TYPE_LONG) {
+				long value = ((Number) values[i]).longValue();
+				long delta = value - previousValues[i];
+				writeVarLong(column, ((delta << 1) ^ (delta >> 63)) + 1);
+				previousValues[i] = value;
+			} else {
+				byte[] bytes = values[i].toString().getBytes(UTF_8);
+				writeVarLong(column, bytes.length + 1);
+				column.write(bytes);
+			}
+		}
+		if (++groupRows >= ROW_GROUP_SIZE) {
+			writeGroup();
+		}
+	}
+
+	private void writeGroup() throws IOException {
+		if (groupRows == 0) {
+			return;
+		}
+		header.reset();
+		writeVarLong(header, groupRows);
+		write(header.toByteArray());
+		for (int i = 0; i < columnBuffers.length; i++) {
+			byte[] compressed = deflate(columnBuffers[i].toByteArray());
+			header.reset();
+			writeVarLong(header, compressed.length);
+			write(header.toByteArray());
+			write(compressed);
+			columnBuffers[i].reset();
+			// deltas restart at each group, so a group is read on its own
+			previousValues[i] = 0;
+		}
+		groupRows = 0;
+	}
+
+	private byte[] deflate(byte[] data) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 16);
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		while (!deflater.finished()) {
+			int size = deflater.deflate(deflateBuffer);
+			compressed.write(deflateBuffer, 0, size);
+		}
+		return compressed.toByteArray();
+	}
+
+	static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	@Override
+	protected void finish() throws IOException {
+		try {
+			writeGroup();
+			header.reset();
+			writeVarLong(header, 0);
+			write(header.toByteArray());
+		} finally {
+			deflater.end();
+		}
+	}
+
+}
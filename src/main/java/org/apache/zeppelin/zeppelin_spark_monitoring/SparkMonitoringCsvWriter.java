@@ -0,0 +1,44 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Export rows as CSV with a header line, RFC 4180 quoting
+ */
+public class SparkMonitoringCsvWriter extends SparkMonitoringExportWriter {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public SparkMonitoringCsvWriter(Path file, List<String> columns, String types) throws IOException {
+		super(file, columns, types);
+		write((StringUtils.join(columns, ",") + "\n").getBytes(UTF_8));
+	}
+
+	@Override
+	protected void doWriteRow(Object[] values) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				line.append(',');
+			}
+			if (values[i] != null) {
+				line.append(quote(values[i].toString()));
+			}
+		}
+		line.append('\n');
+		write(line.toString().getBytes(UTF_8));
+	}
+
+	private static String quote(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+}
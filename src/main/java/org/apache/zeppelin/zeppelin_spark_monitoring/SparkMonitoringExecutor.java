@@ -0,0 +1,154 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+/**
+ * Class presents the executors (and the driver) of a spark application
+ */
+public class SparkMonitoringExecutor {
+	private String id;
+	private String hostPort;
+	private boolean active = true;
+	private int totalCores;
+	private int maxTasks;
+	private int activeTasks;
+	private int failedTasks;
+	private int completedTasks;
+	private int totalTasks;
+	private long totalDuration;
+	private long totalGCTime;
+	private long totalInputBytes;
+	private long totalShuffleRead;
+	private long totalShuffleWrite;
+	private long memoryUsed;
+	private long maxMemory;
+	private long diskUsed;
+	private Long addTimeMilis;
+	private Long removeTimeMilis;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public String getHostPort() {
+		return hostPort;
+	}
+	public void setHostPort(String hostPort) {
+		this.hostPort = hostPort;
+	}
+	public boolean isActive() {
+		return active;
+	}
+	public void setActive(boolean active) {
+		this.active = active;
+	}
+	public int getTotalCores() {
+		return totalCores;
+	}
+	public void setTotalCores(int totalCores) {
+		this.totalCores = totalCores;
+	}
+	public int getMaxTasks() {
+		return maxTasks;
+	}
+	public void setMaxTasks(int maxTasks) {
+		this.maxTasks = maxTasks;
+	}
+	public int getActiveTasks() {
+		return activeTasks;
+	}
+	public void setActiveTasks(int activeTasks) {
+		this.activeTasks = activeTasks;
+	}
+	public int getFailedTasks() {
+		return failedTasks;
+	}
+	public void setFailedTasks(int failedTasks) {
+		this.failedTasks = failedTasks;
+	}
+	public int getCompletedTasks() {
+		return completedTasks;
+	}
+	public void setCompletedTasks(int completedTasks) {
+		this.completedTasks = completedTasks;
+	}
+	public int getTotalTasks() {
+		return totalTasks;
+	}
+	public void setTotalTasks(int totalTasks) {
+		this.totalTasks = totalTasks;
+	}
+	public long getTotalDuration() {
+		return totalDuration;
+	}
+	public void setTotalDuration(long totalDuration) {
+		this.totalDuration = totalDuration;
+	}
+	public long getTotalGCTime() {
+		return totalGCTime;
+	}
+	public void setTotalGCTime(long totalGCTime) {
+		this.totalGCTime = totalGCTime;
+	}
+	public long getTotalInputBytes() {
+		return totalInputBytes;
+	}
+	public void setTotalInputBytes(long totalInputBytes) {
+		this.totalInputBytes = totalInputBytes;
+	}
+	public long getTotalShuffleRead() {
+		return totalShuffleRead;
+	}
+	public void setTotalShuffleRead(long totalShuffleRead) {
+		this.totalShuffleRead = totalShuffleRead;
+	}
+	public long getTotalShuffleWrite() {
+		return totalShuffleWrite;
+	}
+	public void setTotalShuffleWrite(long totalShuffleWrite) {
+		this.totalShuffleWrite = totalShuffleWrite;
+	}
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+	public void setMemoryUsed(long memoryUsed) {
+		this.memoryUsed = memoryUsed;
+	}
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+	public long getDiskUsed() {
+		return diskUsed;
+	}
+	public void setDiskUsed(long diskUsed) {
+		this.diskUsed = diskUsed;
+	}
+	/**
+	 * @return time the executor was added, null if not known
+	 */
+	public Long getAddTimeMilis() {
+		return addTimeMilis;
+	}
+	public void setAddTimeMilis(Long addTimeMilis) {
+		this.addTimeMilis = addTimeMilis;
+	}
+	/**
+	 * @return time the executor was removed, null if it is active
+	 */
+	public Long getRemoveTimeMilis() {
+		return removeTimeMilis;
+	}
+	public void setRemoveTimeMilis(Long removeTimeMilis) {
+		this.removeTimeMilis = removeTimeMilis;
+	}
+	/**
+	 * @return part of the task time spent in GC, 0 if no task has run
+	 */
+	public double getGCRatio() {
+		return totalDuration > 0 ? (double) totalGCTime / totalDuration : 0;
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Export of jobs, stages or executors to one file, or to one file per
+ * application and day: &lt;path&gt;/&lt;application_id&gt;/&lt;yyyy-MM-dd&gt;.&lt;ext&gt;.
+ * Rows are written as soon as they are parsed, only the files of the current
+ * application are open.
+ */
+public class SparkMonitoringExport implements Closeable {
+	public static final String JOBS = "jobs";
+	public static final String STAGES = "stages";
+	public static final String EXECUTORS = "executors";
+
+	private static final List<String> JOB_COLUMNS = Arrays.asList("applicationId", "jobId", "name",
+			"description", "status", "submissionTime", "completionTime", "numTasks", "numCompletedTasks",
+			"numFailedTasks");
+	private static final String JOB_TYPES = "SLSSSLLLLL";
+	private static final List<String> STAGE_COLUMNS = Arrays.asList("applicationId", "stageId", "attemptId",
+			"name", "status", "submissionTime", "completionTime", "numCompletedTasks", "numFailedTasks",
+			"inputBytes", "inputRecords", "outputBytes", "outputRecords", "shuffleReadBytes", "shuffleWriteBytes",
+			"memoryBytesSpilled", "diskBytesSpilled");
+	private static final String STAGE_TYPES = "SLLSSLLLLLLLLLLLL";
+	private static final List<String> EXECUTOR_COLUMNS = Arrays.asList("applicationId", "time", "executorId",
+			"hostPort", "active", "totalCores", "activeTasks", "failedTasks", "completedTasks", "totalTasks",
+			"totalDuration", "totalGCTime", "totalInputBytes", "totalShuffleRead", "totalShuffleWrite",
+			"memoryUsed", "maxMemory", "diskUsed");
+	private static final String EXECUTOR_TYPES = "SLSSSLLLLLLLLLLLLL";
+
+	private final String object;
+	private final Path path;
+	private final String format;
+	private final boolean split;
+	private final List<String> columns;
+	private final String types;
+	private final long time = System.currentTimeMillis();
+	// open writers by file, of the current application when split
+	private final Map<Path, SparkMonitoringExportWriter> writers = new LinkedHashMap<>();
+	// rows written by file
+	private final Map<Path, Long> files = new LinkedHashMap<>();
+	private String applicationId;
+
+	/**
+	 * @param object
+	 *            jobs, stages or executors
+	 * @param path
+	 *            file, or directory if split
+	 * @param format
+	 *            csv or columnar
+	 * @param split
+	 *            true for one file per application and day
+	 */
+	public SparkMonitoringExport(String object, Path path, String format, boolean split) {
+		this.object = object;
+		this.path = path;
+		this.format = format;
+		this.split = split;
+		if (JOBS.equalsIgnoreCase(object)) {
+			columns = JOB_COLUMNS;
+			types = JOB_TYPES;
+		} else if (STAGES.equalsIgnoreCase(object)) {
+			columns = STAGE_COLUMNS;
+			types = STAGE_TYPES;
+		} else if (EXECUTORS.equalsIgnoreCase(object)) {
+			columns = EXECUTOR_COLUMNS;
+			types = EXECUTOR_TYPES;
+		} else {
+			throw new IllegalArgumentException("Unknown export object " + object + ", one of " + JOBS + ", "
+					+ STAGES + ", " + EXECUTORS);
+		}
+		// check the format now rather than at the first row
+		if (!SparkMonitoringExportWriter.FORMAT_CSV.equalsIgnoreCase(format)
+				&& !SparkMonitoringExportWriter.FORMAT_COLUMNAR.equalsIgnoreCase(format)) {
+			throw new IllegalArgumentException("Unknown export format " + format);
+		}
+	}
+
+	public String getObject() {
+		return object;
+	}
+
+	/**
+	 * Start the rows of an application, the files of the previous one are closed
+	 */
+	public void startApplication(String applicationId) throws IOException {
+		if (split) {
+			closeWriters();
+		}
+		this.applicationId = applicationId;
+	}
+
+	public void writeJob(SparkMonitoringJob job) throws IOException {
+		write(job.getSubmisstionTimeMilis(), new Object[] { applicationId, toLong(job.getId()), job.getName(),
+				job.getDescription(), job.getStatus(), job.getSubmisstionTimeMilis(), job.getCompletionTimeMilis(),
+				(long) job.getNumTasks(), (long) job.getNumCompletedTasks(), (long) job.getNumFailedTasks() });
+	}
+
+	public void writeStage(SparkMonitoringStage stage) throws IOException {
+		write(stage.getSubmissionTimeMilis(), new Object[] { applicationId, toLong(stage.getId()),
+				(long) stage.getAttemptId(), stage.getName(), stage.getStatus(), stage.getSubmissionTimeMilis(),
+				stage.getCompletionTimeMilis(), (long) stage.getNumCompletedTasks(),
+				(long) stage.getNumFailedTasks(), stage.getInputBytes(), stage.getInputRecords(),
+				stage.getOutputBytes(), stage.getOutputRecords(), stage.getShuffleReadBytes(),
+				stage.getShuffleWriteBytes(), stage.getMemoryBytesSpilled(), stage.getDiskBytesSpilled() });
+	}
+
+	public void writeExecutor(SparkMonitoringExecutor executor) throws IOException {
+		// executors have no time of their own, the time of the export is used
+		write(time, new Object[] { applicationId, time, executor.getId(), executor.getHostPort(),
+				String.valueOf(executor.isActive()), (long) executor.getTotalCores(),
+				(long) executor.getActiveTasks(), (long) executor.getFailedTasks(),
+				(long) executor.getCompletedTasks(), (long) executor.getTotalTasks(), executor.getTotalDuration(),
+				executor.getTotalGCTime(), executor.getTotalInputBytes(), executor.getTotalShuffleRead(),
+				executor.getTotalShuffleWrite(), executor.getMemoryUsed(), executor.getMaxMemory(),
+				executor.getDiskUsed() });
+	}
+
+	private static Long toLong(String id) {
+		try {
+			return Long.valueOf(id);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void write(Long dayTime, Object[] values) throws IOException {
+		Path file = path;
+		if (split) {
+			String day = dayTime != null ? new SimpleDateFormat("yyyy-MM-dd").format(new Date(dayTime)) : "unknown";
+			file = path.resolve(applicationId).resolve(day + SparkMonitoringExportWriter.getExtension(format));
+		}
+		SparkMonitoringExportWriter writer = writers.get(file);
+		if (writer == null) {
+			writer = SparkMonitoringExportWriter.open(file, format, columns, types);
+			writers.put(file, writer);
+		}
+		writer.writeRow(values);
+	}
+
+	/**
+	 * @return number of rows by written file
+	 */
+	public Map<Path, Long> getFiles() {
+		return files;
+	}
+
+	private void closeWriters() throws IOException {
+		IOException error = null;
+		for (Map.Entry<Path, SparkMonitoringExportWriter> writer : writers.entrySet()) {
+			try {
+				writer.getValue().close();
+			} catch (IOException e) {
+				error = e;
+			}
+			files.put(writer.getKey(), writer.getValue().getRows());
+		}
+		writers.clear();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!split && writers.isEmpty() && files.isEmpty()) {
+			// no row, the file has only the header
+			writers.put(path, SparkMonitoringExportWriter.open(path, format, columns, types));
+		}
+		closeWriters();
+	}
+
+}
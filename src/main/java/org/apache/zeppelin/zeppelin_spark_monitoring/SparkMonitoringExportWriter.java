@@ -0,0 +1,123 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writer of exported rows to a local file through a NIO channel, in a fixed
+ * size buffer so the memory does not depend on the number of rows
+ */
+public abstract class SparkMonitoringExportWriter implements Closeable {
+	public static final String FORMAT_CSV = "csv";
+	public static final String FORMAT_COLUMNAR = "columnar";
+
+	/** column types: a column holds Long or String values, null for none */
+	public static final char TYPE_LONG = 'L';
+	public static final char TYPE_STRING = 'S';
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	protected final List<String> columns;
+	protected final String types;
+	private long rows;
+
+	protected SparkMonitoringExportWriter(Path file, List<String> columns, String types) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.columns = columns;
+		this.types = types;
+	}
+
+	/**
+	 * Open a writer of a format
+	 *
+	 * @param types
+	 *            type of each column, TYPE_LONG or TYPE_STRING
+	 */
+	public static SparkMonitoringExportWriter open(Path file, String format, List<String> columns, String types)
+			throws IOException {
+		if (FORMAT_CSV.equalsIgnoreCase(format)) {
+			return new SparkMonitoringCsvWriter(file, columns, types);
+		} else if (FORMAT_COLUMNAR.equalsIgnoreCase(format)) {
+			return new SparkMonitoringColumnarWriter(file, columns, types);
+		}
+		throw new IllegalArgumentException("Unknown export format " + format + ", one of " + FORMAT_CSV + ", "
+				+ FORMAT_COLUMNAR);
+	}
+
+	/**
+	 * @return file extension of a format
+	 */
+	public static String getExtension(String format) {
+		return FORMAT_COLUMNAR.equalsIgnoreCase(format) ? ".col" : ".csv";
+	}
+
+	/**
+	 * Write a row, one value per column
+	 */
+	public void writeRow(Object[] values) throws IOException {
+		doWriteRow(values);
+		rows++;
+	}
+
+	protected abstract void doWriteRow(Object[] values) throws IOException;
+
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Write bytes to the file, through the buffer
+	 */
+	protected void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				flushBuffer();
+			}
+			int size = Math.min(length, buffer.remaining());
+			buffer.put(bytes, offset, size);
+			offset += size;
+			length -= size;
+		}
+	}
+
+	protected void write(byte[] bytes) throws IOException {
+		write(bytes, 0, bytes.length);
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Write the pending rows, called before the file is closed
+	 */
+	protected void finish() throws IOException {
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+			flushBuffer();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
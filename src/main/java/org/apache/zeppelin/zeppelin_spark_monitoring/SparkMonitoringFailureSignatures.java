@@ -0,0 +1,266 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Failed tasks grouped by the signature of their error: the first line of
+ * the error, its top frames and its root cause, without the ids, hosts,
+ * addresses and numbers which differ from a task to another. A signature is
+ * hashed to 64 bits and counted as the failures are read: the memory grows
+ * with the distinct errors, not with the failures, and the failures over the
+ * maximum number of signatures are counted together.
+ */
+public class SparkMonitoringFailureSignatures {
+	/** frames of the error in its signature */
+	public static final int SIGNATURE_FRAMES = 3;
+	/** signature of the failures over the maximum number of signatures */
+	public static final String OTHER_SIGNATURES = "(other signatures)";
+	// executors and stages kept per signature
+	private static final int MAX_IDS = 10;
+	private static final int MAX_EXAMPLE_LENGTH = 200;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final Pattern UUID = Pattern
+			.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+	private static final Pattern HEX = Pattern.compile("\\b0x[0-9a-fA-F]+\\b");
+	private static final Pattern IP = Pattern.compile("\\b\\d{1,3}(\\.\\d{1,3}){3}(:\\d+)?\\b");
+	// host/ip and host:port, the source files (RDD.scala:926) are not hosts
+	private static final Pattern HOST_IP = Pattern.compile("[\\w.-]+/<ip>");
+	private static final Pattern HOST_PORT = Pattern
+			.compile("\\b(?![\\w.-]*\\.(?:java|scala|py):)[A-Za-z][\\w-]*(\\.[\\w-]+)*:\\d+\\b");
+	private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+	/**
+	 * Failures of a signature
+	 */
+	public static class Signature {
+		private final String text;
+		private final String example;
+		private long count;
+		private long firstSeen = Long.MAX_VALUE;
+		private long lastSeen = Long.MIN_VALUE;
+		private final Set<String> executors = new LinkedHashSet<>();
+		private boolean moreExecutors;
+		private final Set<String> stages = new LinkedHashSet<>();
+		private boolean moreStages;
+
+		Signature(String text, String example) {
+			this.text = text;
+			this.example = example;
+		}
+
+		/**
+		 * @return normalized error
+		 */
+		public String getText() {
+			return text;
+		}
+		/**
+		 * @return first line of the first error of the signature
+		 */
+		public String getExample() {
+			return example;
+		}
+		public long getCount() {
+			return count;
+		}
+		/**
+		 * @return time of the first failure, in milliseconds, null if not known
+		 */
+		public Long getFirstSeen() {
+			return firstSeen != Long.MAX_VALUE ? firstSeen : null;
+		}
+		/**
+		 * @return time of the last failure, in milliseconds, null if not known
+		 */
+		public Long getLastSeen() {
+			return lastSeen != Long.MIN_VALUE ? lastSeen : null;
+		}
+		/**
+		 * @return the first executors of the failures
+		 */
+		public Set<String> getExecutors() {
+			return executors;
+		}
+		/**
+		 * @return true if there are more executors than listed
+		 */
+		public boolean hasMoreExecutors() {
+			return moreExecutors;
+		}
+		/**
+		 * @return the first stages of the failures
+		 */
+		public Set<String> getStages() {
+			return stages;
+		}
+		/**
+		 * @return true if there are more stages than listed
+		 */
+		public boolean hasMoreStages() {
+			return moreStages;
+		}
+	}
+
+	private final int maxSignatures;
+	private final Map<Long, Signature> signatures = new HashMap<>();
+	private long failures;
+
+	/**
+	 * @param maxSignatures
+	 *            maximum number of signatures kept, besides OTHER_SIGNATURES
+	 */
+	public SparkMonitoringFailureSignatures(int maxSignatures) {
+		this.maxSignatures = maxSignatures;
+	}
+
+	/**
+	 * Add a failed task
+	 *
+	 * @param errorMessage
+	 *            error of the task, its lines separated by new lines
+	 * @param time
+	 *            time of the failure, null if not known
+	 */
+	public void add(String errorMessage, String stageId, String executorId, Long time) {
+		String text = normalize(errorMessage);
+		long hash = hash(text);
+		synchronized (this) {
+			failures++;
+			Signature signature = signatures.get(hash);
+			if (signature == null) {
+				if (signatures.size() >= maxSignatures) {
+					hash = hash(OTHER_SIGNATURES);
+					signature = signatures.get(hash);
+					text = OTHER_SIGNATURES;
+				}
+				if (signature == null) {
+					signature = new Signature(text, firstLine(errorMessage));
+					signatures.put(hash, signature);
+				}
+			}
+			signature.count++;
+			if (time != null) {
+				signature.firstSeen = Math.min(signature.firstSeen, time);
+				signature.lastSeen = Math.max(signature.lastSeen, time);
+			}
+			if (executorId != null && !signature.executors.contains(executorId)) {
+				if (signature.executors.size() < MAX_IDS) {
+					signature.executors.add(executorId);
+				} else {
+					signature.moreExecutors = true;
+				}
+			}
+			if (stageId != null && !signature.stages.contains(stageId)) {
+				if (signature.stages.size() < MAX_IDS) {
+					signature.stages.add(stageId);
+				} else {
+					signature.moreStages = true;
+				}
+			}
+		}
+	}
+
+	private static String firstLine(String errorMessage) {
+		String line = splitLines(errorMessage)[0].trim();
+		return line.length() > MAX_EXAMPLE_LENGTH ? line.substring(0, MAX_EXAMPLE_LENGTH) + "..." : line;
+	}
+
+	private static String[] splitLines(String errorMessage) {
+		return errorMessage.split("\r?\n");
+	}
+
+	/**
+	 * Signature of an error: its first line, its top frames and its root
+	 * cause, normalized, e.g. "java.io.IOException: Connection to
+	 * worker-1.local/10.0.0.1:7337 closed" is "java.io.IOException:
+	 * Connection to &lt;host&gt; closed"
+	 */
+	public static String normalize(String errorMessage) {
+		String[] lines = splitLines(errorMessage);
+		StringBuilder text = new StringBuilder(normalizeLine(lines[0]));
+		int frames = 0;
+		String cause = null;
+		for (int i = 1; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.startsWith("at ")) {
+				if (frames < SIGNATURE_FRAMES && cause == null) {
+					text.append(" | ").append(SparkMonitoringThreadProfile.normalizeFrame(line));
+					frames++;
+				}
+			} else if (line.startsWith("Caused by:")) {
+				cause = line;
+			}
+		}
+		if (cause != null) {
+			// the last cause is the root cause
+			text.append(" | ").append(normalizeLine(cause));
+		}
+		return text.toString();
+	}
+
+	private static String normalizeLine(String line) {
+		String normalized = UUID.matcher(line.trim()).replaceAll("<uuid>");
+		normalized = HEX.matcher(normalized).replaceAll("<hex>");
+		normalized = IP.matcher(normalized).replaceAll("<ip>");
+		// the host patterns retry at every position, only run them when they can match
+		if (normalized.contains("/<ip>")) {
+			normalized = HOST_IP.matcher(normalized).replaceAll("<host>");
+		}
+		if (hasPort(normalized)) {
+			normalized = HOST_PORT.matcher(normalized).replaceAll("<host>");
+		}
+		return NUMBER.matcher(normalized).replaceAll("#");
+	}
+
+	// a ':' followed by a digit
+	private static boolean hasPort(String line) {
+		for (int i = line.indexOf(':'); i >= 0 && i + 1 < line.length(); i = line.indexOf(':', i + 1)) {
+			if (Character.isDigit(line.charAt(i + 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 64-bit FNV-1a
+	private static long hash(String text) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return number of failures added
+	 */
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return signatures, most failures first
+	 */
+	public synchronized List<Signature> getSignatures() {
+		List<Signature> lsSignature = new ArrayList<>(signatures.values());
+		Collections.sort(lsSignature, new Comparator<Signature>() {
+			@Override
+			public int compare(Signature o1, Signature o2) {
+				return Long.compare(o2.count, o1.count);
+			}
+		});
+		return lsSignature;
+	}
+
+}
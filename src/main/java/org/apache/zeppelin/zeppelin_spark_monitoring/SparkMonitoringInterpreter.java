@@ -18,10 +18,11 @@
 package org.apache.zeppelin.zeppelin_spark_monitoring;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.lang.management.ManagementFactory;
-import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
@@ -29,27 +30,50 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.zeppelin.interpreter.Interpreter;
 import org.apache.zeppelin.interpreter.InterpreterContext;
 import org.apache.zeppelin.interpreter.InterpreterPropertyBuilder;
 import org.apache.zeppelin.interpreter.InterpreterResult;
+import org.apache.zeppelin.scheduler.Scheduler;
+import org.apache.zeppelin.scheduler.SchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,11 +88,104 @@ public class SparkMonitoringInterpreter extends Interpreter {
 			+ "General format (in REST api): /<object>/<object_id>\n"
 			+ "  - object: types of objects such as: applications, jobs\n" + "  - object_id: id of the object to view\n"
 			+ "Commands (example):\n" + "  - /applications: list all running applications\n"
-			+ "  - /applications/<application_id>jobs: list all running job of <application_id>\n";
+			+ "  - /applications?status=completed|running&minDate=<date>&maxDate=<date>&limit=<n>&user=<user>: filtered\n"
+			+ "    applications, the filters known by the server are applied by the server\n"
+			+ "  - /applications/summary[?<filters>]: job counts and durations of the filtered applications\n"
+			+ "  - /applications[/<application_id>]/utilization[?buckets=<n>]: cores allocated to the executors and\n"
+			+ "    running tasks over the run of an application (default one), with utilization and wasted core-seconds\n"
+			+ "  - /applications/<application_id>/jobs: list all jobs of <application_id> (id or name)\n"
+			+ "  - /applications/<application_id>/stages: list all stages of <application_id> (id or name)\n"
+			+ "  - /applications/search?name=<name>&user=<user>&minDate=<date>&maxDate=<date>: search known applications\n"
+			+ "  - /jobs, /stages: jobs, stages of the default application (latest running by default)\n"
+			+ "  - /jobs/profile: count, p50/p95/p99 duration and tasks, and trend of the completed jobs grouped by\n"
+			+ "    description (or call site) without its literals, most slowed down group first\n"
+			+ "  - /jobs/<job_id>/analyze: critical path, idle gaps and longest stage of <job_id>\n"
+			+ "  - /stages/<stage_id>/details: full details (call site) of <stage_id>, cut to their first line in /stages\n"
+			+ "  - /stages/<stage_id>/locality: share of the tasks and of the task time of <stage_id> by locality level\n"
+			+ "    and host\n"
+			+ "  - /streaming[/statistics|/batches|/receivers]: scheduling delay, processing time and input rate of the\n"
+			+ "    last batches of a streaming application, overloaded when processing time > batch interval\n"
+			+ "  - /compare <application_id> <application_id>, /compare name=<name> [last=<n>]: jobs and stages of two runs\n"
+			+ "    (or of the last run and the average of the previous ones) aligned by job description and stage position,\n"
+			+ "    largest duration regression first\n"
+			+ "  - /driver-metrics [filter]: gauges, counters, histograms, meters and timers of the driver (/metrics/json),\n"
+			+ "    e.g. /driver-metrics LiveListenerBus; /driver-metrics history <metric>: samples of a metric with the\n"
+			+ "    response time of the REST api (background sampling with spark.monitoring.metrics.interval)\n"
+			+ "  - /system: cpu load, heap, gc time and threads of the interpreter with its own load (commands, REST\n"
+			+ "    requests, running paragraphs) and their correlation (sampling with spark.monitoring.system.interval)\n"
+			+ "  - /memory: estimated memory of the shared names, statuses and ids, and the memory saved, then of the\n"
+			+ "    caches under spark.monitoring.memory.budget: entries in memory and spilled to disk, evictions and\n"
+			+ "    responses truncated over the budget\n"
+			+ "  - /executors: executors of the default application, with GC ratio and memory\n"
+			+ "  - /query select <expr> [as <name>], ... from <jobs|stages|executors>[@<application_id>] [version <n>]\n"
+			+ "    [where <condition>] [group by <expr>, ...] [order by <expr> [desc], ...] [limit <n>] (or directly: select ...), e.g.\n"
+			+ "    select description, sum(numFailedTasks) / sum(numTasks) as failedRatio from jobs\n"
+			+ "    where submissionTime > now() - 1d group by description order by failedRatio desc limit 10\n"
+			+ "  - /export <jobs|stages|executors> <path> [csv|columnar] [split]: write the objects of all applications\n"
+			+ "    to a local file, or with split to <path>/<application_id>/<day>.csv|col\n"
+			+ "  - /alerts: fired alerts; /alerts rules; /alerts add <name> <rule>; /alerts remove <name>; /alerts clear\n"
+			+ "    rule: <job|stage|executor>.<metric> <operator> <value>[unit], e.g. stage.spill > 5GB,\n"
+			+ "    job.duration > 10min, stage.failedTasks > 10, executor.gcRatio > 10%\n"
+			+ "  - /watch <command> [interval]: rerun <command> every [interval] seconds and print the changed rows,\n"
+			+ "    until cancel or until the watched job/stage finishes, e.g. /watch /jobs/12 2. The interval grows while\n"
+			+ "    nothing runs or changes, or when the driver responds slowly, and the requests to a driver are capped\n"
+			+ "  - /anomalies: completed jobs and stages far from the rolling baseline (EWMA mean and variance) of\n"
+			+ "    their description or name in duration, input bytes, shuffle bytes or failed tasks, by |z-score|\n"
+			+ "  - /snapshot [application_id]: fetch the jobs and stages of an application together, again if they\n"
+			+ "    disagree, as its next version; /snapshot list [application_id]: versions kept, queried with\n"
+			+ "    select ... from jobs|stages[@<application_id>] version <n>\n"
+			+ "  - /profile <stage_id|executors> [duration] [interval] [methods|tree|collapsed]: sample the thread dumps\n"
+			+ "    of the executors running <stage_id> (its task threads) or of all executors (their runnable threads)\n"
+			+ "    every [interval] seconds (1) during [duration] seconds (10): hot methods, call tree, or collapsed\n"
+			+ "    stacks for the flame graph tools\n"
+			+ "  - /failures [stage_id|job <job_id>]: failed tasks of a stage, a job or the application grouped by\n"
+			+ "    the signature of their error (ids, hosts, addresses and numbers removed), with the count, the first\n"
+			+ "    and last failure and the stages and executors of each signature\n"
+			+ "  - /polling: current interval and request budget of the watched commands\n"
+			+ "Several commands can be run in one paragraph, one per line: they run concurrently and share\n"
+			+ "the fetched data, the results are shown in order\n";
 
 	private static final List<String> COMMANDS = Arrays.asList(
 			"help", "applications", "jobs", "stages", "executors",
-			"storage/rdd", "logs", "hour", "day", "month", "year");
+			"storage/rdd", "logs", "hour", "day", "month", "year",
+			"search", "summary", "utilization", "profile", "analyze", "details", "locality",
+			"streaming", "statistics", "batches", "receivers", "compare", "driver-metrics", "system", "memory",
+			"query", "export", "alerts", "watch", "anomalies", "snapshot", "failures", "polling");
+	
+	/** /compare name=&lt;name&gt; [last=&lt;n&gt;] */
+	private static final Pattern COMPARE_NAME = Pattern.compile("name=(.+?)(?:\\s+last=(\\d+))?\\s*");
+	
+	/** maximum number of completion suggestions */
+	private static final int MAX_SUGGESTIONS = 50;
+	/** maximum length of the stage details shown in tables, see /stages/&lt;stage_id&gt;/details */
+	private static final int MAX_DETAILS_LENGTH = 100;
+	/** keys of the free text values, decoded as json strings by the line parser */
+	private static final Set<String> TEXT_KEYS = new HashSet<>(Arrays.asList("details", "errorMessage"));
+	/** threads reading the responses of the non-blocking fetches */
+	private static final int ASYNC_FETCH_THREADS = 2;
+	/** maximum number of groups of /jobs/profile, per application */
+	private static final int MAX_JOB_GROUPS = 1000;
+	// memory reserved at once for a response being read
+	private static final long QUERY_RESERVE_BYTES = 64 * 1024;
+	/** maximum number of fetches of the jobs and stages of a snapshot until they agree */
+	private static final int MAX_SNAPSHOT_ATTEMPTS = 3;
+	/** /profile &lt;stage_id|executors&gt; [duration] [interval] [methods|tree|collapsed] */
+	private static final Pattern PROFILE = Pattern.compile(
+			"(\\d+|executors)(?:\\s+(\\d+(?:\\.\\d+)?))?(?:\\s+(\\d+(?:\\.\\d+)?))?(?:\\s+(methods|tree|collapsed))?\\s*");
+	/** task thread of an executor: for task &lt;tid&gt; (Spark 2) or for task &lt;index&gt; in stage &lt;stage_id&gt; (TID &lt;tid&gt;) */
+	private static final Pattern TASK_THREAD = Pattern.compile(
+			"Executor task launch worker for task (\\d+)(?:\\.\\d+ in stage (\\d+)\\.\\d+ \\(TID \\d+\\))?.*");
+	private static final long MIN_PROFILE_INTERVAL_MILLIS = 100;
+	/** maximum number of methods of /profile */
+	private static final int MAX_PROFILE_METHODS = 200;
+	/** thread dumps of /profile read at once, the fetch threads are shared by all commands */
+	private static final int MAX_PROFILE_FETCHES = 4;
+	/** length of the task lists requested, the server returns 20 tasks by default */
+	private static final int MAX_TASK_LIST_LENGTH = 1000000;
+	/** default number of time buckets of /applications/utilization */
+	private static final int UTILIZATION_BUCKETS = 20;
+	/** /failures [stage_id|job &lt;job_id&gt;] */
+	private static final Pattern FAILURES = Pattern.compile("(?:(job)\\s+)?(\\d+)?\\s*");
 
 	public static final String DEFAULT_KEY = "default";
 	public static final String DOT = ".";
@@ -76,28 +193,201 @@ public class SparkMonitoringInterpreter extends Interpreter {
 	public static final String SPARK_MONITORING_PORT = "spark.monitoring.port";
 	public static final String DEFAULT_SPARK_MONITORING_HOST = DEFAULT_KEY + DOT + SPARK_MONITORING_HOST;
 	public static final String DEFAULT_SPARK_MONITORING_PORT = DEFAULT_KEY + DOT + SPARK_MONITORING_PORT;
+	public static final String SPARK_MONITORING_FETCH_THREADS = "spark.monitoring.fetch.threads";
+	public static final String DEFAULT_SPARK_MONITORING_FETCH_THREADS = DEFAULT_KEY + DOT + SPARK_MONITORING_FETCH_THREADS;
+	public static final String SPARK_MONITORING_FETCH_TIMEOUT = "spark.monitoring.fetch.timeout";
+	public static final String DEFAULT_SPARK_MONITORING_FETCH_TIMEOUT = DEFAULT_KEY + DOT + SPARK_MONITORING_FETCH_TIMEOUT;
+	public static final String SPARK_MONITORING_FETCH_ASYNC = "spark.monitoring.fetch.async";
+	public static final String DEFAULT_SPARK_MONITORING_FETCH_ASYNC = DEFAULT_KEY + DOT + SPARK_MONITORING_FETCH_ASYNC;
+	public static final String SPARK_MONITORING_FETCH_INFLIGHT = "spark.monitoring.fetch.inflight";
+	public static final String DEFAULT_SPARK_MONITORING_FETCH_INFLIGHT = DEFAULT_KEY + DOT + SPARK_MONITORING_FETCH_INFLIGHT;
+	public static final String SPARK_MONITORING_CONCURRENCY = "spark.monitoring.concurrency";
+	public static final String DEFAULT_SPARK_MONITORING_CONCURRENCY = DEFAULT_KEY + DOT + SPARK_MONITORING_CONCURRENCY;
+	public static final String SPARK_MONITORING_WATCH_INTERVAL = "spark.monitoring.watch.interval";
+	public static final String DEFAULT_SPARK_MONITORING_WATCH_INTERVAL = DEFAULT_KEY + DOT + SPARK_MONITORING_WATCH_INTERVAL;
+	public static final String SPARK_MONITORING_WATCH_TIMEOUT = "spark.monitoring.watch.timeout";
+	public static final String DEFAULT_SPARK_MONITORING_WATCH_TIMEOUT = DEFAULT_KEY + DOT + SPARK_MONITORING_WATCH_TIMEOUT;
+	public static final String SPARK_MONITORING_WATCH_INTERVAL_MAX = "spark.monitoring.watch.interval.max";
+	public static final String DEFAULT_SPARK_MONITORING_WATCH_INTERVAL_MAX = DEFAULT_KEY + DOT + SPARK_MONITORING_WATCH_INTERVAL_MAX;
+	public static final String SPARK_MONITORING_WATCH_RATE = "spark.monitoring.watch.rate";
+	public static final String DEFAULT_SPARK_MONITORING_WATCH_RATE = DEFAULT_KEY + DOT + SPARK_MONITORING_WATCH_RATE;
+	public static final String SPARK_MONITORING_APPLICATIONS_MAX = "spark.monitoring.applications.max";
+	public static final String DEFAULT_SPARK_MONITORING_APPLICATIONS_MAX = DEFAULT_KEY + DOT + SPARK_MONITORING_APPLICATIONS_MAX;
+	public static final String SPARK_MONITORING_APPLICATIONS_POLICY = "spark.monitoring.applications.policy";
+	public static final String DEFAULT_SPARK_MONITORING_APPLICATIONS_POLICY = DEFAULT_KEY + DOT + SPARK_MONITORING_APPLICATIONS_POLICY;
+	/** alert rules are declared as spark.monitoring.alert.<name> = <rule> */
+	public static final String SPARK_MONITORING_ALERT = "spark.monitoring.alert.";
+	public static final String SPARK_MONITORING_APPLICATIONS_SUMMARY_CONCURRENCY = "spark.monitoring.applications.summary.concurrency";
+	public static final String DEFAULT_SPARK_MONITORING_APPLICATIONS_SUMMARY_CONCURRENCY = DEFAULT_KEY + DOT + SPARK_MONITORING_APPLICATIONS_SUMMARY_CONCURRENCY;
+	public static final String SPARK_MONITORING_ALERTS_MAX = "spark.monitoring.alerts.max";
+	public static final String DEFAULT_SPARK_MONITORING_ALERTS_MAX = DEFAULT_KEY + DOT + SPARK_MONITORING_ALERTS_MAX;
+	public static final String SPARK_MONITORING_STRINGS_MAX = "spark.monitoring.strings.max";
+	public static final String DEFAULT_SPARK_MONITORING_STRINGS_MAX = DEFAULT_KEY + DOT + SPARK_MONITORING_STRINGS_MAX;
+	public static final String SPARK_MONITORING_STREAMING_WINDOW = "spark.monitoring.streaming.window";
+	public static final String DEFAULT_SPARK_MONITORING_STREAMING_WINDOW = DEFAULT_KEY + DOT + SPARK_MONITORING_STREAMING_WINDOW;
+	public static final String SPARK_MONITORING_METRICS_INTERVAL = "spark.monitoring.metrics.interval";
+	public static final String DEFAULT_SPARK_MONITORING_METRICS_INTERVAL = DEFAULT_KEY + DOT + SPARK_MONITORING_METRICS_INTERVAL;
+	public static final String SPARK_MONITORING_METRICS_SAMPLES = "spark.monitoring.metrics.samples";
+	public static final String DEFAULT_SPARK_MONITORING_METRICS_SAMPLES = DEFAULT_KEY + DOT + SPARK_MONITORING_METRICS_SAMPLES;
+	public static final String SPARK_MONITORING_SYSTEM_INTERVAL = "spark.monitoring.system.interval";
+	public static final String DEFAULT_SPARK_MONITORING_SYSTEM_INTERVAL = DEFAULT_KEY + DOT + SPARK_MONITORING_SYSTEM_INTERVAL;
+	public static final String SPARK_MONITORING_SYSTEM_SAMPLES = "spark.monitoring.system.samples";
+	public static final String DEFAULT_SPARK_MONITORING_SYSTEM_SAMPLES = DEFAULT_KEY + DOT + SPARK_MONITORING_SYSTEM_SAMPLES;
+	public static final String SPARK_MONITORING_COMPARE_CACHE = "spark.monitoring.compare.cache";
+	public static final String DEFAULT_SPARK_MONITORING_COMPARE_CACHE = DEFAULT_KEY + DOT + SPARK_MONITORING_COMPARE_CACHE;
+	public static final String SPARK_MONITORING_ANOMALIES_ALPHA = "spark.monitoring.anomalies.alpha";
+	public static final String DEFAULT_SPARK_MONITORING_ANOMALIES_ALPHA = DEFAULT_KEY + DOT + SPARK_MONITORING_ANOMALIES_ALPHA;
+	public static final String SPARK_MONITORING_ANOMALIES_THRESHOLD = "spark.monitoring.anomalies.threshold";
+	public static final String DEFAULT_SPARK_MONITORING_ANOMALIES_THRESHOLD = DEFAULT_KEY + DOT + SPARK_MONITORING_ANOMALIES_THRESHOLD;
+	public static final String SPARK_MONITORING_ANOMALIES_BASELINES = "spark.monitoring.anomalies.baselines";
+	public static final String DEFAULT_SPARK_MONITORING_ANOMALIES_BASELINES = DEFAULT_KEY + DOT + SPARK_MONITORING_ANOMALIES_BASELINES;
+	public static final String SPARK_MONITORING_SNAPSHOTS_KEPT = "spark.monitoring.snapshots.kept";
+	public static final String DEFAULT_SPARK_MONITORING_SNAPSHOTS_KEPT = DEFAULT_KEY + DOT + SPARK_MONITORING_SNAPSHOTS_KEPT;
+	public static final String SPARK_MONITORING_PROFILE_STACKS = "spark.monitoring.profile.stacks";
+	public static final String DEFAULT_SPARK_MONITORING_PROFILE_STACKS = DEFAULT_KEY + DOT + SPARK_MONITORING_PROFILE_STACKS;
+	public static final String SPARK_MONITORING_FAILURES_SIGNATURES = "spark.monitoring.failures.signatures";
+	public static final String DEFAULT_SPARK_MONITORING_FAILURES_SIGNATURES = DEFAULT_KEY + DOT + SPARK_MONITORING_FAILURES_SIGNATURES;
+	public static final String SPARK_MONITORING_MEMORY_BUDGET = "spark.monitoring.memory.budget";
+	public static final String DEFAULT_SPARK_MONITORING_MEMORY_BUDGET = DEFAULT_KEY + DOT + SPARK_MONITORING_MEMORY_BUDGET;
+	public static final String SPARK_MONITORING_MEMORY_SPILL_DIR = "spark.monitoring.memory.spill.dir";
+	public static final String DEFAULT_SPARK_MONITORING_MEMORY_SPILL_DIR = DEFAULT_KEY + DOT + SPARK_MONITORING_MEMORY_SPILL_DIR;
 
 	static {
 		Interpreter.register("spark_monitoring", "spark_monitoring", SparkMonitoringInterpreter.class.getName(),
 				new InterpreterPropertyBuilder().add(DEFAULT_SPARK_MONITORING_HOST, "localhost", "The host of Spark")
-						.add(DEFAULT_SPARK_MONITORING_PORT, "4040", "The port for Spark Monitoring").build());
+						.add(DEFAULT_SPARK_MONITORING_PORT, "4040", "The port for Spark Monitoring")
+						.add(DEFAULT_SPARK_MONITORING_FETCH_THREADS, "8",
+								"Number of threads to fetch sub-requests (e.g. stages of a job) in parallel")
+						.add(DEFAULT_SPARK_MONITORING_FETCH_TIMEOUT, "60",
+								"Maximum time to wait for a response of the server, in seconds")
+						.add(DEFAULT_SPARK_MONITORING_FETCH_ASYNC, "true",
+								"Fetch the http REST api with non-blocking connections, read by a few threads")
+						.add(DEFAULT_SPARK_MONITORING_FETCH_INFLIGHT, "16",
+								"Maximum number of non-blocking requests in flight per server, the next ones are queued")
+						.add(DEFAULT_SPARK_MONITORING_CONCURRENCY, "10", "Maximum number of paragraphs run in parallel")
+						.add(DEFAULT_SPARK_MONITORING_WATCH_INTERVAL, "5",
+								"Default polling interval of /watch while the watched objects are active, in seconds")
+						.add(DEFAULT_SPARK_MONITORING_WATCH_INTERVAL_MAX, "60",
+								"Maximum polling interval of /watch when idle or when the driver responds slowly, in seconds")
+						.add(DEFAULT_SPARK_MONITORING_WATCH_RATE, "10",
+								"Maximum number of requests per second sent by the /watch commands to each driver")
+						.add(DEFAULT_SPARK_MONITORING_WATCH_TIMEOUT, "3600", "Maximum duration of a /watch, in seconds")
+						.add(DEFAULT_SPARK_MONITORING_APPLICATIONS_MAX, "1000",
+								"Maximum number of applications kept in the index of each prefix")
+						.add(DEFAULT_SPARK_MONITORING_APPLICATIONS_POLICY, SparkMonitoringApplicationIndex.POLICY_LATEST_RUNNING,
+								"Application used when a command does not name one: latest-running, latest or last-listed")
+						.add(DEFAULT_SPARK_MONITORING_APPLICATIONS_SUMMARY_CONCURRENCY, "8",
+								"Maximum number of applications fetched at the same time by /applications/summary")
+						.add(DEFAULT_SPARK_MONITORING_ALERTS_MAX, "1000", "Maximum number of alerts kept")
+						.add(DEFAULT_SPARK_MONITORING_STRINGS_MAX, "100000",
+								"Maximum number of distinct names, statuses and ids shared by the fetched objects")
+						.add(DEFAULT_SPARK_MONITORING_STREAMING_WINDOW, "120",
+								"Number of batches of the rolling window of /streaming, per application")
+						.add(DEFAULT_SPARK_MONITORING_METRICS_INTERVAL, "0",
+								"Interval of the background sampling of the driver metrics, in seconds, 0 to disable")
+						.add(DEFAULT_SPARK_MONITORING_METRICS_SAMPLES, "360",
+								"Number of samples of the driver metrics kept per metric")
+						.add(DEFAULT_SPARK_MONITORING_SYSTEM_INTERVAL, "10",
+								"Interval of the sampling of the interpreter process for /system, in seconds, 0 to disable")
+						.add(DEFAULT_SPARK_MONITORING_SYSTEM_SAMPLES, "360",
+								"Number of samples of the interpreter process kept")
+						.add(DEFAULT_SPARK_MONITORING_COMPARE_CACHE, "50",
+								"Number of completed runs kept summarized for /compare")
+						.add(DEFAULT_SPARK_MONITORING_ANOMALIES_ALPHA, "0.1",
+								"Weight of a new completion in the rolling baselines of /anomalies, between 0 and 1")
+						.add(DEFAULT_SPARK_MONITORING_ANOMALIES_THRESHOLD, "3",
+								"Minimum |z-score| of a completion reported by /anomalies")
+						.add(DEFAULT_SPARK_MONITORING_ANOMALIES_BASELINES, "10000",
+								"Maximum number of job descriptions and stage names with a baseline, for all prefixes")
+						.add(DEFAULT_SPARK_MONITORING_SNAPSHOTS_KEPT, "10",
+								"Number of versions of /snapshot kept per application")
+						.add(DEFAULT_SPARK_MONITORING_PROFILE_STACKS, "10000",
+								"Maximum number of distinct stacks of a /profile, the samples of the next ones are only counted")
+						.add(DEFAULT_SPARK_MONITORING_FAILURES_SIGNATURES, "1000",
+								"Maximum number of error signatures of /failures, the next ones are counted together")
+						.add(DEFAULT_SPARK_MONITORING_MEMORY_BUDGET, "256",
+								"Maximum estimated memory of the cached data and the responses being read, in MB")
+						.add(DEFAULT_SPARK_MONITORING_MEMORY_SPILL_DIR, "",
+								"Directory of the cached data spilled over the memory budget, the temporary directory if empty")
+						.build());
 	}
 	
 	private final HashMap<String, Properties> propertiesMap;
-	private String host = "localhost";
-	private int port = 4040;
-	private String prefixKey = "";
+	// prefix of the command being interpreted, per thread because paragraphs run in parallel
+	private final ThreadLocal<String> prefixKey = new ThreadLocal<>();
 	private boolean isMonitoringServerAvailable = true;
-	private static Map<String, SparkMonitoringApplication> mapApplication;
+	// application indexes of this interpreter, by prefix
+	private final Map<String, SparkMonitoringApplicationIndex> mapApplication = new ConcurrentHashMap<>();
 	private String sourceDateTimeFormat = "yyyy-MM-dd'T'HH:mm:ss.SSS";
 	private String displayDateTimeFormat = "yyyy/MM/dd HH:mm:ss";
 	private String numberFormat = "#.#";
+	private ExecutorService fetchExecutor;
+	private final SparkMonitoringTrie commandWords;
+	private final SparkMonitoringTrie prefixWords;
+	// cancel flags of the running commands, by paragraph
+	private final Map<String, AtomicBoolean> runs = new ConcurrentHashMap<>();
+	// cancel flag of the command being run by current thread
+	private final ThreadLocal<AtomicBoolean> cancelFlag = new ThreadLocal<>();
+	// fetches in flight, identical concurrent fetches wait for the same one
+	private final ConcurrentMap<String, FutureTask<List<String>>> inFlightFetches = new ConcurrentHashMap<>();
+	private SparkMonitoringAlertEvaluator alertEvaluator;
+	// pooled connections to the servers, shared by all commands
+	private CloseableHttpClient httpClient;
+	// non-blocking fetches of the http servers, if enabled
+	private SparkMonitoringAsyncFetcher asyncFetcher;
+	// runs the commands of multi-command paragraphs
+	private ExecutorService batchExecutor;
+	// responses fetched by the commands of the batch being run by current thread, by url
+	private final ThreadLocal<ConcurrentMap<String, FutureTask<List<String>>>> batchFetches = new ThreadLocal<>();
+	// shared instances of the repeated keys and values of the responses
+	private SparkMonitoringStringPool stringPool;
+	// stage details cut to their first line, and the estimated bytes not retained
+	private final AtomicLong truncatedDetails = new AtomicLong();
+	private final AtomicLong truncatedDetailsBytes = new AtomicLong();
+	// one memory budget for the caches below and the responses being read
+	private SparkMonitoringMemoryBudget memoryBudget;
+	// directory of the cache entries spilled over the budget
+	private File spillDir;
+	// warnings of the command being run by current thread, e.g. truncated responses
+	private final ThreadLocal<Set<String>> commandWarnings = new ThreadLocal<>();
+	// set on the fetch threads running a task of a command, see submitFetchTask
+	private final ThreadLocal<Boolean> fetchTask = new ThreadLocal<>();
+	// rolling windows of the streaming applications, by prefix and application
+	private SparkMonitoringSpillCache<SparkMonitoringStreamingWindow> streamingWindows;
+	// polling intervals of the running watches, by prefix and command
+	private final ConcurrentMap<String, SparkMonitoringPollInterval> pollIntervals = new ConcurrentHashMap<>();
+	// request budget of the watches, by driver
+	private final ConcurrentMap<String, SparkMonitoringRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+	// polling interval of the watch being polled by current thread
+	private final ThreadLocal<SparkMonitoringPollInterval> pollInterval = new ThreadLocal<>();
+	// samples of the driver metrics and response times of the REST api, by driver
+	private SparkMonitoringSpillCache<SparkMonitoringMetricsHistory> metricsHistories;
+	// samples the driver metrics in background, if enabled
+	private ScheduledExecutorService metricsSampler;
+	// samples of the interpreter process, and its load: commands interpreted and REST requests sent
+	private SparkMonitoringSystemSampler systemSampler;
+	private ScheduledExecutorService systemSamplerExecutor;
+	private final AtomicLong commandCount = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	// duration profiles of the completed jobs, by prefix and application
+	private SparkMonitoringSpillCache<SparkMonitoringJobProfiles> jobProfiles;
+	// summaries of the completed runs compared, by prefix and application
+	private SparkMonitoringSpillCache<SparkMonitoringRunSummary> runSummaries;
+	// rolling baselines of the completed jobs and stages of all prefixes
+	private SparkMonitoringBaselines baselines;
+	// job counts and durations of the completed applications, by prefix and application
+	private SparkMonitoringSpillCache<SparkMonitoringApplicationSummary> applicationSummaries;
+	// versioned snapshots of the jobs and stages, by prefix and application
+	private SparkMonitoringSnapshots snapshots;
 	
 	public SparkMonitoringInterpreter(Properties property) {
 		super(property);
-		prefixKey = DEFAULT_KEY;
 		propertiesMap = new HashMap<>();
-		mapApplication = new HashMap<>();
+		commandWords = new SparkMonitoringTrie();
+		for (String command : COMMANDS) {
+			commandWords.add(command);
+		}
+		prefixWords = new SparkMonitoringTrie();
 	}
 
 	@Override
@@ -133,6 +423,101 @@ public class SparkMonitoringInterpreter extends Interpreter {
 		    for (String key : removeKeySet) {
 		      propertiesMap.remove(key);
 		    }
+		    for (String key : propertiesMap.keySet()) {
+		      prefixWords.add(key);
+		    }
+		    
+		    int fetchThreads = Integer.parseInt(getDefaultProperty(SPARK_MONITORING_FETCH_THREADS, "8"));
+		    int concurrency = Integer.parseInt(getDefaultProperty(SPARK_MONITORING_CONCURRENCY, "10"));
+		    fetchExecutor = Executors.newFixedThreadPool(fetchThreads);
+		    batchExecutor = Executors.newFixedThreadPool(concurrency);
+		    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		    connectionManager.setDefaultMaxPerRoute(fetchThreads + concurrency);
+		    connectionManager.setMaxTotal(Math.max(propertiesMap.size(), 1) * (fetchThreads + concurrency));
+		    int fetchTimeout = Integer.parseInt(getDefaultProperty(SPARK_MONITORING_FETCH_TIMEOUT, "60")) * 1000;
+		    RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(fetchTimeout)
+		    		.setSocketTimeout(fetchTimeout).setConnectionRequestTimeout(fetchTimeout).build();
+		    httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+		    		.setDefaultRequestConfig(requestConfig).build();
+		    if (Boolean.parseBoolean(getDefaultProperty(SPARK_MONITORING_FETCH_ASYNC, "true"))) {
+		    	asyncFetcher = new SparkMonitoringAsyncFetcher(ASYNC_FETCH_THREADS,
+		    			Integer.parseInt(getDefaultProperty(SPARK_MONITORING_FETCH_INFLIGHT, "16")), fetchTimeout);
+		    }
+		    
+		    stringPool = new SparkMonitoringStringPool(
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_STRINGS_MAX, "100000")));
+		    
+		    memoryBudget = new SparkMonitoringMemoryBudget(
+		    		(long) (Double.parseDouble(getDefaultProperty(SPARK_MONITORING_MEMORY_BUDGET, "256")) * 1000000));
+		    // indexes are registered again with the new budget when they are next used
+		    synchronized (mapApplication) {
+		    	mapApplication.clear();
+		    }
+		    String spillPath = getDefaultProperty(SPARK_MONITORING_MEMORY_SPILL_DIR, "");
+		    spillDir = new File(StringUtils.isEmpty(spillPath) ? System.getProperty("java.io.tmpdir") : spillPath,
+		    		"zeppelin-spark-monitoring-" + UUID.randomUUID());
+		    streamingWindows = new SparkMonitoringSpillCache<>("streaming windows", Integer.MAX_VALUE, spillDir);
+		    metricsHistories = new SparkMonitoringSpillCache<>("metrics histories", Integer.MAX_VALUE, spillDir);
+		    jobProfiles = new SparkMonitoringSpillCache<>("job profiles", Integer.MAX_VALUE, spillDir);
+		    runSummaries = new SparkMonitoringSpillCache<>("run summaries",
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_COMPARE_CACHE, "50")), spillDir);
+		    memoryBudget.register(stringPool);
+		    memoryBudget.register(streamingWindows);
+		    memoryBudget.register(metricsHistories);
+		    memoryBudget.register(jobProfiles);
+		    memoryBudget.register(runSummaries);
+		    applicationSummaries = new SparkMonitoringSpillCache<>("application summaries",
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_APPLICATIONS_MAX, "1000")), spillDir);
+		    memoryBudget.register(applicationSummaries);
+		    baselines = new SparkMonitoringBaselines(
+		    		Double.parseDouble(getDefaultProperty(SPARK_MONITORING_ANOMALIES_ALPHA, "0.1")),
+		    		Double.parseDouble(getDefaultProperty(SPARK_MONITORING_ANOMALIES_THRESHOLD, "3")),
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_ANOMALIES_BASELINES, "10000")));
+		    snapshots = new SparkMonitoringSnapshots(
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_SNAPSHOTS_KEPT, "10")));
+		    memoryBudget.register(snapshots);
+		    
+		    long metricsInterval = (long) (Double.parseDouble(
+		    		getDefaultProperty(SPARK_MONITORING_METRICS_INTERVAL, "0")) * 1000);
+		    if (metricsInterval > 0) {
+		    	metricsSampler = Executors.newSingleThreadScheduledExecutor();
+		    	metricsSampler.scheduleWithFixedDelay(new Runnable() {
+		    		@Override
+		    		public void run() {
+		    			sampleAllDriverMetrics();
+		    		}
+		    	}, 0, metricsInterval, TimeUnit.MILLISECONDS);
+		    }
+		    
+		    systemSampler = new SparkMonitoringSystemSampler(
+		    		Integer.parseInt(getDefaultProperty(SPARK_MONITORING_SYSTEM_SAMPLES, "360")));
+		    long systemInterval = (long) (Double.parseDouble(
+		    		getDefaultProperty(SPARK_MONITORING_SYSTEM_INTERVAL, "10")) * 1000);
+		    if (systemInterval > 0) {
+		    	systemSamplerExecutor = Executors.newSingleThreadScheduledExecutor();
+		    	systemSamplerExecutor.scheduleWithFixedDelay(new Runnable() {
+		    		@Override
+		    		public void run() {
+		    			sampleSystem();
+		    		}
+		    	}, 0, systemInterval, TimeUnit.MILLISECONDS);
+		    }
+		    
+		    int maxAlerts = Integer.parseInt(getDefaultProperty(SPARK_MONITORING_ALERTS_MAX, "1000"));
+		    alertEvaluator = new SparkMonitoringAlertEvaluator(100 * maxAlerts, maxAlerts);
+		    Properties defaultProperties = propertiesMap.get(DEFAULT_KEY);
+		    if (defaultProperties != null) {
+		    	for (String key : defaultProperties.stringPropertyNames()) {
+		    		if (key.startsWith(SPARK_MONITORING_ALERT)) {
+		    			String name = key.substring(SPARK_MONITORING_ALERT.length());
+		    			try {
+		    				alertEvaluator.addRule(SparkMonitoringAlertRule.compile(name, defaultProperties.getProperty(key)));
+		    			} catch (IllegalArgumentException e) {
+		    				logger.error("Alert rule {} will be ignored: {}", name, e.getMessage());
+		    			}
+		    		}
+		    	}
+		    }
 		    
 		} catch (Exception e) {
 			isMonitoringServerAvailable = false;
@@ -142,7 +527,45 @@ public class SparkMonitoringInterpreter extends Interpreter {
 
 	@Override
 	public void close() {
-		// do nothing because spark monitoring is always running
+		// spark monitoring is always running, only stop the fetch threads
+		if (fetchExecutor != null) {
+			fetchExecutor.shutdownNow();
+			fetchExecutor = null;
+		}
+		if (batchExecutor != null) {
+			batchExecutor.shutdownNow();
+			batchExecutor = null;
+		}
+		if (asyncFetcher != null) {
+			asyncFetcher.close();
+			asyncFetcher = null;
+		}
+		if (metricsSampler != null) {
+			metricsSampler.shutdownNow();
+			metricsSampler = null;
+		}
+		if (systemSamplerExecutor != null) {
+			systemSamplerExecutor.shutdownNow();
+			systemSamplerExecutor = null;
+		}
+		if (httpClient != null) {
+			try {
+				httpClient.close();
+			} catch (IOException e) {
+				logger.error("Close connections to Spark Monitoring", e);
+			}
+			httpClient = null;
+		}
+		// the spilled entries do not outlive the interpreter
+		for (SparkMonitoringSpillCache<?> cache : Arrays.asList(streamingWindows, metricsHistories, jobProfiles,
+				runSummaries, applicationSummaries)) {
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+		if (spillDir != null) {
+			spillDir.delete();
+		}
 	}
 	
 	public String getPrefix(String cmd) {
@@ -161,63 +584,415 @@ public class SparkMonitoringInterpreter extends Interpreter {
 	    }
 	}
 	
-	//get host and port from property
-	public void getConnectionInformation(String prefix) {
+	//get a property of the default prefix
+	private String getDefaultProperty(String key, String defaultValue) {
+		Properties properties = propertiesMap.get(DEFAULT_KEY);
+		if (properties == null) {
+			return defaultValue;
+		}
+		return properties.getProperty(key, defaultValue);
+	}
+	
+	//get a property of a prefix, fall back to the default prefix
+	private String getPrefixProperty(String prefix, String key, String defaultValue) {
 		Properties properties = propertiesMap.get(prefix);
+		if (properties != null && properties.containsKey(key)) {
+			return properties.getProperty(key);
+		}
+		return getDefaultProperty(key, defaultValue);
+	}
+	
+	//get prefix of the command being interpreted by current thread
+	private String getPrefixKey() {
+		String prefix = prefixKey.get();
+		return prefix != null ? prefix : DEFAULT_KEY;
+	}
+	
+	//get host and port of current prefix from property
+	private String getBaseUrl() {
+		return getServerUrl() + "/api/v1";
+	}
+	
+	//get http://host:port of the driver of current prefix
+	private String getServerUrl() {
+		String host = "localhost";
+		int port = 4040;
+		Properties properties = propertiesMap.get(getPrefixKey());
 		if(properties != null) {
 			host = properties.getProperty(SPARK_MONITORING_HOST);
 			port = Integer.parseInt(properties.getProperty(SPARK_MONITORING_PORT));
 		}
+		return "http://" + host + ":" + port;
+	}
+
+	@Override
+	public Scheduler getScheduler() {
+		// paragraphs run in parallel, e.g. a /watch does not block the others
+		return SchedulerFactory.singleton().createOrGetParallelScheduler(
+				SparkMonitoringInterpreter.class.getName() + this.hashCode(),
+				Integer.parseInt(getDefaultProperty(SPARK_MONITORING_CONCURRENCY, "10")));
 	}
 
 	@Override
 	public InterpreterResult interpret(String cmd, InterpreterContext interpreterContext) {
+		// register the cancel flag of the paragraph
+		String runId = getRunId(interpreterContext);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		runs.put(runId, cancelled);
+		cancelFlag.set(cancelled);
+		commandCount.incrementAndGet();
+		if (memoryBudget != null) {
+			memoryBudget.enforce();
+		}
+		try {
+			return interpretParagraph(cmd, interpreterContext);
+		} finally {
+			cancelFlag.remove();
+			runs.remove(runId);
+		}
+	}
+	
+	private InterpreterResult interpretParagraph(String cmd, InterpreterContext interpreterContext) {
 		logger.info("Run command '{}'", cmd);
-		prefixKey = getPrefix(cmd);
+		String prefix = getPrefix(cmd);
+		prefixKey.set(prefix);
 
-	    if (null != prefixKey && !prefixKey.equals(DEFAULT_KEY)) {
-	      cmd = cmd.substring(prefixKey.length() + 2);
+	    if (null != prefix && !prefix.equals(DEFAULT_KEY)) {
+	      cmd = cmd.substring(prefix.length() + 2);
 	    }
 	    
-	    String restUrl = cmd.trim();
-	    getConnectionInformation(prefixKey);
+	    List<String> commands = splitCommands(cmd);
+	    if (commands.size() > 1) {
+	    	return interpretBatch(commands, prefix, interpreterContext);
+	    }
+	    String restUrl = commands.isEmpty() ? "" : commands.get(0);
 
 	    logger.info("Run Spark Monitoring REST url '" + restUrl + "'");
-	    logger.info("Host {} and Port {}", host, port);
+	    logger.info("Base url {}", getBaseUrl());
 
 		if (StringUtils.isEmpty(restUrl) || StringUtils.isEmpty(restUrl.trim())) {
 			return new InterpreterResult(InterpreterResult.Code.SUCCESS);
 		}
 
+		return interpretCommand(restUrl, interpreterContext);
+	}
+	
+	/**
+	 * Split a paragraph into commands, one per line. A line which does not
+	 * start a command (/..., (prefix) ..., select ...) continues the previous one.
+	 * Empty lines and lines starting with # are ignored.
+	 */
+	private List<String> splitCommands(String paragraph) {
+		List<String> commands = new ArrayList<>();
+		for (String line : paragraph.split("\n")) {
+			String command = line.trim();
+			if (command.isEmpty() || command.startsWith("#")) {
+				continue;
+			}
+			if (commands.isEmpty() || command.startsWith("/") || command.startsWith("(")
+					|| command.toLowerCase().startsWith("select ")) {
+				commands.add(command);
+			} else {
+				commands.set(commands.size() - 1, commands.get(commands.size() - 1) + " " + command);
+			}
+		}
+		return commands;
+	}
+	
+	/**
+	 * Run several commands of a paragraph as a batch: the REST urls fetched by
+	 * several commands are fetched once, the commands run concurrently, the
+	 * commands which change the alerts run first, in order.
+	 * 
+	 * @param prefix
+	 *            prefix of the paragraph, a command may have its own (prefix)
+	 * @return Result in HTML type, one section per command in order, since a
+	 *         paragraph has only one result
+	 */
+	private InterpreterResult interpretBatch(List<String> commands, String prefix,
+			final InterpreterContext interpreterContext) {
+		final ConcurrentMap<String, FutureTask<List<String>>> fetches = new ConcurrentHashMap<>();
+		final AtomicBoolean cancelled = cancelFlag.get();
+		List<Future<InterpreterResult>> futures = new ArrayList<>();
+		InterpreterResult[] results = new InterpreterResult[commands.size()];
+		for (int i = 0; i < commands.size(); i++) {
+			String command = commands.get(i);
+			String commandPrefix = prefix != null ? prefix : DEFAULT_KEY;
+			if (command.startsWith("(") && command.indexOf(")") > 0) {
+				commandPrefix = command.substring(1, command.indexOf(")"));
+				command = command.substring(command.indexOf(")") + 1).trim();
+			}
+			if (command.startsWith("/watch")) {
+				results[i] = new InterpreterResult(InterpreterResult.Code.ERROR,
+						"/watch runs until cancel, it must be alone in its paragraph");
+				futures.add(null);
+			} else if (command.matches("/alerts\\s+(add|remove|clear)\\b.*")) {
+				results[i] = runBatchCommand(command, commandPrefix, fetches, interpreterContext);
+				futures.add(null);
+			} else {
+				final String batchCommand = command;
+				final String batchPrefix = commandPrefix;
+				futures.add(batchExecutor.submit(new Callable<InterpreterResult>() {
+					@Override
+					public InterpreterResult call() {
+						cancelFlag.set(cancelled);
+						try {
+							return runBatchCommand(batchCommand, batchPrefix, fetches, interpreterContext);
+						} finally {
+							cancelFlag.remove();
+						}
+					}
+				}));
+			}
+		}
+		// the errors are shown in their section, the paragraph fails if one command fails
+		boolean success = true;
+		StringBuffer html = new StringBuffer();
+		for (int i = 0; i < commands.size(); i++) {
+			InterpreterResult result = results[i];
+			if (result == null) {
+				try {
+					result = futures.get(i).get();
+				} catch (Exception e) {
+					result = new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+				}
+			}
+			success &= result.code() == InterpreterResult.Code.SUCCESS;
+			appendHtml(html, commands.get(i), result);
+		}
+		return new InterpreterResult(success ? InterpreterResult.Code.SUCCESS : InterpreterResult.Code.ERROR,
+				InterpreterResult.Type.HTML, html.toString());
+	}
+	
+	private InterpreterResult runBatchCommand(String command, String prefix,
+			ConcurrentMap<String, FutureTask<List<String>>> fetches, InterpreterContext interpreterContext) {
+		prefixKey.set(prefix);
+		batchFetches.set(fetches);
+		try {
+			return interpretCommand(command, interpreterContext);
+		} finally {
+			batchFetches.remove();
+		}
+	}
+	
+	private void appendHtml(StringBuffer html, String command, InterpreterResult result) {
+		html.append("<h5>").append(StringEscapeUtils.escapeHtml(command)).append("</h5>\n");
+		appendResultHtml(html, result);
+	}
+	
+	private void appendResultHtml(StringBuffer html, InterpreterResult result) {
+		String message = result.message() != null ? result.message() : "";
+		if (result.code() == InterpreterResult.Code.SUCCESS && result.type() == InterpreterResult.Type.TABLE) {
+			html.append("<table class=\"table table-striped table-condensed\">\n");
+			String[] rows = message.split("\n");
+			for (int r = 0; r < rows.length; r++) {
+				if (rows[r].isEmpty()) {
+					continue;
+				}
+				String cell = r == 0 ? "th" : "td";
+				html.append("<tr>");
+				for (String value : rows[r].split("\t")) {
+					html.append("<").append(cell).append(">").append(StringEscapeUtils.escapeHtml(value))
+							.append("</").append(cell).append(">");
+				}
+				html.append("</tr>\n");
+			}
+			html.append("</table>\n");
+		} else if (result.code() == InterpreterResult.Code.SUCCESS && result.type() == InterpreterResult.Type.HTML) {
+			html.append(message).append("\n");
+		} else {
+			String style = result.code() == InterpreterResult.Code.SUCCESS ? "" : " style=\"color:red\"";
+			html.append("<pre").append(style).append(">").append(StringEscapeUtils.escapeHtml(message))
+					.append("</pre>\n");
+		}
+	}
+	
+	/**
+	 * Run a command of current prefix, with the warnings of its fetches (e.g.
+	 * truncated responses) before its result
+	 */
+	private InterpreterResult interpretCommand(String restUrl, InterpreterContext interpreterContext) {
+		Set<String> warnings = Collections.synchronizedSet(new LinkedHashSet<String>());
+		commandWarnings.set(warnings);
+		InterpreterResult result;
+		try {
+			result = runCommand(restUrl, interpreterContext);
+		} finally {
+			commandWarnings.remove();
+		}
+		if (warnings.isEmpty()) {
+			return result;
+		}
+		StringBuffer html = new StringBuffer();
+		synchronized (warnings) {
+			for (String warning : warnings) {
+				html.append("<pre style=\"color:orange\">Warning: ").append(StringEscapeUtils.escapeHtml(warning))
+						.append("</pre>\n");
+			}
+		}
+		appendResultHtml(html, result);
+		return new InterpreterResult(result.code(), InterpreterResult.Type.HTML, html.toString());
+	}
+	
+	private InterpreterResult runCommand(String restUrl, InterpreterContext interpreterContext) {
 		// server is not available
 		if (!isMonitoringServerAvailable) {
 			return new InterpreterResult(InterpreterResult.Code.ERROR,
 					"Problem when connect to Spark Monitoring server, please check your configuration (host, port,...)");
 		}
 
-		// Process some specific commands (help)
-		if (restUrl.startsWith("/help")) {
+		// Process some specific commands (help, query)
+		if (restUrl.toLowerCase().startsWith("select ")) {
+			return interpretUrl("/query " + restUrl, interpreterContext);
+		} else if (restUrl.startsWith("/help")) {
 			return processHelp(InterpreterResult.Code.SUCCESS, null);
 		} else if (!restUrl.startsWith("/")) {
 			// wrong syntax
 			return processHelp(InterpreterResult.Code.ERROR, "Wrong REST url! See help to correct it.");
 		}
 
-		final String[] items = StringUtils.split(restUrl.trim(), "/");
+		return interpretUrl(restUrl, interpreterContext);
+	}
+	
+	/**
+	 * Run a REST url command of current prefix
+	 */
+	private InterpreterResult interpretUrl(String restUrl, InterpreterContext interpreterContext) {
+		if (restUrl.startsWith("/watch")) {
+			try {
+				return watch(restUrl.substring("/watch".length()).trim(), interpreterContext);
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/alerts")) {
+			return alerts(restUrl.substring("/alerts".length()).trim());
+		} else if (restUrl.startsWith("/query")) {
+			try {
+				return query(restUrl.substring("/query".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/export")) {
+			try {
+				return export(restUrl.substring("/export".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/compare")) {
+			try {
+				return compare(restUrl.substring("/compare".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/anomalies")) {
+			return getAnomalies();
+		} else if (restUrl.startsWith("/snapshot")) {
+			try {
+				return snapshot(restUrl.substring("/snapshot".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/profile")) {
+			try {
+				return profile(restUrl.substring("/profile".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/failures")) {
+			try {
+				return failures(restUrl.substring("/failures".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/polling")) {
+			return getPolling();
+		} else if (restUrl.startsWith("/driver-metrics")) {
+			try {
+				return getDriverMetrics(restUrl.substring("/driver-metrics".length()).trim());
+			} catch (Exception e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+		} else if (restUrl.startsWith("/system")) {
+			return getCpuUsage();
+		} else if (restUrl.startsWith("/memory")) {
+			return getMemory();
+		}
+		// the query (?status=...) is passed to the server as is
+		int queryIndex = restUrl.indexOf("?");
+		String query = queryIndex >= 0 ? restUrl.substring(queryIndex) : "";
+		final String[] items = StringUtils.split(queryIndex >= 0 ? restUrl.substring(0, queryIndex) : restUrl, "/");
 		final int numOfItems = items.length;
 
 		try {
+			// case /applications/<application_id>/jobs|stages/...: explicit application
+			String applicationRef = null;
+			String[] objectItems = items;
+			if (numOfItems >= 3 && "applications".equalsIgnoreCase(items[0])
+					&& ("jobs".equalsIgnoreCase(items[2]) || "stages".equalsIgnoreCase(items[2])
+							|| "executors".equalsIgnoreCase(items[2]) || "streaming".equalsIgnoreCase(items[2])
+							|| "utilization".equalsIgnoreCase(items[2]))) {
+				applicationRef = items[1];
+				objectItems = Arrays.copyOfRange(items, 2, numOfItems);
+				restUrl = "/" + StringUtils.join(objectItems, "/") + query;
+			}
+			final int numOfObjectItems = objectItems.length;
+			
+			// search applications in the index
+			if (numOfItems >= 2 && "applications".equalsIgnoreCase(items[0]) && items[1].startsWith("search")) {
+				return searchApplications(restUrl);
+			}
+			// job counts and durations of the applications
+			else if (numOfItems == 2 && "applications".equalsIgnoreCase(items[0]) && "summary".equalsIgnoreCase(items[1])) {
+				return summarizeApplications(restUrl);
+			}
+			// slot utilization of the default application
+			else if (numOfItems == 2 && "applications".equalsIgnoreCase(items[0])
+					&& "utilization".equalsIgnoreCase(items[1])) {
+				return getUtilization(null, query);
+			}
 			// get applications
-			if (numOfItems >= 1 && "applications".equalsIgnoreCase(items[0])) {
+			else if (applicationRef == null && numOfItems >= 1 && "applications".equalsIgnoreCase(items[0])) {
 				return getApplications(restUrl);
 			}
+			// duration profiles of the job groups
+			else if (numOfObjectItems >= 2 && "jobs".equalsIgnoreCase(objectItems[0])
+					&& "profile".equalsIgnoreCase(objectItems[1])) {
+				return profileJobs(applicationRef);
+			}
+			// analyze a job
+			else if (numOfObjectItems >= 3 && "jobs".equalsIgnoreCase(objectItems[0])
+					&& "analyze".equalsIgnoreCase(objectItems[2])) {
+				return analyzeJob(applicationRef, objectItems[1]);
+			}
 			// get jobs
-			else if (numOfItems >= 1 && "jobs".equalsIgnoreCase(items[0])) {
-				return getJobs(restUrl);
+			else if (numOfObjectItems >= 1 && "jobs".equalsIgnoreCase(objectItems[0])) {
+				return getJobs(applicationRef, restUrl);
+			}
+			// full details of a stage
+			else if (numOfObjectItems >= 3 && "stages".equalsIgnoreCase(objectItems[0])
+					&& "details".equalsIgnoreCase(objectItems[2])) {
+				return getStageDetails(applicationRef, objectItems[1]);
+			}
+			// locality of the tasks of a stage
+			else if (numOfObjectItems >= 3 && "stages".equalsIgnoreCase(objectItems[0])
+					&& "locality".equalsIgnoreCase(objectItems[2])) {
+				return getStageLocality(applicationRef, objectItems[1]);
 			}
 			// get stages
-			else if (numOfItems >= 1 && "stages".equalsIgnoreCase(items[0])) {
-				return getStages(restUrl);
+			else if (numOfObjectItems >= 1 && "stages".equalsIgnoreCase(objectItems[0])) {
+				return getStages(applicationRef, restUrl);
+			}
+			// get executors
+			else if (numOfObjectItems >= 1 && "executors".equalsIgnoreCase(objectItems[0])) {
+				return getExecutors(applicationRef, restUrl);
+			}
+			// slot utilization of an application
+			else if (numOfObjectItems == 1 && "utilization".equalsIgnoreCase(objectItems[0])) {
+				return getUtilization(applicationRef, query);
+			}
+			// streaming statistics, batches or receivers
+			else if (numOfObjectItems >= 1 && "streaming".equalsIgnoreCase(objectItems[0])) {
+				return getStreaming(applicationRef, numOfObjectItems >= 2 ? objectItems[1] : "statistics");
 			}
 
 			return processHelp(InterpreterResult.Code.ERROR, "Unknown REST url");
@@ -228,7 +1003,14 @@ public class SparkMonitoringInterpreter extends Interpreter {
 
 	@Override
 	public void cancel(InterpreterContext interpreterContext) {
-		// Nothing to do
+		// stop the watch or the waiting fetches of the paragraph, or of all
+		// paragraphs if no paragraph is given
+		String runId = interpreterContext != null ? getRunId(interpreterContext) : null;
+		for (Map.Entry<String, AtomicBoolean> run : runs.entrySet()) {
+			if (runId == null || runId.equals(run.getKey())) {
+				run.getValue().set(true);
+			}
+		}
 	}
 
 	@Override
@@ -241,21 +1023,55 @@ public class SparkMonitoringInterpreter extends Interpreter {
 		return 0;
 	}
 
+	/**
+	 * Complete the word before the cursor, from the in-memory indexes only
+	 * (never a request to the server): prefix inside "(", application id or name
+	 * after /applications/, job id after /jobs/, stage id after /stages/,
+	 * command otherwise
+	 */
 	@Override
 	public List<String> completion(String s, int i) {
-		final List<String> suggestions = new ArrayList<String>();
-
 		if (StringUtils.isEmpty(s)) {
-			suggestions.addAll(COMMANDS);
-		} else {
-			for (String cmd : COMMANDS) {
-				if (cmd.toLowerCase().contains(s)) {
-					suggestions.add(cmd);
-				}
+			return new ArrayList<String>(COMMANDS);
+		}
+		String text = i > 0 && i <= s.length() ? s.substring(0, i) : s;
+		// only the current line of the paragraph
+		text = text.substring(text.lastIndexOf('\n') + 1);
+		
+		// case (prefix
+		if (text.startsWith("(") && text.indexOf(")") < 0) {
+			return prefixWords.complete(text.substring(1), MAX_SUGGESTIONS);
+		}
+		String prefix = DEFAULT_KEY;
+		if (text.startsWith("(")) {
+			prefix = text.substring(1, text.indexOf(")"));
+			text = text.substring(text.indexOf(")") + 1);
+		}
+		text = text.trim();
+		
+		int lastSlash = text.lastIndexOf('/');
+		String word = text.substring(lastSlash + 1);
+		String[] previousItems = lastSlash > 0 ? StringUtils.split(text.substring(0, lastSlash), "/") : new String[0];
+		String previous = previousItems.length > 0 ? previousItems[previousItems.length - 1] : null;
+		
+		SparkMonitoringApplicationIndex index = mapApplication.get(prefix);
+		if (index != null && "applications".equalsIgnoreCase(previous) && previousItems.length == 1) {
+			return index.completeApplication(word, MAX_SUGGESTIONS);
+		}
+		if (index != null && ("jobs".equalsIgnoreCase(previous) || "stages".equalsIgnoreCase(previous))) {
+			// application named in /applications/<application_id>/jobs or the default one
+			SparkMonitoringApplication app = previousItems.length >= 3
+					&& "applications".equalsIgnoreCase(previousItems[previousItems.length - 3])
+					? index.resolve(previousItems[previousItems.length - 2]) : index.getDefault();
+			if (app == null) {
+				return new ArrayList<String>();
+			}
+			if ("jobs".equalsIgnoreCase(previous)) {
+				return index.completeJobId(app.getId(), word, MAX_SUGGESTIONS);
 			}
+			return index.completeStageId(app.getId(), word, MAX_SUGGESTIONS);
 		}
-
-		return suggestions;
+		return commandWords.complete(word.toLowerCase(), MAX_SUGGESTIONS);
 	}
 
 	private InterpreterResult processHelp(InterpreterResult.Code code, String additionalMessage) {
@@ -264,441 +1080,3075 @@ public class SparkMonitoringInterpreter extends Interpreter {
 		if (additionalMessage != null) {
 			buffer.append(additionalMessage).append("\n");
 		}
-
-		buffer.append(HELP).append("\n");
-
-		return new InterpreterResult(code, InterpreterResult.Type.TEXT, buffer.toString());
+
+		buffer.append(HELP).append("\n");
+
+		return new InterpreterResult(code, InterpreterResult.Type.TEXT, buffer.toString());
+	}
+
+	/**
+	 * Get Application information
+	 * 
+	 * @param applicationId
+	 *            id of application, if null then get all applications
+	 * @return Result of the get request, it contains a JSON-formatted string
+	 */
+	private InterpreterResult getApplications(String restUrl) {
+		// connect to server and get response
+		if (isMonitoringServerAvailable) {
+			List<SparkMonitoringApplication> lsApplication;
+			try {
+				lsApplication = listApplications(restUrl);
+			} catch (IOException | IllegalArgumentException e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+			// make return result - in TABLE type
+			StringBuffer result = new StringBuffer();
+			result.append("Id\tName\tStart Time\tDuration\tCompleted");
+			result.append("\n");
+			// make result table body
+			appendApplicationRows(result, lsApplication);
+
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		}
+
+		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+	}
+	
+	/**
+	 * List the applications of the server, all of them are indexed. The
+	 * filters status, minDate, maxDate and limit are passed to the server (a
+	 * History Server applies them), limit only when there is no user filter
+	 * which the server does not know. All the filters are also evaluated on
+	 * each application as it is read, the response is streamed.
+	 * 
+	 * @param restUrl
+	 *            /applications[?status=completed|running&minDate=..&maxDate=..&limit=..&user=..]
+	 * @return applications matching the filters, in the order of the server
+	 */
+	private List<SparkMonitoringApplication> listApplications(String restUrl) throws IOException {
+		int queryIndex = restUrl.indexOf("?");
+		String path = queryIndex >= 0 ? restUrl.substring(0, queryIndex) : restUrl;
+		Map<String, String> params = parseQuery(restUrl);
+		final String status = params.get("status");
+		if (status != null && !"completed".equalsIgnoreCase(status) && !"running".equalsIgnoreCase(status)) {
+			throw new IllegalArgumentException("Status must be completed or running: " + status);
+		}
+		final String user = params.get("user");
+		final Long minDate = parseDateParam(params.get("minDate"));
+		final Long maxDate = parseDateParam(params.get("maxDate"));
+		final int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : -1;
+		List<String> serverParams = new ArrayList<>();
+		for (String key : Arrays.asList("status", "minDate", "maxDate")) {
+			if (params.containsKey(key)) {
+				serverParams.add(key + "=" + params.get(key));
+			}
+		}
+		if (limit >= 0 && user == null) {
+			serverParams.add("limit=" + limit);
+		}
+		
+		final SparkMonitoringApplicationIndex index = getApplicationIndex(getPrefixKey());
+		final List<SparkMonitoringApplication> lsApplication = new ArrayList<>();
+		EntityHandler handler = new EntityHandler("id") {
+			@Override
+			protected void entity(List<String> lsItem) {
+				SparkMonitoringApplication app = parseApplication(lsItem);
+				if (app == null) {
+					return;
+				}
+				index.put(app);
+				long startTime = app.getStartTimeMilis() != null ? app.getStartTimeMilis() : 0L;
+				if ((limit < 0 || lsApplication.size() < limit)
+						&& (status == null || app.getCompleted() == "completed".equalsIgnoreCase(status))
+						&& (user == null || user.equals(app.getSparkUser()))
+						&& (minDate == null || startTime >= minDate) && (maxDate == null || startTime <= maxDate)) {
+					lsApplication.add(app);
+				}
+			}
+		};
+		if (params.isEmpty()) {
+			// the whole listing is shared by the commands of a batch
+			List<String> lsItem = fetchItems(getBaseUrl(), path);
+			for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+				handler.item(lsItem.get(i), lsItem.get(i + 1));
+			}
+		} else {
+			streamItems(getBaseUrl(), path + (serverParams.isEmpty() ? "" : "?" + StringUtils.join(serverParams, "&")),
+					handler);
+		}
+		handler.finish();
+		return lsApplication;
+	}
+	
+	/**
+	 * Job counts and durations of the filtered applications. The jobs of the
+	 * applications are fetched together, at most
+	 * spark.monitoring.applications.summary.concurrency at a time; the
+	 * summaries of the completed applications are cached
+	 * 
+	 * @param restUrl
+	 *            /applications/summary[?filters of /applications]
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult summarizeApplications(String restUrl) throws Exception {
+		int queryIndex = restUrl.indexOf("?");
+		List<SparkMonitoringApplication> lsApplication = listApplications(
+				"/applications" + (queryIndex >= 0 ? restUrl.substring(queryIndex) : ""));
+		int concurrency = Math.max(1,
+				Integer.parseInt(getDefaultProperty(SPARK_MONITORING_APPLICATIONS_SUMMARY_CONCURRENCY, "8")));
+		String baseUrl = getBaseUrl();
+		String prefix = getPrefixKey();
+		long now = System.currentTimeMillis();
+		int size = lsApplication.size();
+		SparkMonitoringApplicationSummary[] summaries = new SparkMonitoringApplicationSummary[size];
+		List<FutureTask<List<String>>> fetches = new ArrayList<>(
+				Collections.<FutureTask<List<String>>> nCopies(size, null));
+		for (int i = 0; i < size; i++) {
+			if (lsApplication.get(i).getCompleted()) {
+				summaries[i] = applicationSummaries.get(prefix + "|" + lsApplication.get(i).getId());
+			}
+		}
+		int next = 0;
+		for (int i = 0; i < size; i++) {
+			// keep at most concurrency fetches in flight
+			for (; next < size && next < i + concurrency; next++) {
+				if (summaries[next] == null) {
+					fetches.set(next, startFetch(baseUrl, "/applications/" + lsApplication.get(next).getId() + "/jobs"));
+				}
+			}
+			if (summaries[i] == null) {
+				SparkMonitoringApplication app = lsApplication.get(i);
+				List<String> lsItem = awaitFetch(fetches.get(i), "/applications/" + app.getId() + "/jobs");
+				fetches.set(i, null);
+				summaries[i] = SparkMonitoringApplicationSummary.create(app.getId(), parseJobs(lsItem), now);
+				if (app.getCompleted()) {
+					applicationSummaries.put(prefix + "|" + app.getId(), summaries[i]);
+				}
+			}
+		}
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Id\tName\tStart Time\tCompleted\tJobs\tRunning Jobs\tFailed Jobs\tTotal Job Time\tLongest Job");
+		result.append("\n");
+		for (int i = 0; i < size; i++) {
+			SparkMonitoringApplication app = lsApplication.get(i);
+			result.append(app.getId());
+			result.append("\t").append(app.getName());
+			result.append("\t").append(app.getStartTime());
+			result.append("\t").append(app.getCompleted());
+			result.append("\t").append(summaries[i].getJobs());
+			result.append("\t").append(summaries[i].getRunningJobs());
+			result.append("\t").append(summaries[i].getFailedJobs());
+			result.append("\t").append(nf.format(summaries[i].getTotalJobMillis() / 1000D) + "s");
+			result.append("\t").append(nf.format(summaries[i].getMaxJobMillis() / 1000D) + "s");
+			result.append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Create an application from its items, the first attempt (the latest)
+	 * gives the times, user and status
+	 * 
+	 * @return application or null if the items have no id
+	 */
+	private SparkMonitoringApplication parseApplication(List<String> lsItem) {
+		SparkMonitoringApplication application = new SparkMonitoringApplication();
+		for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(i + 1);
+			if ("id".equalsIgnoreCase(key) && application.getId() == null) {
+				application.setId(intern(value));
+			} else if ("name".equalsIgnoreCase(key) && application.getName() == null) {
+				application.setName(intern(value));
+			} else if ("startTime".equalsIgnoreCase(key) && application.getStartTime() == null) {
+				Long time = parseSourceTime(value);
+				if (time != null) {
+					// convert dateTime to current locale
+					application.setStartTime(new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault())
+							.format(new Date(time)));
+					application.setStartTimeMilis(time);
+				}
+			} else if ("endTime".equalsIgnoreCase(key) && application.getEndTime() == null) {
+				Long time = parseSourceTime(value);
+				if (time != null) {
+					application.setEndTime(new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault())
+							.format(new Date(time)));
+					application.setEndTimeMilis(time);
+				}
+			} else if ("sparkUser".equalsIgnoreCase(key) && application.getSparkUser() == null) {
+				application.setSparkUser(intern(value));
+			} else if ("completed".equalsIgnoreCase(key) && application.getCompleted() == null) {
+				application.setCompleted(Boolean.parseBoolean(value));
+			}
+		}
+		if (application.getId() == null) {
+			return null;
+		}
+		if (application.getCompleted() == null) {
+			application.setCompleted(false);
+		}
+		return application;
+	}
+	
+	private void appendApplicationRows(StringBuffer result, List<SparkMonitoringApplication> lsApplication) {
+		// convert dateTime to Long
+		String dateTimeFormat = displayDateTimeFormat;
+		SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.getDefault());
+		for (SparkMonitoringApplication app : lsApplication) {
+			result.append(app.getId()).append("\t").append(app.getName()).append("\t").append(app.getStartTime());
+			if (app.getCompleted()) {
+				//calculate duration
+				Long startTime;
+				try {
+					startTime = dateFm.parse(app.getStartTime()).getTime();
+				} catch (ParseException e) {
+					startTime = 0L;
+				}
+				Long endTime;
+				try {
+					endTime = dateFm.parse(app.getEndTime()).getTime();
+				} catch (ParseException e) {
+					endTime = 0L;
+				}
+				Double duration = (endTime - startTime) / 1000D;
+				NumberFormat nf = new DecimalFormat(numberFormat);
+				result.append("\t").append(nf.format(duration) + "s");
+			} else {
+				result.append("\t").append("-");
+			}
+			result.append("\t").append(app.getCompleted());
+			result.append("\n"); // new row
+		}
+	}
+	
+	/**
+	 * Search the applications of the index of current prefix
+	 * 
+	 * @param restUrl
+	 *            /applications/search?name=..&user=..&minDate=..&maxDate=..
+	 * @return Result in TABLE type, latest started application first
+	 */
+	private InterpreterResult searchApplications(String restUrl) {
+		SparkMonitoringApplicationIndex index = getApplicationIndex(getPrefixKey());
+		if (index.isEmpty()) {
+			getApplications("/applications");
+		}
+		Map<String, String> params = parseQuery(restUrl);
+		List<SparkMonitoringApplication> lsApplication = index.search(params.get("name"), params.get("user"),
+				parseDateParam(params.get("minDate")), parseDateParam(params.get("maxDate")));
+		StringBuffer result = new StringBuffer();
+		result.append("Id\tName\tStart Time\tDuration\tCompleted");
+		result.append("\n");
+		appendApplicationRows(result, lsApplication);
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Parse parameters of a rest url: ...?key1=value1&key2=value2
+	 */
+	private Map<String, String> parseQuery(String restUrl) {
+		Map<String, String> params = new HashMap<>();
+		int queryIndex = restUrl.indexOf("?");
+		if (queryIndex < 0) {
+			return params;
+		}
+		for (String param : StringUtils.split(restUrl.substring(queryIndex + 1), "&")) {
+			String[] keyValue = param.split("=", 2);
+			if (keyValue.length == 2) {
+				params.put(keyValue[0].trim(), keyValue[1].trim());
+			}
+		}
+		return params;
+	}
+	
+	/**
+	 * Parse a date parameter in the formats of the REST api:
+	 * yyyy-MM-dd or yyyy-MM-dd'T'HH:mm:ss.SSS
+	 * 
+	 * @return milliseconds or null if the value is empty or not a date
+	 */
+	private Long parseDateParam(String value) {
+		if (StringUtils.isEmpty(value)) {
+			return null;
+		}
+		Long time = parseSourceTime(value);
+		if (time != null) {
+			return time;
+		}
+		SimpleDateFormat dateFm = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+		try {
+			return dateFm.parse(value).getTime();
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get job information
+	 * 
+	 * @param restUrl
+	 * @return Result of the get request
+	 */
+	private InterpreterResult getJobs(String applicationRef, String restUrl) throws Exception {
+		// connect to server and get response
+		if (isMonitoringServerAvailable) {
+			// get jobs of the application
+			String applicationId = getApplicationId(applicationRef);
+			if(applicationId == null) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+			}
+			
+			// build rest url
+			String[] urlItems = StringUtils.split(restUrl, "/");
+			// case: /jobs/
+			if(urlItems.length == 1) {
+				restUrl = "/applications/" + applicationId + restUrl;
+			}
+			else if(urlItems.length >= 2) {
+				String param = urlItems[1].trim();
+				//case param in COMMANDS list
+				if(COMMANDS.contains(param)) {
+					restUrl = "/applications/" + applicationId + "/jobs/";
+				}
+				//case /jobs/<job_id>
+				else {
+					restUrl = "/applications/" + applicationId + restUrl;
+				}
+			}
+			
+			// connect to server and get data
+			List<String> lsItem;
+			try {
+				lsItem = fetchItems(getBaseUrl(), restUrl);
+			} catch (IOException e) {
+				logger.info(e.getMessage());
+				throw e;
+			}
+			// create SparkMonitoringJob object
+			List<SparkMonitoringJob> lsJob = parseJobs(lsItem);
+			List<String> jobIds = new ArrayList<>();
+			for (SparkMonitoringJob job : lsJob) {
+				jobIds.add(job.getId());
+			}
+			getApplicationIndex(getPrefixKey()).addJobIds(applicationId, jobIds);
+			alertEvaluator.evaluateJobs(getPrefixKey(), applicationId, lsJob);
+			getJobProfiles(applicationId).update(lsJob);
+			baselines.addJobs(getPrefixKey(), applicationId, lsJob);
+			// check if get job information or get statistic about jobs
+			int urlItemLength = urlItems.length;
+			if(urlItemLength == 1) {
+				return getJobInformation(lsItem, lsJob);
+			}
+			else if(urlItemLength >= 2) {
+				String command = urlItems[1];
+				if(!COMMANDS.contains(command)) {
+					return getJobInformation(lsItem, lsJob);
+				}
+				else {
+					return getJobStatistic(urlItems, lsJob);
+				}
+			}
+			
+		}
+
+		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+	}
+	
+	/**
+	 * Duration and task count profiles of the groups of jobs of an
+	 * application, updated with the jobs completed since the previous fetch of
+	 * the jobs
+	 * 
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult profileJobs(String applicationRef) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		List<SparkMonitoringJob> lsJob = parseJobs(fetchItems(getBaseUrl(), "/applications/" + applicationId + "/jobs"));
+		SparkMonitoringJobProfiles profiles = getJobProfiles(applicationId);
+		profiles.update(lsJob);
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Group\tCount\tFailed\tp50\tp95\tp99\tMax\tTasks p50\tTasks p95\tTasks p99\tTrend\tLast Job");
+		result.append("\n");
+		// the groups change while they are updated
+		synchronized (profiles) {
+			List<SparkMonitoringJobProfiles.Group> groups = profiles.getGroups();
+			// most slowed down first, then the groups without trend by number of jobs
+			Collections.sort(groups, new Comparator<SparkMonitoringJobProfiles.Group>() {
+				@Override
+				public int compare(SparkMonitoringJobProfiles.Group o1, SparkMonitoringJobProfiles.Group o2) {
+					double trend1 = o1.getTrend();
+					double trend2 = o2.getTrend();
+					if (Double.isNaN(trend1) != Double.isNaN(trend2)) {
+						return Double.isNaN(trend1) ? 1 : -1;
+					}
+					if (!Double.isNaN(trend1) && trend1 != trend2) {
+						return Double.compare(trend2, trend1);
+					}
+					return Long.compare(o2.getCount(), o1.getCount());
+				}
+			});
+			for (SparkMonitoringJobProfiles.Group group : groups) {
+				SparkMonitoringQuantileSketch durations = group.getDurations();
+				SparkMonitoringQuantileSketch tasks = group.getTasks();
+				result.append(group.getName());
+				result.append("\t").append(group.getCount());
+				result.append("\t").append(group.getFailed());
+				for (double quantile : new double[] { 0.5, 0.95, 0.99, 1 }) {
+					double duration = durations.getQuantile(quantile);
+					result.append("\t").append(Double.isNaN(duration) ? "-" : nf.format(duration / 1000D) + "s");
+				}
+				for (double quantile : new double[] { 0.5, 0.95, 0.99 }) {
+					double numTasks = tasks.getQuantile(quantile);
+					result.append("\t").append(Double.isNaN(numTasks) ? "-" : nf.format(numTasks));
+				}
+				double trend = group.getTrend();
+				result.append("\t").append(Double.isNaN(trend) ? "-" : formatDelta(trend * 100, nf) + "%");
+				result.append("\t").append(group.getLastJobId() != null ? group.getLastJobId() : "-");
+				result.append("\n"); // new row
+			}
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private SparkMonitoringJobProfiles getJobProfiles(String applicationId) {
+		String key = getPrefixKey() + "|" + applicationId;
+		SparkMonitoringJobProfiles profiles = jobProfiles.get(key);
+		if (profiles == null) {
+			profiles = new SparkMonitoringJobProfiles(MAX_JOB_GROUPS);
+			SparkMonitoringJobProfiles previous = jobProfiles.putIfAbsent(key, profiles);
+			if (previous != null) {
+				profiles = previous;
+			}
+		}
+		return profiles;
+	}
+	
+	/**
+	 * Get Stages information
+	 * 
+	 * @param restUrl
+	 * @return Result of the get request, it contains a JSON-formatted string
+	 */
+	private InterpreterResult getStages(String applicationRef, String restUrl) {
+		// connect to server and get response
+		if (isMonitoringServerAvailable) {
+			// get stages of the application
+			String applicationId = getApplicationId(applicationRef);
+			if(applicationId == null) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+			}
+			// build rest url
+			restUrl = "/applications/" + applicationId + restUrl;
+			
+			// connect to server and get data
+			List<String> lsItem;
+			try {
+				lsItem = fetchItems(getBaseUrl(), restUrl);
+			} catch (IOException e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+			// make return result - in TABLE type
+			StringBuffer result = new StringBuffer();
+			// create SparkMonitoringStage list
+			List<SparkMonitoringStage> lsStage = parseStages(lsItem);
+			List<String> stageIds = new ArrayList<>();
+			for (SparkMonitoringStage stage : lsStage) {
+				stageIds.add(stage.getId());
+			}
+			getApplicationIndex(getPrefixKey()).addStageIds(applicationId, stageIds);
+			alertEvaluator.evaluateStages(getPrefixKey(), applicationId, lsStage);
+			baselines.addStages(getPrefixKey(), applicationId, lsStage);
+			//make header
+			result.append("Id\tName\tStatus\tCompeleted Tasks\tFailed Tasks\tInputBytes/InputRecords\tOutputBytes/OutputRecords\tDetails");
+			result.append("\n");
+			// make result table body
+			for (SparkMonitoringStage obj : lsStage) {
+				result.append(obj.getId());
+				result.append("\t").append(obj.getName());
+				result.append("\t").append(obj.getStatus());
+				int totalTasks = obj.getNumCompletedTasks() + obj.getNumFailedTasks();
+				result.append("\t").append(obj.getNumCompletedTasks() + "/" + totalTasks);
+				result.append("\t").append(obj.getNumFailedTasks() + "/" + totalTasks);
+				//format 
+				NumberFormat nf = new DecimalFormat(numberFormat);
+				result.append("\t").append(nf.format(obj.getInputBytes() / 1000000D) + "MB/" + obj.getInputRecords());
+				result.append("\t").append(nf.format(obj.getOutputBytes() / 1000000D) + "MB/" + obj.getOutputRecords());
+				result.append("\t").append(obj.getDetails());
+				result.append("\n"); // new row
+			}
+
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		}
+
+		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+	}
+	
+	/**
+	 * Get executors information
+	 * 
+	 * @param restUrl
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getExecutors(String applicationRef, String restUrl) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		List<SparkMonitoringExecutor> lsExecutor = parseExecutors(
+				fetchItems(getBaseUrl(), "/applications/" + applicationId + restUrl));
+		alertEvaluator.evaluateExecutors(getPrefixKey(), applicationId, lsExecutor);
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Id\tAddress\tActive\tCores\tActive Tasks\tFailed Tasks\tCompleted Tasks\tTask Time"
+				+ "\tGC Time\tGC Ratio\tMemory Used/Max\tShuffle Read\tShuffle Write");
+		result.append("\n");
+		for (SparkMonitoringExecutor executor : lsExecutor) {
+			result.append(executor.getId());
+			result.append("\t").append(executor.getHostPort());
+			result.append("\t").append(executor.isActive());
+			result.append("\t").append(executor.getTotalCores());
+			result.append("\t").append(executor.getActiveTasks());
+			result.append("\t").append(executor.getFailedTasks());
+			result.append("\t").append(executor.getCompletedTasks());
+			result.append("\t").append(nf.format(executor.getTotalDuration() / 1000D) + "s");
+			result.append("\t").append(nf.format(executor.getTotalGCTime() / 1000D) + "s");
+			result.append("\t").append(nf.format(executor.getGCRatio() * 100) + "%");
+			result.append("\t").append(nf.format(executor.getMemoryUsed() / 1000000D) + "MB/"
+					+ nf.format(executor.getMaxMemory() / 1000000D) + "MB");
+			result.append("\t").append(nf.format(executor.getTotalShuffleRead() / 1000000D) + "MB");
+			result.append("\t").append(nf.format(executor.getTotalShuffleWrite() / 1000000D) + "MB");
+			result.append("\n"); // new row
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Get the full details (call site) of a stage, which are cut to their
+	 * first line in the stages table
+	 * 
+	 * @return Result in TEXT type, one block per attempt of the stage
+	 */
+	private InterpreterResult getStageDetails(String applicationRef, String stageId) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		List<String> lsItem = fetchItems(getBaseUrl(), "/applications/" + applicationId + "/stages/" + stageId);
+		StringBuffer result = new StringBuffer();
+		String attemptId = null;
+		String name = null;
+		for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(i + 1);
+			if ("attemptId".equalsIgnoreCase(key)) {
+				attemptId = value;
+			} else if ("name".equalsIgnoreCase(key)) {
+				name = value;
+			} else if ("details".equalsIgnoreCase(key)) {
+				result.append("Stage ").append(stageId).append(" attempt ").append(attemptId)
+						.append(" (").append(name).append(")\n");
+				result.append(value).append("\n");
+			}
+		}
+		if (result.length() == 0) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown stage " + stageId);
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TEXT, result.toString());
+	}
+	
+	/**
+	 * @return id of the last attempt of a stage, null if the stage is unknown
+	 */
+	private String getLastStageAttempt(String baseUrl, String applicationId, String stageId) throws IOException {
+		String attemptId = null;
+		List<String> lsItem = fetchItems(baseUrl, "/applications/" + applicationId + "/stages/" + stageId);
+		for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+			if ("attemptId".equalsIgnoreCase(lsItem.get(i)) && (attemptId == null
+					|| Integer.parseInt(lsItem.get(i + 1)) > Integer.parseInt(attemptId))) {
+				attemptId = lsItem.get(i + 1);
+			}
+		}
+		return attemptId;
+	}
+	
+	/**
+	 * Tasks and task time of the last attempt of a stage by locality level
+	 * and host, read in one pass over its task list
+	 * 
+	 * @return Result in TABLE type, each level with all its hosts first
+	 */
+	private InterpreterResult getStageLocality(String applicationRef, String stageId) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if (applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		String baseUrl = getBaseUrl();
+		String attemptId = getLastStageAttempt(baseUrl, applicationId, stageId);
+		if (attemptId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown stage " + stageId);
+		}
+		final SparkMonitoringLocality locality = new SparkMonitoringLocality();
+		final long now = System.currentTimeMillis();
+		EntityHandler handler = new EntityHandler("taskId") {
+			@Override
+			protected void entity(List<String> lsItem) {
+				String level = null;
+				String host = null;
+				Long launchTime = null;
+				Long duration = null;
+				for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+					String key = lsItem.get(i);
+					String value = lsItem.get(i + 1);
+					if ("taskLocality".equalsIgnoreCase(key)) {
+						level = value;
+					} else if ("host".equalsIgnoreCase(key)) {
+						host = value;
+					} else if ("launchTime".equalsIgnoreCase(key)) {
+						launchTime = parseSourceTime(value);
+					} else if ("duration".equalsIgnoreCase(key)) {
+						duration = Long.parseLong(value);
+					}
+				}
+				// a running task lasts until now
+				locality.addTask(level, host, duration != null ? duration
+						: launchTime != null ? Math.max(0L, now - launchTime) : 0L);
+			}
+		};
+		streamItems(baseUrl, "/applications/" + applicationId + "/stages/" + stageId + "/" + attemptId
+				+ "/taskList?offset=0&length=" + MAX_TASK_LIST_LENGTH, handler);
+		handler.finish();
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		double tasks = Math.max(1, locality.getTasks());
+		double millis = Math.max(1L, locality.getMillis());
+		StringBuffer result = new StringBuffer();
+		result.append("Locality Level\tHost\tTasks\tTask Share\tTask Time\tTime Share\tAverage Task Time");
+		result.append("\n");
+		for (SparkMonitoringLocality.Entry entry : locality.getEntries()) {
+			result.append(entry.getLevel());
+			result.append("\t").append(entry.getHost());
+			result.append("\t").append(entry.getTasks());
+			result.append("\t").append(nf.format(100 * entry.getTasks() / tasks)).append("%");
+			result.append("\t").append(nf.format(entry.getMillis() / 1000D)).append("s");
+			result.append("\t").append(nf.format(100 * entry.getMillis() / millis)).append("%");
+			result.append("\t").append(nf.format((double) entry.getMillis() / entry.getTasks())).append("ms");
+			result.append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Occupancy of the executor slots of an application over its run: the
+	 * cores of the executors (removed ones included) against the running
+	 * tasks of all stages, read in one pass over the stages with their tasks
+	 * 
+	 * @param query
+	 *            ?buckets=&lt;n&gt; or empty
+	 * @return Result in TABLE type, one row per bucket then the total
+	 */
+	private InterpreterResult getUtilization(String applicationRef, String query) throws Exception {
+		int buckets = UTILIZATION_BUCKETS;
+		for (String param : StringUtils.split(query.replace("?", ""), "&")) {
+			if (param.startsWith("buckets=")) {
+				buckets = Integer.parseInt(param.substring("buckets=".length()));
+			}
+		}
+		String applicationId = getApplicationId(applicationRef);
+		if (applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		String baseUrl = getBaseUrl();
+		String applicationUrl = "/applications/" + applicationId;
+		long now = System.currentTimeMillis();
+		// the removed executors are listed by /allexecutors only, not known by old servers
+		List<String> lsItem = fetchItems(baseUrl, applicationUrl + "/allexecutors");
+		if (lsItem.isEmpty()) {
+			lsItem = fetchItems(baseUrl, applicationUrl + "/executors");
+		}
+		List<SparkMonitoringExecutor> lsExecutor = parseExecutors(lsItem);
+		SparkMonitoringApplication app = getApplicationIndex(getPrefixKey()).get(applicationId);
+		Long start = app != null ? app.getStartTimeMilis() : null;
+		for (SparkMonitoringExecutor executor : lsExecutor) {
+			if (executor.getAddTimeMilis() != null && (start == null || executor.getAddTimeMilis() < start)) {
+				start = executor.getAddTimeMilis();
+			}
+		}
+		if (start == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown start of " + applicationId);
+		}
+		long end = app != null && Boolean.TRUE.equals(app.getCompleted()) && app.getEndTimeMilis() != null
+				&& app.getEndTimeMilis() > start ? app.getEndTimeMilis() : now;
+		final SparkMonitoringSlotUsage usage = new SparkMonitoringSlotUsage(start, end, buckets);
+		for (SparkMonitoringExecutor executor : lsExecutor) {
+			usage.addCores(executor.getAddTimeMilis() != null ? executor.getAddTimeMilis() : start,
+					executor.getRemoveTimeMilis() != null ? executor.getRemoveTimeMilis() : end,
+					executor.getTotalCores());
+		}
+		
+		// the tasks in the details of the stages, added as they are read
+		final long taskEnd = end;
+		EntityHandler handler = new EntityHandler("taskId") {
+			@Override
+			protected void entity(List<String> lsItem) {
+				// the fields of the stages are before their first task
+				if (!"taskId".equalsIgnoreCase(lsItem.get(0))) {
+					return;
+				}
+				Long launchTime = null;
+				Long duration = null;
+				for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+					String key = lsItem.get(i);
+					if ("launchTime".equalsIgnoreCase(key) && launchTime == null) {
+						launchTime = parseSourceTime(lsItem.get(i + 1));
+					} else if ("duration".equalsIgnoreCase(key) && duration == null) {
+						duration = Long.parseLong(lsItem.get(i + 1));
+					}
+				}
+				if (launchTime != null) {
+					usage.addTask(launchTime, duration != null ? launchTime + duration : taskEnd);
+				}
+			}
+		};
+		streamItems(baseUrl, applicationUrl + "/stages?details=true", handler);
+		handler.finish();
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		SimpleDateFormat displayFormat = new SimpleDateFormat(displayDateTimeFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Time\tAllocated Cores\tRunning Tasks\tUtilization\tWasted Core-Seconds");
+		result.append("\n");
+		for (int i = 0; i < usage.getBuckets(); i++) {
+			appendUtilization(result, displayFormat.format(new Date(usage.getBucketStart(i))),
+					usage.getCoreMillis(i), usage.getTaskMillis(i), usage.getBucketMillis(i), nf);
+		}
+		appendUtilization(result, "total (" + usage.getTasks() + " tasks)", usage.getTotalCoreMillis(),
+				usage.getTotalTaskMillis(), usage.getMillis(), nf);
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private void appendUtilization(StringBuffer result, String time, double coreMillis, double taskMillis,
+			long millis, NumberFormat nf) {
+		result.append(time);
+		// average cores and tasks over the bucket
+		result.append("\t").append(nf.format(coreMillis / millis));
+		result.append("\t").append(nf.format(taskMillis / millis));
+		result.append("\t").append(coreMillis > 0 ? nf.format(100 * taskMillis / coreMillis) + "%" : "-");
+		result.append("\t").append(nf.format(Math.max(0, coreMillis - taskMillis) / 1000));
+		result.append("\n");
+	}
+	
+	/**
+	 * Estimated memory of the shared keys and values of the responses, and
+	 * the memory saved by sharing them and by cutting the stage details
+	 * 
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getMemory() {
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Structure\tEntries\tRetained\tSaved");
+		result.append("\n");
+		if (stringPool != null) {
+			result.append("string pool");
+			result.append("\t").append(stringPool.size());
+			result.append("\t").append(nf.format(stringPool.getPooledBytes() / 1000D) + "KB");
+			result.append("\t").append(nf.format(stringPool.getSavedBytes() / 1000D) + "KB");
+			result.append(" (" + stringPool.getHits() + "/" + stringPool.getLookups() + " shared)");
+			result.append("\n");
+		}
+		result.append("stage details");
+		result.append("\t").append(truncatedDetails.get());
+		result.append("\t-");
+		result.append("\t").append(nf.format(truncatedDetailsBytes.get() / 1000D) + "KB");
+		result.append("\n");
+		if (memoryBudget == null) {
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		}
+		for (SparkMonitoringMemoryBudget.Account account : memoryBudget.getAccounts()) {
+			if (!(account instanceof SparkMonitoringSpillCache)) {
+				continue;
+			}
+			SparkMonitoringSpillCache<?> cache = (SparkMonitoringSpillCache<?>) account;
+			result.append(cache.getName());
+			result.append("\t").append(cache.size());
+			result.append("\t").append(nf.format(cache.estimateBytes() / 1000D) + "KB");
+			result.append("\t").append(cache.getSpilled() + " spilled, "
+					+ nf.format(cache.getSpilledBytes() / 1000D) + "KB written");
+			result.append("\n");
+		}
+		long idsBytes = 0;
+		synchronized (mapApplication) {
+			for (SparkMonitoringApplicationIndex index : mapApplication.values()) {
+				idsBytes += index.estimateBytes();
+			}
+		}
+		result.append("job and stage ids");
+		result.append("\t-");
+		result.append("\t").append(nf.format(idsBytes / 1000D) + "KB");
+		result.append("\t-");
+		result.append("\n");
+		result.append("memory budget");
+		result.append("\t").append(memoryBudget.getEvictions() + " evicted");
+		result.append("\t").append(nf.format(memoryBudget.getUsedBytes() / 1000000D) + "MB/"
+				+ nf.format(memoryBudget.getBudgetBytes() / 1000000D) + "MB");
+		result.append("\t").append(nf.format(memoryBudget.getEvictedBytes() / 1000D) + "KB evicted, "
+				+ memoryBudget.getTruncatedQueries() + " truncated responses");
+		result.append("\n");
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Streaming commands: statistics (default), batches or receivers of a
+	 * streaming application. The completed batches are added to the rolling
+	 * window of the application each time they are fetched
+	 * 
+	 * @param view
+	 *            statistics, batches or receivers
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getStreaming(String applicationRef, String view) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		final String baseUrl = getBaseUrl();
+		final String streamingUrl = "/applications/" + applicationId + "/streaming";
+		if ("receivers".equalsIgnoreCase(view)) {
+			return getReceivers(fetchItems(baseUrl, streamingUrl + "/receivers"));
+		}
+		boolean statistics = "statistics".equalsIgnoreCase(view);
+		if (!statistics && !"batches".equalsIgnoreCase(view)) {
+			return processHelp(InterpreterResult.Code.ERROR, "Unknown streaming view " + view);
+		}
+		// statistics are fetched while the batches are
+		FutureTask<List<String>> statisticsItems = null;
+		if (statistics) {
+			statisticsItems = startFetch(baseUrl, streamingUrl + "/statistics");
+		}
+		List<SparkMonitoringStreamingBatch> lsBatch = parseBatches(fetchItems(baseUrl, streamingUrl + "/batches"));
+		// Spark lists the latest batch first
+		Collections.reverse(lsBatch);
+		SparkMonitoringStreamingWindow window = getStreamingWindow(applicationId);
+		window.addBatches(lsBatch);
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		if (!statistics) {
+			SimpleDateFormat dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault());
+			result.append("Batch Time\tStatus\tInput Records\tInput Rate\tScheduling Delay\tProcessing Time"
+					+ "\tTotal Delay\tFailed Output Ops\tOverloaded");
+			result.append("\n");
+			for (int i = lsBatch.size() - 1; i >= 0; i--) {
+				SparkMonitoringStreamingBatch batch = lsBatch.get(i);
+				result.append(batch.getBatchTimeMilis() != null
+						? dateFm.format(new Date(batch.getBatchTimeMilis())) : batch.getId());
+				result.append("\t").append(batch.getStatus());
+				result.append("\t").append(batch.getInputSize());
+				result.append("\t").append(nf.format(batch.getInputRate()) + "/s");
+				result.append("\t").append(formatMillis(batch.getSchedulingDelay(), nf));
+				result.append("\t").append(formatMillis(batch.getProcessingTime(), nf));
+				result.append("\t").append(formatMillis(batch.getTotalDelay(), nf));
+				result.append("\t").append(batch.getNumFailedOutputOps());
+				result.append("\t").append(batch.isOverloaded());
+				result.append("\n"); // new row
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		}
+		
+		Map<String, String> serverStatistics = new HashMap<>();
+		List<String> lsItem = awaitFetch(statisticsItems, streamingUrl + "/statistics");
+		for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+			serverStatistics.put(lsItem.get(i), lsItem.get(i + 1));
+		}
+		if (serverStatistics.containsKey("batchDuration")) {
+			window.setBatchDurationMilis(Long.parseLong(serverStatistics.get("batchDuration")));
+		}
+		long batchDuration = window.getBatchDurationMilis();
+		result.append("Metric\tLast\tWindow Average\tWindow Max\tApplication Average\tStatus");
+		result.append("\n");
+		appendStreamingRow(result, "Scheduling Delay", window.getSchedulingDelay(),
+				serverStatistics.get("avgSchedulingDelay"), "ms", nf);
+		result.append("\t").append(window.getSchedulingDelay()[0] > batchDuration && batchDuration > 0
+				? "DELAYED" : "OK");
+		result.append("\n");
+		appendStreamingRow(result, "Processing Time", window.getProcessingTime(),
+				serverStatistics.get("avgProcessingTime"), "ms", nf);
+		result.append("\t").append(window.isOverloaded() ? "OVERLOADED (" + window.getOverloadedBatches() + "/"
+				+ window.size() + " batches > " + batchDuration + "ms)" : "OK");
+		result.append("\n");
+		appendStreamingRow(result, "Input Rate", window.getInputRate(), serverStatistics.get("avgInputRate"),
+				"/s", nf);
+		result.append("\t");
+		result.append("\n");
+		result.append("Batch Interval\t").append(batchDuration).append("ms\t\t\t\t");
+		result.append("\n");
+		result.append("Active Receivers\t").append(serverStatistics.get("numActiveReceivers")).append("/")
+				.append(serverStatistics.get("numReceivers")).append("\t\t\t\t");
+		result.append("\n");
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Append metric, last, window average, window max and application average
+	 */
+	private void appendStreamingRow(StringBuffer result, String metric, double[] window, String applicationAverage,
+			String unit, NumberFormat nf) {
+		result.append(metric);
+		for (double value : window) {
+			result.append("\t").append(Double.isNaN(value) ? "-" : nf.format(value) + unit);
+		}
+		result.append("\t").append(applicationAverage != null && !"null".equals(applicationAverage)
+				? nf.format(Double.parseDouble(applicationAverage)) + unit : "-");
+	}
+	
+	private String formatMillis(Long millis, NumberFormat nf) {
+		return millis != null ? nf.format(millis) + "ms" : "-";
+	}
+	
+	private SparkMonitoringStreamingWindow getStreamingWindow(String applicationId) {
+		String key = getPrefixKey() + "|" + applicationId;
+		SparkMonitoringStreamingWindow window = streamingWindows.get(key);
+		if (window == null) {
+			window = new SparkMonitoringStreamingWindow(
+					Integer.parseInt(getDefaultProperty(SPARK_MONITORING_STREAMING_WINDOW, "120")));
+			SparkMonitoringStreamingWindow previous = streamingWindows.putIfAbsent(key, window);
+			if (previous != null) {
+				window = previous;
+			}
+		}
+		return window;
+	}
+	
+	/**
+	 * Receivers of a streaming application
+	 * 
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getReceivers(List<String> lsItem) {
+		// fields of each receiver, the absent fields (e.g. no error) are not listed
+		List<Map<String, String>> lsReceiver = new ArrayList<>();
+		Map<String, String> receiver = new HashMap<>();
+		for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+			String key = lsItem.get(i);
+			if ("streamId".equalsIgnoreCase(key)) {
+				// start a new receiver
+				receiver = new HashMap<>();
+				lsReceiver.add(receiver);
+			}
+			receiver.put(key, lsItem.get(i + 1));
+		}
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Stream Id\tName\tActive\tExecutor\tHost\tAverage Event Rate\tLast Error");
+		result.append("\n");
+		for (Map<String, String> fields : lsReceiver) {
+			result.append(fields.get("streamId"));
+			result.append("\t").append(getOrDash(fields, "streamName"));
+			result.append("\t").append(getOrDash(fields, "isActive"));
+			result.append("\t").append(getOrDash(fields, "executorId"));
+			result.append("\t").append(getOrDash(fields, "executorHost"));
+			String rate = fields.get("avgEventRate");
+			result.append("\t").append(rate != null ? nf.format(Double.parseDouble(rate)) + "/s" : "-");
+			result.append("\t").append(getOrDash(fields, "lastErrorMessage"));
+			result.append("\n"); // new row
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private String getOrDash(Map<String, String> fields, String key) {
+		String value = fields.get(key);
+		return value != null ? value : "-";
+	}
+	
+	/**
+	 * Compare the jobs and stages of runs of an application: the last run
+	 * against the first one, or against the average of the previous ones
+	 * 
+	 * @param args
+	 *            &lt;application_id&gt; &lt;application_id&gt; or name=&lt;name&gt; [last=&lt;n&gt;]
+	 * @return Result in TABLE type, largest duration regression first
+	 */
+	private InterpreterResult compare(String args) throws Exception {
+		final List<String> applicationIds = new ArrayList<>();
+		Matcher nameMatcher = COMPARE_NAME.matcher(args);
+		if (nameMatcher.matches()) {
+			String name = nameMatcher.group(1).trim();
+			int last = nameMatcher.group(2) != null ? Integer.parseInt(nameMatcher.group(2)) : 2;
+			SparkMonitoringApplicationIndex index = getApplicationIndex(getPrefixKey());
+			// the runs started since the last listing are listed
+			getApplications("/applications");
+			for (SparkMonitoringApplication app : index.search(name, null, null, null)) {
+				if (name.equalsIgnoreCase(app.getName()) && applicationIds.size() < last) {
+					applicationIds.add(0, app.getId());
+				}
+			}
+			if (applicationIds.size() < 2) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR,
+						"Less than 2 runs of " + name + " are found");
+			}
+		} else {
+			String[] refs = StringUtils.split(args, " ");
+			if (refs.length != 2) {
+				return processHelp(InterpreterResult.Code.ERROR, "Wrong compare command");
+			}
+			for (String ref : refs) {
+				applicationIds.add(getApplicationId(ref));
+			}
+		}
+		
+		// fetch the runs in parallel, fetch threads do not know the prefix
+		final String baseUrl = getBaseUrl();
+		final String prefix = getPrefixKey();
+		final SparkMonitoringApplicationIndex index = getApplicationIndex(prefix);
+		// same end for the running jobs and stages of all runs
+		final long now = System.currentTimeMillis();
+		List<Future<SparkMonitoringRunSummary>> futures = new ArrayList<>();
+		for (final String applicationId : applicationIds) {
+			futures.add(submitFetchTask(new Callable<SparkMonitoringRunSummary>() {
+				@Override
+				public SparkMonitoringRunSummary call() throws Exception {
+					SparkMonitoringApplication app = index.get(applicationId);
+					return getRunSummary(baseUrl, prefix, applicationId,
+							app != null && Boolean.TRUE.equals(app.getCompleted()), now);
+				}
+			}));
+		}
+		List<SparkMonitoringRunSummary> runs = new ArrayList<>();
+		for (int i = 0; i < futures.size(); i++) {
+			runs.add(awaitFetchTask(futures.get(i), "Summary of " + applicationIds.get(i)));
+		}
+		final SparkMonitoringRunSummary run = runs.remove(runs.size() - 1);
+		final SparkMonitoringRunSummary baseline = runs.size() == 1 ? runs.get(0)
+				: SparkMonitoringRunSummary.average(runs.size() + " runs", runs);
+		
+		// aligned entries of both, and the entries of only one of them
+		Set<String> keys = new LinkedHashSet<>();
+		for (SparkMonitoringRunSummary.Entry entry : baseline.getEntries()) {
+			keys.add(entry.getKey());
+		}
+		for (SparkMonitoringRunSummary.Entry entry : run.getEntries()) {
+			keys.add(entry.getKey());
+		}
+		List<String> sortedKeys = new ArrayList<>(keys);
+		Collections.sort(sortedKeys, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return Double.compare(getDurationDelta(baseline, run, o2), getDurationDelta(baseline, run, o1));
+			}
+		});
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Job\tStage\tName\tBaseline (" + baseline.getApplicationId() + ")\tRun ("
+				+ run.getApplicationId() + ")\tDuration Delta\tInput Delta\tShuffle Read Delta"
+				+ "\tShuffle Write Delta\tTasks Delta");
+		result.append("\n");
+		for (String key : sortedKeys) {
+			SparkMonitoringRunSummary.Entry before = baseline.get(key);
+			SparkMonitoringRunSummary.Entry after = run.get(key);
+			SparkMonitoringRunSummary.Entry entry = after != null ? after : before;
+			result.append(entry.getJob());
+			result.append("\t").append(entry.getStage() != null ? entry.getStage() : "-");
+			result.append("\t").append(entry.getName());
+			result.append("\t").append(before != null ? nf.format(before.getDuration() / 1000D) + "s" : "missing");
+			result.append("\t").append(after != null ? nf.format(after.getDuration() / 1000D) + "s" : "missing");
+			double durationDelta = getDurationDelta(baseline, run, key);
+			String percent = before != null && after != null && before.getDuration() > 0
+					? " (" + formatDelta(durationDelta * 100 / before.getDuration(), nf) + "%)" : "";
+			result.append("\t").append(formatDelta(durationDelta / 1000D, nf) + "s" + percent);
+			result.append("\t").append(formatDelta(((after != null ? after.getInputBytes() : 0)
+					- (before != null ? before.getInputBytes() : 0)) / 1000000D, nf) + "MB");
+			result.append("\t").append(formatDelta(((after != null ? after.getShuffleReadBytes() : 0)
+					- (before != null ? before.getShuffleReadBytes() : 0)) / 1000000D, nf) + "MB");
+			result.append("\t").append(formatDelta(((after != null ? after.getShuffleWriteBytes() : 0)
+					- (before != null ? before.getShuffleWriteBytes() : 0)) / 1000000D, nf) + "MB");
+			result.append("\t").append(formatDelta((after != null ? after.getNumTasks() : 0)
+					- (before != null ? before.getNumTasks() : 0), nf));
+			result.append("\n"); // new row
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private double getDurationDelta(SparkMonitoringRunSummary baseline, SparkMonitoringRunSummary run, String key) {
+		SparkMonitoringRunSummary.Entry before = baseline.get(key);
+		SparkMonitoringRunSummary.Entry after = run.get(key);
+		return (after != null ? after.getDuration() : 0) - (before != null ? before.getDuration() : 0);
+	}
+	
+	private String formatDelta(double delta, NumberFormat nf) {
+		String formatted = nf.format(delta);
+		if (formatted.matches("-?0")) {
+			// rounded to 0
+			return "0";
+		}
+		return (delta > 0 ? "+" : "") + formatted;
+	}
+	
+	/**
+	 * Summary of the jobs and stages of a run, from the summaries of the
+	 * completed runs if already compared: a completed run does not change
+	 */
+	private SparkMonitoringRunSummary getRunSummary(String baseUrl, String prefix, String applicationId,
+			boolean completed, long now) throws IOException {
+		String key = prefix + "|" + applicationId;
+		SparkMonitoringRunSummary summary = runSummaries.get(key);
+		if (summary != null) {
+			return summary;
+		}
+		String applicationUrl = "/applications/" + applicationId;
+		// jobs and stages fetched together
+		FutureTask<List<String>> stageItems = startFetch(baseUrl, applicationUrl + "/stages");
+		List<SparkMonitoringJob> lsJob = parseJobs(fetchItems(baseUrl, applicationUrl + "/jobs"));
+		List<SparkMonitoringStage> lsStage = parseStages(awaitFetch(stageItems, applicationUrl + "/stages"));
+		summary = SparkMonitoringRunSummary.create(applicationId, lsJob, lsStage, now);
+		if (completed) {
+			runSummaries.put(key, summary);
+		}
+		return summary;
+	}
+	
+	/**
+	 * Driver metrics of the metrics servlet: the latest sample of the metrics
+	 * (filtered by part of their name), or the samples of one metric
+	 * 
+	 * @param args
+	 *            empty, &lt;filter&gt; or history &lt;metric&gt;
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getDriverMetrics(String args) throws Exception {
+		String baseUrl = getBaseUrl();
+		SparkMonitoringMetricsHistory history = getMetricsHistory(baseUrl);
+		NumberFormat nf = new DecimalFormat("#.###");
+		StringBuffer result = new StringBuffer();
+		if (args.startsWith("history")) {
+			String name = args.substring("history".length()).trim();
+			List<double[]> samples = history.getSeries(name);
+			if (samples.isEmpty()) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "No sample of metric " + name);
+			}
+			Map<Long, Double> responseTimes = new HashMap<>();
+			for (double[] sample : history.getSeries(SparkMonitoringMetricsHistory.REST_RESPONSE_TIME)) {
+				responseTimes.put((long) sample[0], sample[1]);
+			}
+			SimpleDateFormat dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault());
+			result.append("Time\t").append(name).append("\tREST Response Time");
+			result.append("\n");
+			for (double[] sample : samples) {
+				Double responseTime = responseTimes.get((long) sample[0]);
+				result.append(dateFm.format(new Date((long) sample[0])));
+				result.append("\t").append(nf.format(sample[1]));
+				result.append("\t").append(responseTime != null ? nf.format(responseTime) + "ms" : "-");
+				result.append("\n"); // new row
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		}
+		
+		List<SparkMonitoringMetric> lsMetric = sampleDriverMetrics(baseUrl, getServerUrl());
+		result.append("Metric\tType\tValue\tCount\tUnit\tSamples\tMin\tMax");
+		result.append("\n");
+		String filter = args.toLowerCase();
+		for (SparkMonitoringMetric metric : lsMetric) {
+			if (!metric.getName().toLowerCase().contains(filter)) {
+				continue;
+			}
+			double[] range = history.getRange(metric.getName());
+			result.append(metric.getName());
+			result.append("\t").append(metric.getType());
+			result.append("\t").append(nf.format(metric.getValue()));
+			result.append("\t").append(metric.getCount());
+			result.append("\t").append(metric.getUnit() != null ? metric.getUnit() : "-");
+			result.append("\t").append(history.getSeries(metric.getName()).size());
+			result.append("\t").append(range != null ? nf.format(range[0]) : "-");
+			result.append("\t").append(range != null ? nf.format(range[1]) : "-");
+			result.append("\n"); // new row
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Fetch the driver metrics and add them to the samples of the driver
+	 * 
+	 * @param baseUrl
+	 *            REST api of the driver, key of its samples
+	 * @param serverUrl
+	 *            http://host:port of the driver
+	 */
+	private List<SparkMonitoringMetric> sampleDriverMetrics(String baseUrl, String serverUrl) throws IOException {
+		List<SparkMonitoringMetric> lsMetric;
+		try {
+			lsMetric = SparkMonitoringMetric.parse(readBody(serverUrl + "/metrics/json"));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		for (SparkMonitoringMetric metric : lsMetric) {
+			// <application_id>.driver.<source>.<name>: the same name for all runs
+			int driver = metric.getName().indexOf(".driver.");
+			if (driver >= 0) {
+				metric.setName(intern(metric.getName().substring(driver + ".driver.".length())));
+			}
+		}
+		getMetricsHistory(baseUrl).record(System.currentTimeMillis(), lsMetric);
+		return lsMetric;
+	}
+	
+	/**
+	 * Background sampling of the driver of each prefix
+	 */
+	private void sampleAllDriverMetrics() {
+		for (String prefix : new ArrayList<>(propertiesMap.keySet())) {
+			prefixKey.set(prefix);
+			try {
+				sampleDriverMetrics(getBaseUrl(), getServerUrl());
+			} catch (Exception e) {
+				logger.debug("Sample driver metrics of {}: {}", prefix, e.getMessage());
+			} finally {
+				prefixKey.remove();
+			}
+		}
+	}
+	
+	private SparkMonitoringMetricsHistory getMetricsHistory(String baseUrl) {
+		SparkMonitoringMetricsHistory history = metricsHistories.get(baseUrl);
+		if (history == null) {
+			history = new SparkMonitoringMetricsHistory(
+					Integer.parseInt(getDefaultProperty(SPARK_MONITORING_METRICS_SAMPLES, "360")), 1000);
+			SparkMonitoringMetricsHistory previous = metricsHistories.putIfAbsent(baseUrl, history);
+			if (previous != null) {
+				history = previous;
+			}
+		}
+		return history;
+	}
+	
+	/**
+	 * Alerts commands: list the fired alerts, list, add or remove the rules,
+	 * clear the alerts. Rules are evaluated each time jobs, stages or executors
+	 * are fetched, by a command or a /watch
+	 * 
+	 * @param args
+	 *            empty, rules, add &lt;name&gt; &lt;rule&gt;, remove &lt;name&gt; or clear
+	 */
+	private InterpreterResult alerts(String args) {
+		String[] alertItems = args.split("\\s+", 3);
+		String command = alertItems[0];
+		if (command.isEmpty()) {
+			SimpleDateFormat dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault());
+			NumberFormat nf = new DecimalFormat("#.###");
+			StringBuffer result = new StringBuffer();
+			result.append("Time\tRule\tApplication\tEntity\tValue\tCondition\tLast Seen\tActive");
+			result.append("\n");
+			for (SparkMonitoringAlert alert : alertEvaluator.getAlerts()) {
+				result.append(dateFm.format(new Date(alert.getFiredTimeMilis())));
+				result.append("\t").append(alert.getRuleName());
+				result.append("\t").append(alert.getApplicationId());
+				result.append("\t").append(alert.getEntity());
+				result.append("\t").append(nf.format(alert.getValue()));
+				result.append("\t").append(alert.getExpression());
+				result.append("\t").append(dateFm.format(new Date(alert.getLastSeenTimeMilis())));
+				result.append("\t").append(alert.isActive());
+				result.append("\n"); // new row
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		} else if ("rules".equalsIgnoreCase(command)) {
+			StringBuffer result = new StringBuffer();
+			result.append("Name\tRule");
+			result.append("\n");
+			for (SparkMonitoringAlertRule rule : alertEvaluator.getRules()) {
+				result.append(rule.getName()).append("\t").append(rule.getExpression()).append("\n");
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+					result.toString());
+		} else if ("add".equalsIgnoreCase(command) && alertItems.length == 3) {
+			try {
+				alertEvaluator.addRule(SparkMonitoringAlertRule.compile(alertItems[1], alertItems[2]));
+			} catch (IllegalArgumentException e) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, "Alert rule " + alertItems[1] + " added");
+		} else if ("remove".equalsIgnoreCase(command) && alertItems.length >= 2) {
+			if (!alertEvaluator.removeRule(alertItems[1])) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown alert rule " + alertItems[1]);
+			}
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, "Alert rule " + alertItems[1] + " removed");
+		} else if ("clear".equalsIgnoreCase(command)) {
+			alertEvaluator.clearAlerts();
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, "Alerts cleared");
+		}
+		return processHelp(InterpreterResult.Code.ERROR, "Wrong alerts command");
+	}
+	
+	/**
+	 * Run a query over the jobs, stages or executors of an application
+	 * 
+	 * @param text
+	 *            select ... from ... (see SparkMonitoringQuery)
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult query(String text) throws Exception {
+		SparkMonitoringQuery query = SparkMonitoringQuery.compile(text);
+		String applicationId = getApplicationId(query.getApplicationRef());
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		if (query.getVersion() != null) {
+			return querySnapshot(query, applicationId);
+		}
+		List<String> lsItem = fetchItems(getBaseUrl(), "/applications/" + applicationId + "/" + query.getSource());
+		List<?> rows;
+		if (SparkMonitoringQuery.JOBS.equals(query.getSource())) {
+			rows = parseJobs(lsItem);
+		} else if (SparkMonitoringQuery.STAGES.equals(query.getSource())) {
+			rows = parseStages(lsItem);
+		} else {
+			rows = parseExecutors(lsItem);
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				query.execute(rows, fetchExecutor));
+	}
+	
+	/**
+	 * Current outliers of the baselines of all prefixes, fed by the jobs and
+	 * stages fetched by any command
+	 * 
+	 * @return Result in TABLE type, largest |z-score| first
+	 */
+	private InterpreterResult getAnomalies() {
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		SimpleDateFormat displayFormat = new SimpleDateFormat(displayDateTimeFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Prefix\tKind\tName\tApplication\tId\tMetric\tValue\tBaseline\tZ-Score\tCompleted");
+		result.append("\n");
+		for (SparkMonitoringBaselines.Anomaly anomaly : baselines.getAnomalies()) {
+			result.append(anomaly.getPrefix());
+			result.append("\t").append(anomaly.getKind());
+			result.append("\t").append(anomaly.getName());
+			result.append("\t").append(anomaly.getApplicationId());
+			result.append("\t").append(anomaly.getId());
+			result.append("\t").append(anomaly.getMetric());
+			result.append("\t").append(formatBaselineValue(anomaly.getMetric(), anomaly.getValue(), nf));
+			result.append("\t").append(formatBaselineValue(anomaly.getMetric(), anomaly.getMean(), nf) + " +/- "
+					+ formatBaselineValue(anomaly.getMetric(), anomaly.getDeviation(), nf));
+			result.append("\t").append(nf.format(anomaly.getZScore()));
+			result.append("\t").append(displayFormat.format(new Date(anomaly.getTime())));
+			result.append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private String formatBaselineValue(String metric, double value, NumberFormat nf) {
+		if ("duration".equals(metric)) {
+			return nf.format(value / 1000) + "s";
+		} else if (metric.endsWith("bytes")) {
+			return nf.format(value / 1000000) + "MB";
+		}
+		return nf.format(value);
+	}
+	
+	/**
+	 * Sampling profiler of the executors: their thread dumps are read in
+	 * parallel every interval during the duration, and the stacks of the
+	 * sampled threads are aggregated
+	 * 
+	 * @param args
+	 *            &lt;stage_id|executors&gt; [duration] [interval] [methods|tree|collapsed]
+	 * @return Result in TABLE type (methods, tree) or TEXT type (collapsed)
+	 */
+	private InterpreterResult profile(String args) throws Exception {
+		Matcher matcher = PROFILE.matcher(args);
+		if (!matcher.matches()) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR,
+					"Wrong syntax, expected /profile <stage_id|executors> [duration] [interval] [methods|tree|collapsed]");
+		}
+		final String target = matcher.group(1);
+		long durationMillis = (long) (1000 * (matcher.group(2) != null ? Double.parseDouble(matcher.group(2)) : 10));
+		long intervalMillis = Math.max(MIN_PROFILE_INTERVAL_MILLIS,
+				(long) (1000 * (matcher.group(3) != null ? Double.parseDouble(matcher.group(3)) : 1)));
+		String view = matcher.group(4) != null ? matcher.group(4) : "methods";
+		String applicationId = getApplicationId(null);
+		if (applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		String baseUrl = getBaseUrl();
+		String applicationUrl = "/applications/" + applicationId;
+		
+		// executors to sample and their threads
+		Set<String> executorIds = new LinkedHashSet<>();
+		SparkMonitoringThreadProfile.ThreadFilter filter;
+		if ("executors".equals(target)) {
+			for (SparkMonitoringExecutor executor : parseExecutors(fetchItems(baseUrl, applicationUrl + "/executors"))) {
+				if (executor.isActive()) {
+					executorIds.add(executor.getId());
+				}
+			}
+			filter = new SparkMonitoringThreadProfile.ThreadFilter() {
+				@Override
+				public boolean accept(String threadName, String threadState) {
+					return SparkMonitoringThreadProfile.RUNNABLE.equals(threadState);
+				}
+			};
+		} else {
+			// running tasks of the last attempt of the stage
+			String attemptId = getLastStageAttempt(baseUrl, applicationId, target);
+			if (attemptId == null) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown stage " + target);
+			}
+			List<String> lsItem = fetchItems(baseUrl, applicationUrl + "/stages/" + target + "/" + attemptId
+					+ "/taskList?status=running&length=" + MAX_TASK_LIST_LENGTH);
+			final Set<String> taskIds = new HashSet<>();
+			// the server may ignore the status filter
+			String taskId = null;
+			String executorId = null;
+			for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+				String key = lsItem.get(i);
+				if ("taskId".equalsIgnoreCase(key)) {
+					taskId = lsItem.get(i + 1);
+					executorId = null;
+				} else if ("executorId".equalsIgnoreCase(key)) {
+					executorId = lsItem.get(i + 1);
+				} else if ("status".equalsIgnoreCase(key) && "RUNNING".equalsIgnoreCase(lsItem.get(i + 1))
+						&& taskId != null && executorId != null) {
+					taskIds.add(taskId);
+					executorIds.add(executorId);
+				}
+			}
+			if (taskIds.isEmpty()) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Stage " + target + " has no running task");
+			}
+			// task threads in any state: the time waiting for shuffle blocks is profiled too
+			filter = new SparkMonitoringThreadProfile.ThreadFilter() {
+				@Override
+				public boolean accept(String threadName, String threadState) {
+					Matcher taskMatcher = TASK_THREAD.matcher(threadName);
+					if (!taskMatcher.matches()) {
+						return false;
+					}
+					return taskMatcher.group(2) != null ? target.equals(taskMatcher.group(2))
+							: taskIds.contains(taskMatcher.group(1));
+				}
+			};
+		}
+		if (executorIds.isEmpty()) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "No active executor");
+		}
+		
+		// sample the executors every interval, until the duration or cancel
+		final SparkMonitoringThreadProfile profile = new SparkMonitoringThreadProfile(
+				Integer.parseInt(getDefaultProperty(SPARK_MONITORING_PROFILE_STACKS, "10000")));
+		final SparkMonitoringThreadProfile.ThreadFilter threadFilter = filter;
+		AtomicBoolean cancelled = cancelFlag.get() != null ? cancelFlag.get() : new AtomicBoolean(false);
+		long deadline = System.currentTimeMillis() + durationMillis;
+		int failedDumps = 0;
+		String lastError = null;
+		List<String> lsExecutorId = new ArrayList<>(executorIds);
+		while (!cancelled.get()) {
+			long roundStart = System.currentTimeMillis();
+			// at most MAX_PROFILE_FETCHES dumps in flight, the next one starts when one is read
+			List<Future<Integer>> futures = new ArrayList<>();
+			int next = 0;
+			while (!cancelled.get() && (next < lsExecutorId.size() || !futures.isEmpty())) {
+				if (next < lsExecutorId.size() && futures.size() < MAX_PROFILE_FETCHES) {
+					final String url = baseUrl + applicationUrl + "/executors/" + lsExecutorId.get(next++) + "/threads";
+					futures.add(submitFetchTask(new Callable<Integer>() {
+						@Override
+						public Integer call() throws Exception {
+							return profile.addThreadDump(readBody(url), threadFilter);
+						}
+					}));
+					continue;
+				}
+				try {
+					awaitFetchTask(futures.remove(0), "Thread dump");
+				} catch (Exception e) {
+					if (!cancelled.get()) {
+						// e.g. executor lost, or thread dumps disabled (spark.ui.threadDumpsEnabled)
+						failedDumps++;
+						lastError = e.getMessage();
+					}
+				}
+			}
+			for (Future<Integer> future : futures) {
+				future.cancel(true);
+			}
+			long wakeUp = roundStart + intervalMillis;
+			if (wakeUp >= deadline) {
+				break;
+			}
+			while (!cancelled.get() && System.currentTimeMillis() < wakeUp) {
+				Thread.sleep(Math.min(100L, intervalMillis));
+			}
+		}
+		if (profile.getDumps() == 0) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "No thread dump read: " + lastError);
+		}
+		Set<String> warnings = commandWarnings.get();
+		if (warnings != null && failedDumps > 0) {
+			warnings.add(failedDumps + " thread dumps not read: " + lastError);
+		}
+		if (warnings != null && profile.getDroppedSamples() > 0) {
+			warnings.add(profile.getDroppedSamples() + " samples not profiled: more than "
+					+ profile.getStacks() + " distinct stacks");
+		}
+		
+		if ("collapsed".equals(view)) {
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TEXT,
+					profile.toCollapsed());
+		}
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		long samples = Math.max(1L, profile.getSamples() - profile.getDroppedSamples());
+		StringBuffer result = new StringBuffer();
+		if ("tree".equals(view)) {
+			result.append("Depth\tFrame\tSamples\tPercent");
+			result.append("\n");
+			// nodes under 1% of the samples are not shown
+			for (SparkMonitoringThreadProfile.TreeNode node : profile.getTree(Math.max(1L, samples / 100))) {
+				result.append(node.getDepth());
+				result.append("\t").append(StringUtils.repeat("  ", node.getDepth())).append(node.getFrame());
+				result.append("\t").append(node.getSamples());
+				result.append("\t").append(nf.format(100D * node.getSamples() / samples)).append("%");
+				result.append("\n");
+			}
+		} else {
+			result.append("Method\tSelf Samples\tSelf Percent\tTotal Samples\tTotal Percent");
+			result.append("\n");
+			List<SparkMonitoringThreadProfile.Method> lsMethod = profile.getMethods();
+			for (SparkMonitoringThreadProfile.Method method : lsMethod.subList(0,
+					Math.min(MAX_PROFILE_METHODS, lsMethod.size()))) {
+				result.append(method.getName());
+				result.append("\t").append(method.getSelfSamples());
+				result.append("\t").append(nf.format(100D * method.getSelfSamples() / samples)).append("%");
+				result.append("\t").append(method.getTotalSamples());
+				result.append("\t").append(nf.format(100D * method.getTotalSamples() / samples)).append("%");
+				result.append("\n");
+			}
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Failed tasks grouped by the signature of their error: the failed task
+	 * lists of the stage attempts with failures are streamed in parallel and
+	 * each failure is counted in its signature as it is read
+	 * 
+	 * @param args
+	 *            empty for all stages of the application, &lt;stage_id&gt; or job &lt;job_id&gt;
+	 * @return Result in TABLE type, one row per signature, most failures first
+	 */
+	private InterpreterResult failures(String args) throws Exception {
+		Matcher matcher = FAILURES.matcher(args);
+		if (!matcher.matches() || (matcher.group(1) != null && matcher.group(2) == null)) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR,
+					"Wrong syntax, expected /failures [stage_id|job <job_id>]");
+		}
+		String applicationId = getApplicationId(null);
+		if (applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		// resolve the url now, fetch threads do not know the prefix
+		final String baseUrl = getBaseUrl();
+		final String applicationUrl = "/applications/" + applicationId;
+		
+		// stage attempts with failed tasks
+		List<SparkMonitoringStage> lsStage = new ArrayList<>();
+		if (matcher.group(1) != null) {
+			List<SparkMonitoringJob> lsJob = parseJobs(fetchItems(baseUrl, applicationUrl + "/jobs/" + matcher.group(2)));
+			if (lsJob.isEmpty()) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Job " + matcher.group(2) + " is not found");
+			}
+			List<String> stageIds = lsJob.get(0).getStageIds() != null ? lsJob.get(0).getStageIds()
+					: new ArrayList<String>();
+			List<FutureTask<List<String>>> fetches = new ArrayList<>();
+			for (String stageId : stageIds) {
+				fetches.add(startFetch(baseUrl, applicationUrl + "/stages/" + stageId));
+			}
+			for (int i = 0; i < fetches.size(); i++) {
+				lsStage.addAll(parseStages(awaitFetch(fetches.get(i), applicationUrl + "/stages/" + stageIds.get(i))));
+			}
+		} else if (matcher.group(2) != null) {
+			lsStage = parseStages(fetchItems(baseUrl, applicationUrl + "/stages/" + matcher.group(2)));
+			if (lsStage.isEmpty()) {
+				return new InterpreterResult(InterpreterResult.Code.ERROR, "Unknown stage " + matcher.group(2));
+			}
+		} else {
+			lsStage = parseStages(fetchItems(baseUrl, applicationUrl + "/stages"));
+		}
+		List<SparkMonitoringStage> lsFailedStage = new ArrayList<>();
+		for (SparkMonitoringStage stage : lsStage) {
+			if (stage.getNumFailedTasks() > 0) {
+				lsFailedStage.add(stage);
+			}
+		}
+		
+		// one pass over the failed tasks of each attempt, the attempts in parallel
+		final SparkMonitoringFailureSignatures signatures = new SparkMonitoringFailureSignatures(
+				Integer.parseInt(getDefaultProperty(SPARK_MONITORING_FAILURES_SIGNATURES, "1000")));
+		List<Future<Void>> futures = new ArrayList<>();
+		for (SparkMonitoringStage stage : lsFailedStage) {
+			final String stageId = stage.getId();
+			final String restUrl = applicationUrl + "/stages/" + stageId + "/" + stage.getAttemptId()
+					+ "/taskList?status=failed&offset=0&length=" + MAX_TASK_LIST_LENGTH;
+			futures.add(submitFetchTask(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					final AtomicBoolean cancelled = cancelFlag.get();
+					EntityHandler handler = new EntityHandler("taskId") {
+						@Override
+						protected void entity(List<String> lsItem) throws IOException {
+							// a large task list stops being read on cancel
+							if (cancelled != null && cancelled.get()) {
+								throw new IOException("Fetch of " + restUrl + " is cancelled");
+							}
+							String status = null;
+							String errorMessage = null;
+							String executorId = null;
+							Long launchTime = null;
+							Long duration = null;
+							for (int i = 0; i + 1 < lsItem.size(); i += 2) {
+								String key = lsItem.get(i);
+								String value = lsItem.get(i + 1);
+								if ("status".equalsIgnoreCase(key)) {
+									status = value;
+								} else if ("errorMessage".equalsIgnoreCase(key)) {
+									errorMessage = value;
+								} else if ("executorId".equalsIgnoreCase(key)) {
+									executorId = value;
+								} else if ("launchTime".equalsIgnoreCase(key)) {
+									launchTime = parseSourceTime(value);
+								} else if ("duration".equalsIgnoreCase(key)) {
+									duration = Long.parseLong(value);
+								}
+							}
+							// the server may ignore the status filter
+							if ("FAILED".equalsIgnoreCase(status)) {
+								// boxed, the launch time may be missing
+								signatures.add(errorMessage != null ? errorMessage : "(no error message)", stageId,
+										executorId, launchTime != null && duration != null
+												? Long.valueOf(launchTime + duration) : launchTime);
+							}
+						}
+					};
+					streamItems(baseUrl, restUrl, handler);
+					handler.finish();
+					return null;
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				awaitFetchTask(futures.get(i), "Failed tasks of stage " + lsFailedStage.get(i).getId());
+			}
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+		if (signatures.getFailures() == 0) {
+			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TEXT,
+					"No failed task");
+		}
+		
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		SimpleDateFormat displayFormat = new SimpleDateFormat(displayDateTimeFormat);
+		double failures = signatures.getFailures();
+		StringBuffer result = new StringBuffer();
+		result.append("Signature\tFailures\tShare\tFirst Seen\tLast Seen\tStages\tExecutors\tExample");
+		result.append("\n");
+		for (SparkMonitoringFailureSignatures.Signature signature : signatures.getSignatures()) {
+			result.append(signature.getText().replace("\t", " "));
+			result.append("\t").append(signature.getCount());
+			result.append("\t").append(nf.format(100 * signature.getCount() / failures)).append("%");
+			result.append("\t").append(signature.getFirstSeen() != null
+					? displayFormat.format(new Date(signature.getFirstSeen())) : "-");
+			result.append("\t").append(signature.getLastSeen() != null
+					? displayFormat.format(new Date(signature.getLastSeen())) : "-");
+			result.append("\t").append(StringUtils.join(signature.getStages(), " "))
+					.append(signature.hasMoreStages() ? " ..." : "");
+			result.append("\t").append(StringUtils.join(signature.getExecutors(), " "))
+					.append(signature.hasMoreExecutors() ? " ..." : "");
+			result.append("\t").append(signature.getExample().replace("\t", " "));
+			result.append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Run a query on the jobs or stages of a version of an application
+	 */
+	private InterpreterResult querySnapshot(SparkMonitoringQuery query, String applicationId) throws Exception {
+		if (SparkMonitoringQuery.EXECUTORS.equals(query.getSource())) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "A snapshot has only jobs and stages");
+		}
+		SparkMonitoringSnapshot snapshot = snapshots.get(getPrefixKey() + "|" + applicationId, query.getVersion());
+		if (snapshot == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Version " + query.getVersion() + " of "
+					+ applicationId + " is not kept, see /snapshot list");
+		}
+		List<?> rows = SparkMonitoringQuery.JOBS.equals(query.getSource()) ? snapshot.getJobs() : snapshot.getStages();
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				query.execute(rows, fetchExecutor));
+	}
+	
+	/**
+	 * Take the next snapshot of an application, or list the versions kept
+	 * 
+	 * @param args
+	 *            [list] [application_id]
+	 * @return Result in TABLE type, one row per version
+	 */
+	private InterpreterResult snapshot(String args) throws Exception {
+		boolean list = args.equals("list") || args.startsWith("list ");
+		String applicationRef = (list ? args.substring("list".length()) : args).trim();
+		String applicationId = getApplicationId(applicationRef.isEmpty() ? null : applicationRef);
+		if (applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		List<SparkMonitoringSnapshot> lsSnapshot = list ? snapshots.getVersions(getPrefixKey() + "|" + applicationId)
+				: Collections.singletonList(takeSnapshot(applicationId));
+		SimpleDateFormat displayFormat = new SimpleDateFormat(displayDateTimeFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Version\tTime\tJobs\tActive Jobs\tStages\tActive Stages\tFetches\tConsistent");
+		result.append("\n");
+		for (SparkMonitoringSnapshot snapshot : lsSnapshot) {
+			int activeJobs = 0;
+			for (SparkMonitoringJob job : snapshot.getJobs()) {
+				activeJobs += "RUNNING".equals(job.getStatus()) ? 1 : 0;
+			}
+			int activeStages = 0;
+			for (SparkMonitoringStage stage : snapshot.getStages()) {
+				activeStages += "ACTIVE".equals(stage.getStatus()) ? 1 : 0;
+			}
+			result.append(snapshot.getVersion());
+			result.append("\t").append(displayFormat.format(new Date(snapshot.getTime())));
+			result.append("\t").append(snapshot.getJobs().size());
+			result.append("\t").append(activeJobs);
+			result.append("\t").append(snapshot.getStages().size());
+			result.append("\t").append(activeStages);
+			result.append("\t").append(snapshot.getAttempts());
+			result.append("\t").append(snapshot.getInconsistencies() == 0 ? "yes"
+					: "no (" + snapshot.getInconsistencies() + " jobs and stages disagree)");
+			result.append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Fetch the jobs and stages of an application together and publish them
+	 * as its next version. When they disagree (one was read before a change
+	 * of the other) both are fetched again, up to MAX_SNAPSHOT_ATTEMPTS times,
+	 * the last fetch is published anyway with its disagreements counted
+	 */
+	private SparkMonitoringSnapshot takeSnapshot(String applicationId) throws IOException {
+		String baseUrl = getBaseUrl();
+		String applicationUrl = "/applications/" + applicationId;
+		List<SparkMonitoringJob> lsJob;
+		List<SparkMonitoringStage> lsStage;
+		int inconsistencies;
+		int attempts = 0;
+		long time;
+		do {
+			attempts++;
+			time = System.currentTimeMillis();
+			// the first fetches are shared with the batch, the next ones are new
+			FutureTask<List<String>> stageItems = attempts == 1 ? startFetch(baseUrl, applicationUrl + "/stages")
+					: fetchInFlight(baseUrl, applicationUrl + "/stages");
+			FutureTask<List<String>> jobItems = attempts == 1 ? startFetch(baseUrl, applicationUrl + "/jobs")
+					: fetchInFlight(baseUrl, applicationUrl + "/jobs");
+			lsJob = parseJobs(awaitFetch(jobItems, applicationUrl + "/jobs"));
+			lsStage = parseStages(awaitFetch(stageItems, applicationUrl + "/stages"));
+			inconsistencies = SparkMonitoringSnapshot.countInconsistencies(lsJob, lsStage);
+		} while (inconsistencies > 0 && attempts < MAX_SNAPSHOT_ATTEMPTS);
+		
+		List<String> ids = new ArrayList<>();
+		for (SparkMonitoringJob job : lsJob) {
+			ids.add(job.getId());
+		}
+		getApplicationIndex(getPrefixKey()).addJobIds(applicationId, ids);
+		ids.clear();
+		for (SparkMonitoringStage stage : lsStage) {
+			ids.add(stage.getId());
+		}
+		getApplicationIndex(getPrefixKey()).addStageIds(applicationId, ids);
+		getJobProfiles(applicationId).update(lsJob);
+		baselines.addJobs(getPrefixKey(), applicationId, lsJob);
+		baselines.addStages(getPrefixKey(), applicationId, lsStage);
+		return snapshots.publish(getPrefixKey() + "|" + applicationId, applicationId, time, lsJob, lsStage, attempts,
+				inconsistencies);
+	}
+	
+	/**
+	 * Export jobs, stages or executors of all applications of current prefix
+	 * to local files. Each response is streamed: an object is parsed and
+	 * written as soon as its fields are read, so the memory does not depend
+	 * on the number of objects.
+	 * 
+	 * @param args
+	 *            &lt;jobs|stages|executors&gt; &lt;path&gt; [csv|columnar] [split]
+	 * @return Result in TABLE type, one row per written file
+	 */
+	private InterpreterResult export(String args) throws Exception {
+		String[] exportItems = StringUtils.split(args, " \t");
+		if (exportItems == null || exportItems.length < 2) {
+			return processHelp(InterpreterResult.Code.ERROR,
+					"Usage: /export <jobs|stages|executors> <path> [csv|columnar] [split]");
+		}
+		String format = exportItems.length >= 3 ? exportItems[2] : SparkMonitoringExportWriter.FORMAT_CSV;
+		boolean split = exportItems.length >= 4 && "split".equalsIgnoreCase(exportItems[3]);
+		final SparkMonitoringExport export = new SparkMonitoringExport(exportItems[0], Paths.get(exportItems[1]),
+				format, split);
+		getApplications("/applications");
+		List<SparkMonitoringApplication> lsApplication = getApplicationIndex(getPrefixKey()).search(null, null,
+				null, null);
+		String baseUrl = getBaseUrl();
+		try {
+			for (SparkMonitoringApplication app : lsApplication) {
+				export.startApplication(app.getId());
+				String restUrl = "/applications/" + app.getId() + "/" + export.getObject().toLowerCase();
+				EntityHandler handler;
+				if (SparkMonitoringExport.JOBS.equalsIgnoreCase(export.getObject())) {
+					handler = new EntityHandler("jobId") {
+						@Override
+						protected void entity(List<String> lsItem) throws IOException {
+							for (SparkMonitoringJob job : parseJobs(lsItem)) {
+								export.writeJob(job);
+							}
+						}
+					};
+				} else if (SparkMonitoringExport.STAGES.equalsIgnoreCase(export.getObject())) {
+					handler = new EntityHandler("status") {
+						@Override
+						protected void entity(List<String> lsItem) throws IOException {
+							for (SparkMonitoringStage stage : parseStages(lsItem)) {
+								export.writeStage(stage);
+							}
+						}
+					};
+				} else {
+					handler = new EntityHandler("id") {
+						@Override
+						protected void entity(List<String> lsItem) throws IOException {
+							for (SparkMonitoringExecutor executor : parseExecutors(lsItem)) {
+								export.writeExecutor(executor);
+							}
+						}
+					};
+				}
+				streamItems(baseUrl, restUrl, handler);
+				handler.finish();
+			}
+		} finally {
+			export.close();
+		}
+		StringBuffer result = new StringBuffer();
+		result.append("File\tRows");
+		result.append("\n");
+		for (Map.Entry<Path, Long> file : export.getFiles().entrySet()) {
+			result.append(file.getKey()).append("\t").append(file.getValue()).append("\n");
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Analyze a job: fetch all stages of the job in parallel, rebuild the stage
+	 * timeline and report the critical path, the idle gaps between stages and
+	 * the stage which accounts for most of the wall-clock time
+	 * 
+	 * @param jobId
+	 * @return Result in TABLE type, one row per stage and a summary row of the job
+	 */
+	private InterpreterResult analyzeJob(String applicationRef, String jobId) throws Exception {
+		String applicationId = getApplicationId(applicationRef);
+		if(applicationId == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		}
+		// resolve the url now, fetch threads do not know the prefix
+		final String baseUrl = getBaseUrl();
+		final String applicationUrl = "/applications/" + applicationId;
+		List<SparkMonitoringJob> lsJob = parseJobs(fetchItems(baseUrl, applicationUrl + "/jobs/" + jobId));
+		if(lsJob.isEmpty()) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Job " + jobId + " is not found");
+		}
+		SparkMonitoringJob job = lsJob.get(0);
+		List<String> stageIds = job.getStageIds() != null ? job.getStageIds() : new ArrayList<String>();
+		getApplicationIndex(getPrefixKey()).addStageIds(applicationId, stageIds);
+		
+		// start the fetches of all stages of the job, then wait for them
+		List<FutureTask<List<String>>> fetches = new ArrayList<>();
+		for (String stageId : stageIds) {
+			fetches.add(startFetch(baseUrl, applicationUrl + "/stages/" + stageId));
+		}
+		List<SparkMonitoringStage> lsStage = new ArrayList<>();
+		for (int i = 0; i < fetches.size(); i++) {
+			List<String> lsItem = awaitFetch(fetches.get(i), applicationUrl + "/stages/" + stageIds.get(i));
+			// keep the last attempt of each stage
+			SparkMonitoringStage lastAttempt = null;
+			for (SparkMonitoringStage attempt : parseStages(lsItem)) {
+				if (lastAttempt == null || attempt.getAttemptId() > lastAttempt.getAttemptId()) {
+					lastAttempt = attempt;
+				}
+			}
+			if (lastAttempt != null) {
+				lsStage.add(lastAttempt);
+			}
+		}
+		
+		SparkMonitoringJobAnalyzer analyzer = new SparkMonitoringJobAnalyzer(job, lsStage, System.currentTimeMillis());
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Stage Id\tName\tStatus\tStart Offset\tDuration\tGap Before\tCritical Path\tJob Share");
+		result.append("\n");
+		for (SparkMonitoringStage stage : analyzer.getStages()) {
+			result.append(stage.getId());
+			result.append("\t").append(stage.getName());
+			result.append("\t").append(stage.getStatus());
+			if (stage.getSubmissionTimeMilis() == null) {
+				// skipped stage
+				result.append("\t-\t-\t-\t-\t-");
+			} else {
+				long offset = stage.getSubmissionTimeMilis() - analyzer.getJobStart();
+				result.append("\t").append(nf.format(offset / 1000D) + "s");
+				result.append("\t").append(nf.format(analyzer.getDuration(stage) / 1000D) + "s");
+				result.append("\t").append(nf.format(analyzer.getGapBefore(stage) / 1000D) + "s");
+				String criticalPath = analyzer.isOnCriticalPath(stage) ? "yes" : "no";
+				if (stage == analyzer.getLongestStage()) {
+					criticalPath += " (longest)";
+				}
+				result.append("\t").append(criticalPath);
+				result.append("\t").append(nf.format(analyzer.getShare(stage)) + "%");
+			}
+			result.append("\n"); // new row
+		}
+		// summary row: wall-clock, total idle time and the critical path
+		List<String> pathIds = new ArrayList<>();
+		for (SparkMonitoringStage stage : analyzer.getCriticalPath()) {
+			pathIds.add(stage.getId());
+		}
+		result.append("job " + job.getId());
+		result.append("\t").append(job.getName());
+		result.append("\t").append(job.getStatus());
+		result.append("\t").append("0s");
+		result.append("\t").append(nf.format(analyzer.getWallClock() / 1000D) + "s");
+		result.append("\t").append(nf.format(analyzer.getIdleTime() / 1000D) + "s idle");
+		result.append("\t").append(StringUtils.join(pathIds, " > "));
+		result.append("\t").append("100%");
+		result.append("\n");
+		
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	/**
+	 * Watch a command: rerun it every interval and output only the rows changed
+	 * since the previous poll, until cancel, timeout or until the watched job
+	 * or stage finishes. After the first poll, a list of jobs or stages polls
+	 * only the running ones, and the ones which were running at the previous poll.
+	 * 
+	 * @param args
+	 *            &lt;command&gt; [interval in seconds]
+	 * @return Result in TEXT type: the changed rows when there is no paragraph
+	 *         output to write them to, and the reason the watch ended
+	 */
+	private InterpreterResult watch(String args, InterpreterContext interpreterContext) throws Exception {
+		String[] watchItems = StringUtils.split(args, " \t");
+		if (watchItems == null || watchItems.length == 0 || !watchItems[0].startsWith("/")) {
+			return processHelp(InterpreterResult.Code.ERROR, "Usage: /watch <command> [interval]");
+		}
+		String command = watchItems[0];
+		double intervalSeconds = Double.parseDouble(watchItems.length >= 2 ? watchItems[1]
+				: getDefaultProperty(SPARK_MONITORING_WATCH_INTERVAL, "5"));
+		long intervalMillis = Math.max(100L, (long) (intervalSeconds * 1000));
+		long maxIntervalMillis = (long) (Double.parseDouble(
+				getDefaultProperty(SPARK_MONITORING_WATCH_INTERVAL_MAX, "60")) * 1000);
+		long deadline = System.currentTimeMillis()
+				+ Long.parseLong(getDefaultProperty(SPARK_MONITORING_WATCH_TIMEOUT, "3600")) * 1000;
+		
+		String driver = getBaseUrl();
+		String endpoint = getPrefixKey() + "|" + command;
+		SparkMonitoringPollInterval interval = new SparkMonitoringPollInterval(command, driver, intervalMillis,
+				maxIntervalMillis);
+		pollIntervals.put(endpoint, interval);
+		getRateLimiter(driver);
+		pollInterval.set(interval);
+		AtomicBoolean cancelled = cancelFlag.get() != null ? cancelFlag.get() : new AtomicBoolean(false);
+		StringBuffer output = new StringBuffer();
+		String reason = "timeout";
+		int polls = 0;
+		SparkMonitoringTableSnapshot previous = null;
+		try {
+			while (!cancelled.get()) {
+				SparkMonitoringTableSnapshot snapshot;
+				long pollStart = System.currentTimeMillis();
+				try {
+					snapshot = pollWatch(command, previous, interpreterContext);
+				} catch (Exception e) {
+					if (cancelled.get()) {
+						// fetch cancelled with the watch
+						break;
+					}
+					throw e;
+				}
+				long responseMillis = System.currentTimeMillis() - pollStart;
+				polls++;
+				StringBuffer changes = new StringBuffer();
+				if (previous == null) {
+					changes.append("Change\tTime\t").append(snapshot.getHeader()).append("\n");
+				}
+				String time = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date());
+				List<String> diff = snapshot.diff(previous);
+				for (String change : diff) {
+					int tab = change.indexOf('\t');
+					changes.append(change.substring(0, tab)).append("\t").append(time)
+							.append(change.substring(tab)).append("\n");
+				}
+				writeWatchOutput(interpreterContext, output, changes.toString());
+				// active while something runs or changes
+				boolean active = (previous != null && !diff.isEmpty())
+						|| !snapshot.getIds("Status", "RUNNING", "ACTIVE").isEmpty();
+				previous = snapshot;
+				
+				if (isWatchFinished(command, snapshot)) {
+					reason = "finished";
+					break;
+				}
+				// sleep, but wake up soon on cancel
+				long sleepMillis = interval.update(active, responseMillis);
+				long wakeUp = System.currentTimeMillis() + sleepMillis;
+				while (!cancelled.get() && System.currentTimeMillis() < wakeUp) {
+					Thread.sleep(Math.min(100L, sleepMillis));
+				}
+				if (System.currentTimeMillis() >= deadline) {
+					break;
+				}
+			}
+		} finally {
+			pollInterval.remove();
+			pollIntervals.remove(endpoint, interval);
+		}
+		if (cancelled.get()) {
+			reason = "cancelled";
+		}
+		output.append("watch ended (").append(reason).append(") after ").append(polls).append(" polls\n");
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TEXT,
+				output.toString());
+	}
+	
+	private SparkMonitoringRateLimiter getRateLimiter(String driver) {
+		SparkMonitoringRateLimiter rateLimiter = rateLimiters.get(driver);
+		if (rateLimiter == null) {
+			rateLimiter = new SparkMonitoringRateLimiter(
+					Double.parseDouble(getDefaultProperty(SPARK_MONITORING_WATCH_RATE, "10")));
+			SparkMonitoringRateLimiter previous = rateLimiters.putIfAbsent(driver, rateLimiter);
+			if (previous != null) {
+				rateLimiter = previous;
+			}
+		}
+		return rateLimiter;
+	}
+	
+	/**
+	 * Current polling interval and request budget of the running watches
+	 * 
+	 * @return Result in TABLE type
+	 */
+	private InterpreterResult getPolling() {
+		NumberFormat nf = new DecimalFormat(numberFormat);
+		StringBuffer result = new StringBuffer();
+		result.append("Command\tInterval\tMin Interval\tMax Interval\tLast Response\tActive\tPolls\tDriver"
+				+ "\tRequests/s Cap\tAvailable Requests\tDriver Requests");
+		result.append("\n");
+		for (SparkMonitoringPollInterval interval : pollIntervals.values()) {
+			SparkMonitoringRateLimiter rateLimiter = rateLimiters.get(interval.getDriver());
+			result.append(interval.getEndpoint());
+			result.append("\t").append(nf.format(interval.getCurrentMillis() / 1000D) + "s");
+			result.append("\t").append(nf.format(interval.getMinMillis() / 1000D) + "s");
+			result.append("\t").append(nf.format(interval.getMaxMillis() / 1000D) + "s");
+			result.append("\t").append(interval.getLastResponseMillis() + "ms");
+			result.append("\t").append(interval.isActive());
+			result.append("\t").append(interval.getPolls());
+			result.append("\t").append(interval.getDriver());
+			result.append("\t").append(rateLimiter != null ? nf.format(rateLimiter.getPermitsPerSecond()) : "-");
+			result.append("\t").append(rateLimiter != null ? nf.format(rateLimiter.getAvailable()) : "-");
+			result.append("\t").append(rateLimiter != null ? rateLimiter.getRequests() : 0);
+			result.append("\n"); // new row
+		}
+		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
+				result.toString());
+	}
+	
+	private String getRunId(InterpreterContext interpreterContext) {
+		if (interpreterContext != null && interpreterContext.getParagraphId() != null) {
+			return interpreterContext.getParagraphId();
+		}
+		return "thread-" + Thread.currentThread().getId();
+	}
+	
+	//write to the paragraph output as soon as possible, to the result if there is no output
+	private void writeWatchOutput(InterpreterContext interpreterContext, StringBuffer output, String text)
+			throws IOException {
+		if (interpreterContext != null && interpreterContext.out != null) {
+			interpreterContext.out.write(text);
+			interpreterContext.out.flush();
+		} else {
+			output.append(text);
+		}
+	}
+	
+	/**
+	 * Poll a watched command
+	 * 
+	 * @param previous
+	 *            snapshot of the previous poll, null for the first poll
+	 */
+	private SparkMonitoringTableSnapshot pollWatch(String command, SparkMonitoringTableSnapshot previous,
+			InterpreterContext interpreterContext) throws Exception {
+		String[] commandItems = StringUtils.split(command, "/");
+		String object = commandItems[commandItems.length - 1];
+		boolean isJobList = "jobs".equalsIgnoreCase(object);
+		boolean isStageList = "stages".equalsIgnoreCase(object);
+		if (previous == null || command.contains("?") || (!isJobList && !isStageList)) {
+			return getWatchSnapshot(command, interpreterContext);
+		}
+		// the running ones, then the ones which were running at the previous poll
+		String runningStatus = isJobList ? "RUNNING" : "ACTIVE";
+		SparkMonitoringTableSnapshot running = getWatchSnapshot(
+				command + "?status=" + runningStatus.toLowerCase(), interpreterContext);
+		SparkMonitoringTableSnapshot snapshot = previous.merge(running);
+		for (String id : previous.getIds("Status", runningStatus)) {
+			if (!running.getRows().containsKey(id)) {
+				snapshot = snapshot.merge(getWatchSnapshot(command + "/" + id, interpreterContext));
+			}
+		}
+		return snapshot;
+	}
+	
+	private SparkMonitoringTableSnapshot getWatchSnapshot(String command, InterpreterContext interpreterContext)
+			throws Exception {
+		InterpreterResult result = interpretUrl(command, interpreterContext);
+		if (result.code() != InterpreterResult.Code.SUCCESS || result.type() != InterpreterResult.Type.TABLE) {
+			throw new Exception("cannot watch " + command + ": " + result.message());
+		}
+		return new SparkMonitoringTableSnapshot(result.message());
+	}
+	
+	/**
+	 * @return true if the command watches one job or stage and it is not running anymore
+	 */
+	private boolean isWatchFinished(String command, SparkMonitoringTableSnapshot snapshot) {
+		String[] commandItems = StringUtils.split(command, "/");
+		if (commandItems.length < 2) {
+			return false;
+		}
+		String object = commandItems[commandItems.length - 2];
+		String id = commandItems[commandItems.length - 1];
+		String status = snapshot.getValue(id, "Status");
+		if ("jobs".equalsIgnoreCase(object)) {
+			return status != null && !"RUNNING".equals(status) && !"UNKNOWN".equals(status);
+		} else if ("stages".equalsIgnoreCase(object)) {
+			return status != null && !"ACTIVE".equals(status) && !"PENDING".equals(status);
+		}
+		return false;
+	}
+	
+	/**
+	 * Get application index of a prefix, create it if not existed
+	 */
+	private SparkMonitoringApplicationIndex getApplicationIndex(String prefix) {
+		synchronized (mapApplication) {
+			SparkMonitoringApplicationIndex index = mapApplication.get(prefix);
+			if (index == null) {
+				int maxSize = Integer.parseInt(getPrefixProperty(prefix, SPARK_MONITORING_APPLICATIONS_MAX, "1000"));
+				String policy = getPrefixProperty(prefix, SPARK_MONITORING_APPLICATIONS_POLICY,
+						SparkMonitoringApplicationIndex.POLICY_LATEST_RUNNING);
+				index = new SparkMonitoringApplicationIndex(maxSize, policy);
+				mapApplication.put(prefix, index);
+				if (memoryBudget != null) {
+					memoryBudget.register(index);
+				}
+			}
+			return index;
+		}
+	}
+	
+	/**
+	 * Get id of an application of current prefix, get applications if not indexed
+	 * 
+	 * @param applicationRef
+	 *            id or name of the application, null for the default application
+	 * @return application id or null if no application is found
+	 */
+	private String getApplicationId(String applicationRef) {
+		SparkMonitoringApplicationIndex index = getApplicationIndex(getPrefixKey());
+		if (applicationRef == null) {
+			if (index.isEmpty()) {
+				getApplications("/applications");
+			}
+			SparkMonitoringApplication app = index.getDefault();
+			return app != null ? app.getId() : null;
+		}
+		SparkMonitoringApplication app = index.resolve(applicationRef);
+		if (app == null) {
+			// new application or not listed yet
+			getApplications("/applications");
+			app = index.resolve(applicationRef);
+		}
+		// unknown name is kept as id, the server decides
+		return app != null ? app.getId() : applicationRef;
+	}
+	
+	/**
+	 * Receiver of the key, value items of a response, in order
+	 */
+	private interface ItemHandler {
+		void item(String key, String value) throws IOException;
+	}
+	
+	/**
+	 * Group the items of a response by object, an object starts at its first key
+	 */
+	private abstract static class EntityHandler implements ItemHandler {
+		private final String startKey;
+		private final List<String> lsItem = new ArrayList<>();
+		
+		EntityHandler(String startKey) {
+			this.startKey = startKey;
+		}
+		
+		@Override
+		public void item(String key, String value) throws IOException {
+			if (startKey.equalsIgnoreCase(key) && !lsItem.isEmpty()) {
+				entity(lsItem);
+				lsItem.clear();
+			}
+			lsItem.add(key);
+			lsItem.add(value);
+		}
+		
+		void finish() throws IOException {
+			if (!lsItem.isEmpty()) {
+				entity(lsItem);
+				lsItem.clear();
+			}
+		}
+		
+		protected abstract void entity(List<String> lsItem) throws IOException;
+	}
+	
+	/**
+	 * Connect to server and read the response as a list of key, value items
+	 * 
+	 * @param baseUrl
+	 *            http://host:port/api/v1 of the server, resolved by the caller
+	 * @param restUrl
+	 * @return key at even index, value at the following odd index
+	 */
+	private List<String> fetchItems(String baseUrl, String restUrl) throws IOException {
+		return awaitFetch(startFetch(baseUrl, restUrl), restUrl);
+	}
+	
+	/**
+	 * Start a fetch, or join the same fetch of the batch or in flight. A
+	 * non-blocking fetch is read in background, the caller waits for the
+	 * returned result with awaitFetch, so that many fetches are started
+	 * before waiting for any
+	 */
+	private FutureTask<List<String>> startFetch(String baseUrl, String restUrl) throws IOException {
+		ConcurrentMap<String, FutureTask<List<String>>> fetches = batchFetches.get();
+		if (fetches == null) {
+			return fetchInFlight(baseUrl, restUrl);
+		}
+		// fetched once per batch, by the first command which needs it
+		String url = baseUrl + restUrl;
+		FutureTask<List<String>> fetch = fetches.get(url);
+		if (fetch == null) {
+			fetch = fetchInFlight(baseUrl, restUrl);
+			FutureTask<List<String>> previous = fetches.putIfAbsent(url, fetch);
+			if (previous != null) {
+				fetch = previous;
+			}
+		}
+		return fetch;
+	}
+	
+	/**
+	 * Fetch a url, or join the same fetch if it is already in flight: one
+	 * request and one parse for all the callers. Each caller waits with its
+	 * own timeout and stops waiting when its paragraph is cancelled.
+	 */
+	private FutureTask<List<String>> fetchInFlight(final String baseUrl, final String restUrl) throws IOException {
+		String url = baseUrl + restUrl;
+		if (asyncFetcher != null && url.startsWith("http://")) {
+			FetchFuture fetch = new FetchFuture(pollInterval.get());
+			FutureTask<List<String>> previous = inFlightFetches.putIfAbsent(url, fetch);
+			if (previous != null) {
+				return previous;
+			}
+			try {
+				acquireWatchBudget(restUrl);
+				logger.debug(url);
+				requestCount.incrementAndGet();
+				asyncFetcher.fetch(url, new ItemsCallback(baseUrl, url, fetch));
+			} catch (IOException e) {
+				inFlightFetches.remove(url, fetch);
+				fetch.fail(e);
+				throw e;
+			}
+			return fetch;
+		}
+		final FetchFuture fetch = new FetchFuture(pollInterval.get());
+		FutureTask<List<String>> previous = inFlightFetches.putIfAbsent(url, fetch);
+		if (previous != null) {
+			return previous;
+		}
+		final String fetchUrl = url;
+		Runnable read = new Runnable() {
+			@Override
+			public void run() {
+				// the http timeouts bound the blocking read
+				ItemsCollector collector = new ItemsCollector(fetchUrl);
+				try {
+					// the request budget is taken below, once per request
+					readItems(baseUrl, restUrl, collector);
+					collector.complete(fetch);
+				} catch (IOException | RuntimeException e) {
+					collector.fail(fetch, e);
+				} finally {
+					inFlightFetches.remove(fetchUrl, fetch);
+				}
+			}
+		};
+		try {
+			// the request budget of a watch is taken by its thread, the read may run on a fetch thread
+			acquireWatchBudget(restUrl);
+			if (Boolean.TRUE.equals(fetchTask.get())) {
+				// a fetch task waiting for a fetch of the same pool could starve it
+				read.run();
+			} else {
+				// the fetches started together are read in parallel
+				fetchExecutor.submit(read);
+			}
+		} catch (IOException | RuntimeException e) {
+			inFlightFetches.remove(url, fetch);
+			fetch.fail(e);
+			throw e;
+		}
+		return fetch;
+	}
+	
+	/**
+	 * Result of a non-blocking fetch, set by its callback
+	 */
+	private static class FetchFuture extends FutureTask<List<String>> {
+		// watch which started the fetch, null if none
+		private final SparkMonitoringPollInterval interval;
+		
+		FetchFuture(SparkMonitoringPollInterval interval) {
+			super(new Callable<List<String>>() {
+				@Override
+				public List<String> call() throws Exception {
+					throw new IllegalStateException("Set by the callback of the fetch");
+				}
+			});
+			this.interval = interval;
+		}
+		
+		// set when the response was truncated
+		private volatile String warning;
+		
+		void complete(List<String> lsItem, String warning) {
+			this.warning = warning;
+			set(lsItem);
+		}
+		
+		void fail(Exception e) {
+			setException(e);
+		}
+	}
+	
+	/**
+	 * Items of a response, kept within the memory budget: the memory is
+	 * reserved by chunks as the items are read, the response is truncated at
+	 * the first item which does not fit
+	 */
+	private class ItemsCollector implements ItemHandler {
+		private final String url;
+		// data, accessed by index so not a LinkedList
+		private final List<String> lsItem = new ArrayList<>();
+		private long reservedBytes;
+		private long usedBytes;
+		private boolean truncated;
+		
+		ItemsCollector(String url) {
+			this.url = url;
+		}
+		
+		@Override
+		public void item(String key, String value) {
+			if (truncated) {
+				return;
+			}
+			long bytes = SparkMonitoringStringPool.estimateBytes(key) + SparkMonitoringStringPool.estimateBytes(value);
+			if (usedBytes + bytes > reservedBytes && memoryBudget != null) {
+				long reserve = Math.max(QUERY_RESERVE_BYTES, bytes);
+				if (!memoryBudget.reserveQueryBytes(reserve)) {
+					truncated = true;
+					memoryBudget.addTruncatedQuery();
+					logger.warn("Response of {} truncated at {} items, over the memory budget", url, lsItem.size() / 2);
+					return;
+				}
+				reservedBytes += reserve;
+			}
+			usedBytes += bytes;
+			lsItem.add(key);
+			lsItem.add(value);
+		}
+		
+		/**
+		 * Set the items read, shared by the callers, read only
+		 */
+		void complete(FetchFuture fetch) {
+			release();
+			fetch.complete(Collections.unmodifiableList(lsItem), truncated ? "Response of " + url
+					+ " truncated at " + lsItem.size() / 2 + " items, over " + SPARK_MONITORING_MEMORY_BUDGET : null);
+		}
+		
+		void fail(FetchFuture fetch, Exception e) {
+			release();
+			fetch.fail(e);
+		}
+		
+		// the items are owned by the commands once read
+		private void release() {
+			if (memoryBudget != null) {
+				memoryBudget.releaseQueryBytes(reservedBytes);
+			}
+			reservedBytes = 0;
+		}
+	}
+	
+	/**
+	 * Parse the lines of a non-blocking fetch into key, value items as they
+	 * are read, on the threads of the fetcher
+	 */
+	private class ItemsCallback implements SparkMonitoringAsyncFetcher.Callback {
+		private final String baseUrl;
+		private final String url;
+		private final FetchFuture fetch;
+		private final long start = System.currentTimeMillis();
+		private final ItemsCollector collector;
+		
+		ItemsCallback(String baseUrl, String url, FetchFuture fetch) {
+			this.baseUrl = baseUrl;
+			this.url = url;
+			this.fetch = fetch;
+			collector = new ItemsCollector(url);
+		}
+		
+		@Override
+		public void response(int statusCode) {
+			// time until the driver answers, correlated with its metrics
+			getMetricsHistory(baseUrl).addResponseTime(System.currentTimeMillis() - start);
+		}
+		
+		@Override
+		public void line(String line) throws Exception {
+			parseLine(line, collector);
+		}
+		
+		@Override
+		public void completed() {
+			inFlightFetches.remove(url, fetch);
+			collector.complete(fetch);
+		}
+		
+		@Override
+		public void failed(Exception e) {
+			inFlightFetches.remove(url, fetch);
+			collector.fail(fetch, e);
+		}
+	}
+	
+	/**
+	 * Wait for a fetch until the fetch timeout or the cancel of the paragraph.
+	 * A watch waiting for the fetch of another command counts the wait as
+	 * waiting for the request budget, not as its response time
+	 */
+	private List<String> awaitFetch(FutureTask<List<String>> fetch, String restUrl) throws IOException {
+		AtomicBoolean cancelled = cancelFlag.get();
+		SparkMonitoringPollInterval interval = pollInterval.get();
+		boolean joined = interval != null && fetch instanceof FetchFuture
+				&& ((FetchFuture) fetch).interval != interval;
+		long start = System.currentTimeMillis();
+		long deadline = start + Long.parseLong(getDefaultProperty(SPARK_MONITORING_FETCH_TIMEOUT, "60")) * 1000;
+		try {
+			while (true) {
+				if (cancelled != null && cancelled.get()) {
+					throw new IOException("Fetch of " + restUrl + " is cancelled");
+				}
+				long wait = Math.min(100L, deadline - System.currentTimeMillis());
+				if (wait <= 0) {
+					throw new IOException("Timeout fetching " + restUrl);
+				}
+				try {
+					List<String> lsItem = fetch.get(wait, TimeUnit.MILLISECONDS);
+					addWarning(fetch);
+					return lsItem;
+				} catch (TimeoutException e) {
+					// check cancel and deadline
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted fetch of " + restUrl, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			if (joined) {
+				interval.addWaitMillis(System.currentTimeMillis() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Run a task on the fetch threads with the cancel flag, the warnings and
+	 * the watch of the command being run, so its fetches stop on cancel,
+	 * report their truncated responses and take the request budget
+	 */
+	private <T> Future<T> submitFetchTask(final Callable<T> task) {
+		final AtomicBoolean cancelled = cancelFlag.get();
+		final Set<String> warnings = commandWarnings.get();
+		final SparkMonitoringPollInterval interval = pollInterval.get();
+		return fetchExecutor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				cancelFlag.set(cancelled);
+				commandWarnings.set(warnings);
+				pollInterval.set(interval);
+				fetchTask.set(Boolean.TRUE);
+				try {
+					return task.call();
+				} finally {
+					cancelFlag.remove();
+					commandWarnings.remove();
+					pollInterval.remove();
+					fetchTask.remove();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Wait for a task of the fetch threads until it ends or the paragraph is
+	 * cancelled, its own fetches are bounded by the fetch timeout
+	 */
+	private <T> T awaitFetchTask(Future<T> future, String description) throws Exception {
+		AtomicBoolean cancelled = cancelFlag.get();
+		while (true) {
+			if (cancelled != null && cancelled.get()) {
+				future.cancel(true);
+				throw new IOException(description + " is cancelled");
+			}
+			try {
+				return future.get(100L, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// check cancel
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+	}
+	
+	/**
+	 * Report the warning of a fetch in the result of the command being run
+	 */
+	private void addWarning(FutureTask<List<String>> fetch) {
+		Set<String> warnings = commandWarnings.get();
+		if (warnings != null && fetch instanceof FetchFuture && ((FetchFuture) fetch).warning != null) {
+			warnings.add(((FetchFuture) fetch).warning);
+		}
+	}
+	
+	/**
+	 * Read a whole response, for the payloads which are not read by line
+	 */
+	private String readBody(String url) throws IOException {
+		CloseableHttpClient client = httpClient != null ? httpClient : HttpClients.createDefault();
+		logger.debug(url);
+		CloseableHttpResponse response = null;
+		try {
+			requestCount.incrementAndGet();
+			response = client.execute(new HttpGet(url));
+			int code = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+			if (code != HttpStatus.SC_OK || entity == null) {
+				throw new IOException("Error " + code + " getting " + url);
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
+			StringBuilder body = new StringBuilder();
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				body.append(buffer, 0, read);
+			}
+			return body.toString();
+		} finally {
+			try {
+				if (response != null) {
+					response.close();
+				}
+			} finally {
+				if (client != httpClient) {
+					client.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Connect to server and pass the key, value items of the response to a
+	 * handler as soon as they are read
+	 */
+	private void streamItems(String baseUrl, String restUrl, ItemHandler handler) throws IOException {
+		acquireWatchBudget(restUrl);
+		readItems(baseUrl, restUrl, handler);
+	}
+	
+	/**
+	 * streamItems without the request budget, taken by the caller
+	 */
+	private void readItems(String baseUrl, String restUrl, ItemHandler handler) throws IOException {
+		// connect to server and get data, through the pooled connections once opened
+		CloseableHttpClient client = httpClient != null ? httpClient : HttpClients.createDefault();
+		String url = baseUrl + restUrl;
+		logger.debug(url);
+		HttpGet request = new HttpGet(url);
+		CloseableHttpResponse response = null;
+		long start = System.currentTimeMillis();
+		try {
+			requestCount.incrementAndGet();
+			response = client.execute(request);
+			// time until the driver answers, correlated with its metrics
+			getMetricsHistory(baseUrl).addResponseTime(System.currentTimeMillis() - start);
+			int code = response.getStatusLine().getStatusCode();
+			if (code == HttpStatus.SC_OK) {
+				HttpEntity entity = response.getEntity();
+				if (entity != null) {
+					BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
+					// parse each line
+					String line = "";
+					while ((line = reader.readLine()) != null) {
+						parseLine(line, handler);
+					}
+				}
+			}
+		} finally {
+			try {
+				if (response != null) {
+					response.close();
+				}
+			} finally {
+				if (client != httpClient) {
+					client.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Requests of a watch wait for the request budget of the driver
+	 */
+	private void acquireWatchBudget(String restUrl) throws IOException {
+		SparkMonitoringPollInterval interval = pollInterval.get();
+		if (interval != null) {
+			try {
+				long waitMillis = getRateLimiter(interval.getDriver()).acquire(cancelFlag.get());
+				if (waitMillis < 0) {
+					throw new IOException("Fetch of " + restUrl + " is cancelled");
+				}
+				interval.addWaitMillis(waitMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted fetch of " + restUrl, e);
+			}
+		}
+	}
+	
+	/**
+	 * Pass the key, value item of a line of a response to a handler
+	 */
+	private void parseLine(String line, ItemHandler handler) throws IOException {
+		// split by ":"
+		String[] items = line.split(":", 2);
+		if (items.length >= 2) {
+			// the keys repeat in every object, the values are shared by the parsers
+			String key = intern(items[0].trim().replaceAll("\"", "").replaceAll(",", ""));
+			String value = items[1].trim();
+			handler.item(key, TEXT_KEYS.contains(key) ? decodeText(value)
+					: value.replaceAll("\"", "").replaceAll(",", ""));
+		}
+	}
+	
+	/**
+	 * Decode a free text value as a json string: its commas and quotes are
+	 * kept and its escaped new lines, tabs, quotes and characters are unescaped
+	 * 
+	 * @param value
+	 *            value of a line, with the comma ending it if any
+	 */
+	private static String decodeText(String value) {
+		if (value.startsWith("\"")) {
+			// the comma may end the line or the string
+			String[] candidates = value.endsWith(",")
+					? new String[] { value.substring(0, value.length() - 1), value } : new String[] { value };
+			for (String json : candidates) {
+				try {
+					return (String) new SparkMonitoringMetric.JsonParser(json).parse();
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					// not a whole string, try the next candidate
+				}
+			}
+		}
+		return value.replaceAll("\"", "").replaceAll(",", "");
+	}
+	
+	/**
+	 * @return the shared instance of a repeated key or value
+	 */
+	private String intern(String value) {
+		return stringPool != null ? stringPool.intern(value) : value;
+	}
+	
+	/**
+	 * Keep the first line of the details of a stage (the call site), at most
+	 * MAX_DETAILS_LENGTH characters
+	 */
+	private String truncateDetails(String details) {
+		int end = details.indexOf('\n');
+		if (end < 0) {
+			end = details.length();
+		}
+		end = Math.min(end, MAX_DETAILS_LENGTH);
+		if (end == details.length()) {
+			return details;
+		}
+		truncatedDetails.incrementAndGet();
+		truncatedDetailsBytes.addAndGet(2L * (details.length() - end));
+		return details.substring(0, end) + "...";
+	}
+	
+	/**
+	 * Create SparkMonitoringJob objects from the items of a jobs response
+	 */
+	private List<SparkMonitoringJob> parseJobs(List<String> lsItem) {
+		int lsItemLength = lsItem.size();
+		List<SparkMonitoringJob> lsJob = new ArrayList<SparkMonitoringJob>();
+		SparkMonitoringJob job = new SparkMonitoringJob();
+		for (int i = 0; i < lsItemLength; i++) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(++i);
+			if ("jobId".equalsIgnoreCase(key)) {
+				// start a new job
+				job = new SparkMonitoringJob();
+				job.setId(intern(value));
+			} else if ("name".equalsIgnoreCase(key)) {
+				job.setName(intern(value));
+			} else if ("description".equalsIgnoreCase(key)) {
+				job.setDescription(intern(value));
+			}  
+			else if ("submissionTime".equalsIgnoreCase(key)) {
+				// convert dateTime to current locale
+				String dateTimeFormat = sourceDateTimeFormat;
+				SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
+				try {
+					Date dateTime = dateFm.parse(value);
+					dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.KOREA);
+					job.setSubmissionTime(dateFm.format(dateTime));
+					job.setSubmisstionTimeMilis(dateTime.getTime());
+				} catch (ParseException e) {
+				}
+			} else if ("completionTime".equalsIgnoreCase(key)) {
+				// convert dateTime to current locale
+				String dateTimeFormat = sourceDateTimeFormat;
+				SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
+				try {
+					Date dateTime = dateFm.parse(value);
+					dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.KOREA);
+					job.setCompletionTime(dateFm.format(dateTime));
+					job.setCompletionTimeMilis(dateTime.getTime());
+				} catch (ParseException e) {
+				}
+			} else if ("stageIds".equalsIgnoreCase(key)) {
+				// value is in form: [ 1 2 3 ]
+				job.setStageIds(parseIdList(value));
+			} else if ("status".equalsIgnoreCase(key)) {
+				job.setStatus(intern(value));
+			}
+			else if ("numTasks".equalsIgnoreCase(key)) {
+				job.setNumTasks(Integer.parseInt(value));
+			}
+			else if ("numCompletedTasks".equalsIgnoreCase(key)) {
+				job.setNumCompletedTasks(Integer.parseInt(value));
+			}
+			else if ("numFailedTasks".equalsIgnoreCase(key)) {
+				job.setNumFailedTasks(Integer.parseInt(value));
+				//add to list
+				lsJob.add(job);
+			}
+		}
+		return lsJob;
 	}
-
+	
 	/**
-	 * Get Application information
-	 * 
-	 * @param applicationId
-	 *            id of application, if null then get all applications
-	 * @return Result of the get request, it contains a JSON-formatted string
+	 * Create SparkMonitoringStage objects from the items of a stages response
 	 */
-	private InterpreterResult getApplications(String restUrl) {
-		// connect to server and get response
-		if (isMonitoringServerAvailable) {
-			// data
-			List<String> lsItem = new LinkedList<String>();
-			// connect to server and get data
-			CloseableHttpClient client = HttpClients.createDefault();
-			String url = "http://" + host + ":" + port + "/api/v1" + restUrl;
-			HttpGet request = new HttpGet(url);
-			CloseableHttpResponse response = null;
-			try {
-				response = client.execute(request);
-				int code = response.getStatusLine().getStatusCode();
-				if (code == HttpStatus.SC_OK) {
-					HttpEntity entity = response.getEntity();
-					if (entity != null) {
-						BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
-						// parse each line
-						String line = "";
-						while ((line = reader.readLine()) != null) {
-							// split by ":"
-							String[] items = line.split(":", 2);
-							if (items.length >= 2) {
-								lsItem.add(items[0].trim().replaceAll("\"", "").replaceAll(",", ""));
-								lsItem.add(items[1].trim().replaceAll("\"", "").replaceAll(",", ""));
-							}
-						}
-					}
-				}
-			} catch (IOException e) {
-				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
-			} finally {
-				try {
-					if (response != null) {
-						response.close();
-					}
-				} catch (IOException e) {
-					return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
-				}
+	private List<SparkMonitoringStage> parseStages(List<String> lsItem) {
+		int lsItemLength = lsItem.size();
+		List<SparkMonitoringStage> lsStage = new ArrayList<>();
+		SparkMonitoringStage stage = new SparkMonitoringStage();
+		for (int i = 0; i < lsItemLength; i++) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(++i);
+			if ("status".equalsIgnoreCase(key)) {
+				// start a new stage
+				stage = new SparkMonitoringStage();
+				stage.setStatus(intern(value));
+			} 
+			else if ("stageId".equalsIgnoreCase(key)) {
+				stage.setId(intern(value));
 			}
-			// make return result - in TABLE type
-			StringBuffer result = new StringBuffer();
-			int lsItemLength = lsItem.size();
-			// build the table header and create SparkMonitoringApplication
-			List<SparkMonitoringApplication> lsApplication = new ArrayList<>();
-			SparkMonitoringApplication application = new SparkMonitoringApplication();
-			int row = 0;
-			for (int i = 0; i < lsItemLength; i++) {
-				String key = lsItem.get(i);
-				String value = lsItem.get(++i);
-				if ("id".equalsIgnoreCase(key)) {
-					// start a new application
-					application = new SparkMonitoringApplication();
-					if (row == 0) {
-						// add header in case row = 0
-						result.append("Id");
-					}
-					application.setId(value);
-				} else if ("name".equalsIgnoreCase(key)) {
-					if (row == 0) {
-						result.append("\tName");
-					}
-					application.setName(value);
-				} else if ("startTime".equalsIgnoreCase(key)) {
-					if (row == 0) {
-						result.append("\tStart Time");
-					}
-					// convert dateTime to current locale
-					String dateTimeFormat = sourceDateTimeFormat;
-					SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
-					try {
-						Date dateTime = dateFm.parse(value);
-						dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault());
-						application.setStartTime(dateFm.format(dateTime));
-					} catch (ParseException e) {
-					}
-				} else if ("endTime".equalsIgnoreCase(key)) {
-					// add duration
-					if (row == 0) {
-						result.append("\tDuration");
-					}
-					// convert dateTime to current locale
-					String dateTimeFormat = sourceDateTimeFormat;
-					SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
-					try {
-						Date dateTime = dateFm.parse(value);
-						dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.getDefault());
-						application.setEndTime(dateFm.format(dateTime));
-					} catch (ParseException e) {
-					}
-				} else if ("sparkUser".equalsIgnoreCase(key)) {
-					// no add to header
-					application.setSparkUser(value);
-				} else if ("completed".equalsIgnoreCase(key)) {
-					if (row == 0) {
-						result.append("\tCompleted");
-					}
-					application.setCompleted(Boolean.parseBoolean(value));
-					// add to lsApplication
-					lsApplication.add(application);
-					mapApplication.put(prefixKey, application);
-					row++;
-				}
+			else if ("attemptId".equalsIgnoreCase(key)) {
+				stage.setAttemptId(Integer.parseInt(value));
 			}
-			result.append("\n");
-			// convert dateTime to Long
-			String dateTimeFormat = displayDateTimeFormat;
-			SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.getDefault());
-			// make result table body
-			for (SparkMonitoringApplication app : lsApplication) {
-				result.append(app.getId()).append("\t").append(app.getName()).append("\t").append(app.getStartTime());
-				if (app.getCompleted()) {
-					//calculate duration
-					Long startTime;
-					try {
-						startTime = dateFm.parse(app.getStartTime()).getTime();
-					} catch (ParseException e) {
-						startTime = 0L;
-					}
-					Long endTime;
-					try {
-						endTime = dateFm.parse(app.getEndTime()).getTime();
-					} catch (ParseException e) {
-						endTime = 0L;
-					}
-					Double duration = (endTime - startTime) / 1000D;
-					NumberFormat nf = new DecimalFormat(numberFormat);
-					result.append("\t").append(nf.format(duration) + "s");
-				} else {
-					result.append("\t").append("-");
-				}
-				result.append("\t").append(app.getCompleted());
-				result.append("\n"); // new row
+			else if ("numCompleteTasks".equalsIgnoreCase(key)) {
+				stage.setNumCompletedTasks(Integer.parseInt(value));
+			} 
+			else if ("numFailedTasks".equalsIgnoreCase(key)) {
+				stage.setNumFailedTasks(Integer.parseInt(value));
+			} 
+			else if ("submissionTime".equalsIgnoreCase(key)) {
+				stage.setSubmissionTimeMilis(parseSourceTime(value));
+			}
+			else if ("completionTime".equalsIgnoreCase(key)) {
+				stage.setCompletionTimeMilis(parseSourceTime(value));
+			}
+			else if ("inputBytes".equalsIgnoreCase(key)) {
+				stage.setInputBytes(Long.parseLong(value));
+			} 
+			else if ("inputRecords".equalsIgnoreCase(key)) {
+				stage.setInputRecords(Long.parseLong(value));
+			} 
+			else if ("outputBytes".equalsIgnoreCase(key)) {
+				stage.setOutputBytes(Long.parseLong(value));
+			}
+			else if ("outputRecords".equalsIgnoreCase(key)) {
+				stage.setOutputRecords(Long.parseLong(value));
+			}
+			else if ("shuffleReadBytes".equalsIgnoreCase(key)) {
+				stage.setShuffleReadBytes(Long.parseLong(value));
+			}
+			else if ("shuffleWriteBytes".equalsIgnoreCase(key)) {
+				stage.setShuffleWriteBytes(Long.parseLong(value));
+			}
+			else if ("memoryBytesSpilled".equalsIgnoreCase(key)) {
+				stage.setMemoryBytesSpilled(Long.parseLong(value));
+			}
+			else if ("diskBytesSpilled".equalsIgnoreCase(key)) {
+				stage.setDiskBytesSpilled(Long.parseLong(value));
+			}
+			else if ("name".equalsIgnoreCase(key)) {
+				stage.setName(intern(value));
+			}
+			else if ("details".equalsIgnoreCase(key)) {
+				// the full call site is fetched again by /stages/<stage_id>/details
+				stage.setDetails(truncateDetails(value));
+				lsStage.add(stage);
 			}
-
-			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
-					result.toString());
 		}
-
-		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		return lsStage;
 	}
-
+	
 	/**
-	 * Get job information
-	 * 
-	 * @param restUrl
-	 * @return Result of the get request
+	 * Create SparkMonitoringStreamingBatch objects from the items of a batches response
 	 */
-	private InterpreterResult getJobs(String restUrl) throws Exception {
-		// connect to server and get response
-		if (isMonitoringServerAvailable) {
-			// first, get applications if not existed
-			if(mapApplication.get(prefixKey) == null) {
-				getApplications("/applications");
+	private List<SparkMonitoringStreamingBatch> parseBatches(List<String> lsItem) {
+		int lsItemLength = lsItem.size();
+		List<SparkMonitoringStreamingBatch> lsBatch = new ArrayList<>();
+		SparkMonitoringStreamingBatch batch = new SparkMonitoringStreamingBatch();
+		for (int i = 0; i < lsItemLength; i++) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(++i);
+			if ("batchId".equalsIgnoreCase(key)) {
+				// start a new batch
+				batch = new SparkMonitoringStreamingBatch();
+				batch.setId(value);
+				lsBatch.add(batch);
 			}
-			if(mapApplication.get(prefixKey) == null) {
-				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+			else if ("batchTime".equalsIgnoreCase(key)) {
+				batch.setBatchTimeMilis(parseSourceTime(value));
 			}
-			
-			// get jobs of first application
-			SparkMonitoringApplication app = mapApplication.get(prefixKey);
-			String applicationId = app.getId();
-			
-			// build rest url
-			String[] urlItems = StringUtils.split(restUrl, "/");
-			// case: /jobs/
-			if(urlItems.length == 1) {
-				restUrl = "/applications/" + applicationId + restUrl;
+			else if ("status".equalsIgnoreCase(key)) {
+				batch.setStatus(intern(value));
 			}
-			else if(urlItems.length >= 2) {
-				String param = urlItems[1].trim();
-				//case param in COMMANDS list
-				if(COMMANDS.contains(param)) {
-					restUrl = "/applications/" + applicationId + "/jobs/";
-				}
-				//case /jobs/<job_id>
-				else {
-					restUrl = "/applications/" + applicationId + restUrl;
-				}
+			else if ("batchDuration".equalsIgnoreCase(key)) {
+				batch.setBatchDurationMilis(Long.parseLong(value));
 			}
-			
-			// data
-			List<String> lsItem = new LinkedList<String>();
-			// connect to server and get data
-			CloseableHttpClient client = HttpClients.createDefault();
-			String url = "http://" + host + ":" + port + "/api/v1" + restUrl;
-			logger.info(url);
-			HttpGet request = new HttpGet(url);
-			CloseableHttpResponse response = null;
-			try {
-				response = client.execute(request);
-				int code = response.getStatusLine().getStatusCode();
-				if (code == HttpStatus.SC_OK) {
-					HttpEntity entity = response.getEntity();
-					if (entity != null) {
-						BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
-						// parse each line
-						String line = "";
-						while ((line = reader.readLine()) != null) {
-							// split by ":"
-							String[] items = line.split(":", 2);
-							if (items.length >= 2) {
-								lsItem.add(items[0].trim().replaceAll("\"", "").replaceAll(",", ""));
-								lsItem.add(items[1].trim().replaceAll("\"", "").replaceAll(",", ""));
-							}
-						}
-					}
-				}
-			} catch (Exception e) {
-				logger.info(e.getMessage());
-				throw e;
-			} finally {
-				try {
-					if (response != null) {
-						response.close();
-					}
-				} catch (IOException e) {
-					logger.info(e.getMessage());
-					throw e;
-				}
+			else if ("inputSize".equalsIgnoreCase(key)) {
+				batch.setInputSize(Long.parseLong(value));
 			}
-			int lsItemLength = lsItem.size();
-			// create SparkMonitoringJob object
-			List<SparkMonitoringJob> lsJob = new ArrayList<SparkMonitoringJob>();
-			SparkMonitoringJob job = new SparkMonitoringJob();
-			for (int i = 0; i < lsItemLength; i++) {
-				String key = lsItem.get(i);
-				String value = lsItem.get(++i);
-				if ("jobId".equalsIgnoreCase(key)) {
-					// start a new job
-					job = new SparkMonitoringJob();
-					job.setId(value);
-				} else if ("name".equalsIgnoreCase(key)) {
-					job.setName(value);
-				} else if ("description".equalsIgnoreCase(key)) {
-					job.setDescription(value);
-				}  
-				else if ("submissionTime".equalsIgnoreCase(key)) {
-					// convert dateTime to current locale
-					String dateTimeFormat = sourceDateTimeFormat;
-					SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
-					try {
-						Date dateTime = dateFm.parse(value);
-						dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.KOREA);
-						job.setSubmissionTime(dateFm.format(dateTime));
-						job.setSubmisstionTimeMilis(dateTime.getTime());
-					} catch (ParseException e) {
-					}
-				} else if ("completionTime".equalsIgnoreCase(key)) {
-					// convert dateTime to current locale
-					String dateTimeFormat = sourceDateTimeFormat;
-					SimpleDateFormat dateFm = new SimpleDateFormat(dateTimeFormat, Locale.US);
-					try {
-						Date dateTime = dateFm.parse(value);
-						dateFm = new SimpleDateFormat(displayDateTimeFormat, Locale.KOREA);
-						job.setCompletionTime(dateFm.format(dateTime));
-						job.setCompletionTimeMilis(dateTime.getTime());
-					} catch (ParseException e) {
-					}
-				} else if ("status".equalsIgnoreCase(key)) {
-					job.setStatus(value);
-				}
-				else if ("numTasks".equalsIgnoreCase(key)) {
-					job.setNumTasks(Integer.parseInt(value));
-				}
-				else if ("numCompletedTasks".equalsIgnoreCase(key)) {
-					job.setNumCompletedTasks(Integer.parseInt(value));
-				}
-				else if ("numFailedTasks".equalsIgnoreCase(key)) {
-					job.setNumFailedTasks(Integer.parseInt(value));
-					//add to list
-					lsJob.add(job);
-				}
+			else if ("schedulingDelay".equalsIgnoreCase(key)) {
+				batch.setSchedulingDelay(parseOptionalLong(value));
 			}
-			// check if get job information or get statistic about jobs
-			int urlItemLength = urlItems.length;
-			if(urlItemLength == 1) {
-				return getJobInformation(lsItem, lsJob);
+			else if ("processingTime".equalsIgnoreCase(key)) {
+				batch.setProcessingTime(parseOptionalLong(value));
 			}
-			else if(urlItemLength >= 2) {
-				String command = urlItems[1];
-				if(!COMMANDS.contains(command)) {
-					return getJobInformation(lsItem, lsJob);
-				}
-				else {
-					return getJobStatistic(urlItems, lsJob);
-				}
+			else if ("totalDelay".equalsIgnoreCase(key)) {
+				batch.setTotalDelay(parseOptionalLong(value));
+			}
+			else if ("numFailedOutputOps".equalsIgnoreCase(key)) {
+				batch.setNumFailedOutputOps(Integer.parseInt(value));
 			}
-			
 		}
-
-		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		return lsBatch;
 	}
 	
 	/**
-	 * Get Stages information
-	 * 
-	 * @param restUrl
-	 * @return Result of the get request, it contains a JSON-formatted string
+	 * @return null for a null value (e.g. processing time of a running batch)
 	 */
-	private InterpreterResult getStages(String restUrl) {
-		// connect to server and get response
-		if (isMonitoringServerAvailable) {
-			// first, get applications if not existed
-			if(mapApplication.get(prefixKey) == null) {
-				getApplications("/applications");
+	private Long parseOptionalLong(String value) {
+		if (value == null || value.isEmpty() || "null".equals(value)) {
+			return null;
+		}
+		return Long.parseLong(value);
+	}
+	
+	/**
+	 * Create SparkMonitoringExecutor objects from the items of an executors response
+	 */
+	private List<SparkMonitoringExecutor> parseExecutors(List<String> lsItem) {
+		int lsItemLength = lsItem.size();
+		List<SparkMonitoringExecutor> lsExecutor = new ArrayList<>();
+		SparkMonitoringExecutor executor = new SparkMonitoringExecutor();
+		for (int i = 0; i < lsItemLength; i++) {
+			String key = lsItem.get(i);
+			String value = lsItem.get(++i);
+			if ("id".equalsIgnoreCase(key)) {
+				// start a new executor
+				executor = new SparkMonitoringExecutor();
+				executor.setId(intern(value));
+				lsExecutor.add(executor);
 			}
-			if(mapApplication.get(prefixKey) == null) {
-				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+			else if ("hostPort".equalsIgnoreCase(key)) {
+				executor.setHostPort(intern(value));
 			}
-			
-			// get stages of first application
-			SparkMonitoringApplication app = mapApplication.get(prefixKey);
-			String applicationId = app.getId();
-			// build rest url
-			restUrl = "/applications/" + applicationId + restUrl;
-			
-			// data
-			List<String> lsItem = new LinkedList<String>();
-			// connect to server and get data
-			CloseableHttpClient client = HttpClients.createDefault();
-			String url = "http://" + host + ":" + port + "/api/v1" + restUrl;
-			HttpGet request = new HttpGet(url);
-			CloseableHttpResponse response = null;
-			try {
-				response = client.execute(request);
-				int code = response.getStatusLine().getStatusCode();
-				if (code == HttpStatus.SC_OK) {
-					HttpEntity entity = response.getEntity();
-					if (entity != null) {
-						BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), "UTF-8"));
-						// parse each line
-						String line = "";
-						while ((line = reader.readLine()) != null) {
-							// split by ":"
-							String[] items = line.split(":", 2);
-							if (items.length >= 2) {
-								lsItem.add(items[0].trim().replaceAll("\"", "").replaceAll(",", ""));
-								lsItem.add(items[1].trim().replaceAll("\"", "").replaceAll(",", ""));
-							}
-						}
-					}
-				}
-			} catch (IOException e) {
-				return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
-			} finally {
-				try {
-					if (response != null) {
-						response.close();
-					}
-				} catch (IOException e) {
-					return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : " + e.getMessage());
-				}
+			else if ("isActive".equalsIgnoreCase(key)) {
+				executor.setActive(Boolean.parseBoolean(value));
 			}
-			// make return result - in TABLE type
-			StringBuffer result = new StringBuffer();
-			int lsItemLength = lsItem.size();
-			// build the table header and create SparkMonitoringStage
-			// list
-			List<SparkMonitoringStage> lsStage = new ArrayList<>();
-			SparkMonitoringStage stage = new SparkMonitoringStage();
-			for (int i = 0; i < lsItemLength; i++) {
-				String key = lsItem.get(i);
-				String value = lsItem.get(++i);
-				if ("status".equalsIgnoreCase(key)) {
-					// start a new stage
-					stage = new SparkMonitoringStage();
-					stage.setStatus(value);
-				} 
-				else if ("stageId".equalsIgnoreCase(key)) {
-					stage.setId(value);
-				}
-				else if ("numCompleteTasks".equalsIgnoreCase(key)) {
-					stage.setNumCompletedTasks(Integer.parseInt(value));
-				} 
-				else if ("numFailedTasks".equalsIgnoreCase(key)) {
-					stage.setNumFailedTasks(Integer.parseInt(value));
-				} 
-				else if ("inputBytes".equalsIgnoreCase(key)) {
-					stage.setInputBytes(Long.parseLong(value));
-				} 
-				else if ("inputRecords".equalsIgnoreCase(key)) {
-					stage.setInputRecords(Long.parseLong(value));
-				} 
-				else if ("outputBytes".equalsIgnoreCase(key)) {
-					stage.setOutputBytes(Long.parseLong(value));
-				}
-				else if ("outputRecords".equalsIgnoreCase(key)) {
-					stage.setOutputRecords(Long.parseLong(value));
-				}
-				else if ("name".equalsIgnoreCase(key)) {
-					stage.setName(value);
-				}
-				else if ("details".equalsIgnoreCase(key)) {
-					stage.setDetails(value);
-					lsStage.add(stage);
-				}
+			else if ("totalCores".equalsIgnoreCase(key)) {
+				executor.setTotalCores(Integer.parseInt(value));
 			}
-			//make header
-			result.append("Id\tName\tStatus\tCompeleted Tasks\tFailed Tasks\tInputBytes/InputRecords\tOutputBytes/OutputRecords\tDetails");
-			result.append("\n");
-			// make result table body
-			for (SparkMonitoringStage obj : lsStage) {
-				result.append(obj.getId());
-				result.append("\t").append(obj.getName());
-				result.append("\t").append(obj.getStatus());
-				int totalTasks = obj.getNumCompletedTasks() + obj.getNumFailedTasks();
-				result.append("\t").append(obj.getNumCompletedTasks() + "/" + totalTasks);
-				result.append("\t").append(obj.getNumFailedTasks() + "/" + totalTasks);
-				//format 
-				NumberFormat nf = new DecimalFormat(numberFormat);
-				result.append("\t").append(nf.format(obj.getInputBytes() / 1000000D) + "MB/" + obj.getInputRecords());
-				result.append("\t").append(nf.format(obj.getOutputBytes() / 1000000D) + "MB/" + obj.getOutputRecords());
-				result.append("\t").append(obj.getDetails());
-				result.append("\n"); // new row
+			else if ("maxTasks".equalsIgnoreCase(key)) {
+				executor.setMaxTasks(Integer.parseInt(value));
+			}
+			else if ("activeTasks".equalsIgnoreCase(key)) {
+				executor.setActiveTasks(Integer.parseInt(value));
+			}
+			else if ("failedTasks".equalsIgnoreCase(key)) {
+				executor.setFailedTasks(Integer.parseInt(value));
+			}
+			else if ("completedTasks".equalsIgnoreCase(key)) {
+				executor.setCompletedTasks(Integer.parseInt(value));
+			}
+			else if ("totalTasks".equalsIgnoreCase(key)) {
+				executor.setTotalTasks(Integer.parseInt(value));
+			}
+			else if ("totalDuration".equalsIgnoreCase(key)) {
+				executor.setTotalDuration(Long.parseLong(value));
+			}
+			else if ("totalGCTime".equalsIgnoreCase(key)) {
+				executor.setTotalGCTime(Long.parseLong(value));
+			}
+			else if ("totalInputBytes".equalsIgnoreCase(key)) {
+				executor.setTotalInputBytes(Long.parseLong(value));
+			}
+			else if ("totalShuffleRead".equalsIgnoreCase(key)) {
+				executor.setTotalShuffleRead(Long.parseLong(value));
+			}
+			else if ("totalShuffleWrite".equalsIgnoreCase(key)) {
+				executor.setTotalShuffleWrite(Long.parseLong(value));
+			}
+			else if ("memoryUsed".equalsIgnoreCase(key)) {
+				executor.setMemoryUsed(Long.parseLong(value));
+			}
+			else if ("maxMemory".equalsIgnoreCase(key)) {
+				executor.setMaxMemory(Long.parseLong(value));
+			}
+			else if ("diskUsed".equalsIgnoreCase(key)) {
+				executor.setDiskUsed(Long.parseLong(value));
+			}
+			else if ("addTime".equalsIgnoreCase(key)) {
+				executor.setAddTimeMilis(parseSourceTime(value));
+			}
+			else if ("removeTime".equalsIgnoreCase(key)) {
+				executor.setRemoveTimeMilis(parseSourceTime(value));
 			}
-
-			return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
-					result.toString());
 		}
-
-		return new InterpreterResult(InterpreterResult.Code.ERROR, "Error get data from server");
+		return lsExecutor;
+	}
+	
+	/**
+	 * Parse a datetime of the REST api to milliseconds
+	 * 
+	 * @return milliseconds or null if the value is not a datetime
+	 */
+	private Long parseSourceTime(String value) {
+		SimpleDateFormat dateFm = new SimpleDateFormat(sourceDateTimeFormat, Locale.US);
+		try {
+			return dateFm.parse(value).getTime();
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Parse list of ids in form: [ 1 2 3 ]
+	 */
+	private List<String> parseIdList(String value) {
+		List<String> ids = new ArrayList<>();
+		String[] items = StringUtils.split(value.replace("[", "").replace("]", ""), " ");
+		if (items != null) {
+			ids.addAll(Arrays.asList(items));
+		}
+		return ids;
 	}
 	
 	private InterpreterResult getJobInformation(
@@ -725,13 +4175,9 @@ public class SparkMonitoringInterpreter extends Interpreter {
 			else if ("submissionTime".equalsIgnoreCase(key)) {
 				if (row == 0) {
 					result.append("\tSubmission Time");
-				}
-			} else if ("completionTime".equalsIgnoreCase(key)) {
-				if (row == 0) {
+					// completion time and duration are added here because
+					// running jobs have no completionTime field
 					result.append("\tCompletion Time");
-				}
-				// add duration
-				if (row == 0) {
 					result.append("\tDuration");
 				}
 			} else if ("status".equalsIgnoreCase(key)) {
@@ -762,13 +4208,18 @@ public class SparkMonitoringInterpreter extends Interpreter {
 			result.append(aJob.getId());
 			result.append("\t").append(StringUtils.isNotEmpty(aJob.getDescription()) ? aJob.getDescription() + ": " : "").append(aJob.getName());
 			result.append("\t").append(aJob.getSubmissionTime());
-			result.append("\t").append(aJob.getCompletionTime());
-			//calculate duration
+			//calculate duration, running jobs have no completion time yet
 			Long startTime = aJob.getSubmisstionTimeMilis();
 			Long endTime = aJob.getCompletionTimeMilis();
-			Double duration = (endTime - startTime) / 1000D;
-			NumberFormat nf = new DecimalFormat(numberFormat);
-			result.append("\t").append(nf.format(duration) + "s");
+			if (startTime != null && endTime != null) {
+				result.append("\t").append(aJob.getCompletionTime());
+				Double duration = (endTime - startTime) / 1000D;
+				NumberFormat nf = new DecimalFormat(numberFormat);
+				result.append("\t").append(nf.format(duration) + "s");
+			} else {
+				result.append("\t").append("-");
+				result.append("\t").append("-");
+			}
 			result.append("\t").append(aJob.getStatus());
 			result.append("\t").append(aJob.getNumTasks());
 			result.append("\t").append(aJob.getNumCompletedTasks() + "/" + aJob.getNumTasks());
@@ -980,14 +4431,70 @@ public class SparkMonitoringInterpreter extends Interpreter {
 		return cal.getTimeInMillis();
 	}
 	
+	/**
+	 * Add a sample of the interpreter process and of its load since the
+	 * previous sample
+	 */
+	private void sampleSystem() {
+		try {
+			systemSampler.sample(commandCount.get(), requestCount.get(), runs.size());
+		} catch (Exception e) {
+			// keep sampling
+			logger.error("Sample the interpreter process", e);
+		}
+	}
+	
+	/**
+	 * Cpu load, memory, gc time and threads of the interpreter process, with
+	 * the load of the interpreter over the same intervals, and the correlation
+	 * of each series with the REST requests sent: a high correlation tells
+	 * that the monitoring itself loads the host
+	 * 
+	 * @return Result in TABLE type
+	 */
 	private InterpreterResult getCpuUsage() {
+		if (systemSampler == null) {
+			return new InterpreterResult(InterpreterResult.Code.ERROR, "Error : interpreter is not opened");
+		}
+		if (systemSamplerExecutor == null) {
+			// no background sampling, sample now
+			sampleSystem();
+		}
+		NumberFormat nf = new DecimalFormat(numberFormat);
 		StringBuffer result = new StringBuffer();
-		OperatingSystemMXBean osBean =
-		         (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
-		
-		
+		result.append("Metric\tLast\tAverage\tMax\tCorrelation with Requests");
+		result.append("\n");
+		for (String series : SparkMonitoringSystemSampler.SERIES) {
+			double[] summary = systemSampler.getSummary(series);
+			result.append(series);
+			for (double value : summary) {
+				result.append("\t").append(formatSystemValue(nf, series, value));
+			}
+			double correlation = SparkMonitoringSystemSampler.REQUESTS.equals(series) ? Double.NaN
+					: systemSampler.getCorrelation(series, SparkMonitoringSystemSampler.REQUESTS);
+			result.append("\t").append(Double.isNaN(correlation) ? "-" : new DecimalFormat("#.##").format(correlation));
+			result.append("\n"); // new row
+		}
 		return new InterpreterResult(InterpreterResult.Code.SUCCESS, InterpreterResult.Type.TABLE,
 				result.toString());
 	}
+	
+	private String formatSystemValue(NumberFormat nf, String series, double value) {
+		if (Double.isNaN(value)) {
+			return "-";
+		}
+		switch (series) {
+		case SparkMonitoringSystemSampler.PROCESS_CPU:
+		case SparkMonitoringSystemSampler.SYSTEM_CPU:
+			return nf.format(value * 100) + "%";
+		case SparkMonitoringSystemSampler.HEAP_USED:
+		case SparkMonitoringSystemSampler.NON_HEAP_USED:
+			return nf.format(value / 1000000D) + "MB";
+		case SparkMonitoringSystemSampler.GC_TIME:
+			return nf.format(value) + "ms";
+		default:
+			return nf.format(value);
+		}
+	}
 
 }
@@ -1,5 +1,7 @@
 package org.apache.zeppelin.zeppelin_spark_monitoring;
 
+import java.util.List;
+
 public class SparkMonitoringJob {
 	private String id;
 	private String name;
@@ -13,6 +15,7 @@ public class SparkMonitoringJob {
 	private int numFailedTasks;
 	private Long submisstionTimeMilis;
 	private Long completionTimeMilis;
+	private List<String> stageIds;
 	
 	public Long getSubmisstionTimeMilis() {
 		return submisstionTimeMilis;
@@ -86,5 +89,11 @@ public class SparkMonitoringJob {
 	public void setDescription(String description) {
 		this.description = description;
 	}
+	public List<String> getStageIds() {
+		return stageIds;
+	}
+	public void setStageIds(List<String> stageIds) {
+		this.stageIds = stageIds;
+	}
 	
 }
@@ -0,0 +1,186 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Critical path analysis of a job.
+ * The REST api does not expose the stage dependencies, so they are rebuilt
+ * from the timeline: a stage waits for the stage which completed last before
+ * it was submitted.
+ */
+public class SparkMonitoringJobAnalyzer {
+	private final SparkMonitoringJob job;
+	private final List<SparkMonitoringStage> stages;
+	private final long now;
+
+	private long jobStart;
+	private long jobEnd;
+	private long idleTime;
+	private SparkMonitoringStage longestStage;
+	private final List<SparkMonitoringStage> criticalPath = new LinkedList<>();
+	private final Set<String> criticalPathIds = new HashSet<>();
+	private final Map<String, Long> gapBefore = new HashMap<>();
+
+	/**
+	 * @param job
+	 * @param stages
+	 *            stages of the job, one attempt per stage
+	 * @param now
+	 *            end of the stages which are still running
+	 */
+	public SparkMonitoringJobAnalyzer(SparkMonitoringJob job, List<SparkMonitoringStage> stages, long now) {
+		this.job = job;
+		this.stages = new ArrayList<>(stages);
+		this.now = now;
+		analyze();
+	}
+
+	private void analyze() {
+		// stages never submitted (skipped) are not in the timeline
+		List<SparkMonitoringStage> timeline = new ArrayList<>();
+		for (SparkMonitoringStage stage : stages) {
+			if (stage.getSubmissionTimeMilis() != null) {
+				timeline.add(stage);
+			}
+		}
+		Collections.sort(timeline, new Comparator<SparkMonitoringStage>() {
+			@Override
+			public int compare(SparkMonitoringStage o1, SparkMonitoringStage o2) {
+				return Long.compare(o1.getSubmissionTimeMilis(), o2.getSubmissionTimeMilis());
+			}
+		});
+		Collections.sort(stages, new Comparator<SparkMonitoringStage>() {
+			@Override
+			public int compare(SparkMonitoringStage o1, SparkMonitoringStage o2) {
+				Long t1 = o1.getSubmissionTimeMilis();
+				Long t2 = o2.getSubmissionTimeMilis();
+				if (t1 == null || t2 == null) {
+					return t1 == null ? (t2 == null ? 0 : 1) : -1;
+				}
+				return Long.compare(t1, t2);
+			}
+		});
+
+		jobStart = job.getSubmisstionTimeMilis() != null ? job.getSubmisstionTimeMilis()
+				: (timeline.isEmpty() ? now : timeline.get(0).getSubmissionTimeMilis());
+		jobEnd = job.getCompletionTimeMilis() != null ? job.getCompletionTimeMilis() : now;
+
+		// predecessor: the stage completed last before the submission
+		Map<String, SparkMonitoringStage> predecessor = new HashMap<>();
+		SparkMonitoringStage lastEnded = null;
+		long longestDuration = -1;
+		for (SparkMonitoringStage stage : timeline) {
+			long submission = stage.getSubmissionTimeMilis();
+			SparkMonitoringStage previous = null;
+			for (SparkMonitoringStage other : timeline) {
+				if (other == stage || getEnd(other) > submission) {
+					continue;
+				}
+				if (previous == null || getEnd(other) > getEnd(previous)) {
+					previous = other;
+				}
+			}
+			if (previous != null) {
+				predecessor.put(stage.getId(), previous);
+			}
+			long readyTime = previous != null ? getEnd(previous) : jobStart;
+			gapBefore.put(stage.getId(), Math.max(0, submission - readyTime));
+
+			if (lastEnded == null || getEnd(stage) > getEnd(lastEnded)) {
+				lastEnded = stage;
+			}
+			if (getDuration(stage) > longestDuration) {
+				longestDuration = getDuration(stage);
+				longestStage = stage;
+			}
+		}
+
+		// walk back from the stage which ended last
+		SparkMonitoringStage current = lastEnded;
+		while (current != null) {
+			criticalPath.add(0, current);
+			criticalPathIds.add(current.getId());
+			current = predecessor.get(current.getId());
+		}
+
+		// idle time: wall-clock time when no stage of the job is running
+		long covered = 0;
+		long coveredUntil = jobStart;
+		for (SparkMonitoringStage stage : timeline) {
+			long start = Math.max(stage.getSubmissionTimeMilis(), coveredUntil);
+			long end = Math.min(getEnd(stage), jobEnd);
+			if (end > start) {
+				covered += end - start;
+				coveredUntil = end;
+			}
+		}
+		idleTime = Math.max(0, getWallClock() - covered);
+	}
+
+	public long getEnd(SparkMonitoringStage stage) {
+		return stage.getCompletionTimeMilis() != null ? stage.getCompletionTimeMilis() : now;
+	}
+
+	public long getDuration(SparkMonitoringStage stage) {
+		if (stage.getSubmissionTimeMilis() == null) {
+			return 0;
+		}
+		return Math.max(0, getEnd(stage) - stage.getSubmissionTimeMilis());
+	}
+
+	/**
+	 * @return share of the job wall-clock time, in percent
+	 */
+	public double getShare(SparkMonitoringStage stage) {
+		long wallClock = getWallClock();
+		return wallClock > 0 ? getDuration(stage) * 100D / wallClock : 0;
+	}
+
+	public Long getGapBefore(SparkMonitoringStage stage) {
+		return gapBefore.get(stage.getId());
+	}
+
+	public boolean isOnCriticalPath(SparkMonitoringStage stage) {
+		return criticalPathIds.contains(stage.getId());
+	}
+
+	public long getWallClock() {
+		return Math.max(0, jobEnd - jobStart);
+	}
+
+	public long getJobStart() {
+		return jobStart;
+	}
+
+	public long getIdleTime() {
+		return idleTime;
+	}
+
+	public SparkMonitoringJob getJob() {
+		return job;
+	}
+
+	/**
+	 * @return stages of the job, ordered by submission time, skipped stages at last
+	 */
+	public List<SparkMonitoringStage> getStages() {
+		return stages;
+	}
+
+	public List<SparkMonitoringStage> getCriticalPath() {
+		return criticalPath;
+	}
+
+	public SparkMonitoringStage getLongestStage() {
+		return longestStage;
+	}
+
+}
@@ -0,0 +1,206 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Duration and task count profiles of the recurring jobs of an application,
+ * grouped by normalized description (or call site if there is no
+ * description). Each completed job is added once to the quantile sketches of
+ * its group, whichever command fetched it. The jobs of a group are split in
+ * epochs of EPOCH_SIZE jobs: the trend compares the median duration of the
+ * last one or two epochs with the median of the older ones.
+ */
+public class SparkMonitoringJobProfiles implements Serializable, SparkMonitoringMemoryBudget.Sized {
+	private static final long serialVersionUID = 1L;
+
+	/** number of jobs of an epoch of a group */
+	public static final int EPOCH_SIZE = 10;
+	/** maximum length of a group */
+	private static final int MAX_GROUP_LENGTH = 100;
+
+	private static final Pattern QUOTED = Pattern.compile("'[^']*'|\"[^\"]*\"");
+	// a number after an operator or a separator is a parameter (id = 42, in (1, 2), <console>:26), not a name
+	private static final Pattern NUMBER = Pattern.compile("([=<>(,:]\\s*)-?\\d+(\\.\\d+)?");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+
+	/**
+	 * Profile of a group of jobs
+	 */
+	public static class Group implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private long failed;
+		private String lastJobId;
+		private final SparkMonitoringQuantileSketch durations = new SparkMonitoringQuantileSketch();
+		private final SparkMonitoringQuantileSketch tasks = new SparkMonitoringQuantileSketch();
+		// durations of the epochs before the previous one, of the previous one and of the current one
+		private final SparkMonitoringQuantileSketch olderDurations = new SparkMonitoringQuantileSketch();
+		private SparkMonitoringQuantileSketch previousDurations = new SparkMonitoringQuantileSketch();
+		private SparkMonitoringQuantileSketch currentDurations = new SparkMonitoringQuantileSketch();
+
+		Group(String name) {
+			this.name = name;
+		}
+
+		private void add(SparkMonitoringJob job, double duration) {
+			lastJobId = job.getId();
+			durations.add(duration);
+			tasks.add(job.getNumTasks());
+			currentDurations.add(duration);
+			if (currentDurations.getCount() >= EPOCH_SIZE) {
+				olderDurations.merge(previousDurations);
+				previousDurations = currentDurations;
+				currentDurations = new SparkMonitoringQuantileSketch();
+			}
+		}
+
+		private long estimateBytes() {
+			return 64 + SparkMonitoringStringPool.estimateBytes(name) + durations.estimateBytes() + tasks.estimateBytes()
+					+ olderDurations.estimateBytes() + previousDurations.estimateBytes() + currentDurations.estimateBytes();
+		}
+
+		public String getName() {
+			return name;
+		}
+		/**
+		 * @return number of succeeded jobs profiled
+		 */
+		public long getCount() {
+			return durations.getCount();
+		}
+		public long getFailed() {
+			return failed;
+		}
+		public String getLastJobId() {
+			return lastJobId;
+		}
+		/**
+		 * @return sketch of the durations in milliseconds
+		 */
+		public SparkMonitoringQuantileSketch getDurations() {
+			return durations;
+		}
+		public SparkMonitoringQuantileSketch getTasks() {
+			return tasks;
+		}
+		/**
+		 * @return relative change of the median duration of the last jobs
+		 *         compared to the older ones, NaN if there are not enough jobs
+		 */
+		public double getTrend() {
+			if (olderDurations.getCount() == 0) {
+				return Double.NaN;
+			}
+			SparkMonitoringQuantileSketch recent = new SparkMonitoringQuantileSketch();
+			recent.merge(previousDurations);
+			recent.merge(currentDurations);
+			double baseline = olderDurations.getQuantile(0.5);
+			if (baseline <= 0) {
+				return Double.NaN;
+			}
+			return recent.getQuantile(0.5) / baseline - 1;
+		}
+	}
+
+	private final int maxGroups;
+	// jobs already profiled, by id
+	private final BitSet profiledJobs = new BitSet();
+	private final Map<String, Group> groups = new LinkedHashMap<>();
+
+	/**
+	 * @param maxGroups
+	 *            maximum number of groups, the jobs of the next groups are not
+	 *            profiled
+	 */
+	public SparkMonitoringJobProfiles(int maxGroups) {
+		this.maxGroups = maxGroups;
+	}
+
+	/**
+	 * Add the jobs completed since the previous update, the running jobs and
+	 * the jobs already profiled are skipped
+	 */
+	public synchronized void update(List<SparkMonitoringJob> lsJob) {
+		for (SparkMonitoringJob job : lsJob) {
+			boolean succeeded = "SUCCEEDED".equalsIgnoreCase(job.getStatus());
+			if (!succeeded && !"FAILED".equalsIgnoreCase(job.getStatus())) {
+				continue;
+			}
+			int id;
+			try {
+				id = Integer.parseInt(job.getId());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (id < 0 || profiledJobs.get(id)) {
+				continue;
+			}
+			String name = normalize(job.getDescription() != null && !"null".equals(job.getDescription())
+					? job.getDescription() : job.getName());
+			Group group = groups.get(name);
+			if (group == null) {
+				if (groups.size() >= maxGroups) {
+					continue;
+				}
+				group = new Group(name);
+				groups.put(name, group);
+			}
+			profiledJobs.set(id);
+			if (!succeeded) {
+				group.failed++;
+			} else if (job.getSubmisstionTimeMilis() != null && job.getCompletionTimeMilis() != null) {
+				group.add(job, job.getCompletionTimeMilis() - job.getSubmisstionTimeMilis());
+			}
+		}
+	}
+
+	/**
+	 * Replace the literals and numeric parameters of a description or call
+	 * site, so that the runs of a query with different parameters fall in the
+	 * same group
+	 */
+	public static String normalize(String description) {
+		if (description == null) {
+			return "-";
+		}
+		String normalized = QUOTED.matcher(description).replaceAll("?");
+		normalized = NUMBER.matcher(normalized).replaceAll("$1#");
+		normalized = SPACES.matcher(normalized).replaceAll(" ").trim();
+		if (normalized.length() > MAX_GROUP_LENGTH) {
+			normalized = normalized.substring(0, MAX_GROUP_LENGTH) + "...";
+		}
+		return normalized;
+	}
+
+	/**
+	 * @return groups, in order of their first job, updated under the lock of
+	 *         the profiles
+	 */
+	public synchronized List<Group> getGroups() {
+		return new ArrayList<>(groups.values());
+	}
+
+	@Override
+	public synchronized long estimateBytes() {
+		long bytes = 64 + profiledJobs.size() / 8;
+		for (Group group : groups.values()) {
+			bytes += group.estimateBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return number of jobs profiled
+	 */
+	public synchronized int getProfiledJobs() {
+		return profiledJobs.cardinality();
+	}
+
+}
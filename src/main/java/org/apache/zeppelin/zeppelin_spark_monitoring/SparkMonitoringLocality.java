@@ -0,0 +1,127 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tasks and task time of a stage by locality level and host, added task by
+ * task while its task list is read: only one entry per level and host is
+ * kept, whatever the number of tasks
+ */
+public class SparkMonitoringLocality {
+	/** locality levels, best first */
+	public static final List<String> LEVELS = Arrays.asList("PROCESS_LOCAL", "NODE_LOCAL", "NO_PREF", "RACK_LOCAL",
+			"ANY");
+	/** host of the entry of all hosts of a level */
+	public static final String ALL_HOSTS = "all";
+
+	/**
+	 * Tasks of a locality level on a host, or on all hosts
+	 */
+	public static class Entry {
+		private final String level;
+		private final String host;
+		private int tasks;
+		private long millis;
+
+		Entry(String level, String host) {
+			this.level = level;
+			this.host = host;
+		}
+
+		public String getLevel() {
+			return level;
+		}
+		/**
+		 * @return host, or ALL_HOSTS
+		 */
+		public String getHost() {
+			return host;
+		}
+		public int getTasks() {
+			return tasks;
+		}
+		/**
+		 * @return sum of the durations of the tasks, in milliseconds
+		 */
+		public long getMillis() {
+			return millis;
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<>();
+	private int tasks;
+	private long millis;
+
+	/**
+	 * Add a task
+	 *
+	 * @param durationMillis
+	 *            duration of the task, until now if it is running
+	 */
+	public void addTask(String level, String host, long durationMillis) {
+		String taskLevel = level != null ? level : "-";
+		add(taskLevel, ALL_HOSTS, durationMillis);
+		add(taskLevel, host != null ? host : "-", durationMillis);
+		tasks++;
+		millis += durationMillis;
+	}
+
+	private void add(String level, String host, long durationMillis) {
+		String key = level + "|" + host;
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(level, host);
+			entries.put(key, entry);
+		}
+		entry.tasks++;
+		entry.millis += durationMillis;
+	}
+
+	public int getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * @return sum of the durations of all tasks, in milliseconds
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * @return entries by level, best first, each level with all its hosts
+	 *         first then its hosts by task time
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> lsEntry = new ArrayList<>(entries.values());
+		Collections.sort(lsEntry, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				int compare = Integer.compare(rank(o1.level), rank(o2.level));
+				if (compare == 0) {
+					compare = o1.level.compareTo(o2.level);
+				}
+				if (compare == 0) {
+					compare = Boolean.compare(!ALL_HOSTS.equals(o1.host), !ALL_HOSTS.equals(o2.host));
+				}
+				if (compare == 0) {
+					compare = Long.compare(o2.millis, o1.millis);
+				}
+				return compare != 0 ? compare : o1.host.compareTo(o2.host);
+			}
+		});
+		return lsEntry;
+	}
+
+	private static int rank(String level) {
+		int rank = LEVELS.indexOf(level);
+		return rank >= 0 ? rank : LEVELS.size();
+	}
+
+}
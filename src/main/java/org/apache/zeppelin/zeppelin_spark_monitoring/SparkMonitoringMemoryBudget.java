@@ -0,0 +1,221 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One memory budget for the caches and indexes of the interpreter and the
+ * responses being read. Each structure reports its estimated size and the
+ * entries it can give up; over the budget, the entries are evicted (or
+ * spilled to disk by their structure) by cost and recency: the largest and
+ * least recently used first. A response which does not fit in the budget
+ * once the caches are evicted is truncated by its reader.
+ */
+public class SparkMonitoringMemoryBudget {
+
+	/**
+	 * A structure of the interpreter under the budget
+	 */
+	public interface Account {
+		String getName();
+
+		/**
+		 * @return estimated bytes retained in memory
+		 */
+		long estimateBytes();
+
+		/**
+		 * Add the entries which can be evicted or spilled
+		 */
+		void addCandidates(List<Candidate> candidates);
+
+		/**
+		 * Evict or spill an entry
+		 *
+		 * @return estimated bytes freed
+		 */
+		long evict(String key);
+	}
+
+	/**
+	 * Object which reports its estimated size
+	 */
+	public interface Sized {
+		long estimateBytes();
+	}
+
+	/**
+	 * An entry which can be evicted or spilled
+	 */
+	public static class Candidate {
+		private final Account account;
+		private final String key;
+		private final long bytes;
+		private final long lastAccess;
+
+		public Candidate(Account account, String key, long bytes, long lastAccess) {
+			this.account = account;
+			this.key = key;
+			this.bytes = bytes;
+			this.lastAccess = lastAccess;
+		}
+
+		public Account getAccount() {
+			return account;
+		}
+		public String getKey() {
+			return key;
+		}
+		public long getBytes() {
+			return bytes;
+		}
+		public long getLastAccess() {
+			return lastAccess;
+		}
+	}
+
+	private final long budgetBytes;
+	private final List<Account> accounts = new CopyOnWriteArrayList<>();
+	// responses being read
+	private final AtomicLong queryBytes = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong evictedBytes = new AtomicLong();
+	private final AtomicLong truncatedQueries = new AtomicLong();
+
+	/**
+	 * @param budgetBytes
+	 *            maximum estimated bytes of the registered structures and the
+	 *            responses being read
+	 */
+	public SparkMonitoringMemoryBudget(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	public void register(Account account) {
+		accounts.add(account);
+	}
+
+	public List<Account> getAccounts() {
+		return new ArrayList<>(accounts);
+	}
+
+	/**
+	 * @return estimated bytes of the structures and of the responses being
+	 *         read
+	 */
+	public long getUsedBytes() {
+		long used = queryBytes.get();
+		for (Account account : accounts) {
+			used += account.estimateBytes();
+		}
+		return used;
+	}
+
+	/**
+	 * Evict entries until the used bytes are at most the budget
+	 */
+	public void enforce() {
+		enforce(budgetBytes);
+	}
+
+	/**
+	 * Evict the largest, least recently used entries until the used bytes are
+	 * at most target, or there is nothing left to evict
+	 *
+	 * @return used bytes after eviction
+	 */
+	public synchronized long enforce(long targetBytes) {
+		long used = getUsedBytes();
+		if (used <= targetBytes) {
+			return used;
+		}
+		List<Candidate> candidates = new ArrayList<>();
+		for (Account account : accounts) {
+			account.addCandidates(candidates);
+		}
+		final long now = System.currentTimeMillis();
+		// cost: bytes held times time since the last access
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+				return Double.compare(cost(o2, now), cost(o1, now));
+			}
+		});
+		for (Candidate candidate : candidates) {
+			if (used <= targetBytes) {
+				break;
+			}
+			long freed = candidate.account.evict(candidate.key);
+			if (freed > 0) {
+				evictions.incrementAndGet();
+				evictedBytes.addAndGet(freed);
+				used -= freed;
+			}
+		}
+		return used;
+	}
+
+	private static double cost(Candidate candidate, long now) {
+		return (double) candidate.bytes * (Math.max(0L, now - candidate.lastAccess) + 1);
+	}
+
+	/**
+	 * Reserve memory for a response being read, evicting entries if needed
+	 *
+	 * @return false if the response does not fit in the budget, it must be
+	 *         truncated
+	 */
+	public boolean reserveQueryBytes(long bytes) {
+		queryBytes.addAndGet(bytes);
+		if (getUsedBytes() <= budgetBytes || enforce(budgetBytes) <= budgetBytes) {
+			return true;
+		}
+		queryBytes.addAndGet(-bytes);
+		return false;
+	}
+
+	/**
+	 * Count a response truncated because it did not fit in the budget
+	 */
+	public void addTruncatedQuery() {
+		truncatedQueries.incrementAndGet();
+	}
+
+	/**
+	 * Release the memory of a response read
+	 */
+	public void releaseQueryBytes(long bytes) {
+		queryBytes.addAndGet(-bytes);
+	}
+
+	public long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	/**
+	 * @return bytes reserved by the responses being read
+	 */
+	public long getQueryBytes() {
+		return queryBytes.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getEvictedBytes() {
+		return evictedBytes.get();
+	}
+
+	/**
+	 * @return responses truncated since the start
+	 */
+	public long getTruncatedQueries() {
+		return truncatedQueries.get();
+	}
+
+}
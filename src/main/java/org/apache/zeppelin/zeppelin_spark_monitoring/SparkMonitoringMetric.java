@@ -0,0 +1,260 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class presents a metric of the Spark metrics servlet (/metrics/json): a
+ * gauge, counter, histogram, meter or timer of the driver
+ */
+public class SparkMonitoringMetric implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final String GAUGE = "gauge";
+	public static final String COUNTER = "counter";
+	public static final String HISTOGRAM = "histogram";
+	public static final String METER = "meter";
+	public static final String TIMER = "timer";
+
+	private String name;
+	private String type;
+	private double value;
+	private long count;
+	private String unit;
+
+	/**
+	 * Parse the payload of the metrics servlet, the metrics which are not
+	 * numbers (e.g. list gauges) are skipped
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the payload is not valid json
+	 */
+	public static List<SparkMonitoringMetric> parse(String json) {
+		Object root = new JsonParser(json).parse();
+		List<SparkMonitoringMetric> lsMetric = new ArrayList<>();
+		if (!(root instanceof Map)) {
+			return lsMetric;
+		}
+		Map<?, ?> sections = (Map<?, ?>) root;
+		addMetrics(lsMetric, sections.get("gauges"), GAUGE, "value", null);
+		addMetrics(lsMetric, sections.get("counters"), COUNTER, "count", null);
+		addMetrics(lsMetric, sections.get("histograms"), HISTOGRAM, "mean", null);
+		addMetrics(lsMetric, sections.get("meters"), METER, "m1_rate", "rate_units");
+		addMetrics(lsMetric, sections.get("timers"), TIMER, "mean", "duration_units");
+		return lsMetric;
+	}
+
+	private static void addMetrics(List<SparkMonitoringMetric> lsMetric, Object section, String type,
+			String valueField, String unitField) {
+		if (!(section instanceof Map)) {
+			return;
+		}
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) section).entrySet()) {
+			if (!(entry.getValue() instanceof Map)) {
+				continue;
+			}
+			Map<?, ?> fields = (Map<?, ?>) entry.getValue();
+			Object value = fields.get(valueField);
+			if (!(value instanceof Double)) {
+				continue;
+			}
+			SparkMonitoringMetric metric = new SparkMonitoringMetric();
+			metric.setName((String) entry.getKey());
+			metric.setType(type);
+			metric.setValue((Double) value);
+			Object count = fields.get("count");
+			metric.setCount(count instanceof Double ? ((Double) count).longValue() : 0L);
+			Object unit = unitField != null ? fields.get(unitField) : null;
+			metric.setUnit(unit instanceof String ? (String) unit : null);
+			lsMetric.add(metric);
+		}
+	}
+
+	/**
+	 * Minimal json parser: objects to LinkedHashMap, arrays to ArrayList,
+	 * numbers to Double. Also reads the thread dumps of the executors.
+	 */
+	static class JsonParser {
+		private final String json;
+		private int pos;
+
+		JsonParser(String json) {
+			this.json = json;
+		}
+
+		Object parse() {
+			Object value = parseValue();
+			skipWhitespace();
+			if (pos < json.length()) {
+				throw error("end of payload");
+			}
+			return value;
+		}
+
+		private Object parseValue() {
+			skipWhitespace();
+			if (pos >= json.length()) {
+				throw error("value");
+			}
+			char c = json.charAt(pos);
+			if (c == '{') {
+				pos++;
+				Map<String, Object> map = new LinkedHashMap<>();
+				skipWhitespace();
+				if (peek('}')) {
+					return map;
+				}
+				do {
+					skipWhitespace();
+					String key = parseString();
+					skipWhitespace();
+					expect(':');
+					map.put(key, parseValue());
+					skipWhitespace();
+				} while (peek(','));
+				expect('}');
+				return map;
+			} else if (c == '[') {
+				pos++;
+				List<Object> list = new ArrayList<>();
+				skipWhitespace();
+				if (peek(']')) {
+					return list;
+				}
+				do {
+					list.add(parseValue());
+					skipWhitespace();
+				} while (peek(','));
+				expect(']');
+				return list;
+			} else if (c == '"') {
+				return parseString();
+			} else if (json.startsWith("true", pos)) {
+				pos += 4;
+				return Boolean.TRUE;
+			} else if (json.startsWith("false", pos)) {
+				pos += 5;
+				return Boolean.FALSE;
+			} else if (json.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			}
+			int start = pos;
+			while (pos < json.length() && "+-0123456789.eE".indexOf(json.charAt(pos)) >= 0) {
+				pos++;
+			}
+			try {
+				return Double.valueOf(json.substring(start, pos));
+			} catch (NumberFormatException e) {
+				pos = start;
+				throw error("value");
+			}
+		}
+
+		private String parseString() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			while (pos < json.length()) {
+				char c = json.charAt(pos++);
+				if (c == '"') {
+					return sb.toString();
+				}
+				if (c == '\\' && pos < json.length()) {
+					char escaped = json.charAt(pos++);
+					switch (escaped) {
+					case 'n':
+						sb.append('\n');
+						break;
+					case 't':
+						sb.append('\t');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					case 'b':
+						sb.append('\b');
+						break;
+					case 'f':
+						sb.append('\f');
+						break;
+					case 'u':
+						sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default:
+						sb.append(escaped);
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+			throw error("end of string");
+		}
+
+		private void skipWhitespace() {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean peek(char c) {
+			if (pos < json.length() && json.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (!peek(c)) {
+				throw error("'" + c + "'");
+			}
+		}
+
+		private IllegalArgumentException error(String expected) {
+			return new IllegalArgumentException("Wrong json payload, expected " + expected + " at " + pos);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+	public void setName(String name) {
+		this.name = name;
+	}
+	public String getType() {
+		return type;
+	}
+	public void setType(String type) {
+		this.type = type;
+	}
+	/**
+	 * @return value of a gauge, count of a counter, mean of a histogram or
+	 *         timer, one-minute rate of a meter
+	 */
+	public double getValue() {
+		return value;
+	}
+	public void setValue(double value) {
+		this.value = value;
+	}
+	/**
+	 * @return number of events of a counter, histogram, meter or timer
+	 */
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+	public String getUnit() {
+		return unit;
+	}
+	public void setUnit(String unit) {
+		this.unit = unit;
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples of the metrics of a driver, one ring buffer per metric, with the
+ * average response time of the REST api between two samples, to correlate
+ * the driver load (e.g. the listener bus backlog) with slow responses
+ */
+public class SparkMonitoringMetricsHistory implements Serializable, SparkMonitoringMemoryBudget.Sized {
+	private static final long serialVersionUID = 1L;
+
+	/** series of the average response time of the REST api, in milliseconds */
+	public static final String REST_RESPONSE_TIME = "rest.responseTime";
+
+	private final int capacity;
+	private final int maxSeries;
+	private final Map<String, SparkMonitoringRingBuffer> series = new LinkedHashMap<>();
+	private long responseTimeSum;
+	private long responseCount;
+	private List<SparkMonitoringMetric> lastSample = new ArrayList<>();
+
+	/**
+	 * @param capacity
+	 *            number of samples kept per metric
+	 * @param maxSeries
+	 *            maximum number of metrics kept, the next ones are not
+	 *            sampled
+	 */
+	public SparkMonitoringMetricsHistory(int capacity, int maxSeries) {
+		this.capacity = capacity;
+		this.maxSeries = maxSeries;
+	}
+
+	/**
+	 * Count the response time of a request to the REST api
+	 */
+	public synchronized void addResponseTime(long millis) {
+		responseTimeSum += millis;
+		responseCount++;
+	}
+
+	/**
+	 * Add a sample of all the metrics, and of the average response time since
+	 * the previous sample (if any request was sent)
+	 */
+	public synchronized void record(long time, List<SparkMonitoringMetric> lsMetric) {
+		for (SparkMonitoringMetric metric : lsMetric) {
+			add(metric.getName(), time, metric.getValue());
+		}
+		if (responseCount > 0) {
+			add(REST_RESPONSE_TIME, time, (double) responseTimeSum / responseCount);
+			responseTimeSum = 0;
+			responseCount = 0;
+		}
+		lastSample = new ArrayList<>(lsMetric);
+	}
+
+	private void add(String name, long time, double value) {
+		SparkMonitoringRingBuffer buffer = series.get(name);
+		if (buffer == null) {
+			if (series.size() >= maxSeries) {
+				return;
+			}
+			buffer = new SparkMonitoringRingBuffer(capacity);
+			series.put(name, buffer);
+		}
+		buffer.add(time, value);
+	}
+
+	/**
+	 * @return metrics of the latest sample
+	 */
+	public synchronized List<SparkMonitoringMetric> getLastSample() {
+		return lastSample;
+	}
+
+	/**
+	 * @return times and values of a metric, oldest first, empty if unknown
+	 */
+	public synchronized List<double[]> getSeries(String name) {
+		List<double[]> samples = new ArrayList<>();
+		SparkMonitoringRingBuffer buffer = series.get(name);
+		if (buffer != null) {
+			for (int i = 0; i < buffer.size(); i++) {
+				samples.add(new double[] { buffer.getTime(i), buffer.getValue(i) });
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * @return minimum and maximum of the samples of a metric, null if unknown
+	 */
+	public synchronized double[] getRange(String name) {
+		SparkMonitoringRingBuffer buffer = series.get(name);
+		if (buffer == null || buffer.size() == 0) {
+			return null;
+		}
+		return new double[] { buffer.getMin(), buffer.getMax() };
+	}
+
+	@Override
+	public synchronized long estimateBytes() {
+		long bytes = 64;
+		for (Map.Entry<String, SparkMonitoringRingBuffer> entry : series.entrySet()) {
+			bytes += SparkMonitoringStringPool.estimateBytes(entry.getKey()) + entry.getValue().estimateBytes();
+		}
+		for (SparkMonitoringMetric metric : lastSample) {
+			bytes += 64 + SparkMonitoringStringPool.estimateBytes(metric.getName());
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return names of the sampled metrics
+	 */
+	public synchronized List<String> getNames() {
+		return new ArrayList<>(series.keySet());
+	}
+
+}
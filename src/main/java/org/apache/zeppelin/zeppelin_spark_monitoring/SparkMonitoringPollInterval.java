@@ -0,0 +1,101 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+/**
+ * Polling interval of a watched endpoint: the minimum interval while the
+ * endpoint shows activity (running jobs, active stages, changed rows), doubled
+ * after each idle poll or slow response, up to the maximum interval
+ */
+public class SparkMonitoringPollInterval {
+	/** a response is slow if it takes more than 1/SLOW_RATIO of the interval */
+	public static final int SLOW_RATIO = 4;
+
+	private final String endpoint;
+	private final String driver;
+	private final long minMillis;
+	private final long maxMillis;
+	private long currentMillis;
+	private long lastResponseMillis;
+	private boolean active;
+	private long polls;
+	// time waited for the request budget since the last poll
+	private long waitMillis;
+
+	/**
+	 * @param driver
+	 *            base url of the driver polled
+	 */
+	public SparkMonitoringPollInterval(String endpoint, String driver, long minMillis, long maxMillis) {
+		this.endpoint = endpoint;
+		this.driver = driver;
+		this.minMillis = minMillis;
+		this.maxMillis = Math.max(minMillis, maxMillis);
+		this.currentMillis = minMillis;
+	}
+
+	/**
+	 * Count time waited for the request budget, it is not a slow response
+	 */
+	public synchronized void addWaitMillis(long millis) {
+		waitMillis += millis;
+	}
+
+	/**
+	 * Compute the interval until the next poll
+	 *
+	 * @param active
+	 *            true if the poll showed activity
+	 * @param pollMillis
+	 *            time taken by the poll
+	 * @return interval until the next poll, in milliseconds
+	 */
+	public synchronized long update(boolean active, long pollMillis) {
+		long responseMillis = Math.max(0L, pollMillis - waitMillis);
+		waitMillis = 0;
+		this.active = active;
+		this.lastResponseMillis = responseMillis;
+		polls++;
+		if (responseMillis * SLOW_RATIO > currentMillis) {
+			// the driver is busy, give it room
+			currentMillis = Math.max(currentMillis * 2, responseMillis * SLOW_RATIO);
+		} else if (active) {
+			currentMillis = minMillis;
+		} else {
+			currentMillis = currentMillis * 2;
+		}
+		currentMillis = Math.max(minMillis, Math.min(maxMillis, currentMillis));
+		return currentMillis;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public String getDriver() {
+		return driver;
+	}
+
+	public long getMinMillis() {
+		return minMillis;
+	}
+
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+	public synchronized long getCurrentMillis() {
+		return currentMillis;
+	}
+
+	public synchronized long getLastResponseMillis() {
+		return lastResponseMillis;
+	}
+
+	public synchronized boolean isActive() {
+		return active;
+	}
+
+	public synchronized long getPolls() {
+		return polls;
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+
+/**
+ * Streaming quantile sketch with a bounded relative error: the positive
+ * values are counted in logarithmic buckets, each bucket covering values
+ * within 2 * accuracy of each other. Two sketches of the same accuracy merge
+ * by adding their counts, so the sketches of disjoint sets of values can be
+ * combined. The counts are kept in a primitive array, the lowest buckets are
+ * collapsed when there are more than MAX_BUCKETS.
+ * Not thread safe, the owner synchronizes.
+ */
+public class SparkMonitoringQuantileSketch implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** default relative accuracy of the quantiles */
+	public static final double DEFAULT_ACCURACY = 0.01;
+	private static final int MAX_BUCKETS = 2048;
+	/** values below are counted as 0 */
+	private static final double MIN_VALUE = 1e-9;
+
+	private final double accuracy;
+	private final double gamma;
+	private final double logGamma;
+	// counts of the buckets minIndex .. minIndex + counts.length - 1
+	private long[] counts = new long[0];
+	private int minIndex;
+	private long zeroCount;
+	private long count;
+	private double sum;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	public SparkMonitoringQuantileSketch() {
+		this(DEFAULT_ACCURACY);
+	}
+
+	/**
+	 * @param accuracy
+	 *            relative error of the quantiles, between 0 and 1
+	 */
+	public SparkMonitoringQuantileSketch(double accuracy) {
+		if (accuracy <= 0 || accuracy >= 1) {
+			throw new IllegalArgumentException("Accuracy must be between 0 and 1: " + accuracy);
+		}
+		this.accuracy = accuracy;
+		gamma = (1 + accuracy) / (1 - accuracy);
+		logGamma = Math.log(gamma);
+	}
+
+	/**
+	 * @param value
+	 *            positive or 0, the negative values are counted as 0
+	 */
+	public void add(double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		addCount(value, 1);
+		count++;
+		sum += value;
+		min = Double.isNaN(min) ? value : Math.min(min, value);
+		max = Double.isNaN(max) ? value : Math.max(max, value);
+	}
+
+	private void addCount(double value, long n) {
+		if (value < MIN_VALUE) {
+			zeroCount += n;
+		} else {
+			addBucket((int) Math.ceil(Math.log(value) / logGamma), n);
+		}
+	}
+
+	private void addBucket(int index, long n) {
+		if (counts.length == 0) {
+			counts = new long[16];
+			minIndex = index;
+		} else if (index < minIndex || index >= minIndex + counts.length) {
+			int newMin = Math.min(minIndex, index);
+			int newLength = Math.max(minIndex + counts.length, index + 1) - newMin;
+			if (newLength > MAX_BUCKETS) {
+				// keep the highest buckets, the lowest values fall into the first bucket
+				int newMax = Math.max(minIndex + counts.length, index + 1);
+				newMin = newMax - MAX_BUCKETS;
+				newLength = MAX_BUCKETS;
+			}
+			long[] newCounts = new long[Math.min(MAX_BUCKETS, Math.max(newLength, 2 * counts.length))];
+			for (int i = 0; i < counts.length; i++) {
+				newCounts[Math.max(0, minIndex + i - newMin)] += counts[i];
+			}
+			counts = newCounts;
+			minIndex = newMin;
+		}
+		counts[Math.max(0, index - minIndex)] += n;
+	}
+
+	/**
+	 * Add the values of another sketch of the same accuracy
+	 */
+	public void merge(SparkMonitoringQuantileSketch other) {
+		if (other.accuracy != accuracy) {
+			throw new IllegalArgumentException("Sketches of different accuracies: " + accuracy + ", " + other.accuracy);
+		}
+		if (other.count == 0) {
+			return;
+		}
+		zeroCount += other.zeroCount;
+		for (int i = 0; i < other.counts.length; i++) {
+			if (other.counts[i] > 0) {
+				addBucket(other.minIndex + i, other.counts[i]);
+			}
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Double.isNaN(min) ? other.min : Math.min(min, other.min);
+		max = Double.isNaN(max) ? other.max : Math.max(max, other.max);
+	}
+
+	/**
+	 * @param quantile
+	 *            between 0 and 1, e.g. 0.95
+	 * @return estimated value of the quantile, NaN if empty
+	 */
+	public double getQuantile(double quantile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		if (quantile <= 0) {
+			return min;
+		}
+		if (quantile >= 1) {
+			return max;
+		}
+		long rank = (long) Math.floor(quantile * (count - 1));
+		long seen = zeroCount;
+		if (rank < seen) {
+			return 0;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (rank < seen) {
+				// middle of the bucket, within the accuracy of all its values
+				double value = 2 * Math.pow(gamma, minIndex + i) / (gamma + 1);
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return average of the values, NaN if empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * @return estimated heap size of the sketch
+	 */
+	public long estimateBytes() {
+		return 96 + 8L * counts.length;
+	}
+
+	public double getAccuracy() {
+		return accuracy;
+	}
+
+}
@@ -0,0 +1,1301 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL-like query over the parsed jobs, stages or executors of an application:
+ * <pre>
+ * select &lt;expr&gt; [as &lt;name&gt;], ... | *
+ * from &lt;jobs|stages|executors&gt;[@&lt;application_id_or_name&gt;] [version &lt;n&gt;]
+ * [where &lt;condition&gt;] [group by &lt;expr&gt;, ...]
+ * [order by &lt;expr|name&gt; [asc|desc], ...] [limit &lt;n&gt;]
+ * </pre>
+ * Expressions: columns, numbers (with units ms, s, min, h, d for milliseconds,
+ * KB, MB, GB, TB for bytes, % for ratio), 'strings', + - * / %, = != &lt;&gt;
+ * &lt; &lt;= &gt; &gt;=, and, or, not, like, is [not] null, now(), and the
+ * aggregates count(*), count, sum, avg, min, max. Times are in milliseconds.
+ * With a version, the jobs or stages of that snapshot of the application are
+ * queried instead of the current ones.
+ * The query is compiled once, then executed on rows; grouping runs in
+ * parallel chunks when there are many rows.
+ */
+public class SparkMonitoringQuery {
+	public static final String JOBS = "jobs";
+	public static final String STAGES = "stages";
+	public static final String EXECUTORS = "executors";
+
+	/** number of rows from which the rows are grouped in parallel */
+	public static final int PARALLEL_THRESHOLD = 10000;
+
+	private static final String DISPLAY_DATE_TIME_FORMAT = "yyyy/MM/dd HH:mm:ss";
+
+	/**
+	 * Value of a column of a row
+	 */
+	private abstract static class Column {
+		private final boolean time;
+
+		Column(boolean time) {
+			this.time = time;
+		}
+
+		abstract Object get(Object row, long now);
+	}
+
+	private static final Map<String, Map<String, Column>> COLUMNS = new LinkedHashMap<>();
+
+	static {
+		Map<String, Column> jobColumns = new LinkedHashMap<>();
+		jobColumns.put("id", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return toLong(((SparkMonitoringJob) row).getId());
+			}
+		});
+		jobColumns.put("name", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringJob) row).getName();
+			}
+		});
+		jobColumns.put("description", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringJob) row).getDescription();
+			}
+		});
+		jobColumns.put("status", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringJob) row).getStatus();
+			}
+		});
+		jobColumns.put("submissionTime", new Column(true) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringJob) row).getSubmisstionTimeMilis();
+			}
+		});
+		jobColumns.put("completionTime", new Column(true) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringJob) row).getCompletionTimeMilis();
+			}
+		});
+		jobColumns.put("duration", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				SparkMonitoringJob job = (SparkMonitoringJob) row;
+				return getDuration(job.getSubmisstionTimeMilis(), job.getCompletionTimeMilis(), now);
+			}
+		});
+		jobColumns.put("numTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringJob) row).getNumTasks();
+			}
+		});
+		jobColumns.put("numCompletedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringJob) row).getNumCompletedTasks();
+			}
+		});
+		jobColumns.put("numFailedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringJob) row).getNumFailedTasks();
+			}
+		});
+		COLUMNS.put(JOBS, jobColumns);
+
+		Map<String, Column> stageColumns = new LinkedHashMap<>();
+		stageColumns.put("id", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return toLong(((SparkMonitoringStage) row).getId());
+			}
+		});
+		stageColumns.put("attemptId", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringStage) row).getAttemptId();
+			}
+		});
+		stageColumns.put("name", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getName();
+			}
+		});
+		stageColumns.put("status", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getStatus();
+			}
+		});
+		stageColumns.put("submissionTime", new Column(true) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getSubmissionTimeMilis();
+			}
+		});
+		stageColumns.put("completionTime", new Column(true) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getCompletionTimeMilis();
+			}
+		});
+		stageColumns.put("duration", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				SparkMonitoringStage stage = (SparkMonitoringStage) row;
+				return getDuration(stage.getSubmissionTimeMilis(), stage.getCompletionTimeMilis(), now);
+			}
+		});
+		stageColumns.put("numCompletedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringStage) row).getNumCompletedTasks();
+			}
+		});
+		stageColumns.put("numFailedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringStage) row).getNumFailedTasks();
+			}
+		});
+		stageColumns.put("inputBytes", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getInputBytes();
+			}
+		});
+		stageColumns.put("inputRecords", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getInputRecords();
+			}
+		});
+		stageColumns.put("outputBytes", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getOutputBytes();
+			}
+		});
+		stageColumns.put("outputRecords", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getOutputRecords();
+			}
+		});
+		stageColumns.put("shuffleReadBytes", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getShuffleReadBytes();
+			}
+		});
+		stageColumns.put("shuffleWriteBytes", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getShuffleWriteBytes();
+			}
+		});
+		stageColumns.put("memoryBytesSpilled", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getMemoryBytesSpilled();
+			}
+		});
+		stageColumns.put("diskBytesSpilled", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringStage) row).getDiskBytesSpilled();
+			}
+		});
+		COLUMNS.put(STAGES, stageColumns);
+
+		Map<String, Column> executorColumns = new LinkedHashMap<>();
+		executorColumns.put("id", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getId();
+			}
+		});
+		executorColumns.put("hostPort", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getHostPort();
+			}
+		});
+		executorColumns.put("active", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).isActive();
+			}
+		});
+		executorColumns.put("totalCores", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringExecutor) row).getTotalCores();
+			}
+		});
+		executorColumns.put("activeTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringExecutor) row).getActiveTasks();
+			}
+		});
+		executorColumns.put("failedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringExecutor) row).getFailedTasks();
+			}
+		});
+		executorColumns.put("completedTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringExecutor) row).getCompletedTasks();
+			}
+		});
+		executorColumns.put("totalTasks", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return (long) ((SparkMonitoringExecutor) row).getTotalTasks();
+			}
+		});
+		executorColumns.put("totalDuration", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getTotalDuration();
+			}
+		});
+		executorColumns.put("totalGCTime", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getTotalGCTime();
+			}
+		});
+		executorColumns.put("gcRatio", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getGCRatio();
+			}
+		});
+		executorColumns.put("totalInputBytes", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getTotalInputBytes();
+			}
+		});
+		executorColumns.put("totalShuffleRead", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getTotalShuffleRead();
+			}
+		});
+		executorColumns.put("totalShuffleWrite", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getTotalShuffleWrite();
+			}
+		});
+		executorColumns.put("memoryUsed", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getMemoryUsed();
+			}
+		});
+		executorColumns.put("maxMemory", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getMaxMemory();
+			}
+		});
+		executorColumns.put("diskUsed", new Column(false) {
+			@Override
+			Object get(Object row, long now) {
+				return ((SparkMonitoringExecutor) row).getDiskUsed();
+			}
+		});
+		COLUMNS.put(EXECUTORS, executorColumns);
+	}
+
+	private static Long toLong(String id) {
+		try {
+			return Long.valueOf(id);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Long getDuration(Long start, Long end, long now) {
+		if (start == null) {
+			return null;
+		}
+		return (end != null ? end : now) - start;
+	}
+
+	// ------------------------------------------------------------------
+	// expressions
+
+	/**
+	 * Compiled expression, evaluated on a row and the aggregate values of its group
+	 */
+	private abstract static class Expression {
+		abstract Object eval(Object row, Object[] aggregates, long now);
+
+		/** true if the value is a time in milliseconds, displayed as a date */
+		boolean isTime() {
+			return false;
+		}
+	}
+
+	private static class Literal extends Expression {
+		private final Object value;
+
+		Literal(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return value;
+		}
+	}
+
+	private static class ColumnRef extends Expression {
+		private final Column column;
+
+		ColumnRef(Column column) {
+			this.column = column;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return row != null ? column.get(row, now) : null;
+		}
+
+		@Override
+		boolean isTime() {
+			return column.time;
+		}
+	}
+
+	private static class Now extends Expression {
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return now;
+		}
+
+		@Override
+		boolean isTime() {
+			return true;
+		}
+	}
+
+	private static class Arithmetic extends Expression {
+		private final char operator;
+		private final Expression left;
+		private final Expression right;
+
+		Arithmetic(char operator, Expression left, Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			Object l = left.eval(row, aggregates, now);
+			Object r = right.eval(row, aggregates, now);
+			if (!(l instanceof Number) || !(r instanceof Number)) {
+				return null;
+			}
+			if (l instanceof Long && r instanceof Long && operator != '/') {
+				long a = (Long) l;
+				long b = (Long) r;
+				switch (operator) {
+				case '+':
+					return a + b;
+				case '-':
+					return a - b;
+				case '*':
+					return a * b;
+				default:
+					return b != 0 ? a % b : null;
+				}
+			}
+			double a = ((Number) l).doubleValue();
+			double b = ((Number) r).doubleValue();
+			switch (operator) {
+			case '+':
+				return a + b;
+			case '-':
+				return a - b;
+			case '*':
+				return a * b;
+			case '/':
+				return b != 0 ? a / b : null;
+			default:
+				return b != 0 ? a % b : null;
+			}
+		}
+
+		@Override
+		boolean isTime() {
+			// time +/- duration is a time
+			return (operator == '+' || operator == '-') && left.isTime() && !right.isTime();
+		}
+	}
+
+	private static class Comparison extends Expression {
+		private final String operator;
+		private final Expression left;
+		private final Expression right;
+
+		Comparison(String operator, Expression left, Expression right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			Object l = left.eval(row, aggregates, now);
+			Object r = right.eval(row, aggregates, now);
+			if (l == null || r == null) {
+				return false;
+			}
+			int compare = compareValues(l, r);
+			switch (operator) {
+			case "=":
+				return compare == 0;
+			case "!=":
+			case "<>":
+				return compare != 0;
+			case "<":
+				return compare < 0;
+			case "<=":
+				return compare <= 0;
+			case ">":
+				return compare > 0;
+			default:
+				return compare >= 0;
+			}
+		}
+	}
+
+	private static class Logical extends Expression {
+		private final boolean and;
+		private final Expression left;
+		private final Expression right;
+
+		Logical(boolean and, Expression left, Expression right) {
+			this.and = and;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			boolean l = isTrue(left.eval(row, aggregates, now));
+			if (and ? !l : l) {
+				return l;
+			}
+			return isTrue(right.eval(row, aggregates, now));
+		}
+	}
+
+	private static class Not extends Expression {
+		private final Expression expression;
+
+		Not(Expression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return !isTrue(expression.eval(row, aggregates, now));
+		}
+	}
+
+	private static class Negate extends Expression {
+		private final Expression expression;
+
+		Negate(Expression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			Object value = expression.eval(row, aggregates, now);
+			if (value instanceof Long) {
+				return -(Long) value;
+			} else if (value instanceof Number) {
+				return -((Number) value).doubleValue();
+			}
+			return null;
+		}
+	}
+
+	private static class Like extends Expression {
+		private final Expression expression;
+		private final Pattern pattern;
+
+		Like(Expression expression, String like) {
+			this.expression = expression;
+			StringBuilder regex = new StringBuilder();
+			for (char c : like.toCharArray()) {
+				if (c == '%') {
+					regex.append(".*");
+				} else if (c == '_') {
+					regex.append('.');
+				} else {
+					regex.append(Pattern.quote(String.valueOf(c)));
+				}
+			}
+			this.pattern = Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			Object value = expression.eval(row, aggregates, now);
+			return value != null && pattern.matcher(value.toString()).matches();
+		}
+	}
+
+	private static class IsNull extends Expression {
+		private final Expression expression;
+
+		IsNull(Expression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return expression.eval(row, aggregates, now) == null;
+		}
+	}
+
+	/**
+	 * Aggregate function, its value is computed by an Accumulator of the group
+	 */
+	private static class Aggregate extends Expression {
+		private final int index;
+		private final String function;
+		// null for count(*)
+		private final Expression argument;
+
+		Aggregate(int index, String function, Expression argument) {
+			this.index = index;
+			this.function = function;
+			this.argument = argument;
+		}
+
+		@Override
+		Object eval(Object row, Object[] aggregates, long now) {
+			return aggregates != null ? aggregates[index] : null;
+		}
+
+		@Override
+		boolean isTime() {
+			return ("min".equals(function) || "max".equals(function)) && argument.isTime();
+		}
+	}
+
+	/**
+	 * State of an aggregate function in a group, mergeable with the state of
+	 * another chunk of rows
+	 */
+	private static class Accumulator {
+		private long count;
+		private long longSum;
+		private double doubleSum;
+		private boolean isDouble;
+		private Object min;
+		private Object max;
+
+		void add(Object value) {
+			if (value == null) {
+				return;
+			}
+			count++;
+			if (value instanceof Long) {
+				longSum += (Long) value;
+			} else if (value instanceof Number) {
+				doubleSum += ((Number) value).doubleValue();
+				isDouble = true;
+			}
+			if (min == null || compareValues(value, min) < 0) {
+				min = value;
+			}
+			if (max == null || compareValues(value, max) > 0) {
+				max = value;
+			}
+		}
+
+		void merge(Accumulator other) {
+			count += other.count;
+			longSum += other.longSum;
+			doubleSum += other.doubleSum;
+			isDouble |= other.isDouble;
+			if (other.min != null && (min == null || compareValues(other.min, min) < 0)) {
+				min = other.min;
+			}
+			if (other.max != null && (max == null || compareValues(other.max, max) > 0)) {
+				max = other.max;
+			}
+		}
+
+		Object get(String function) {
+			switch (function) {
+			case "count":
+				return count;
+			case "sum":
+				if (count == 0) {
+					return null;
+				}
+				return isDouble ? (Object) (longSum + doubleSum) : (Object) longSum;
+			case "avg":
+				return count > 0 ? (longSum + doubleSum) / count : null;
+			case "min":
+				return min;
+			default:
+				return max;
+			}
+		}
+	}
+
+	/**
+	 * Rows of a group: its first row for the non aggregated expressions, and
+	 * one accumulator per aggregate
+	 */
+	private static class Group {
+		private final Object firstRow;
+		private final Accumulator[] accumulators;
+
+		Group(Object firstRow, int numAggregates) {
+			this.firstRow = firstRow;
+			accumulators = new Accumulator[numAggregates];
+			for (int i = 0; i < numAggregates; i++) {
+				accumulators[i] = new Accumulator();
+			}
+		}
+	}
+
+	static int compareValues(Object a, Object b) {
+		if (a instanceof Number && b instanceof Number) {
+			if (a instanceof Long && b instanceof Long) {
+				return ((Long) a).compareTo((Long) b);
+			}
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+		}
+		if (a instanceof Boolean && b instanceof Boolean) {
+			return ((Boolean) a).compareTo((Boolean) b);
+		}
+		return a.toString().compareTo(b.toString());
+	}
+
+	private static boolean isTrue(Object value) {
+		return Boolean.TRUE.equals(value);
+	}
+
+	// ------------------------------------------------------------------
+	// compiled query
+
+	private String source;
+	private String applicationRef;
+	private Long version;
+	private final List<Expression> selectExpressions = new ArrayList<>();
+	private final List<String> selectNames = new ArrayList<>();
+	private Expression where;
+	private final List<Expression> groupBy = new ArrayList<>();
+	private final List<Expression> orderExpressions = new ArrayList<>();
+	// index of the select item of each order item, -1 if it is an expression
+	private final List<Integer> orderIndexes = new ArrayList<>();
+	private final List<Boolean> orderDescending = new ArrayList<>();
+	private int limit = -1;
+	private final List<Aggregate> aggregates = new ArrayList<>();
+
+	private SparkMonitoringQuery() {
+	}
+
+	/**
+	 * @return jobs, stages or executors
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return id or name of the application, null for the default application
+	 */
+	public String getApplicationRef() {
+		return applicationRef;
+	}
+
+	/**
+	 * @return version of the snapshot queried, null for the current objects
+	 */
+	public Long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Compile a query
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the query is not valid
+	 */
+	public static SparkMonitoringQuery compile(String text) {
+		SparkMonitoringQuery query = new SparkMonitoringQuery();
+		new Parser(text, query).parseQuery();
+		return query;
+	}
+
+	/**
+	 * Run the query on rows of its source
+	 *
+	 * @param executor
+	 *            to group chunks of rows in parallel, null to run in the caller thread
+	 * @return message of a TABLE result
+	 */
+	public String execute(List<?> rows, ExecutorService executor) throws Exception {
+		final long now = System.currentTimeMillis();
+		boolean grouped = !groupBy.isEmpty() || !aggregates.isEmpty();
+
+		// result rows: row and aggregate values
+		List<Object[]> results = new ArrayList<>();
+		List<Map<List<Object>, Group>> partials = new ArrayList<>();
+		int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+		if (executor != null && rows.size() >= PARALLEL_THRESHOLD && parallelism > 1) {
+			List<Future<Map<List<Object>, Group>>> futures = new ArrayList<>();
+			int chunkSize = (rows.size() + parallelism - 1) / parallelism;
+			for (int start = 0; start < rows.size(); start += chunkSize) {
+				final List<?> chunk = rows.subList(start, Math.min(rows.size(), start + chunkSize));
+				futures.add(executor.submit(new Callable<Map<List<Object>, Group>>() {
+					@Override
+					public Map<List<Object>, Group> call() {
+						return scan(chunk, now);
+					}
+				}));
+			}
+			for (Future<Map<List<Object>, Group>> future : futures) {
+				partials.add(future.get());
+			}
+		} else {
+			partials.add(scan(rows, now));
+		}
+
+		if (grouped) {
+			// merge the chunks, in order
+			Map<List<Object>, Group> groups = new LinkedHashMap<>();
+			for (Map<List<Object>, Group> partial : partials) {
+				for (Map.Entry<List<Object>, Group> entry : partial.entrySet()) {
+					Group group = groups.get(entry.getKey());
+					if (group == null) {
+						groups.put(entry.getKey(), entry.getValue());
+					} else {
+						for (int i = 0; i < aggregates.size(); i++) {
+							group.accumulators[i].merge(entry.getValue().accumulators[i]);
+						}
+					}
+				}
+			}
+			// a query with aggregates and no group by has one row, even without rows
+			if (groups.isEmpty() && groupBy.isEmpty()) {
+				groups.put(new ArrayList<Object>(), new Group(null, aggregates.size()));
+			}
+			for (Group group : groups.values()) {
+				Object[] values = new Object[aggregates.size()];
+				for (int i = 0; i < aggregates.size(); i++) {
+					values[i] = group.accumulators[i].get(aggregates.get(i).function);
+				}
+				results.add(new Object[] { group.firstRow, values });
+			}
+		} else {
+			for (Map<List<Object>, Group> partial : partials) {
+				for (Group group : partial.values()) {
+					results.add(new Object[] { group.firstRow, null });
+				}
+			}
+		}
+
+		// select values, then order keys
+		final List<Object[]> outputs = new ArrayList<>();
+		for (Object[] result : results) {
+			Object[] output = new Object[selectExpressions.size() + orderExpressions.size()];
+			for (int i = 0; i < selectExpressions.size(); i++) {
+				output[i] = selectExpressions.get(i).eval(result[0], (Object[]) result[1], now);
+			}
+			for (int i = 0; i < orderExpressions.size(); i++) {
+				int index = orderIndexes.get(i);
+				output[selectExpressions.size() + i] = index >= 0 ? output[index]
+						: orderExpressions.get(i).eval(result[0], (Object[]) result[1], now);
+			}
+			outputs.add(output);
+		}
+		if (!orderExpressions.isEmpty()) {
+			final int offset = selectExpressions.size();
+			Collections.sort(outputs, new Comparator<Object[]>() {
+				@Override
+				public int compare(Object[] o1, Object[] o2) {
+					for (int i = 0; i < orderExpressions.size(); i++) {
+						Object a = o1[offset + i];
+						Object b = o2[offset + i];
+						// nulls last
+						int compare = a == null ? (b == null ? 0 : 1) : (b == null ? -1 : compareValues(a, b));
+						if (compare != 0) {
+							return orderDescending.get(i) && a != null && b != null ? -compare : compare;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+
+		StringBuffer table = new StringBuffer();
+		for (int i = 0; i < selectNames.size(); i++) {
+			table.append(i > 0 ? "\t" : "").append(selectNames.get(i));
+		}
+		table.append("\n");
+		NumberFormat nf = new DecimalFormat("#.###");
+		SimpleDateFormat dateFm = new SimpleDateFormat(DISPLAY_DATE_TIME_FORMAT, Locale.getDefault());
+		int numRows = limit >= 0 ? Math.min(limit, outputs.size()) : outputs.size();
+		for (int r = 0; r < numRows; r++) {
+			Object[] output = outputs.get(r);
+			for (int i = 0; i < selectExpressions.size(); i++) {
+				Object value = output[i];
+				String text;
+				if (value == null) {
+					text = "-";
+				} else if (selectExpressions.get(i).isTime() && value instanceof Number) {
+					text = dateFm.format(new Date(((Number) value).longValue()));
+				} else if (value instanceof Double) {
+					text = nf.format(value);
+				} else {
+					// keep the table format
+					text = value.toString().replace('\t', ' ').replace('\n', ' ');
+				}
+				table.append(i > 0 ? "\t" : "").append(text);
+			}
+			table.append("\n");
+		}
+		return table.toString();
+	}
+
+	/**
+	 * Filter and group rows
+	 *
+	 * @return groups by key, one group per row if the query is not grouped
+	 */
+	private Map<List<Object>, Group> scan(List<?> rows, long now) {
+		boolean grouped = !groupBy.isEmpty() || !aggregates.isEmpty();
+		Map<List<Object>, Group> groups = new LinkedHashMap<>();
+		int rowIndex = 0;
+		for (Object row : rows) {
+			rowIndex++;
+			if (where != null && !isTrue(where.eval(row, null, now))) {
+				continue;
+			}
+			if (!grouped) {
+				groups.put(Arrays.<Object> asList(rowIndex), new Group(row, 0));
+				continue;
+			}
+			List<Object> key = new ArrayList<>(groupBy.size());
+			for (Expression expression : groupBy) {
+				key.add(expression.eval(row, null, now));
+			}
+			Group group = groups.get(key);
+			if (group == null) {
+				group = new Group(row, aggregates.size());
+				groups.put(key, group);
+			}
+			for (int i = 0; i < aggregates.size(); i++) {
+				Aggregate aggregate = aggregates.get(i);
+				group.accumulators[i].add(aggregate.argument == null ? (Object) 1L
+						: aggregate.argument.eval(row, null, now));
+			}
+		}
+		return groups;
+	}
+
+	// ------------------------------------------------------------------
+	// parser
+
+	/**
+	 * Recursive descent parser of a query
+	 */
+	private static class Parser {
+		private static final Pattern TOKEN = Pattern.compile(
+				"\\s*(?:(@\\S+)|('(?:[^']|'')*')|([0-9]+(?:\\.[0-9]+)?[a-zA-Z%]*)|([a-zA-Z_][a-zA-Z0-9_]*)"
+						+ "|(<=|>=|<>|!=|[-+*/%(),=<>]))");
+
+		private final List<String> tokens = new ArrayList<>();
+		private final SparkMonitoringQuery query;
+		private Map<String, Column> columns;
+		private int position;
+
+		Parser(String text, SparkMonitoringQuery query) {
+			this.query = query;
+			Matcher matcher = TOKEN.matcher(text);
+			int end = 0;
+			while (matcher.find() && matcher.start() == end) {
+				tokens.add(matcher.group().trim());
+				end = matcher.end();
+			}
+			if (!text.substring(end).trim().isEmpty()) {
+				throw new IllegalArgumentException("Unexpected '" + text.substring(end).trim() + "'");
+			}
+		}
+
+		private String peek() {
+			return position < tokens.size() ? tokens.get(position) : null;
+		}
+
+		private boolean accept(String keyword) {
+			if (keyword.equalsIgnoreCase(peek())) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String keyword) {
+			if (!accept(keyword)) {
+				throw new IllegalArgumentException("Expected '" + keyword + "' but found "
+						+ (peek() != null ? "'" + peek() + "'" : "end of query"));
+			}
+		}
+
+		private String next() {
+			if (peek() == null) {
+				throw new IllegalArgumentException("Unexpected end of query");
+			}
+			return tokens.get(position++);
+		}
+
+		void parseQuery() {
+			expect("select");
+			// the select items need the columns of the source: find the source first
+			int selectStart = position;
+			int depth = 0;
+			while (peek() != null && !(depth == 0 && "from".equalsIgnoreCase(peek()))) {
+				String token = next();
+				depth += "(".equals(token) ? 1 : ")".equals(token) ? -1 : 0;
+			}
+			expect("from");
+			query.source = next().toLowerCase();
+			columns = COLUMNS.get(query.source);
+			if (columns == null) {
+				throw new IllegalArgumentException("Unknown source " + query.source + ", one of " + COLUMNS.keySet());
+			}
+			if (peek() != null && peek().startsWith("@")) {
+				query.applicationRef = next().substring(1);
+			}
+			if (accept("version")) {
+				String version = next();
+				if (!version.matches("[0-9]+")) {
+					throw new IllegalArgumentException("Version number expected after version");
+				}
+				query.version = Long.valueOf(version);
+			}
+			int fromEnd = position;
+
+			position = selectStart;
+			if (accept("*")) {
+				for (Map.Entry<String, Column> column : columns.entrySet()) {
+					query.selectExpressions.add(new ColumnRef(column.getValue()));
+					query.selectNames.add(column.getKey());
+				}
+			} else {
+				do {
+					int start = position;
+					query.selectExpressions.add(parseExpression());
+					if (accept("as")) {
+						query.selectNames.add(next());
+					} else {
+						query.selectNames.add(joinTokens(tokens.subList(start, position)));
+					}
+				} while (accept(","));
+			}
+			if (!"from".equalsIgnoreCase(peek())) {
+				throw new IllegalArgumentException("Unexpected '" + peek() + "' in select");
+			}
+			position = fromEnd;
+
+			if (accept("where")) {
+				int numAggregates = query.aggregates.size();
+				query.where = parseExpression();
+				if (query.aggregates.size() != numAggregates) {
+					throw new IllegalArgumentException("Aggregates are not allowed in where");
+				}
+			}
+			if (accept("group")) {
+				expect("by");
+				do {
+					query.groupBy.add(parseExpression());
+				} while (accept(","));
+			}
+			if (accept("order")) {
+				expect("by");
+				do {
+					int index = peek() != null ? query.selectNames.indexOf(peek()) : -1;
+					if (index >= 0 && !columns.containsKey(peek())) {
+						// name of a select item
+						position++;
+						query.orderExpressions.add(query.selectExpressions.get(index));
+					} else {
+						index = -1;
+						query.orderExpressions.add(parseExpression());
+					}
+					query.orderIndexes.add(index);
+					boolean descending = accept("desc");
+					if (!descending) {
+						accept("asc");
+					}
+					query.orderDescending.add(descending);
+				} while (accept(","));
+			}
+			if (accept("limit")) {
+				try {
+					query.limit = Integer.parseInt(next());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Wrong limit");
+				}
+			}
+			if (peek() != null) {
+				throw new IllegalArgumentException("Unexpected '" + peek() + "'");
+			}
+		}
+
+		private static String joinTokens(List<String> items) {
+			StringBuilder text = new StringBuilder();
+			for (String item : items) {
+				boolean word = Character.isLetterOrDigit(item.charAt(0)) || item.charAt(0) == '\'';
+				if (text.length() > 0 && word && Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+					text.append(' ');
+				}
+				text.append(item);
+			}
+			return text.toString();
+		}
+
+		private Expression parseExpression() {
+			Expression left = parseAnd();
+			while (accept("or")) {
+				left = new Logical(false, left, parseAnd());
+			}
+			return left;
+		}
+
+		private Expression parseAnd() {
+			Expression left = parseNot();
+			while (accept("and")) {
+				left = new Logical(true, left, parseNot());
+			}
+			return left;
+		}
+
+		private Expression parseNot() {
+			if (accept("not")) {
+				return new Not(parseNot());
+			}
+			return parseComparison();
+		}
+
+		private Expression parseComparison() {
+			Expression left = parseAdditive();
+			String token = peek();
+			if (token == null) {
+				return left;
+			}
+			if (Arrays.asList("=", "!=", "<>", "<", "<=", ">", ">=").contains(token)) {
+				position++;
+				return new Comparison(token, left, parseAdditive());
+			}
+			boolean not = false;
+			if ("not".equalsIgnoreCase(token) && position + 1 < tokens.size()
+					&& "like".equalsIgnoreCase(tokens.get(position + 1))) {
+				position++;
+				not = true;
+			}
+			if (accept("like")) {
+				String like = next();
+				if (!like.startsWith("'")) {
+					throw new IllegalArgumentException("like expects a 'string'");
+				}
+				Expression expression = new Like(left, unquote(like));
+				return not ? new Not(expression) : expression;
+			}
+			if (accept("is")) {
+				boolean isNot = accept("not");
+				expect("null");
+				Expression expression = new IsNull(left);
+				return isNot ? new Not(expression) : expression;
+			}
+			return left;
+		}
+
+		private Expression parseAdditive() {
+			Expression left = parseMultiplicative();
+			while ("+".equals(peek()) || "-".equals(peek())) {
+				char operator = next().charAt(0);
+				left = new Arithmetic(operator, left, parseMultiplicative());
+			}
+			return left;
+		}
+
+		private Expression parseMultiplicative() {
+			Expression left = parseUnary();
+			while ("*".equals(peek()) || "/".equals(peek()) || "%".equals(peek())) {
+				char operator = next().charAt(0);
+				left = new Arithmetic(operator, left, parseUnary());
+			}
+			return left;
+		}
+
+		private Expression parseUnary() {
+			if (accept("-")) {
+				return new Negate(parseUnary());
+			}
+			return parsePrimary();
+		}
+
+		private Expression parsePrimary() {
+			String token = next();
+			if ("(".equals(token)) {
+				Expression expression = parseExpression();
+				expect(")");
+				return expression;
+			}
+			if (token.startsWith("'")) {
+				return new Literal(unquote(token));
+			}
+			if (Character.isDigit(token.charAt(0))) {
+				return new Literal(parseNumber(token));
+			}
+			if ("true".equalsIgnoreCase(token) || "false".equalsIgnoreCase(token)) {
+				return new Literal(Boolean.parseBoolean(token));
+			}
+			if ("null".equalsIgnoreCase(token)) {
+				return new Literal(null);
+			}
+			if (Character.isLetter(token.charAt(0)) || token.charAt(0) == '_') {
+				if (accept("(")) {
+					return parseFunction(token.toLowerCase());
+				}
+				Column column = columns.get(token);
+				if (column == null) {
+					throw new IllegalArgumentException("Unknown column " + token + " of " + query.source + ", one of "
+							+ columns.keySet());
+				}
+				return new ColumnRef(column);
+			}
+			throw new IllegalArgumentException("Unexpected '" + token + "'");
+		}
+
+		private Expression parseFunction(String function) {
+			if ("now".equals(function)) {
+				expect(")");
+				return new Now();
+			}
+			if (!Arrays.asList("count", "sum", "avg", "min", "max").contains(function)) {
+				throw new IllegalArgumentException("Unknown function " + function);
+			}
+			Expression argument = null;
+			if ("count".equals(function) && accept("*")) {
+				// count(*)
+			} else {
+				int numAggregates = query.aggregates.size();
+				argument = parseExpression();
+				if (query.aggregates.size() != numAggregates) {
+					throw new IllegalArgumentException("Nested aggregates are not allowed");
+				}
+			}
+			expect(")");
+			Aggregate aggregate = new Aggregate(query.aggregates.size(), function, argument);
+			query.aggregates.add(aggregate);
+			return aggregate;
+		}
+
+		private static String unquote(String token) {
+			return token.substring(1, token.length() - 1).replace("''", "'");
+		}
+
+		/**
+		 * Number with an optional unit: times in milliseconds, sizes in bytes
+		 */
+		private static Object parseNumber(String token) {
+			int unitIndex = 0;
+			while (unitIndex < token.length()
+					&& (Character.isDigit(token.charAt(unitIndex)) || token.charAt(unitIndex) == '.')) {
+				unitIndex++;
+			}
+			String number = token.substring(0, unitIndex);
+			String unit = token.substring(unitIndex).toLowerCase();
+			double factor;
+			switch (unit) {
+			case "":
+			case "ms":
+			case "b":
+				factor = 1;
+				break;
+			case "s":
+				factor = 1000;
+				break;
+			case "min":
+				factor = 60 * 1000;
+				break;
+			case "h":
+				factor = 3600 * 1000;
+				break;
+			case "d":
+				factor = 24 * 3600 * 1000;
+				break;
+			case "kb":
+				factor = 1024;
+				break;
+			case "mb":
+				factor = 1024 * 1024;
+				break;
+			case "gb":
+				factor = 1024 * 1024 * 1024;
+				break;
+			case "tb":
+				factor = 1024D * 1024 * 1024 * 1024;
+				break;
+			case "%":
+				return Double.parseDouble(number) / 100;
+			default:
+				throw new IllegalArgumentException("Unknown unit " + unit + " in " + token);
+			}
+			if (number.contains(".")) {
+				double value = Double.parseDouble(number) * factor;
+				if (factor > 1 && value == Math.rint(value)) {
+					return (long) value;
+				}
+				return value;
+			}
+			return Long.parseLong(number) * (long) factor;
+		}
+	}
+
+}
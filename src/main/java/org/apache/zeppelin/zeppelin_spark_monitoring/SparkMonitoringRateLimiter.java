@@ -0,0 +1,95 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Token bucket capping the requests per second sent to a driver: the bucket
+ * holds up to one second of requests (at least one) and refills continuously
+ */
+public class SparkMonitoringRateLimiter {
+	private final double permitsPerSecond;
+	private final double capacity;
+	private double available;
+	private long lastRefillNanos;
+	private long requests;
+
+	public SparkMonitoringRateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.capacity = Math.max(1, permitsPerSecond);
+		this.available = capacity;
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * Wait for a permit. The permit is reserved on the call, so that the
+	 * waiting requests are served in their order of arrival
+	 *
+	 * @param cancelled
+	 *            stop waiting when set, may be null
+	 * @return time waited in milliseconds, -1 if cancelled before a permit is
+	 *         available
+	 */
+	public long acquire(AtomicBoolean cancelled) throws InterruptedException {
+		if (cancelled != null && cancelled.get()) {
+			return -1;
+		}
+		long start = System.currentTimeMillis();
+		long waitMillis;
+		synchronized (this) {
+			refill();
+			// negative when permits are reserved ahead
+			available--;
+			requests++;
+			if (available >= 0) {
+				return 0;
+			}
+			waitMillis = (long) Math.ceil(-available * 1000 / permitsPerSecond);
+		}
+		long end = start + waitMillis;
+		long now = start;
+		while (now < end) {
+			if (cancelled != null && cancelled.get()) {
+				// give the reservation back
+				synchronized (this) {
+					available = Math.min(capacity, available + 1);
+					requests--;
+				}
+				return -1;
+			}
+			// wake up soon on cancel
+			Thread.sleep(Math.max(1L, Math.min(100L, end - now)));
+			now = System.currentTimeMillis();
+		}
+		return now - start;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		available = Math.min(capacity, available + (now - lastRefillNanos) * permitsPerSecond / 1e9);
+		lastRefillNanos = now;
+	}
+
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * @return requests which can be sent now without waiting, negative when
+	 *         requests are waiting
+	 */
+	public synchronized double getAvailable() {
+		refill();
+		return available;
+	}
+
+	/**
+	 * @return requests sent since the start
+	 */
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+}
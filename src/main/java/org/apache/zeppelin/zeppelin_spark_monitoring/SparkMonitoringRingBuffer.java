@@ -0,0 +1,150 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-size window of (time, value) samples kept in primitive arrays: no
+ * object per sample, the oldest sample is overwritten when the window is full.
+ * Not thread safe, the owner synchronizes.
+ */
+public class SparkMonitoringRingBuffer implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final long[] times;
+	private final double[] values;
+	// index of the oldest sample
+	private int start;
+	private int size;
+
+	/**
+	 * @param capacity
+	 *            maximum number of samples kept
+	 */
+	public SparkMonitoringRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		times = new long[capacity];
+		values = new double[capacity];
+	}
+
+	public void add(long time, double value) {
+		int capacity = times.length;
+		int index;
+		if (size < capacity) {
+			index = (start + size) % capacity;
+			size++;
+		} else {
+			index = start;
+			start = (start + 1) % capacity;
+		}
+		times[index] = time;
+		values[index] = value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return times.length;
+	}
+
+	/**
+	 * @param i
+	 *            0 for the oldest sample, size() - 1 for the latest
+	 */
+	public long getTime(int i) {
+		return times[index(i)];
+	}
+
+	/**
+	 * @param i
+	 *            0 for the oldest sample, size() - 1 for the latest
+	 */
+	public double getValue(int i) {
+		return values[index(i)];
+	}
+
+	private int index(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+		}
+		return (start + i) % times.length;
+	}
+
+	/**
+	 * @return latest value, NaN if empty
+	 */
+	public double getLast() {
+		return size == 0 ? Double.NaN : getValue(size - 1);
+	}
+
+	/**
+	 * @return average of the window, NaN if empty
+	 */
+	public double getAverage() {
+		if (size == 0) {
+			return Double.NaN;
+		}
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += values[(start + i) % values.length];
+		}
+		return sum / size;
+	}
+
+	/**
+	 * @return minimum of the window, NaN if empty
+	 */
+	public double getMin() {
+		double min = Double.NaN;
+		for (int i = 0; i < size; i++) {
+			double value = values[(start + i) % values.length];
+			if (Double.isNaN(min) || value < min) {
+				min = value;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * @return maximum of the window, NaN if empty
+	 */
+	public double getMax() {
+		double max = Double.NaN;
+		for (int i = 0; i < size; i++) {
+			double value = values[(start + i) % values.length];
+			if (Double.isNaN(max) || value > max) {
+				max = value;
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @return number of values of the window greater than threshold
+	 */
+	public int countAbove(double threshold) {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (values[(start + i) % values.length] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return estimated heap size of the window
+	 */
+	public long estimateBytes() {
+		return 64 + 16L * times.length;
+	}
+
+	public void clear() {
+		start = 0;
+		size = 0;
+	}
+
+}
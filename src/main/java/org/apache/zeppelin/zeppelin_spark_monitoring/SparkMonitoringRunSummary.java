@@ -0,0 +1,241 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics of the jobs and stages of one run of an application, keyed to be
+ * aligned with the other runs of the same application: a job by its
+ * description (or name) and its occurrence, a stage by its job and its
+ * position in the job. A summary is small, it is kept instead of the fetched
+ * jobs and stages of the completed runs.
+ */
+public class SparkMonitoringRunSummary implements Serializable, SparkMonitoringMemoryBudget.Sized {
+	private static final long serialVersionUID = 1L;
+
+
+	/**
+	 * Metrics of an aligned job or stage
+	 */
+	public static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+		private final String job;
+		private final String stage;
+		private final String name;
+		private double duration;
+		private double inputBytes;
+		private double shuffleReadBytes;
+		private double shuffleWriteBytes;
+		private double numTasks;
+
+		Entry(String key, String job, String stage, String name) {
+			this.key = key;
+			this.job = job;
+			this.stage = stage;
+			this.name = name;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		/**
+		 * @return description (or name) of the job, and its occurrence if the
+		 *         description repeats
+		 */
+		public String getJob() {
+			return job;
+		}
+		/**
+		 * @return position of the stage in its job, null for a job
+		 */
+		public String getStage() {
+			return stage;
+		}
+		public String getName() {
+			return name;
+		}
+		/**
+		 * @return in milliseconds
+		 */
+		public double getDuration() {
+			return duration;
+		}
+		public double getInputBytes() {
+			return inputBytes;
+		}
+		public double getShuffleReadBytes() {
+			return shuffleReadBytes;
+		}
+		public double getShuffleWriteBytes() {
+			return shuffleWriteBytes;
+		}
+		public double getNumTasks() {
+			return numTasks;
+		}
+
+		private void add(Entry other, double weight) {
+			duration += other.duration * weight;
+			inputBytes += other.inputBytes * weight;
+			shuffleReadBytes += other.shuffleReadBytes * weight;
+			shuffleWriteBytes += other.shuffleWriteBytes * weight;
+			numTasks += other.numTasks * weight;
+		}
+	}
+
+	private final String applicationId;
+	private final Map<String, Entry> entries;
+
+	private SparkMonitoringRunSummary(String applicationId, Map<String, Entry> entries) {
+		this.applicationId = applicationId;
+		this.entries = entries;
+	}
+
+	/**
+	 * @param lsJob
+	 *            jobs of the run
+	 * @param lsStage
+	 *            stages of the run, all attempts
+	 * @param now
+	 *            end of the jobs and stages which are still running
+	 */
+	public static SparkMonitoringRunSummary create(String applicationId, List<SparkMonitoringJob> lsJob,
+			List<SparkMonitoringStage> lsStage, long now) {
+		// last attempt of each stage
+		Map<String, SparkMonitoringStage> stages = new HashMap<>();
+		for (SparkMonitoringStage stage : lsStage) {
+			SparkMonitoringStage previous = stages.get(stage.getId());
+			if (previous == null || stage.getAttemptId() > previous.getAttemptId()) {
+				stages.put(stage.getId(), stage);
+			}
+		}
+		// jobs in submission order, so that the occurrences match between runs
+		List<SparkMonitoringJob> jobs = new ArrayList<>(lsJob);
+		Collections.sort(jobs, new Comparator<SparkMonitoringJob>() {
+			@Override
+			public int compare(SparkMonitoringJob o1, SparkMonitoringJob o2) {
+				return Long.compare(parseId(o1.getId()), parseId(o2.getId()));
+			}
+		});
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		Map<String, Integer> occurrences = new HashMap<>();
+		for (SparkMonitoringJob job : jobs) {
+			String label = job.getDescription() != null && !"null".equals(job.getDescription())
+					? job.getDescription() : job.getName();
+			Integer occurrence = occurrences.get(label);
+			occurrence = occurrence == null ? 1 : occurrence + 1;
+			occurrences.put(label, occurrence);
+			if (occurrence > 1) {
+				label += " #" + occurrence;
+			}
+			Entry jobEntry = new Entry(label, label, null, job.getName());
+			jobEntry.duration = duration(job.getSubmisstionTimeMilis(), job.getCompletionTimeMilis(), now);
+			jobEntry.numTasks = job.getNumTasks();
+			entries.put(label, jobEntry);
+
+			List<String> stageIds = new ArrayList<>(job.getStageIds() != null ? job.getStageIds()
+					: Collections.<String> emptyList());
+			Collections.sort(stageIds, new Comparator<String>() {
+				@Override
+				public int compare(String o1, String o2) {
+					return Long.compare(parseId(o1), parseId(o2));
+				}
+			});
+			int position = 0;
+			for (String stageId : stageIds) {
+				position++;
+				SparkMonitoringStage stage = stages.get(stageId);
+				if (stage == null) {
+					continue;
+				}
+				Entry stageEntry = new Entry(label + "/" + position, label, String.valueOf(position), stage.getName());
+				stageEntry.duration = duration(stage.getSubmissionTimeMilis(), stage.getCompletionTimeMilis(), now);
+				stageEntry.inputBytes = stage.getInputBytes();
+				stageEntry.shuffleReadBytes = stage.getShuffleReadBytes();
+				stageEntry.shuffleWriteBytes = stage.getShuffleWriteBytes();
+				stageEntry.numTasks = stage.getNumCompletedTasks() + stage.getNumFailedTasks();
+				entries.put(stageEntry.key, stageEntry);
+				jobEntry.inputBytes += stageEntry.inputBytes;
+				jobEntry.shuffleReadBytes += stageEntry.shuffleReadBytes;
+				jobEntry.shuffleWriteBytes += stageEntry.shuffleWriteBytes;
+			}
+		}
+		return new SparkMonitoringRunSummary(applicationId, entries);
+	}
+
+	/**
+	 * Average of several runs, each entry over the runs which have it
+	 */
+	public static SparkMonitoringRunSummary average(String applicationId, List<SparkMonitoringRunSummary> runs) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (SparkMonitoringRunSummary run : runs) {
+			for (String key : run.entries.keySet()) {
+				Integer count = counts.get(key);
+				counts.put(key, count == null ? 1 : count + 1);
+			}
+		}
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		for (SparkMonitoringRunSummary run : runs) {
+			for (Entry entry : run.entries.values()) {
+				Entry average = entries.get(entry.key);
+				if (average == null) {
+					average = new Entry(entry.key, entry.job, entry.stage, entry.name);
+					entries.put(entry.key, average);
+				}
+				average.add(entry, 1D / counts.get(entry.key));
+			}
+		}
+		return new SparkMonitoringRunSummary(applicationId, entries);
+	}
+
+	private static double duration(Long start, Long end, long now) {
+		if (start == null) {
+			// skipped
+			return 0;
+		}
+		return (end != null ? end : now) - start;
+	}
+
+	private static long parseId(String id) {
+		try {
+			return Long.parseLong(id);
+		} catch (NumberFormatException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	public String getApplicationId() {
+		return applicationId;
+	}
+
+	public Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public Collection<Entry> getEntries() {
+		return entries.values();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public long estimateBytes() {
+		long bytes = 64;
+		for (Entry entry : entries.values()) {
+			// the job and name are shared with the key or pooled
+			bytes += 128 + SparkMonitoringStringPool.estimateBytes(entry.key);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+/**
+ * Occupancy of the executor slots of an application over time: the core
+ * time allocated to the executors and the time of the running tasks in each
+ * bucket of the run. The executors and tasks are added interval by interval
+ * while they are read, the memory depends on the number of buckets only.
+ * A task takes one core (spark.task.cpus=1).
+ */
+public class SparkMonitoringSlotUsage {
+	private final long start;
+	private final long end;
+	private final long bucketMillis;
+	private final double[] coreMillis;
+	private final double[] taskMillis;
+	private int tasks;
+
+	/**
+	 * @param start
+	 *            start of the run, in milliseconds
+	 * @param end
+	 *            end of the run, or now if it is running
+	 * @param buckets
+	 *            number of buckets of the run
+	 */
+	public SparkMonitoringSlotUsage(long start, long end, int buckets) {
+		if (end <= start || buckets < 1) {
+			throw new IllegalArgumentException("Empty run or no bucket");
+		}
+		this.start = start;
+		this.end = end;
+		this.bucketMillis = Math.max(1L, (end - start + buckets - 1) / buckets);
+		int size = (int) ((end - start + bucketMillis - 1) / bucketMillis);
+		this.coreMillis = new double[size];
+		this.taskMillis = new double[size];
+	}
+
+	/**
+	 * Add the cores of an executor
+	 *
+	 * @param from
+	 *            time the executor was added
+	 * @param to
+	 *            time it was removed, the end of the run if it is active
+	 */
+	public void addCores(long from, long to, int cores) {
+		add(coreMillis, from, to, cores);
+	}
+
+	/**
+	 * Add a task
+	 *
+	 * @param to
+	 *            end of the task, the end of the run if it is running
+	 */
+	public void addTask(long from, long to) {
+		add(taskMillis, from, to, 1);
+		tasks++;
+	}
+
+	// spread the interval over the buckets it overlaps
+	private void add(double[] millis, long from, long to, double weight) {
+		long clippedFrom = Math.max(from, start);
+		long clippedTo = Math.min(to, end);
+		if (clippedTo <= clippedFrom) {
+			return;
+		}
+		int first = (int) ((clippedFrom - start) / bucketMillis);
+		int last = (int) ((clippedTo - 1 - start) / bucketMillis);
+		for (int i = first; i <= last; i++) {
+			long bucketStart = start + i * bucketMillis;
+			long overlap = Math.min(clippedTo, bucketStart + bucketMillis) - Math.max(clippedFrom, bucketStart);
+			millis[i] += weight * overlap;
+		}
+	}
+
+	public int getBuckets() {
+		return coreMillis.length;
+	}
+
+	/**
+	 * @return number of tasks added
+	 */
+	public int getTasks() {
+		return tasks;
+	}
+
+	public long getBucketStart(int bucket) {
+		return start + bucket * bucketMillis;
+	}
+
+	/**
+	 * @return duration of the bucket, the last one may be shorter
+	 */
+	public long getBucketMillis(int bucket) {
+		return Math.min(end, getBucketStart(bucket) + bucketMillis) - getBucketStart(bucket);
+	}
+
+	/**
+	 * @return core time allocated in the bucket, in milliseconds
+	 */
+	public double getCoreMillis(int bucket) {
+		return coreMillis[bucket];
+	}
+
+	/**
+	 * @return task time in the bucket, in milliseconds
+	 */
+	public double getTaskMillis(int bucket) {
+		return taskMillis[bucket];
+	}
+
+	/**
+	 * @return duration of the run, in milliseconds
+	 */
+	public long getMillis() {
+		return end - start;
+	}
+
+	public double getTotalCoreMillis() {
+		double total = 0;
+		for (double millis : coreMillis) {
+			total += millis;
+		}
+		return total;
+	}
+
+	public double getTotalTaskMillis() {
+		double total = 0;
+		for (double millis : taskMillis) {
+			total += millis;
+		}
+		return total;
+	}
+
+}
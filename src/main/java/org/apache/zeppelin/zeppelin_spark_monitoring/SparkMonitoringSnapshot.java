@@ -0,0 +1,121 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Jobs and stages of an application fetched together, under a version
+ * number: the views which show jobs next to stages read the same snapshot.
+ * A snapshot never changes once published, its jobs and stages must not be
+ * modified by the readers.
+ */
+public class SparkMonitoringSnapshot implements SparkMonitoringMemoryBudget.Sized {
+	// estimated size of a parsed job and of a parsed stage, their shared strings excluded
+	private static final int JOB_BYTES = 200;
+	private static final int STAGE_BYTES = 250;
+
+	private final long version;
+	private final String applicationId;
+	private final long time;
+	private final List<SparkMonitoringJob> jobs;
+	private final List<SparkMonitoringStage> stages;
+	private final int attempts;
+	private final int inconsistencies;
+
+	/**
+	 * @param attempts
+	 *            number of fetches of the jobs and stages
+	 * @param inconsistencies
+	 *            jobs and stages of the last fetch which disagree
+	 */
+	public SparkMonitoringSnapshot(long version, String applicationId, long time, List<SparkMonitoringJob> jobs,
+			List<SparkMonitoringStage> stages, int attempts, int inconsistencies) {
+		this.version = version;
+		this.applicationId = applicationId;
+		this.time = time;
+		this.jobs = Collections.unmodifiableList(new ArrayList<>(jobs));
+		this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+		this.attempts = attempts;
+		this.inconsistencies = inconsistencies;
+	}
+
+	/**
+	 * Count the jobs and stages which cannot be seen at the same moment: a
+	 * completed job with an active stage (the stages are older than the
+	 * jobs), or a started stage of a job which is not listed (the jobs are
+	 * older than the stages)
+	 */
+	public static int countInconsistencies(List<SparkMonitoringJob> jobs, List<SparkMonitoringStage> stages) {
+		Set<String> activeStageIds = new HashSet<>();
+		for (SparkMonitoringStage stage : stages) {
+			if ("ACTIVE".equals(stage.getStatus())) {
+				activeStageIds.add(stage.getId());
+			}
+		}
+		Set<String> jobStageIds = new HashSet<>();
+		int inconsistencies = 0;
+		for (SparkMonitoringJob job : jobs) {
+			if (job.getStageIds() == null) {
+				continue;
+			}
+			jobStageIds.addAll(job.getStageIds());
+			if ("SUCCEEDED".equals(job.getStatus()) || "FAILED".equals(job.getStatus())) {
+				for (String stageId : job.getStageIds()) {
+					if (activeStageIds.contains(stageId)) {
+						inconsistencies++;
+					}
+				}
+			}
+		}
+		for (SparkMonitoringStage stage : stages) {
+			if (!"PENDING".equals(stage.getStatus()) && !"SKIPPED".equals(stage.getStatus())
+					&& !jobStageIds.contains(stage.getId())) {
+				inconsistencies++;
+			}
+		}
+		return inconsistencies;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String getApplicationId() {
+		return applicationId;
+	}
+
+	/**
+	 * @return time of the fetch, in milliseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public List<SparkMonitoringJob> getJobs() {
+		return jobs;
+	}
+
+	public List<SparkMonitoringStage> getStages() {
+		return stages;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return 0 if the jobs and stages agree
+	 */
+	public int getInconsistencies() {
+		return inconsistencies;
+	}
+
+	@Override
+	public long estimateBytes() {
+		return 64 + (long) JOB_BYTES * jobs.size() + (long) STAGE_BYTES * stages.size();
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Versioned snapshots of the applications, by prefix and application: the
+ * last versions are kept in an immutable list replaced at each publish, so
+ * the readers never lock and keep their version while the next one is
+ * built. Under the memory budget the old versions are dropped first, then
+ * the applications not read for a while, their versions restart at 1.
+ */
+public class SparkMonitoringSnapshots implements SparkMonitoringMemoryBudget.Account {
+	/** idle time of an application before its latest version can be evicted */
+	public static final long DEFAULT_IDLE_MILLIS = 10 * 60 * 1000L;
+	// versions of each application, oldest first, never modified once set
+	private final ConcurrentMap<String, List<SparkMonitoringSnapshot>> versions = new ConcurrentHashMap<>();
+	// last publish or read of each application
+	private final ConcurrentMap<String, Long> lastAccess = new ConcurrentHashMap<>();
+	private final int maxVersions;
+	private final long idleMillis;
+
+	/**
+	 * @param maxVersions
+	 *            number of versions kept per application
+	 */
+	public SparkMonitoringSnapshots(int maxVersions) {
+		this(maxVersions, DEFAULT_IDLE_MILLIS);
+	}
+
+	/**
+	 * @param idleMillis
+	 *            time since the last access after which the latest version
+	 *            of an application can be evicted
+	 */
+	public SparkMonitoringSnapshots(int maxVersions, long idleMillis) {
+		this.maxVersions = Math.max(1, maxVersions);
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Publish the next version of an application
+	 *
+	 * @param key
+	 *            prefix and application
+	 * @return the published snapshot
+	 */
+	public synchronized SparkMonitoringSnapshot publish(String key, String applicationId, long time,
+			List<SparkMonitoringJob> jobs, List<SparkMonitoringStage> stages, int attempts, int inconsistencies) {
+		List<SparkMonitoringSnapshot> previous = versionsOf(key);
+		long version = previous.isEmpty() ? 1 : previous.get(previous.size() - 1).getVersion() + 1;
+		SparkMonitoringSnapshot snapshot = new SparkMonitoringSnapshot(version, applicationId, time, jobs, stages,
+				attempts, inconsistencies);
+		List<SparkMonitoringSnapshot> next = new ArrayList<>(
+				previous.subList(Math.max(0, previous.size() - maxVersions + 1), previous.size()));
+		next.add(snapshot);
+		versions.put(key, Collections.unmodifiableList(next));
+		lastAccess.put(key, System.currentTimeMillis());
+		return snapshot;
+	}
+
+	/**
+	 * @return versions kept, oldest first
+	 */
+	public List<SparkMonitoringSnapshot> getVersions(String key) {
+		List<SparkMonitoringSnapshot> snapshots = versionsOf(key);
+		if (!snapshots.isEmpty()) {
+			lastAccess.put(key, System.currentTimeMillis());
+		}
+		return snapshots;
+	}
+
+	private List<SparkMonitoringSnapshot> versionsOf(String key) {
+		List<SparkMonitoringSnapshot> snapshots = versions.get(key);
+		return snapshots != null ? snapshots : Collections.<SparkMonitoringSnapshot> emptyList();
+	}
+
+	/**
+	 * @return number of applications with versions
+	 */
+	public int size() {
+		return versions.size();
+	}
+
+	/**
+	 * @return latest version, null if none
+	 */
+	public SparkMonitoringSnapshot getLatest(String key) {
+		List<SparkMonitoringSnapshot> snapshots = getVersions(key);
+		return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+	}
+
+	/**
+	 * @return the version, null if it is not kept
+	 */
+	public SparkMonitoringSnapshot get(String key, long version) {
+		for (SparkMonitoringSnapshot snapshot : getVersions(key)) {
+			if (snapshot.getVersion() == version) {
+				return snapshot;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String getName() {
+		return "snapshots";
+	}
+
+	@Override
+	public long estimateBytes() {
+		long bytes = 0;
+		for (List<SparkMonitoringSnapshot> snapshots : versions.values()) {
+			for (SparkMonitoringSnapshot snapshot : snapshots) {
+				bytes += snapshot.estimateBytes();
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public void addCandidates(List<SparkMonitoringMemoryBudget.Candidate> candidates) {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, List<SparkMonitoringSnapshot>> entry : versions.entrySet()) {
+			List<SparkMonitoringSnapshot> snapshots = entry.getValue();
+			for (int i = 0; i < snapshots.size() - 1; i++) {
+				SparkMonitoringSnapshot snapshot = snapshots.get(i);
+				candidates.add(new SparkMonitoringMemoryBudget.Candidate(this,
+						entry.getKey() + "#" + snapshot.getVersion(), snapshot.estimateBytes(), snapshot.getTime()));
+			}
+			Long accessed = lastAccess.get(entry.getKey());
+			if (!snapshots.isEmpty() && accessed != null && now - accessed >= idleMillis) {
+				SparkMonitoringSnapshot latest = snapshots.get(snapshots.size() - 1);
+				candidates.add(new SparkMonitoringMemoryBudget.Candidate(this,
+						entry.getKey() + "#" + latest.getVersion(), latest.estimateBytes(), accessed));
+			}
+		}
+	}
+
+	/**
+	 * Drop a version which is not the latest, or the latest one of an idle
+	 * application with the application
+	 *
+	 * @param key
+	 *            key of the application, # and the version
+	 */
+	@Override
+	public synchronized long evict(String key) {
+		int separator = key.lastIndexOf('#');
+		String applicationKey = key.substring(0, separator);
+		long version = Long.parseLong(key.substring(separator + 1));
+		List<SparkMonitoringSnapshot> snapshots = versionsOf(applicationKey);
+		if (!snapshots.isEmpty() && snapshots.get(snapshots.size() - 1).getVersion() == version) {
+			// not if read or published again since the candidates were listed
+			Long accessed = lastAccess.get(applicationKey);
+			if (accessed == null || System.currentTimeMillis() - accessed < idleMillis) {
+				return 0;
+			}
+			versions.remove(applicationKey);
+			lastAccess.remove(applicationKey);
+			long bytes = 0;
+			for (SparkMonitoringSnapshot snapshot : snapshots) {
+				bytes += snapshot.estimateBytes();
+			}
+			return bytes;
+		}
+		List<SparkMonitoringSnapshot> next = new ArrayList<>();
+		long bytes = 0;
+		for (int i = 0; i < snapshots.size(); i++) {
+			if (snapshots.get(i).getVersion() == version && i < snapshots.size() - 1) {
+				bytes = snapshots.get(i).estimateBytes();
+			} else {
+				next.add(snapshots.get(i));
+			}
+		}
+		if (bytes > 0) {
+			versions.put(applicationKey, Collections.unmodifiableList(next));
+		}
+		return bytes;
+	}
+
+}
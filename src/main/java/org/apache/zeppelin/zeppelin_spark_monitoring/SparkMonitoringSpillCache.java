@@ -0,0 +1,231 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the interpreter under the memory budget: the cold entries are
+ * spilled to a local file when the budget is exceeded, and read back on their
+ * next access. An entry which cannot be spilled is dropped.
+ * The values lock themselves when they change, they are written under the
+ * same lock.
+ */
+public class SparkMonitoringSpillCache<V extends Serializable & SparkMonitoringMemoryBudget.Sized>
+		implements SparkMonitoringMemoryBudget.Account {
+	private static Logger logger = LoggerFactory.getLogger(SparkMonitoringSpillCache.class);
+
+	private final String name;
+	private final int maxEntries;
+	private final File spillDir;
+	// entries in memory, least recently used first, and their last access
+	private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, Long> lastAccess = new HashMap<>();
+	// spilled entries, and their file
+	private final Map<String, File> spilled = new HashMap<>();
+	private final AtomicLong spilledBytes = new AtomicLong();
+	private long fileCount;
+
+	/**
+	 * @param name
+	 *            name of the cache, and of its files
+	 * @param maxEntries
+	 *            maximum number of entries in memory and on disk, the least
+	 *            recently used are dropped
+	 * @param spillDir
+	 *            directory of the spilled entries, null to drop them instead
+	 */
+	public SparkMonitoringSpillCache(String name, int maxEntries, File spillDir) {
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.spillDir = spillDir;
+	}
+
+	/**
+	 * @return the entry, read back from disk if spilled, null if unknown
+	 */
+	public synchronized V get(String key) {
+		V value = entries.get(key);
+		if (value == null) {
+			File file = spilled.remove(key);
+			if (file == null) {
+				return null;
+			}
+			value = load(file);
+			if (value == null) {
+				return null;
+			}
+			entries.put(key, value);
+		}
+		lastAccess.put(key, System.currentTimeMillis());
+		return value;
+	}
+
+	/**
+	 * @return the entry of the key if any, else value which is added
+	 */
+	public synchronized V putIfAbsent(String key, V value) {
+		V previous = get(key);
+		if (previous != null) {
+			return previous;
+		}
+		put(key, value);
+		return value;
+	}
+
+	public synchronized void put(String key, V value) {
+		File file = spilled.remove(key);
+		if (file != null) {
+			delete(file);
+		}
+		entries.put(key, value);
+		lastAccess.put(key, System.currentTimeMillis());
+		// drop the least recently used beyond the maximum, spilled ones first
+		Iterator<Map.Entry<String, File>> spilledEntries = spilled.entrySet().iterator();
+		while (entries.size() + spilled.size() > maxEntries && spilledEntries.hasNext()) {
+			delete(spilledEntries.next().getValue());
+			spilledEntries.remove();
+		}
+		Iterator<String> keys = entries.keySet().iterator();
+		while (entries.size() > maxEntries && keys.hasNext()) {
+			lastAccess.remove(keys.next());
+			keys.remove();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of entries in memory
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of entries spilled to disk
+	 */
+	public synchronized int getSpilled() {
+		return spilled.size();
+	}
+
+	/**
+	 * @return bytes written to disk since the start
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	@Override
+	public synchronized long estimateBytes() {
+		long bytes = 0;
+		for (V value : entries.values()) {
+			bytes += value.estimateBytes();
+		}
+		return bytes;
+	}
+
+	@Override
+	public synchronized void addCandidates(List<SparkMonitoringMemoryBudget.Candidate> candidates) {
+		for (Map.Entry<String, V> entry : entries.entrySet()) {
+			Long access = lastAccess.get(entry.getKey());
+			candidates.add(new SparkMonitoringMemoryBudget.Candidate(this, entry.getKey(),
+					entry.getValue().estimateBytes(), access != null ? access : 0L));
+		}
+	}
+
+	@Override
+	public synchronized long evict(String key) {
+		V value = entries.remove(key);
+		lastAccess.remove(key);
+		if (value == null) {
+			return 0;
+		}
+		long bytes = value.estimateBytes();
+		if (spillDir != null) {
+			File file = new File(spillDir, name + "-" + (++fileCount) + ".bin");
+			ObjectOutputStream out = null;
+			try {
+				spillDir.mkdirs();
+				out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				synchronized (value) {
+					out.writeObject(value);
+				}
+				out.close();
+				out = null;
+				spilled.put(key, file);
+				spilledBytes.addAndGet(file.length());
+			} catch (IOException e) {
+				logger.warn("Spill of {} {} failed, it is dropped: {}", name, key, e.getMessage());
+				delete(file);
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						// dropped anyway
+					}
+				}
+			}
+		}
+		return bytes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V load(File file) {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			return (V) in.readObject();
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			logger.warn("Spilled {} {} cannot be read, it is dropped: {}", name, file, e.getMessage());
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// read anyway
+				}
+			}
+			delete(file);
+		}
+	}
+
+	/**
+	 * Drop all entries and their files
+	 */
+	public synchronized void clear() {
+		for (File file : spilled.values()) {
+			delete(file);
+		}
+		spilled.clear();
+		entries.clear();
+		lastAccess.clear();
+	}
+
+	private static void delete(File file) {
+		if (file.exists() && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+}
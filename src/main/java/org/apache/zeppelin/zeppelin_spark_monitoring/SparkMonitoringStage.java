@@ -12,6 +12,13 @@ public class SparkMonitoringStage {
 	private long outputBytes;
 	private long outputRecords;
 	private String details;
+	private int attemptId;
+	private Long submissionTimeMilis;
+	private Long completionTimeMilis;
+	private long shuffleReadBytes;
+	private long shuffleWriteBytes;
+	private long memoryBytesSpilled;
+	private long diskBytesSpilled;
 	
 	public String getId() {
 		return id;
@@ -80,5 +87,47 @@ public class SparkMonitoringStage {
 	public void setDetails(String details) {
 		this.details = details;
 	}
+	public int getAttemptId() {
+		return attemptId;
+	}
+	public void setAttemptId(int attemptId) {
+		this.attemptId = attemptId;
+	}
+	public Long getSubmissionTimeMilis() {
+		return submissionTimeMilis;
+	}
+	public void setSubmissionTimeMilis(Long submissionTimeMilis) {
+		this.submissionTimeMilis = submissionTimeMilis;
+	}
+	public Long getCompletionTimeMilis() {
+		return completionTimeMilis;
+	}
+	public void setCompletionTimeMilis(Long completionTimeMilis) {
+		this.completionTimeMilis = completionTimeMilis;
+	}
+	public long getShuffleReadBytes() {
+		return shuffleReadBytes;
+	}
+	public void setShuffleReadBytes(long shuffleReadBytes) {
+		this.shuffleReadBytes = shuffleReadBytes;
+	}
+	public long getShuffleWriteBytes() {
+		return shuffleWriteBytes;
+	}
+	public void setShuffleWriteBytes(long shuffleWriteBytes) {
+		this.shuffleWriteBytes = shuffleWriteBytes;
+	}
+	public long getMemoryBytesSpilled() {
+		return memoryBytesSpilled;
+	}
+	public void setMemoryBytesSpilled(long memoryBytesSpilled) {
+		this.memoryBytesSpilled = memoryBytesSpilled;
+	}
+	public long getDiskBytesSpilled() {
+		return diskBytesSpilled;
+	}
+	public void setDiskBytesSpilled(long diskBytesSpilled) {
+		this.diskBytesSpilled = diskBytesSpilled;
+	}
 	
 }
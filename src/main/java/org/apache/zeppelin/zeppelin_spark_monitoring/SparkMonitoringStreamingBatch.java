@@ -0,0 +1,96 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+/**
+ * Class presents a micro-batch of a spark streaming application
+ */
+public class SparkMonitoringStreamingBatch {
+	private String id;
+	private Long batchTimeMilis;
+	private String status;
+	private long batchDurationMilis;
+	private long inputSize;
+	private Long schedulingDelay;
+	private Long processingTime;
+	private Long totalDelay;
+	private int numFailedOutputOps;
+
+	public String getId() {
+		return id;
+	}
+	public void setId(String id) {
+		this.id = id;
+	}
+	public Long getBatchTimeMilis() {
+		return batchTimeMilis;
+	}
+	public void setBatchTimeMilis(Long batchTimeMilis) {
+		this.batchTimeMilis = batchTimeMilis;
+	}
+	public String getStatus() {
+		return status;
+	}
+	public void setStatus(String status) {
+		this.status = status;
+	}
+	/**
+	 * @return batch interval of the application, in milliseconds
+	 */
+	public long getBatchDurationMilis() {
+		return batchDurationMilis;
+	}
+	public void setBatchDurationMilis(long batchDurationMilis) {
+		this.batchDurationMilis = batchDurationMilis;
+	}
+	/**
+	 * @return number of input records
+	 */
+	public long getInputSize() {
+		return inputSize;
+	}
+	public void setInputSize(long inputSize) {
+		this.inputSize = inputSize;
+	}
+	/**
+	 * @return in milliseconds, null until the batch is started
+	 */
+	public Long getSchedulingDelay() {
+		return schedulingDelay;
+	}
+	public void setSchedulingDelay(Long schedulingDelay) {
+		this.schedulingDelay = schedulingDelay;
+	}
+	/**
+	 * @return in milliseconds, null until the batch is completed
+	 */
+	public Long getProcessingTime() {
+		return processingTime;
+	}
+	public void setProcessingTime(Long processingTime) {
+		this.processingTime = processingTime;
+	}
+	public Long getTotalDelay() {
+		return totalDelay;
+	}
+	public void setTotalDelay(Long totalDelay) {
+		this.totalDelay = totalDelay;
+	}
+	public int getNumFailedOutputOps() {
+		return numFailedOutputOps;
+	}
+	public void setNumFailedOutputOps(int numFailedOutputOps) {
+		this.numFailedOutputOps = numFailedOutputOps;
+	}
+	/**
+	 * @return input records per second of batch interval
+	 */
+	public double getInputRate() {
+		return batchDurationMilis > 0 ? inputSize * 1000D / batchDurationMilis : 0;
+	}
+	/**
+	 * @return true if the batch took longer to process than the batch interval
+	 */
+	public boolean isOverloaded() {
+		return processingTime != null && batchDurationMilis > 0 && processingTime > batchDurationMilis;
+	}
+
+}
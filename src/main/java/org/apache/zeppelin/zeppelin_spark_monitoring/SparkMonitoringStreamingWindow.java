@@ -0,0 +1,114 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Rolling window of the completed batches of a streaming application:
+ * scheduling delay, processing time and input rate of the last batches, each
+ * batch is added once, in batch time order
+ */
+public class SparkMonitoringStreamingWindow implements Serializable, SparkMonitoringMemoryBudget.Sized {
+	private static final long serialVersionUID = 1L;
+
+	private final SparkMonitoringRingBuffer schedulingDelays;
+	private final SparkMonitoringRingBuffer processingTimes;
+	private final SparkMonitoringRingBuffer inputRates;
+	private long batchDurationMilis;
+	// batch time of the latest batch added
+	private long lastBatchTimeMilis = Long.MIN_VALUE;
+
+	/**
+	 * @param capacity
+	 *            number of batches kept
+	 */
+	public SparkMonitoringStreamingWindow(int capacity) {
+		schedulingDelays = new SparkMonitoringRingBuffer(capacity);
+		processingTimes = new SparkMonitoringRingBuffer(capacity);
+		inputRates = new SparkMonitoringRingBuffer(capacity);
+	}
+
+	/**
+	 * Add the completed batches newer than the latest added
+	 *
+	 * @param lsBatch
+	 *            batches in batch time order, oldest first
+	 */
+	public synchronized void addBatches(List<SparkMonitoringStreamingBatch> lsBatch) {
+		for (SparkMonitoringStreamingBatch batch : lsBatch) {
+			Long batchTime = batch.getBatchTimeMilis();
+			if (batchTime == null || batchTime <= lastBatchTimeMilis || batch.getProcessingTime() == null) {
+				continue;
+			}
+			lastBatchTimeMilis = batchTime;
+			if (batch.getBatchDurationMilis() > 0) {
+				batchDurationMilis = batch.getBatchDurationMilis();
+			}
+			schedulingDelays.add(batchTime, batch.getSchedulingDelay() != null ? batch.getSchedulingDelay() : 0);
+			processingTimes.add(batchTime, batch.getProcessingTime());
+			inputRates.add(batchTime, batch.getInputRate());
+		}
+	}
+
+	public synchronized void setBatchDurationMilis(long batchDurationMilis) {
+		this.batchDurationMilis = batchDurationMilis;
+	}
+
+	public synchronized long getBatchDurationMilis() {
+		return batchDurationMilis;
+	}
+
+	public synchronized int size() {
+		return processingTimes.size();
+	}
+
+	/**
+	 * @return last, average and max of the scheduling delays, in milliseconds
+	 */
+	public synchronized double[] getSchedulingDelay() {
+		return summarize(schedulingDelays);
+	}
+
+	/**
+	 * @return last, average and max of the processing times, in milliseconds
+	 */
+	public synchronized double[] getProcessingTime() {
+		return summarize(processingTimes);
+	}
+
+	/**
+	 * @return last, average and max of the input rates, in records per second
+	 */
+	public synchronized double[] getInputRate() {
+		return summarize(inputRates);
+	}
+
+	/**
+	 * @return number of batches of the window processed in more than the batch
+	 *         interval
+	 */
+	public synchronized int getOverloadedBatches() {
+		return batchDurationMilis > 0 ? processingTimes.countAbove(batchDurationMilis) : 0;
+	}
+
+	/**
+	 * @return true if the latest batch or the average of the window took longer
+	 *         to process than the batch interval
+	 */
+	public synchronized boolean isOverloaded() {
+		if (batchDurationMilis <= 0 || processingTimes.size() == 0) {
+			return false;
+		}
+		return processingTimes.getLast() > batchDurationMilis || processingTimes.getAverage() > batchDurationMilis;
+	}
+
+	@Override
+	public synchronized long estimateBytes() {
+		return 64 + schedulingDelays.estimateBytes() + processingTimes.estimateBytes() + inputRates.estimateBytes();
+	}
+
+	private double[] summarize(SparkMonitoringRingBuffer buffer) {
+		return new double[] { buffer.getLast(), buffer.getAverage(), buffer.getMax() };
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dictionary of the repeated values of the responses (keys, names, statuses,
+ * ids): each distinct value is kept once and shared by all the objects which
+ * hold it. Long values (such as stage details) are not pooled.
+ * The pool stops growing at its maximum size, the values already pooled stay
+ * shared. Over the memory budget the whole pool is cleared, the objects keep
+ * their instances and the next values are pooled again.
+ */
+public class SparkMonitoringStringPool implements SparkMonitoringMemoryBudget.Account {
+	/** values longer than this are not pooled, they rarely repeat */
+	public static final int MAX_POOLED_LENGTH = 128;
+	// estimated size of a String object and its char array, without the chars
+	private static final int STRING_OVERHEAD_BYTES = 56;
+
+	private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<>();
+	private final int maxEntries;
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong savedBytes = new AtomicLong();
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private volatile long lastClear = System.currentTimeMillis();
+
+	/**
+	 * @param maxEntries
+	 *            maximum number of distinct values kept
+	 */
+	public SparkMonitoringStringPool(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @return the pooled instance equal to value, or value itself if it is not
+	 *         pooled
+	 */
+	public String intern(String value) {
+		if (value == null || value.length() > MAX_POOLED_LENGTH) {
+			return value;
+		}
+		lookups.incrementAndGet();
+		String pooled = pool.get(value);
+		if (pooled != null) {
+			hits.incrementAndGet();
+			savedBytes.addAndGet(estimateBytes(value));
+			return pooled;
+		}
+		if (pool.size() >= maxEntries) {
+			return value;
+		}
+		pooled = pool.putIfAbsent(value, value);
+		if (pooled != null) {
+			hits.incrementAndGet();
+			savedBytes.addAndGet(estimateBytes(value));
+			return pooled;
+		}
+		pooledBytes.addAndGet(estimateBytes(value));
+		return value;
+	}
+
+	/**
+	 * @return estimated heap size of a String
+	 */
+	public static long estimateBytes(String value) {
+		return STRING_OVERHEAD_BYTES + 2L * value.length();
+	}
+
+	public int size() {
+		return pool.size();
+	}
+
+	/**
+	 * Forget the pooled values
+	 */
+	public synchronized void clear() {
+		pool.clear();
+		pooledBytes.set(0);
+		lastClear = System.currentTimeMillis();
+	}
+
+	@Override
+	public String getName() {
+		return "string pool";
+	}
+
+	@Override
+	public long estimateBytes() {
+		return pooledBytes.get();
+	}
+
+	@Override
+	public void addCandidates(List<SparkMonitoringMemoryBudget.Candidate> candidates) {
+		// the values are used all the time, the pool is as old as its last clear
+		if (!pool.isEmpty()) {
+			candidates.add(new SparkMonitoringMemoryBudget.Candidate(this, getName(), pooledBytes.get(), lastClear));
+		}
+	}
+
+	@Override
+	public long evict(String key) {
+		long bytes = pooledBytes.get();
+		clear();
+		return bytes;
+	}
+
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/**
+	 * @return number of values replaced by their pooled instance
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return estimated bytes of the duplicates which were not retained, since the start
+	 */
+	public long getSavedBytes() {
+		return savedBytes.get();
+	}
+
+	/**
+	 * @return estimated bytes retained by the pool
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+}
@@ -0,0 +1,172 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Samples of the interpreter process: cpu load, memory, gc and threads, with
+ * the load of the interpreter itself (commands, REST requests, running
+ * paragraphs) over the same intervals, to tell whether the monitoring strains
+ * the host. Each sample only reads the MXBeans, the series are fixed-size
+ * primitive ring buffers.
+ */
+public class SparkMonitoringSystemSampler {
+	public static final String PROCESS_CPU = "Process CPU";
+	public static final String SYSTEM_CPU = "System CPU";
+	public static final String HEAP_USED = "Heap Used";
+	public static final String NON_HEAP_USED = "Non-Heap Used";
+	public static final String GC_TIME = "GC Time";
+	public static final String THREADS = "Threads";
+	public static final String COMMANDS = "Commands";
+	public static final String REQUESTS = "REST Requests";
+	public static final String RUNNING = "Running Paragraphs";
+
+	/** series, in the order of the samples */
+	public static final List<String> SERIES = Arrays.asList(PROCESS_CPU, SYSTEM_CPU, HEAP_USED, NON_HEAP_USED,
+			GC_TIME, THREADS, COMMANDS, REQUESTS, RUNNING);
+
+	private final SparkMonitoringRingBuffer[] buffers;
+	private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	// totals at the previous sample, for the values per interval
+	private long lastGcTime = -1;
+	private long lastCommands;
+	private long lastRequests;
+
+	/**
+	 * @param capacity
+	 *            number of samples kept
+	 */
+	public SparkMonitoringSystemSampler(int capacity) {
+		buffers = new SparkMonitoringRingBuffer[SERIES.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = new SparkMonitoringRingBuffer(capacity);
+		}
+	}
+
+	/**
+	 * Add a sample
+	 *
+	 * @param commands
+	 *            commands interpreted since the start
+	 * @param requests
+	 *            REST requests sent since the start
+	 * @param running
+	 *            paragraphs running now
+	 */
+	public synchronized void sample(long commands, long requests, int running) {
+		long time = System.currentTimeMillis();
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0L, gcBean.getCollectionTime());
+		}
+		double[] values = new double[SERIES.size()];
+		values[0] = getProcessCpuLoad();
+		values[1] = getSystemCpuLoad();
+		values[2] = memoryBean.getHeapMemoryUsage().getUsed();
+		values[3] = memoryBean.getNonHeapMemoryUsage().getUsed();
+		values[4] = lastGcTime >= 0 ? gcTime - lastGcTime : 0;
+		values[5] = threadBean.getThreadCount();
+		values[6] = commands - lastCommands;
+		values[7] = requests - lastRequests;
+		values[8] = running;
+		lastGcTime = gcTime;
+		lastCommands = commands;
+		lastRequests = requests;
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i].add(time, values[i]);
+		}
+	}
+
+	/**
+	 * @return cpu load of the process between 0 and 1, NaN if not available
+	 */
+	private double getProcessCpuLoad() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			double load = ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuLoad();
+			return load >= 0 ? load : Double.NaN;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * @return cpu load of the host between 0 and 1, the load average per
+	 *         processor if not available
+	 */
+	private double getSystemCpuLoad() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			double load = ((com.sun.management.OperatingSystemMXBean) osBean).getSystemCpuLoad();
+			if (load >= 0) {
+				return load;
+			}
+		}
+		double average = osBean.getSystemLoadAverage();
+		return average >= 0 ? average / osBean.getAvailableProcessors() : Double.NaN;
+	}
+
+	public synchronized int size() {
+		return buffers[0].size();
+	}
+
+	/**
+	 * @return last, average and max of a series
+	 */
+	public synchronized double[] getSummary(String series) {
+		SparkMonitoringRingBuffer buffer = buffers[SERIES.indexOf(series)];
+		return new double[] { buffer.getLast(), buffer.getAverage(), buffer.getMax() };
+	}
+
+	/**
+	 * @return Pearson correlation of two series over the window, NaN if one is
+	 *         constant or there are less than 3 samples
+	 */
+	public synchronized double getCorrelation(String series1, String series2) {
+		SparkMonitoringRingBuffer x = buffers[SERIES.indexOf(series1)];
+		SparkMonitoringRingBuffer y = buffers[SERIES.indexOf(series2)];
+		int n = x.size();
+		if (n < 3) {
+			return Double.NaN;
+		}
+		double meanX = x.getAverage();
+		double meanY = y.getAverage();
+		double covariance = 0;
+		double varianceX = 0;
+		double varianceY = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x.getValue(i) - meanX;
+			double dy = y.getValue(i) - meanY;
+			covariance += dx * dy;
+			varianceX += dx * dx;
+			varianceY += dy * dy;
+		}
+		if (varianceX == 0 || varianceY == 0) {
+			return Double.NaN;
+		}
+		return covariance / Math.sqrt(varianceX * varianceY);
+	}
+
+	/**
+	 * @return times and values of all series, one array per sample, oldest
+	 *         first: time then the values in the order of SERIES
+	 */
+	public synchronized List<double[]> getSamples() {
+		List<double[]> samples = new ArrayList<>();
+		for (int i = 0; i < buffers[0].size(); i++) {
+			double[] sample = new double[buffers.length + 1];
+			sample[0] = buffers[0].getTime(i);
+			for (int j = 0; j < buffers.length; j++) {
+				sample[j + 1] = buffers[j].getValue(i);
+			}
+			samples.add(sample);
+		}
+		return samples;
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of a TABLE result keyed by their first column (the id), to compute the
+ * rows changed between two polls of a /watch
+ */
+public class SparkMonitoringTableSnapshot {
+	public static final String CHANGE_NEW = "new";
+	public static final String CHANGE_UPDATED = "updated";
+	public static final String CHANGE_REMOVED = "removed";
+
+	private final String header;
+	private final List<String> columns;
+	private final Map<String, String> rows;
+
+	/**
+	 * @param table
+	 *            message of a TABLE result: header line then one line per row
+	 */
+	public SparkMonitoringTableSnapshot(String table) {
+		String[] lines = table.split("\n");
+		header = lines.length > 0 ? lines[0] : "";
+		columns = Arrays.asList(header.split("\t"));
+		rows = new LinkedHashMap<>();
+		for (int i = 1; i < lines.length; i++) {
+			if (!lines[i].isEmpty()) {
+				rows.put(getId(lines[i]), lines[i]);
+			}
+		}
+	}
+
+	private SparkMonitoringTableSnapshot(String header, List<String> columns, Map<String, String> rows) {
+		this.header = header;
+		this.columns = columns;
+		this.rows = rows;
+	}
+
+	private static String getId(String row) {
+		int tab = row.indexOf('\t');
+		return tab >= 0 ? row.substring(0, tab) : row;
+	}
+
+	public String getHeader() {
+		return header;
+	}
+
+	public Map<String, String> getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return value of a column of the row, null if no such row or column
+	 */
+	public String getValue(String id, String column) {
+		String row = rows.get(id);
+		int index = columns.indexOf(column);
+		if (row == null || index < 0) {
+			return null;
+		}
+		String[] values = row.split("\t");
+		return index < values.length ? values[index] : null;
+	}
+
+	/**
+	 * @return ids of the rows whose column has one of the values
+	 */
+	public List<String> getIds(String column, String... values) {
+		List<String> ids = new ArrayList<>();
+		List<String> lsValue = Arrays.asList(values);
+		for (String id : rows.keySet()) {
+			if (lsValue.contains(getValue(id, column))) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * New snapshot with the rows of a partial poll replacing or added to these rows
+	 */
+	public SparkMonitoringTableSnapshot merge(SparkMonitoringTableSnapshot partial) {
+		Map<String, String> merged = new LinkedHashMap<>(rows);
+		merged.putAll(partial.rows);
+		return new SparkMonitoringTableSnapshot(header, columns, merged);
+	}
+
+	/**
+	 * Rows changed since the previous snapshot, each prefixed by the change
+	 *
+	 * @param previous
+	 *            null for the first poll, then all rows are new
+	 */
+	public List<String> diff(SparkMonitoringTableSnapshot previous) {
+		List<String> changes = new ArrayList<>();
+		for (Map.Entry<String, String> row : rows.entrySet()) {
+			String previousRow = previous != null ? previous.rows.get(row.getKey()) : null;
+			if (previousRow == null) {
+				changes.add(CHANGE_NEW + "\t" + row.getValue());
+			} else if (!previousRow.equals(row.getValue())) {
+				changes.add(CHANGE_UPDATED + "\t" + row.getValue());
+			}
+		}
+		if (previous != null) {
+			for (Map.Entry<String, String> row : previous.rows.entrySet()) {
+				if (!rows.containsKey(row.getKey())) {
+					changes.add(CHANGE_REMOVED + "\t" + row.getValue());
+				}
+			}
+		}
+		return changes;
+	}
+
+}
@@ -0,0 +1,421 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Sampling profile built from the thread dumps of the executors: each
+ * sampled thread adds its stack, with the frames normalized to their method
+ * (no line numbers, no generated suffixes) so that the same code path of
+ * different tasks is one stack. Frames are interned to ids and identical
+ * stacks are counted once, the memory grows with the distinct code paths,
+ * not with the samples; the stacks over the maximum are only counted.
+ */
+public class SparkMonitoringThreadProfile {
+	/** frames kept from the root of a stack, the last one is the top of the stack when it is deeper */
+	public static final int MAX_DEPTH = 256;
+	public static final String RUNNABLE = "RUNNABLE";
+
+	// class loader and module of a frame (app//..., java.base@11.0.2/...) and its source location
+	private static final Pattern MODULE = Pattern.compile("^[\\w.@-]*/+");
+	private static final Pattern LOCATION = Pattern.compile("\\(.*\\)$");
+	// generated classes: lambdas, codegen stages, numbered anonymous classes
+	private static final Pattern LAMBDA = Pattern.compile("\\$\\$Lambda\\$[0-9]+(/(0x)?[0-9a-fA-F]+)?");
+	private static final Pattern CODEGEN = Pattern.compile("(GeneratedIteratorForCodegenStage|GeneratedClass\\$\\w*?)[0-9]+");
+	private static final Pattern ANONYMOUS = Pattern.compile("\\$[0-9]+");
+
+	/**
+	 * Filter of the sampled threads
+	 */
+	public interface ThreadFilter {
+		boolean accept(String threadName, String threadState);
+	}
+
+	/**
+	 * Method of the profile with its samples
+	 */
+	public static class Method {
+		private final String name;
+		private long selfSamples;
+		private long totalSamples;
+
+		Method(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+		/**
+		 * @return samples with the method on top of the stack
+		 */
+		public long getSelfSamples() {
+			return selfSamples;
+		}
+		/**
+		 * @return samples with the method anywhere in the stack
+		 */
+		public long getTotalSamples() {
+			return totalSamples;
+		}
+	}
+
+	/**
+	 * Node of the call tree, in depth-first order
+	 */
+	public static class TreeNode {
+		private final int depth;
+		private final String frame;
+		private final long samples;
+
+		TreeNode(int depth, String frame, long samples) {
+			this.depth = depth;
+			this.frame = frame;
+			this.samples = samples;
+		}
+
+		/**
+		 * @return 0 for the root frames (e.g. Thread.run)
+		 */
+		public int getDepth() {
+			return depth;
+		}
+		public String getFrame() {
+			return frame;
+		}
+		public long getSamples() {
+			return samples;
+		}
+	}
+
+	/**
+	 * Frame ids of a stack from its root, hashed once
+	 */
+	private static final class Stack {
+		private final int[] frames;
+		private final int hash;
+
+		Stack(int[] frames) {
+			this.frames = frames;
+			this.hash = Arrays.hashCode(frames);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Stack && hash == ((Stack) obj).hash && Arrays.equals(frames, ((Stack) obj).frames);
+		}
+	}
+
+	private static final class Node {
+		private final int frame;
+		private long samples;
+		private final Map<Integer, Node> children = new HashMap<>();
+
+		Node(int frame) {
+			this.frame = frame;
+		}
+	}
+
+	private final int maxStacks;
+	private final Map<String, Integer> frameIds = new HashMap<>();
+	private final List<String> frames = new ArrayList<>();
+	private final Map<Stack, long[]> stacks = new HashMap<>();
+	private long samples;
+	private long droppedSamples;
+	private int dumps;
+
+	/**
+	 * @param maxStacks
+	 *            maximum number of distinct stacks kept
+	 */
+	public SparkMonitoringThreadProfile(int maxStacks) {
+		this.maxStacks = maxStacks;
+	}
+
+	/**
+	 * Add the threads of a thread dump (/executors/&lt;executor_id&gt;/threads)
+	 * accepted by the filter
+	 *
+	 * @return number of threads sampled
+	 * @throws IllegalArgumentException
+	 *             if the dump is not valid json
+	 */
+	public int addThreadDump(String json, ThreadFilter filter) {
+		Object root = new SparkMonitoringMetric.JsonParser(json).parse();
+		if (!(root instanceof List)) {
+			return 0;
+		}
+		int sampled = 0;
+		for (Object thread : (List<?>) root) {
+			if (!(thread instanceof Map)) {
+				continue;
+			}
+			Map<?, ?> fields = (Map<?, ?>) thread;
+			Object name = fields.get("threadName");
+			Object state = fields.get("threadState");
+			if (!filter.accept(name instanceof String ? (String) name : "", state instanceof String ? (String) state
+					: "")) {
+				continue;
+			}
+			List<String> stackTrace = parseStackTrace(fields.get("stackTrace"));
+			if (!stackTrace.isEmpty()) {
+				addSample(stackTrace);
+				sampled++;
+			}
+		}
+		synchronized (this) {
+			dumps++;
+		}
+		return sampled;
+	}
+
+	/**
+	 * Frames of a dumped thread, top first: an object with the frames in
+	 * elems (Spark 3) or a text with a frame per line (Spark 2)
+	 */
+	private static List<String> parseStackTrace(Object stackTrace) {
+		List<String> lsFrame = new ArrayList<>();
+		Object elems = stackTrace instanceof Map ? ((Map<?, ?>) stackTrace).get("elems") : stackTrace;
+		if (elems instanceof List) {
+			for (Object elem : (List<?>) elems) {
+				if (elem instanceof String) {
+					lsFrame.add((String) elem);
+				}
+			}
+		} else if (elems instanceof String) {
+			for (String line : ((String) elems).split("\n")) {
+				if (!line.trim().isEmpty()) {
+					lsFrame.add(line);
+				}
+			}
+		}
+		return lsFrame;
+	}
+
+	/**
+	 * Add a sampled stack
+	 *
+	 * @param stackTrace
+	 *            frames, top first
+	 */
+	public synchronized void addSample(List<String> stackTrace) {
+		samples++;
+		// when full, an unknown frame is an unknown stack: no new frame is interned
+		boolean full = stacks.size() >= maxStacks;
+		int depth = Math.min(stackTrace.size(), MAX_DEPTH);
+		int[] ids = new int[depth];
+		for (int i = 0; i < depth; i++) {
+			String frame = stackTrace.get(i < depth - 1 || depth == stackTrace.size() ? stackTrace.size() - 1 - i : 0);
+			ids[i] = getFrameId(normalizeFrame(frame), full);
+			if (ids[i] < 0) {
+				droppedSamples++;
+				return;
+			}
+		}
+		Stack stack = new Stack(ids);
+		long[] count = stacks.get(stack);
+		if (count == null) {
+			if (full) {
+				droppedSamples++;
+				return;
+			}
+			count = new long[1];
+			stacks.put(stack, count);
+		}
+		count[0]++;
+	}
+
+	/**
+	 * @return id of the frame, -1 if it is unknown and not added
+	 */
+	private int getFrameId(String frame, boolean known) {
+		Integer id = frameIds.get(frame);
+		if (id == null) {
+			if (known) {
+				return -1;
+			}
+			id = frames.size();
+			frames.add(frame);
+			frameIds.put(frame, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Method of a frame: the module, source location and numbers of the
+	 * generated classes are removed, e.g.
+	 * java.base@11/java.lang.Thread.run(Thread.java:834) is
+	 * java.lang.Thread.run
+	 */
+	public static String normalizeFrame(String frame) {
+		String method = frame.trim();
+		if (method.startsWith("at ")) {
+			method = method.substring("at ".length());
+		}
+		method = LOCATION.matcher(method).replaceFirst("");
+		method = LAMBDA.matcher(method).replaceAll("\\$\\$Lambda");
+		method = MODULE.matcher(method).replaceFirst("");
+		method = CODEGEN.matcher(method).replaceAll("$1");
+		return ANONYMOUS.matcher(method).replaceAll("\\$");
+	}
+
+	/**
+	 * @return samples added, dropped ones included
+	 */
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return samples of the new stacks over the maximum, not in the profile
+	 */
+	public synchronized long getDroppedSamples() {
+		return droppedSamples;
+	}
+
+	/**
+	 * @return number of thread dumps added
+	 */
+	public synchronized int getDumps() {
+		return dumps;
+	}
+
+	/**
+	 * @return number of distinct stacks
+	 */
+	public synchronized int getStacks() {
+		return stacks.size();
+	}
+
+	/**
+	 * @return methods by self samples then total samples, largest first
+	 */
+	public synchronized List<Method> getMethods() {
+		Method[] methods = new Method[frames.size()];
+		// last stack which counted a method, a recursive method counts once per stack
+		int[] counted = new int[frames.size()];
+		Arrays.fill(counted, -1);
+		int stackIndex = 0;
+		for (Map.Entry<Stack, long[]> entry : stacks.entrySet()) {
+			int[] ids = entry.getKey().frames;
+			long count = entry.getValue()[0];
+			for (int i = 0; i < ids.length; i++) {
+				int id = ids[i];
+				if (methods[id] == null) {
+					methods[id] = new Method(frames.get(id));
+				}
+				if (counted[id] != stackIndex) {
+					counted[id] = stackIndex;
+					methods[id].totalSamples += count;
+				}
+				if (i == ids.length - 1) {
+					methods[id].selfSamples += count;
+				}
+			}
+			stackIndex++;
+		}
+		List<Method> lsMethod = new ArrayList<>();
+		for (Method method : methods) {
+			if (method != null) {
+				lsMethod.add(method);
+			}
+		}
+		Collections.sort(lsMethod, new Comparator<Method>() {
+			@Override
+			public int compare(Method o1, Method o2) {
+				int compare = Long.compare(o2.selfSamples, o1.selfSamples);
+				return compare != 0 ? compare : Long.compare(o2.totalSamples, o1.totalSamples);
+			}
+		});
+		return lsMethod;
+	}
+
+	/**
+	 * Call tree from the root frames, the children of a node by samples
+	 *
+	 * @param minSamples
+	 *            samples of the smallest node shown
+	 */
+	public synchronized List<TreeNode> getTree(long minSamples) {
+		Node root = new Node(-1);
+		for (Map.Entry<Stack, long[]> entry : stacks.entrySet()) {
+			long count = entry.getValue()[0];
+			Node node = root;
+			for (int id : entry.getKey().frames) {
+				Node child = node.children.get(id);
+				if (child == null) {
+					child = new Node(id);
+					node.children.put(id, child);
+				}
+				child.samples += count;
+				node = child;
+			}
+		}
+		List<TreeNode> lsNode = new ArrayList<>();
+		addNodes(lsNode, root, 0, minSamples);
+		return lsNode;
+	}
+
+	private void addNodes(List<TreeNode> lsNode, Node node, int depth, long minSamples) {
+		List<Node> children = new ArrayList<>(node.children.values());
+		Collections.sort(children, new Comparator<Node>() {
+			@Override
+			public int compare(Node o1, Node o2) {
+				return Long.compare(o2.samples, o1.samples);
+			}
+		});
+		for (Node child : children) {
+			if (child.samples < minSamples) {
+				break;
+			}
+			lsNode.add(new TreeNode(depth, frames.get(child.frame), child.samples));
+			addNodes(lsNode, child, depth + 1, minSamples);
+		}
+	}
+
+	/**
+	 * Collapsed stacks, the input of the flame graph tools: one line per
+	 * stack with its frames from the root separated by ; and its samples,
+	 * largest first
+	 */
+	public synchronized String toCollapsed() {
+		List<Map.Entry<Stack, long[]>> entries = new ArrayList<>(stacks.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Stack, long[]>>() {
+			@Override
+			public int compare(Map.Entry<Stack, long[]> o1, Map.Entry<Stack, long[]> o2) {
+				return Long.compare(o2.getValue()[0], o1.getValue()[0]);
+			}
+		});
+		Map<Integer, String> safeFrames = new HashMap<>();
+		StringBuilder collapsed = new StringBuilder();
+		for (Map.Entry<Stack, long[]> entry : entries) {
+			int[] ids = entry.getKey().frames;
+			for (int i = 0; i < ids.length; i++) {
+				String frame = safeFrames.get(ids[i]);
+				if (frame == null) {
+					// ; and spaces separate the frames and the count
+					frame = frames.get(ids[i]).replace(';', ':').replace(' ', '_');
+					safeFrames.put(ids[i], frame);
+				}
+				if (i > 0) {
+					collapsed.append(';');
+				}
+				collapsed.append(frame);
+			}
+			collapsed.append(' ').append(entry.getValue()[0]).append('\n');
+		}
+		return collapsed.toString();
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prefix trie of words for autocompletion.
+ * Children are kept in sorted arrays so suggestions come in alphabetical order
+ * and a node costs two small arrays instead of a map.
+ */
+public class SparkMonitoringTrie {
+	private static final char[] NO_KEYS = new char[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+	// estimated size of a node, its two arrays and its slots in the arrays of its parent
+	private static final int NODE_BYTES = 72;
+
+	private static class Node {
+		private char[] keys = NO_KEYS;
+		private Node[] children = NO_CHILDREN;
+		private boolean word;
+
+		private Node child(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			return i >= 0 ? children[i] : null;
+		}
+
+		private Node addChild(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			if (i >= 0) {
+				return children[i];
+			}
+			int insert = -i - 1;
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, insert);
+			System.arraycopy(children, 0, newChildren, 0, insert);
+			newKeys[insert] = c;
+			newChildren[insert] = new Node();
+			System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+			System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+			keys = newKeys;
+			children = newChildren;
+			return newChildren[insert];
+		}
+	}
+
+	private final Node root = new Node();
+	private int size;
+	private int nodes = 1;
+
+	public synchronized void add(String word) {
+		if (word == null || word.isEmpty()) {
+			return;
+		}
+		Node node = root;
+		for (int i = 0; i < word.length(); i++) {
+			if (node.child(word.charAt(i)) == null) {
+				nodes++;
+			}
+			node = node.addChild(word.charAt(i));
+		}
+		if (!node.word) {
+			node.word = true;
+			size++;
+		}
+	}
+
+	public synchronized void remove(String word) {
+		Node node = find(word);
+		if (node != null && node.word) {
+			// nodes are not pruned, they are reused when the word comes back
+			node.word = false;
+			size--;
+		}
+	}
+
+	public synchronized boolean contains(String word) {
+		Node node = find(word);
+		return node != null && node.word;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return estimated heap size of the trie, removed words included
+	 */
+	public synchronized long estimateBytes() {
+		return (long) NODE_BYTES * nodes;
+	}
+
+	/**
+	 * @param prefix
+	 * @param limit
+	 *            maximum number of suggestions
+	 * @return words starting with prefix, in alphabetical order
+	 */
+	public synchronized List<String> complete(String prefix, int limit) {
+		List<String> suggestions = new ArrayList<>();
+		Node node = find(prefix == null ? "" : prefix);
+		if (node != null) {
+			collect(node, new StringBuilder(prefix == null ? "" : prefix), suggestions, limit);
+		}
+		return suggestions;
+	}
+
+	private Node find(String prefix) {
+		Node node = root;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = node.child(prefix.charAt(i));
+		}
+		return node;
+	}
+
+	private void collect(Node node, StringBuilder word, List<String> suggestions, int limit) {
+		if (suggestions.size() >= limit) {
+			return;
+		}
+		if (node.word) {
+			suggestions.add(word.toString());
+		}
+		for (int i = 0; i < node.keys.length && suggestions.size() < limit; i++) {
+			word.append(node.keys[i]);
+			collect(node.children[i], word, suggestions, limit);
+			word.setLength(word.length() - 1);
+		}
+	}
+
+}
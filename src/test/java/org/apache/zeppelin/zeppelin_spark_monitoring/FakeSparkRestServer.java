@@ -0,0 +1,702 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded fake of the Spark REST api (/api/v1) for offline tests and load runs.
+ * Responses are either replayed from recorded fixtures or generated from the
+ * configured application/job/stage/task counts, in the pretty printed layout
+ * (one field per line) the Spark driver and History Server produce.
+ * The metrics servlet (/metrics/json) answers on one line, as the driver does.
+ */
+public class FakeSparkRestServer {
+
+	public static final String API_ROOT = "/api/v1";
+	public static final String METRICS_PATH = "/metrics/json";
+	public static final String FIXTURE_ROOT = "fixtures";
+
+	private static final String SOURCE_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'GMT'";
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private final Map<String, String> fixtures = new ConcurrentHashMap<>();
+	private final AtomicLong requestCount = new AtomicLong();
+	// requests being served, and the most served at once
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	// query string of the last request, null if none
+	private volatile String lastQuery;
+
+	private int numApplications = 1;
+	private int numJobs = 10;
+	private int stagesPerJob = 2;
+	private int tasksPerStage = 100;
+	private int numExecutors = 4;
+	private int failedTasksEvery = 0;
+	private long latencyMillis = 0;
+	private long baseTimeMillis = 1460363423556L;
+	private String detailsText = "org.apache.spark.rdd.RDD.collect(RDD.scala:926)";
+	private int serverThreads = 8;
+
+	/**
+	 * Start listening on an ephemeral port of the loopback interface
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext(API_ROOT, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		server.createContext(METRICS_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requestCount.incrementAndGet();
+				try {
+					String body = fixtures.get(METRICS_PATH);
+					respond(exchange, body != null ? body : metrics());
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newFixedThreadPool(serverThreads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	public String getHost() {
+		return "localhost";
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public String getLastQuery() {
+		return lastQuery;
+	}
+
+	/**
+	 * @return the most REST api requests served at once
+	 */
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests.get();
+	}
+
+	/**
+	 * Replay body for a REST path relative to /api/v1, e.g. "/applications"
+	 */
+	public void addFixture(String path, String body) {
+		fixtures.put(normalize(path), body);
+	}
+
+	/**
+	 * Load a recorded fixture from the test classpath, e.g.
+	 * fixtures/applications.json is served for "/applications"
+	 */
+	public void loadFixture(String path) throws IOException {
+		String resource = FIXTURE_ROOT + normalize(path) + ".json";
+		InputStream in = getClass().getClassLoader().getResourceAsStream(resource);
+		if (in == null) {
+			throw new IOException("Fixture not found: " + resource);
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			addFixture(path, out.toString("UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	private String normalize(String path) {
+		String normalized = path.trim();
+		while (normalized.endsWith("/") && normalized.length() > 1) {
+			normalized = normalized.substring(0, normalized.length() - 1);
+		}
+		return normalized.startsWith("/") ? normalized : "/" + normalized;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		lastQuery = exchange.getRequestURI().getQuery();
+		int concurrent = concurrentRequests.incrementAndGet();
+		int max;
+		while (concurrent > (max = maxConcurrentRequests.get())
+				&& !maxConcurrentRequests.compareAndSet(max, concurrent)) {
+			// retry
+		}
+		try {
+			if (latencyMillis > 0) {
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			String path = normalize(exchange.getRequestURI().getPath().substring(API_ROOT.length()));
+			String body = fixtures.get(path);
+			if (body == null) {
+				String query = exchange.getRequestURI().getQuery();
+				body = generate(path, getStatusFilter(query), query != null && query.contains("details=true"));
+			}
+			respond(exchange, body);
+		} finally {
+			concurrentRequests.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	private void respond(HttpExchange exchange, String body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	private String getStatusFilter(String query) {
+		if (query == null) {
+			return null;
+		}
+		for (String param : query.split("&")) {
+			if (param.startsWith("status=")) {
+				return param.substring("status=".length()).toUpperCase();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Synthetic response for the given path, null when the path is unknown
+	 *
+	 * @param status
+	 *            status filter of the jobs and stages lists, null for all
+	 */
+	String generate(String path, String status) {
+		return generate(path, status, false);
+	}
+
+	/**
+	 * @param details
+	 *            stages listed with their tasks
+	 */
+	String generate(String path, String status, boolean details) {
+		String[] items = StringUtils.split(path, "/");
+		if (items.length == 0 || !"applications".equals(items[0])) {
+			return null;
+		}
+		if (items.length == 1) {
+			return applications();
+		}
+		int appIndex = applicationIndex(items[1]);
+		if (appIndex < 0) {
+			return null;
+		}
+		if (items.length == 2) {
+			return "[ " + application(appIndex) + " ]";
+		}
+		String object = items[2];
+		if ("jobs".equals(object)) {
+			if (items.length == 3) {
+				return jobs(status);
+			}
+			int jobId = parseId(items[3]);
+			return jobId >= 0 && jobId < numJobs ? job(jobId) : null;
+		} else if ("stages".equals(object)) {
+			if (items.length == 3) {
+				return stages(status, details);
+			}
+			int stageId = parseId(items[3]);
+			if (stageId < 0 || stageId >= numJobs * stagesPerJob) {
+				return null;
+			}
+			if (items.length >= 5 && "taskList".equals(items[items.length - 1])) {
+				return tasks(stageId, status);
+			}
+			return "[ " + stage(stageId) + " ]";
+		} else if ("executors".equals(object) || "allexecutors".equals(object)) {
+			if (items.length == 5 && "threads".equals(items[4])) {
+				return threads(items[3]);
+			}
+			return executors("allexecutors".equals(object));
+		} else if ("storage".equals(object)) {
+			return "[ ]";
+		}
+		return null;
+	}
+
+	private int applicationIndex(String appId) {
+		for (int i = 0; i < numApplications; i++) {
+			if (applicationId(i).equals(appId)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int parseId(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public String applicationId(int index) {
+		return String.format("app-20160411083023-%04d", index);
+	}
+
+	private String formatDate(long millis) {
+		SimpleDateFormat dateFm = new SimpleDateFormat(SOURCE_DATE_FORMAT, Locale.US);
+		dateFm.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return dateFm.format(new Date(millis));
+	}
+
+	private String applications() {
+		StringBuilder json = new StringBuilder("[ ");
+		for (int i = 0; i < numApplications; i++) {
+			if (i > 0) {
+				json.append(", ");
+			}
+			json.append(application(i));
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String application(int index) {
+		// the first application is still running, the others are completed
+		boolean completed = index > 0;
+		long start = baseTimeMillis - index * 3600000L;
+		long end = completed ? start + 1800000L : -1L;
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"id\" : \"").append(applicationId(index)).append("\",\n");
+		json.append("  \"name\" : \"Synthetic application ").append(index).append("\",\n");
+		json.append("  \"attempts\" : [ {\n");
+		json.append("    \"startTime\" : \"").append(formatDate(start)).append("\",\n");
+		json.append("    \"endTime\" : \"").append(formatDate(end)).append("\",\n");
+		json.append("    \"sparkUser\" : \"zeppelin\",\n");
+		json.append("    \"completed\" : ").append(completed).append("\n");
+		json.append("  } ]\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	private String jobs(String status) {
+		StringBuilder json = new StringBuilder("[ ");
+		// Spark lists the latest job first
+		for (int jobId = numJobs - 1; jobId >= 0; jobId--) {
+			String job = job(jobId);
+			if (status != null && !job.contains("\"status\" : \"" + status + "\"")) {
+				continue;
+			}
+			if (json.length() > 2) {
+				json.append(", ");
+			}
+			json.append(job);
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String job(int jobId) {
+		boolean running = jobId == numJobs - 1;
+		int numTasks = stagesPerJob * tasksPerStage;
+		int numFailed = failedTasksEvery > 0 ? numTasks / failedTasksEvery : 0;
+		long submission = baseTimeMillis + jobId * 60000L;
+		StringBuilder stageIds = new StringBuilder("[ ");
+		for (int s = 0; s < stagesPerJob; s++) {
+			if (s > 0) {
+				stageIds.append(", ");
+			}
+			stageIds.append(jobId * stagesPerJob + s);
+		}
+		stageIds.append(" ]");
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"jobId\" : ").append(jobId).append(",\n");
+		json.append("  \"name\" : \"collect at <console>:").append(20 + jobId % 7).append("\",\n");
+		json.append("  \"description\" : \"query ").append(jobId % 5).append("\",\n");
+		json.append("  \"submissionTime\" : \"").append(formatDate(submission)).append("\",\n");
+		if (!running) {
+			json.append("  \"completionTime\" : \"").append(formatDate(submission + 1000L + jobId % 13 * 250L))
+					.append("\",\n");
+		}
+		json.append("  \"stageIds\" : ").append(stageIds).append(",\n");
+		json.append("  \"status\" : \"").append(running ? "RUNNING" : "SUCCEEDED").append("\",\n");
+		json.append("  \"numTasks\" : ").append(numTasks).append(",\n");
+		json.append("  \"numActiveTasks\" : ").append(running ? tasksPerStage / 2 : 0).append(",\n");
+		json.append("  \"numCompletedTasks\" : ").append(running ? numTasks / 2 : numTasks - numFailed).append(",\n");
+		json.append("  \"numSkippedTasks\" : 0,\n");
+		json.append("  \"numFailedTasks\" : ").append(numFailed).append(",\n");
+		json.append("  \"numActiveStages\" : ").append(running ? 1 : 0).append(",\n");
+		json.append("  \"numCompletedStages\" : ").append(running ? stagesPerJob - 1 : stagesPerJob).append(",\n");
+		json.append("  \"numSkippedStages\" : 0,\n");
+		json.append("  \"numFailedStages\" : 0\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	private String stages(String status, boolean details) {
+		StringBuilder json = new StringBuilder("[ ");
+		int numStages = numJobs * stagesPerJob;
+		for (int stageId = numStages - 1; stageId >= 0; stageId--) {
+			String stage = stage(stageId);
+			if (status != null && !stage.contains("\"status\" : \"" + status + "\"")) {
+				continue;
+			}
+			if (details) {
+				StringBuilder tasks = new StringBuilder();
+				for (int taskId = 0; taskId < tasksPerStage; taskId++) {
+					tasks.append(taskId > 0 ? ", " : "").append("\"").append(stageId * tasksPerStage + taskId)
+							.append("\" : ").append(task(stageId, taskId));
+				}
+				stage = stage.substring(0, stage.length() - "\n}".length()) + ",\n  \"tasks\" : { " + tasks + " }\n}";
+			}
+			if (json.length() > 2) {
+				json.append(", ");
+			}
+			json.append(stage);
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String stage(int stageId) {
+		int jobId = stageId / stagesPerJob;
+		boolean active = isActiveStage(stageId);
+		int numFailed = failedTasksEvery > 0 ? tasksPerStage / failedTasksEvery : 0;
+		long submission = baseTimeMillis + jobId * 60000L + stageId % stagesPerJob * 400L;
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"status\" : \"").append(active ? "ACTIVE" : "COMPLETE").append("\",\n");
+		json.append("  \"stageId\" : ").append(stageId).append(",\n");
+		json.append("  \"attemptId\" : 0,\n");
+		json.append("  \"numActiveTasks\" : ").append(active ? tasksPerStage / 2 : 0).append(",\n");
+		json.append("  \"numCompleteTasks\" : ").append(active ? tasksPerStage / 2 : tasksPerStage - numFailed)
+				.append(",\n");
+		json.append("  \"numFailedTasks\" : ").append(numFailed).append(",\n");
+		json.append("  \"executorRunTime\" : ").append(tasksPerStage * 35L).append(",\n");
+		json.append("  \"submissionTime\" : \"").append(formatDate(submission)).append("\",\n");
+		json.append("  \"firstTaskLaunchedTime\" : \"").append(formatDate(submission + 15L)).append("\",\n");
+		if (!active) {
+			json.append("  \"completionTime\" : \"").append(formatDate(submission + 350L)).append("\",\n");
+		}
+		json.append("  \"inputBytes\" : ").append(tasksPerStage * 1048576L).append(",\n");
+		json.append("  \"inputRecords\" : ").append(tasksPerStage * 1000L).append(",\n");
+		json.append("  \"outputBytes\" : 0,\n");
+		json.append("  \"outputRecords\" : 0,\n");
+		json.append("  \"shuffleReadBytes\" : ").append(tasksPerStage * 4096L).append(",\n");
+		json.append("  \"shuffleReadRecords\" : ").append(tasksPerStage * 10L).append(",\n");
+		json.append("  \"shuffleWriteBytes\" : ").append(tasksPerStage * 4096L).append(",\n");
+		json.append("  \"shuffleWriteRecords\" : ").append(tasksPerStage * 10L).append(",\n");
+		json.append("  \"memoryBytesSpilled\" : 0,\n");
+		json.append("  \"diskBytesSpilled\" : 0,\n");
+		json.append("  \"name\" : \"map at <console>:").append(20 + stageId % 7).append("\",\n");
+		json.append("  \"details\" : \"").append(detailsText).append("\",\n");
+		json.append("  \"schedulingPool\" : \"default\",\n");
+		json.append("  \"accumulatorUpdates\" : [ ]\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	private boolean isActiveStage(int stageId) {
+		return stageId / stagesPerJob == numJobs - 1 && stageId % stagesPerJob == stagesPerJob - 1;
+	}
+
+	private String tasks(int stageId, String status) {
+		StringBuilder json = new StringBuilder("[ ");
+		for (int taskId = 0; taskId < tasksPerStage; taskId++) {
+			String task = task(stageId, taskId);
+			if (status != null && !task.contains("\"status\" : \"" + status + "\"")) {
+				continue;
+			}
+			if (json.length() > 2) {
+				json.append(", ");
+			}
+			json.append(task);
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String task(int stageId, int taskId) {
+		// the second half of the tasks of the active stage is running
+		boolean active = isActiveStage(stageId);
+		long launch = baseTimeMillis + stageId / stagesPerJob * 60000L + stageId % stagesPerJob * 400L + 15L;
+		int executorId = taskId % numExecutors + 1;
+		boolean failed = failedTasksEvery > 0 && taskId % failedTasksEvery == 0;
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"taskId\" : ").append(stageId * tasksPerStage + taskId).append(",\n");
+		json.append("  \"index\" : ").append(taskId).append(",\n");
+		json.append("  \"attempt\" : 0,\n");
+		json.append("  \"launchTime\" : \"").append(formatDate(launch + taskId % 10 * 5L)).append("\",\n");
+		json.append("  \"duration\" : ").append(30 + taskId % 10).append(",\n");
+		json.append("  \"executorId\" : \"").append(executorId).append("\",\n");
+		json.append("  \"host\" : \"worker-").append(executorId).append(".local\",\n");
+		json.append("  \"status\" : \"").append(active && taskId >= tasksPerStage / 2 ? "RUNNING"
+				: failed ? "FAILED" : "SUCCESS").append("\",\n");
+		json.append("  \"taskLocality\" : \"").append(taskId % 3 == 0 ? "NODE_LOCAL" : "PROCESS_LOCAL")
+				.append("\",\n");
+		json.append("  \"speculative\" : false,\n");
+		if (failed && taskId % 20 == 0) {
+			// a fetch failure with its stack trace, escaped as in the json of the server
+			json.append("  \"errorMessage\" : \"FetchFailed(BlockManagerId(").append(executorId)
+					.append(", worker-").append(executorId).append(".local, 7337, None), shuffleId=").append(stageId)
+					.append(", mapId=").append(taskId).append(")\\norg.apache.spark.shuffle.FetchFailedException: ")
+					.append("Failed to connect to worker-").append(executorId).append(".local:7337")
+					.append("\\n\\tat org.apache.spark.storage.ShuffleBlockFetcherIterator.throwFetchFailedException(")
+					.append("ShuffleBlockFetcherIterator.scala:").append(520 + stageId % 3).append(")")
+					.append("\\nCaused by: java.io.IOException: Failed to connect to worker-").append(executorId)
+					.append(".local/10.0.0.").append(executorId).append(":7337\",\n");
+		} else if (failed) {
+			json.append("  \"errorMessage\" : \"java.io.IOException: Connection to worker-").append(executorId)
+					.append(".local/10.0.0.").append(executorId).append(":7337 closed\",\n");
+		}
+		json.append("  \"accumulatorUpdates\" : [ ]\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	/**
+	 * Thread dump of an executor: a task thread per running task of the
+	 * active stage, with two code paths, and an idle and a runnable thread
+	 */
+	private String threads(String executorId) {
+		StringBuilder json = new StringBuilder("[ ");
+		json.append(thread(1, "dispatcher-event-loop-0", "WAITING", "java.base@11.0.2/jdk.internal.misc.Unsafe.park(Native Method)",
+				"java.util.concurrent.LinkedBlockingQueue.take(LinkedBlockingQueue.java:433)",
+				"java.lang.Thread.run(Thread.java:834)"));
+		json.append(", ").append(thread(2, "shuffle-server-3-1", "RUNNABLE",
+				"java.base@11.0.2/sun.nio.ch.EPoll.wait(Native Method)",
+				"io.netty.channel.nio.NioEventLoop.run(NioEventLoop.java:" + (400 + executorId.length()) + ")",
+				"java.lang.Thread.run(Thread.java:834)"));
+		int stageId = numJobs * stagesPerJob - 1;
+		for (int taskId = tasksPerStage / 2; isActiveStage(stageId) && taskId < tasksPerStage; taskId++) {
+			if (!String.valueOf(taskId % numExecutors + 1).equals(executorId)) {
+				continue;
+			}
+			int tid = stageId * tasksPerStage + taskId;
+			String name = "Executor task launch worker for task " + taskId + ".0 in stage " + stageId + ".0 (TID "
+					+ tid + ")";
+			String top = taskId % 2 == 0
+					? "org.apache.spark.util.collection.ExternalSorter.insertAll(ExternalSorter.scala:" + (190 + taskId % 3) + ")"
+					: "org.apache.spark.sql.catalyst.expressions.GeneratedClass$GeneratedIteratorForCodegenStage"
+							+ (1 + taskId % 3) + ".processNext(Unknown Source)";
+			json.append(", ").append(thread(100 + taskId, name, "RUNNABLE", top,
+					"org.apache.spark.scheduler.ShuffleMapTask.runTask(ShuffleMapTask.scala:99)",
+					"org.apache.spark.executor.Executor$TaskRunner$$Lambda$" + (1000 + taskId) + "/0x0000000840a1b040.apply(Unknown Source)",
+					"org.apache.spark.executor.Executor$TaskRunner.run(Executor.scala:446)",
+					"java.lang.Thread.run(Thread.java:834)"));
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String thread(int threadId, String name, String state, String... frames) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"threadId\" : ").append(threadId).append(",\n");
+		json.append("  \"threadName\" : \"").append(name).append("\",\n");
+		json.append("  \"threadState\" : \"").append(state).append("\",\n");
+		json.append("  \"stackTrace\" : {\n    \"elems\" : [ ");
+		for (int i = 0; i < frames.length; i++) {
+			json.append(i > 0 ? ", " : "").append("\"").append(frames[i]).append("\"");
+		}
+		json.append(" ]\n  },\n");
+		json.append("  \"holdingLocks\" : [ ]\n");
+		json.append("}");
+		return json.toString();
+	}
+
+	/**
+	 * @param all
+	 *            with an executor removed after the first minute
+	 */
+	private String executors(boolean all) {
+		StringBuilder json = new StringBuilder("[ ");
+		for (int i = 0; i <= numExecutors + (all ? 1 : 0); i++) {
+			String id = i == 0 ? "driver" : String.valueOf(i);
+			boolean removed = i > numExecutors;
+			if (i > 0) {
+				json.append(", ");
+			}
+			json.append("{\n");
+			json.append("  \"id\" : \"").append(id).append("\",\n");
+			json.append("  \"hostPort\" : \"worker-").append(i).append(".local:").append(40000 + i).append("\",\n");
+			json.append("  \"isActive\" : ").append(!removed).append(",\n");
+			json.append("  \"addTime\" : \"").append(formatDate(baseTimeMillis)).append("\",\n");
+			if (removed) {
+				json.append("  \"removeTime\" : \"").append(formatDate(baseTimeMillis + 60000L)).append("\",\n");
+			}
+			json.append("  \"rddBlocks\" : 0,\n");
+			json.append("  \"memoryUsed\" : ").append(i * 1048576L).append(",\n");
+			json.append("  \"diskUsed\" : 0,\n");
+			json.append("  \"totalCores\" : ").append(i == 0 ? 0 : 4).append(",\n");
+			json.append("  \"maxTasks\" : ").append(i == 0 ? 0 : 4).append(",\n");
+			json.append("  \"activeTasks\" : 0,\n");
+			json.append("  \"failedTasks\" : 0,\n");
+			json.append("  \"completedTasks\" : ").append(i == 0 ? 0 : numJobs * stagesPerJob * tasksPerStage
+					/ numExecutors).append(",\n");
+			json.append("  \"totalTasks\" : ").append(i == 0 ? 0 : numJobs * stagesPerJob * tasksPerStage
+					/ numExecutors).append(",\n");
+			json.append("  \"totalDuration\" : ").append(i * 120000L).append(",\n");
+			json.append("  \"totalGCTime\" : ").append(i * 3000L).append(",\n");
+			json.append("  \"totalInputBytes\" : 0,\n");
+			json.append("  \"totalShuffleRead\" : 0,\n");
+			json.append("  \"totalShuffleWrite\" : 0,\n");
+			json.append("  \"maxMemory\" : 555755765,\n");
+			json.append("  \"executorLogs\" : { }\n");
+			json.append("}");
+		}
+		return json.append(" ]").toString();
+	}
+
+	private String metrics() {
+		String driver = applicationId(0) + ".driver.";
+		StringBuilder json = new StringBuilder("{\"version\":\"3.0.0\",\"gauges\":{");
+		json.append("\"").append(driver).append("BlockManager.memory.memUsed_MB\":{\"value\":").append(numJobs)
+				.append("},");
+		json.append("\"").append(driver).append("DAGScheduler.stage.runningStages\":{\"value\":1},");
+		json.append("\"").append(driver).append("LiveListenerBus.queue.appStatus.size\":{\"value\":")
+				.append(numJobs * stagesPerJob).append("},");
+		json.append("\"").append(driver).append("ExecutorMetrics.ProcessTreeList\":{\"value\":[1,2]}");
+		json.append("},\"counters\":{");
+		json.append("\"").append(driver).append("LiveListenerBus.numEventsPosted\":{\"count\":")
+				.append(requestCount.get()).append("}");
+		json.append("},\"histograms\":{},\"meters\":{},\"timers\":{");
+		json.append("\"").append(driver).append("LiveListenerBus.listenerProcessingTime.appStatus\":{\"count\":")
+				.append(numJobs).append(",\"max\":12.5,\"mean\":0.75,\"min\":0.1,\"p99\":9.0,")
+				.append("\"duration_units\":\"milliseconds\",\"rate_units\":\"calls/second\"}");
+		return json.append("}}").toString();
+	}
+
+	public int getNumApplications() {
+		return numApplications;
+	}
+	public void setNumApplications(int numApplications) {
+		this.numApplications = numApplications;
+	}
+	public int getNumJobs() {
+		return numJobs;
+	}
+	public void setNumJobs(int numJobs) {
+		this.numJobs = numJobs;
+	}
+	public int getStagesPerJob() {
+		return stagesPerJob;
+	}
+	public void setStagesPerJob(int stagesPerJob) {
+		this.stagesPerJob = stagesPerJob;
+	}
+	public int getTasksPerStage() {
+		return tasksPerStage;
+	}
+	public void setTasksPerStage(int tasksPerStage) {
+		this.tasksPerStage = tasksPerStage;
+	}
+	public int getNumExecutors() {
+		return numExecutors;
+	}
+	public void setNumExecutors(int numExecutors) {
+		this.numExecutors = numExecutors;
+	}
+	public int getFailedTasksEvery() {
+		return failedTasksEvery;
+	}
+	/**
+	 * Make every n-th task of each stage fail, 0 disables failures
+	 */
+	public void setFailedTasksEvery(int failedTasksEvery) {
+		this.failedTasksEvery = failedTasksEvery;
+	}
+	public long getLatencyMillis() {
+		return latencyMillis;
+	}
+	/**
+	 * Latency injected before every response
+	 */
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+	public long getBaseTimeMillis() {
+		return baseTimeMillis;
+	}
+	public void setBaseTimeMillis(long baseTimeMillis) {
+		this.baseTimeMillis = baseTimeMillis;
+	}
+	public String getDetailsText() {
+		return detailsText;
+	}
+	public void setDetailsText(String detailsText) {
+		this.detailsText = detailsText;
+	}
+	public int getServerThreads() {
+		return serverThreads;
+	}
+	public void setServerThreads(int serverThreads) {
+		this.serverThreads = serverThreads;
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import junit.framework.TestCase;
+
+/**
+ * Normalization and counting of the failed task signatures
+ */
+public class SparkMonitoringFailureSignaturesTest extends TestCase {
+
+	// a uuid of the counter, the same for every run
+	private static String uuid(int i) {
+		return String.format("%08x-0000-4000-8000-%012x", i, (long) i * 7919);
+	}
+
+	public void testNormalize() {
+		assertEquals("java.io.IOException: Connection to <host> closed", SparkMonitoringFailureSignatures
+				.normalize("java.io.IOException: Connection to worker-3.local/10.0.0.3:7337 closed"));
+		assertEquals("java.io.IOException: Failed to connect to <host>"
+				+ " | org.apache.spark.network.client.TransportClientFactory.createClient",
+				SparkMonitoringFailureSignatures.normalize("java.io.IOException: Failed to connect to worker-1:7337"
+						+ "\n\tat org.apache.spark.network.client.TransportClientFactory.createClient("
+						+ "TransportClientFactory.java:245)"));
+	}
+
+	public void testSignaturesOverTheMaximum() {
+		SparkMonitoringFailureSignatures signatures = new SparkMonitoringFailureSignatures(1);
+		for (int i = 0; i < 100000; i++) {
+			signatures.add("java.lang.IllegalStateException: task " + i + " of " + uuid(i)
+					+ " on 0x" + Integer.toHexString(i), "1", "1", (long) i);
+		}
+		signatures.add("java.lang.OutOfMemoryError: Java heap space", "2", "2", null);
+		signatures.add("java.lang.ArithmeticException: / by zero", "2", "2", null);
+		// the signatures over the maximum are counted together
+		assertEquals(2, signatures.getSignatures().size());
+		assertEquals("java.lang.IllegalStateException: task # of <uuid> on <hex>",
+				signatures.getSignatures().get(0).getText());
+		assertEquals(Long.valueOf(0), signatures.getSignatures().get(0).getFirstSeen());
+		assertEquals(Long.valueOf(99999), signatures.getSignatures().get(0).getLastSeen());
+		assertEquals(SparkMonitoringFailureSignatures.OTHER_SIGNATURES, signatures.getSignatures().get(1).getText());
+		assertEquals(2, signatures.getSignatures().get(1).getCount());
+		assertEquals(100002, signatures.getFailures());
+	}
+
+}
@@ -0,0 +1,919 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.zeppelin.interpreter.InterpreterResult;
+
+import junit.framework.TestCase;
+
+/**
+ * Interpreter tests against the embedded FakeSparkRestServer
+ */
+public class SparkMonitoringInterpreterTest extends TestCase {
+
+	private FakeSparkRestServer server;
+	private SparkMonitoringInterpreter interpreter;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new FakeSparkRestServer();
+		server.setNumJobs(20);
+		server.start();
+		interpreter = new SparkMonitoringInterpreter(SparkMonitoringLoadHarness.connectionProperties(server));
+		interpreter.open();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		interpreter.close();
+		server.stop();
+	}
+
+	private int countRows(InterpreterResult result) {
+		// header line excluded
+		return result.message().trim().split("\n").length - 1;
+	}
+
+	private int countLines(InterpreterResult result, String start) {
+		int count = 0;
+		for (String line : result.message().split("\n")) {
+			if (line.startsWith(start)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// both watches of testAdaptivePolling polled twice, only the busy one at its minimum interval
+	private boolean isPollingSettled(InterpreterResult polling) {
+		String[] rows = polling.message().trim().split("\n");
+		int settled = 0;
+		// header line excluded
+		for (int i = 1; i < rows.length; i++) {
+			String[] columns = rows[i].split("\t");
+			if (Integer.parseInt(columns[6]) >= 2 && "/jobs".equals(columns[0]) == "0.1s".equals(columns[1])) {
+				settled++;
+			}
+		}
+		return settled == 2;
+	}
+
+	public void testApplications() {
+		InterpreterResult result = interpreter.interpret("/applications", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(InterpreterResult.Type.TABLE, result.type());
+		assertTrue(result.message().contains(server.applicationId(0)));
+	}
+
+	public void testJobs() {
+		InterpreterResult result = interpreter.interpret("/jobs", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(20, countRows(result));
+	}
+
+	public void testStages() {
+		InterpreterResult result = interpreter.interpret("/stages", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(20 * server.getStagesPerJob(), countRows(result));
+	}
+
+	public void testStageDetails() {
+		server.setDetailsText("org.apache.spark.rdd.RDD.count(RDD.scala:1157)\\n$line14.$read.<init>(<console>:26)"
+				+ "\\n\\tspark.read.csv(\\\"in/a,b.csv\\\")");
+		InterpreterResult result = interpreter.interpret("/stages", null);
+		assertTrue(result.message().contains("org.apache.spark.rdd.RDD.count(RDD.scala:1157)..."));
+		assertFalse(result.message().contains("$line14"));
+
+		result = interpreter.interpret("/stages/3/details", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertTrue(result.message().startsWith("Stage 3 attempt 0"));
+		// the text the driver sent, its commas and quotes kept
+		assertTrue(result.message(), result.message().contains(
+				"RDD.scala:1157)\n$line14.$read.<init>(<console>:26)\n\tspark.read.csv(\"in/a,b.csv\")\n"));
+
+		// names and statuses repeat in every response, they are shared
+		interpreter.interpret("/stages", null);
+		result = interpreter.interpret("/memory", null);
+		String[] pool = result.message().split("\n")[1].split("\t");
+		assertEquals("string pool", pool[0]);
+		assertTrue(Integer.parseInt(pool[1]) < 20 * server.getStagesPerJob() * 5);
+		String[] details = result.message().split("\n")[2].split("\t");
+		assertEquals(String.valueOf(2 * 20 * server.getStagesPerJob()), details[1]);
+	}
+
+	private String streamingBatch(int batchId, String time, String status, long processingTime) {
+		return "{\n  \"batchId\" : " + batchId + ",\n  \"batchTime\" : \"2016-04-11T08:31:" + time + ".000GMT\",\n"
+				+ "  \"status\" : \"" + status + "\",\n  \"batchDuration\" : 2000,\n  \"inputSize\" : 1000,\n"
+				+ "  \"schedulingDelay\" : 5,\n"
+				+ (processingTime >= 0 ? "  \"processingTime\" : " + processingTime + ",\n" : "")
+				+ "  \"numFailedOutputOps\" : 0\n}";
+	}
+
+	public void testStreaming() {
+		String streamingUrl = "/applications/" + server.applicationId(0) + "/streaming";
+		server.addFixture(streamingUrl + "/statistics", "{\n  \"batchDuration\" : 2000,\n  \"numReceivers\" : 1,\n"
+				+ "  \"numActiveReceivers\" : 1,\n  \"avgInputRate\" : 480.5,\n  \"avgSchedulingDelay\" : 5,\n"
+				+ "  \"avgProcessingTime\" : 1700\n}");
+		// latest batch first, still running
+		server.addFixture(streamingUrl + "/batches", "[ " + streamingBatch(4, "06", "PROCESSING", -1) + ", "
+				+ streamingBatch(3, "04", "COMPLETED", 2500) + ", " + streamingBatch(2, "02", "COMPLETED", 1500)
+				+ ", " + streamingBatch(1, "00", "COMPLETED", 1000) + " ]");
+		server.addFixture(streamingUrl + "/receivers", "[ {\n  \"streamId\" : 0,\n  \"streamName\" : \"kafka\",\n"
+				+ "  \"isActive\" : true,\n  \"avgEventRate\" : 500.0\n} ]");
+
+		InterpreterResult result = interpreter.interpret("/streaming", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		String[] lines = result.message().split("\n");
+		assertTrue(lines[2], lines[2].startsWith("Processing Time\t2500ms\t1666.7ms\t2500ms\t1700ms\tOVERLOADED (1/3"));
+		assertTrue(lines[3], lines[3].startsWith("Input Rate\t500/s"));
+		// the batches already in the window are not added again
+		result = interpreter.interpret("/applications/" + server.applicationId(0) + "/streaming/statistics", null);
+		assertTrue(result.message().contains("OVERLOADED (1/3"));
+
+		result = interpreter.interpret("/streaming/batches", null);
+		assertEquals(4, countRows(result));
+		assertTrue(result.message().split("\n")[1].endsWith("\t-\t-\t0\tfalse"));
+
+		result = interpreter.interpret("/streaming/receivers", null);
+		assertEquals("0\tkafka\ttrue\t-\t-\t500/s\t-", result.message().split("\n")[1]);
+	}
+
+	public void testCompareRuns() {
+		server.setNumApplications(3);
+		String baseline = server.applicationId(1);
+		String run = server.applicationId(2);
+		// stage 5 (second stage of the first job "query 2") of the run does not complete
+		String stages = server.generate("/applications/" + run + "/stages", null);
+		int completion = stages.indexOf("  \"completionTime\"", stages.indexOf("\"stageId\" : 5,"));
+		server.addFixture("/applications/" + run + "/stages",
+				stages.substring(0, completion) + stages.substring(stages.indexOf("\n", completion) + 1));
+
+		InterpreterResult result = interpreter.interpret("/compare " + baseline + " " + run, null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		// 20 jobs and their stages
+		assertEquals(20 + 20 * server.getStagesPerJob(), countRows(result));
+		String[] lines = result.message().split("\n");
+		assertTrue(lines[0].contains("Baseline (" + baseline + ")\tRun (" + run + ")"));
+		assertTrue(lines[1], lines[1].startsWith("query 2\t2\tmap at <console>:25\t0.3s\t"));
+		assertTrue(lines[lines.length - 1], lines[lines.length - 1].endsWith("\t0s (0%)\t0MB\t0MB\t0MB\t0"));
+
+		// completed runs are compared again from their summaries
+		long requests = server.getRequestCount();
+		interpreter.interpret("/compare " + baseline + " " + run, null);
+		assertEquals(requests, server.getRequestCount());
+
+		result = interpreter.interpret("/compare name=Synthetic application 1 last=5", null);
+		assertEquals(InterpreterResult.Code.ERROR, result.code());
+		assertTrue(result.message().contains("Less than 2 runs"));
+	}
+
+	public void testDriverMetrics() {
+		InterpreterResult result = interpreter.interpret("/driver-metrics LiveListenerBus", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		// the list gauge and the other sources are not listed
+		assertEquals(3, countRows(result));
+		assertTrue(result.message().contains("LiveListenerBus.queue.appStatus.size\tgauge\t40\t0\t-\t1\t40\t40"));
+		assertTrue(result.message().contains(
+				"LiveListenerBus.listenerProcessingTime.appStatus\ttimer\t0.75\t20\tmilliseconds"));
+
+		server.setNumJobs(30);
+		interpreter.interpret("/jobs", null);
+		interpreter.interpret("/driver-metrics", null);
+		result = interpreter.interpret("/driver-metrics history LiveListenerBus.queue.appStatus.size", null);
+		String[] lines = result.message().split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[1].endsWith("\t40\t-"));
+		// the REST requests since the previous sample
+		assertTrue(lines[2], lines[2].matches(".*\t60\t[0-9.]+ms"));
+
+		result = interpreter.interpret("/driver-metrics history unknown", null);
+		assertEquals(InterpreterResult.Code.ERROR, result.code());
+	}
+
+	public void testSystem() {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		// sampled on each /system
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_SYSTEM_INTERVAL, "0");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+
+		interpreter.interpret("/system", null);
+		interpreter.interpret("/jobs", null);
+		InterpreterResult result = interpreter.interpret("/system", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(SparkMonitoringSystemSampler.SERIES.size(), countRows(result));
+		// the /jobs and /system commands, and the requests of /jobs since the first sample
+		assertTrue(result.message(), result.message().contains("\nCommands\t2\t"));
+		assertTrue(result.message(), result.message().matches("(?s).*\nREST Requests\t[1-9][0-9]*\t.*"));
+		assertTrue(result.message(), result.message().matches("(?s).*\nHeap Used\t[0-9.]+MB\t.*"));
+	}
+
+	public void testJobProfile() {
+		InterpreterResult result = interpreter.interpret("/jobs/profile", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		// one group per description, the running job is not profiled
+		assertEquals(5, countRows(result));
+		assertEquals(1, countLines(result, "query 4\t3\t0\t"));
+
+		// the jobs completed since are added once, whichever command fetched them
+		server.setNumJobs(40);
+		interpreter.interpret("/jobs", null);
+		result = interpreter.interpret("/jobs/profile", null);
+		assertEquals(1, countLines(result, "query 4\t7\t0\t"));
+		assertEquals(1, countLines(result, "query 0\t8\t0\t"));
+
+		SparkMonitoringQuantileSketch sketch = new SparkMonitoringQuantileSketch();
+		SparkMonitoringQuantileSketch other = new SparkMonitoringQuantileSketch();
+		for (int i = 1; i <= 1000; i++) {
+			(i % 2 == 0 ? sketch : other).add(i);
+		}
+		sketch.merge(other);
+		assertEquals(1000, sketch.getCount());
+		assertEquals(500, sketch.getQuantile(0.5), 500 * SparkMonitoringQuantileSketch.DEFAULT_ACCURACY);
+		assertEquals(990, sketch.getQuantile(0.99), 990 * SparkMonitoringQuantileSketch.DEFAULT_ACCURACY);
+		assertEquals("select * from t where id = # and name in (?, ?)",
+				SparkMonitoringJobProfiles.normalize("select * from t  where id = 42 and name in ('a', 'b')"));
+	}
+
+	public void testAnalyzeJob() {
+		InterpreterResult result = interpreter.interpret("/jobs/3/analyze", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		// one row per stage and the job summary row
+		assertEquals(server.getStagesPerJob() + 1, countRows(result));
+		assertTrue(result.message().contains("6 > 7"));
+	}
+
+	public void testAsyncFetchInFlight() {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_FETCH_INFLIGHT, "2");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+		server.setStagesPerJob(40);
+		server.setLatencyMillis(10);
+
+		// the 40 stages are fetched together, 2 at a time on the server
+		InterpreterResult result = interpreter.interpret("/jobs/3/analyze", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(41, countRows(result));
+		assertEquals(2, server.getMaxConcurrentRequests());
+	}
+
+	public void testBlockingFetchInParallel() {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_FETCH_ASYNC, "false");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+		server.setStagesPerJob(40);
+		server.setLatencyMillis(10);
+
+		// the blocking client reads the stages on the fetch threads, not one by one
+		InterpreterResult result = interpreter.interpret("/jobs/3/analyze", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(41, countRows(result));
+		assertTrue(String.valueOf(server.getMaxConcurrentRequests()), server.getMaxConcurrentRequests() > 1);
+	}
+
+	public void testCompareWarnings() {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_MEMORY_BUDGET, "0.2");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+		server.setNumApplications(3);
+		server.setNumJobs(500);
+		// the runs are fetched on the fetch threads, their truncated responses are reported
+		InterpreterResult result = interpreter.interpret(
+				"/compare " + server.applicationId(1) + " " + server.applicationId(2), null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertTrue(result.message(), result.message().startsWith("<pre style=\"color:orange\">Warning: Response of "));
+	}
+
+	public void testMemoryBudget() {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_MEMORY_BUDGET, "0.2");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+		server.setNumApplications(3);
+		String compare = "/compare " + server.applicationId(1) + " " + server.applicationId(2);
+		assertEquals(InterpreterResult.Code.SUCCESS, interpreter.interpret(compare, null).code());
+
+		// the stages do not fit in the budget: the summaries are spilled, the response is truncated
+		server.setNumJobs(500);
+		InterpreterResult result = interpreter.interpret("/stages", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(InterpreterResult.Type.HTML, result.type());
+		assertTrue(result.message().startsWith("<pre style=\"color:orange\">Warning: Response of "));
+		result = interpreter.interpret("/memory", null);
+		assertEquals(1, countLines(result, "run summaries\t0\t0KB\t2 spilled"));
+		assertFalse(result.message().contains("\t0 truncated responses"));
+
+		// and read back from disk
+		long requests = server.getRequestCount();
+		server.setNumJobs(20);
+		result = interpreter.interpret(compare, null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(requests, server.getRequestCount());
+		assertEquals(20 + 20 * server.getStagesPerJob(), countRows(result));
+	}
+
+	public void testAnomalies() {
+		server.setNumJobs(40);
+		interpreter.interpret("/jobs", null);
+		InterpreterResult result = interpreter.interpret("/anomalies", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		int rows = countRows(result);
+
+		// job 40 (query 0) started with job 0: far longer than its baseline
+		server.setNumJobs(42);
+		String jobsUrl = "/applications/" + server.applicationId(0) + "/jobs";
+		String jobs = server.generate(jobsUrl, null);
+		String submission = "\"submissionTime\" : ";
+		int job0 = jobs.indexOf(submission, jobs.indexOf("\"jobId\" : 0,"));
+		int job40 = jobs.indexOf(submission, jobs.indexOf("\"jobId\" : 40,"));
+		server.addFixture(jobsUrl, jobs.substring(0, job40) + jobs.substring(job0, jobs.indexOf("\n", job0))
+				+ jobs.substring(jobs.indexOf("\n", job40)));
+		interpreter.interpret("/jobs", null);
+		result = interpreter.interpret("/anomalies", null);
+		assertEquals(rows + 1, countRows(result));
+		String[] row = result.message().split("\n")[1].split("\t");
+		assertEquals("job", row[1]);
+		assertEquals("query 0", row[2]);
+		assertEquals("40", row[4]);
+		assertEquals("duration", row[5]);
+		assertTrue(row[8], Double.parseDouble(row[8]) > 100);
+	}
+
+	public void testSnapshots() {
+		InterpreterResult result = interpreter.interpret("/snapshot", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		String[] row = result.message().split("\n")[1].split("\t");
+		assertEquals("1", row[0]);
+		assertEquals("20", row[2]);
+		assertEquals("1", row[6]);
+		assertEquals("yes", row[7]);
+
+		// the jobs are read before a new job: the stages of the new job disagree, they are fetched again
+		String jobsUrl = "/applications/" + server.applicationId(0) + "/jobs";
+		server.addFixture(jobsUrl, server.generate(jobsUrl, null));
+		server.setNumJobs(21);
+		long requests = server.getRequestCount();
+		result = interpreter.interpret("/snapshot", null);
+		row = result.message().split("\n")[1].split("\t");
+		assertEquals("2", row[0]);
+		assertEquals("3", row[6]);
+		assertTrue(row[7], row[7].startsWith("no ("));
+		assertEquals(requests + 6, server.getRequestCount());
+
+		// the first version is still queried as it was
+		result = interpreter.interpret("select count(*) as n from stages version 1", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(String.valueOf(20 * server.getStagesPerJob()), result.message().split("\n")[1]);
+		assertEquals(2, countRows(interpreter.interpret("/snapshot list", null)));
+		result = interpreter.interpret("select * from jobs version 3", null);
+		assertEquals(InterpreterResult.Code.ERROR, result.code());
+	}
+
+	public void testApplicationFilters() {
+		server.setNumApplications(5);
+		// the server does not filter: the filters are applied while reading
+		InterpreterResult result = interpreter.interpret("/applications?status=completed&limit=3", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(3, countRows(result));
+		assertFalse(result.message().contains(server.applicationId(0)));
+		assertEquals("status=completed&limit=3", server.getLastQuery());
+		// user is not known by the server, nor the limit which must apply after it
+		result = interpreter.interpret("/applications?user=zeppelin&limit=2", null);
+		assertEquals(2, countRows(result));
+		assertNull(server.getLastQuery());
+
+		result = interpreter.interpret("/applications/summary?status=completed", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(4, countRows(result));
+		assertTrue(result.message().split("\n")[1].contains("\ttrue\t20\t1\t0\t"));
+		// the completed applications do not change, only the listing is fetched again
+		long requests = server.getRequestCount();
+		interpreter.interpret("/applications/summary?status=completed", null);
+		assertEquals(requests + 1, server.getRequestCount());
+	}
+
+	public void testProfile() {
+		// stage 39 is active, its tasks 50 to 99 are running on 4 executors
+		InterpreterResult result = interpreter.interpret("/profile 39 0", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(InterpreterResult.Type.TABLE, result.type());
+		assertTrue(result.message().contains("\njava.lang.Thread.run\t0\t0%\t50\t100%\n"));
+		// line numbers and generated suffixes are not part of the methods
+		assertTrue(result.message().contains("\norg.apache.spark.util.collection.ExternalSorter.insertAll\t25\t50%\t"));
+		assertTrue(result.message().contains("GeneratedClass$GeneratedIteratorForCodegenStage.processNext\t25\t"));
+		assertTrue(result.message().contains("Executor$TaskRunner$$Lambda.apply\t0\t"));
+		assertFalse(result.message().contains("NioEventLoop"));
+
+		result = interpreter.interpret("/profile 39 0.3 0.1 collapsed", null);
+		assertEquals(InterpreterResult.Type.TEXT, result.type());
+		String[] lines = result.message().trim().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("java.lang.Thread.run;org.apache.spark.executor.Executor$TaskRunner.run;"));
+		long samples = 0;
+		for (String line : lines) {
+			samples += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+		}
+		assertTrue(samples >= 100 && samples % 50 == 0);
+
+		// runnable threads of the driver and the executors
+		result = interpreter.interpret("/profile executors 0 1 tree", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals("0\tjava.lang.Thread.run\t55\t100%", result.message().split("\n")[1]);
+		assertTrue(result.message().contains("\t  io.netty.channel.nio.NioEventLoop.run\t5\t"));
+
+		assertEquals(InterpreterResult.Code.ERROR, interpreter.interpret("/profile 3", null).code());
+		assertEquals(InterpreterResult.Code.ERROR, interpreter.interpret("/profile stages", null).code());
+	}
+
+	public void testProfileBoundedAndCancelled() throws Exception {
+		server.setNumExecutors(20);
+		server.setLatencyMillis(20);
+		Thread canceller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					return;
+				}
+				interpreter.cancel(null);
+			}
+		});
+		canceller.start();
+		long start = System.currentTimeMillis();
+		InterpreterResult result = interpreter.interpret("/profile executors 30 0.1", null);
+		canceller.join();
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		// the 21 thread dumps of a round are not read all at once
+		assertTrue(String.valueOf(server.getMaxConcurrentRequests()), server.getMaxConcurrentRequests() <= 4);
+	}
+
+	public void testLocalityAndUtilization() {
+		InterpreterResult result = interpreter.interpret("/stages/3/locality", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		String[] lines = result.message().split("\n");
+		assertTrue(lines[1], lines[1].startsWith("PROCESS_LOCAL\tall\t66\t66%\t"));
+		assertTrue(result.message().contains("\nNODE_LOCAL\tall\t34\t34%\t"));
+		// 2 levels on 4 hosts
+		assertEquals(2 + 2 * 4, countRows(result));
+		result = interpreter.interpret("/applications/" + server.applicationId(0) + "/stages/3/locality", null);
+		assertEquals(lines[1], result.message().split("\n")[1]);
+		assertEquals(InterpreterResult.Code.ERROR, interpreter.interpret("/stages/999/locality", null).code());
+
+		// 20 jobs of a minute until now, executor 5 is removed after the first minute
+		server.setBaseTimeMillis(System.currentTimeMillis() - 20 * 60000L);
+		interpreter.interpret("/applications", null);
+		result = interpreter.interpret("/applications/utilization?buckets=10", null);
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(11, countRows(result));
+		assertEquals("18", result.message().split("\n")[1].split("\t")[1]);
+		assertEquals("16", result.message().split("\n")[2].split("\t")[1]);
+		String[] total = result.message().split("\n")[11].split("\t");
+		assertEquals("total (" + 20 * server.getStagesPerJob() * 100 + " tasks)", total[0]);
+		assertTrue(total[3], Double.parseDouble(total[3].replace("%", "")) < 5);
+		assertTrue(total[4], Double.parseDouble(total[4]) > 19000);
+		result = interpreter.interpret("/applications/" + server.applicationId(0) + "/utilization", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(21, countRows(result));
+	}
+
+	public void testFailures() {
+		server.setFailedTasksEvery(10);
+		InterpreterResult result = interpreter.interpret("/failures 3", null);
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		// 10 failed tasks: 5 closed connections and 5 fetch failures, whatever the host and ids
+		assertEquals(2, countRows(result));
+		assertTrue(result.message(), result.message().contains(
+				"\njava.io.IOException: Connection to <host> closed\t5\t50%\t"));
+		assertTrue(result.message(), result.message().contains(
+				" | org.apache.spark.storage.ShuffleBlockFetcherIterator.throwFetchFailedException"
+						+ " | Caused by: java.io.IOException: Failed to connect to <host>\t5\t50%\t"));
+		assertTrue(result.message(), result.message().contains("\t3\t3\tjava.io.IOException: Connection to worker-3"));
+
+		result = interpreter.interpret("/failures job 1", null);
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(2, countRows(result));
+		assertEquals(String.valueOf(5 * server.getStagesPerJob()), result.message().split("\n")[1].split("\t")[1]);
+		result = interpreter.interpret("/failures", null);
+		assertEquals(2, countRows(result));
+		assertTrue(result.message(), result.message().contains(" ..."));
+		assertEquals(InterpreterResult.Code.ERROR, interpreter.interpret("/failures 999", null).code());
+		assertEquals(InterpreterResult.Code.ERROR, interpreter.interpret("/failures job", null).code());
+
+		// the error messages keep their commas and quotes
+		server.addFixture("/applications/" + server.applicationId(0) + "/stages/3/0/taskList",
+				"[ {\n  \"taskId\" : 1,\n  \"executorId\" : \"1\",\n  \"status\" : \"FAILED\",\n"
+						+ "  \"errorMessage\" : \"java.lang.NumberFormatException: For input string: \\\"1,5\\\""
+						+ "\\n\\tat java.lang.Integer.parseInt(Integer.java:580)\"\n} ]");
+		result = interpreter.interpret("/failures 3", null);
+		assertEquals(result.message(), 1, countRows(result));
+		assertTrue(result.message(), result.message().contains(
+				"java.lang.NumberFormatException: For input string: \"#,#\" | java.lang.Integer.parseInt\t1\t"));
+		assertTrue(result.message(), result.message().contains(
+				"\tjava.lang.NumberFormatException: For input string: \"1,5\""));
+	}
+
+	public void testApplicationIndex() {
+		server.setNumApplications(3);
+		InterpreterResult result = interpreter.interpret("/applications/" + server.applicationId(2) + "/jobs", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(20, countRows(result));
+
+		result = interpreter.interpret("/applications/search?user=zeppelin&name=application", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(3, countRows(result));
+		result = interpreter.interpret("/applications/search?user=nobody", null);
+		assertEquals(0, countRows(result));
+	}
+
+	public void testCompletion() {
+		assertTrue(interpreter.completion("/st", 3).contains("stages"));
+		assertTrue(interpreter.completion("(def", 4).contains("default"));
+		assertTrue(interpreter.completion("/wat", 4).contains("watch"));
+		assertTrue(interpreter.completion("/jobs/12/ana", 12).contains("analyze"));
+		// nothing is indexed before the first command
+		assertTrue(interpreter.completion("/jobs/1", 7).isEmpty());
+
+		interpreter.interpret("/jobs", null);
+		assertTrue(interpreter.completion("/applications/app-", 18).contains(server.applicationId(0)));
+		List<String> jobIds = interpreter.completion("/jobs/1", 7);
+		assertEquals(11, jobIds.size());
+		assertEquals("1", jobIds.get(0));
+		long requests = server.getRequestCount();
+		interpreter.completion("/stages/", 8);
+		assertEquals(requests, server.getRequestCount());
+	}
+
+	public void testApplicationIndexPerInterpreter() {
+		interpreter.interpret("/jobs", null);
+		// another note or user opens its own interpreter
+		SparkMonitoringInterpreter other = new SparkMonitoringInterpreter(
+				SparkMonitoringLoadHarness.connectionProperties(server));
+		other.open();
+		try {
+			assertTrue(other.completion("/jobs/1", 7).isEmpty());
+			assertEquals(11, interpreter.completion("/jobs/1", 7).size());
+		} finally {
+			other.close();
+		}
+	}
+
+	public void testCompletionOfLargeIndex() {
+		SparkMonitoringApplication app = new SparkMonitoringApplication();
+		app.setId("app-1");
+		SparkMonitoringApplicationIndex index = new SparkMonitoringApplicationIndex(10,
+				SparkMonitoringApplicationIndex.POLICY_LATEST);
+		index.put(app);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			ids.add(String.valueOf(i));
+		}
+		index.addJobIds("app-1", ids);
+		long start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			index.completeJobId("app-1", String.valueOf(i % 100), 50);
+		}
+		long averageMicros = (System.nanoTime() - start) / 1000 / 1000;
+		assertTrue("average " + averageMicros + "us", averageMicros < 1000);
+		assertEquals(50, index.completeJobId("app-1", "1", 50).size());
+	}
+
+	public void testWatchUntilJobFinishes() throws Exception {
+		// job 19 is running until a new job is submitted
+		Thread submitter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+					return;
+				}
+				server.setNumJobs(21);
+			}
+		});
+		submitter.start();
+		InterpreterResult result = interpreter.interpret("/watch /jobs/19 0.1", null);
+		submitter.join();
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		String[] lines = result.message().split("\n");
+		assertTrue(lines[0].startsWith("Change\tTime\tId"));
+		assertTrue(lines[1].startsWith("new\t"));
+		assertTrue(lines[2].startsWith("updated\t") && lines[2].contains("SUCCEEDED"));
+		assertTrue(lines[3].startsWith("watch ended (finished)"));
+	}
+
+	public void testWatchListUntilCancel() throws Exception {
+		Thread canceller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(700);
+				} catch (InterruptedException e) {
+					return;
+				}
+				server.setNumJobs(21);
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+					return;
+				}
+				interpreter.cancel(null);
+			}
+		});
+		canceller.start();
+		InterpreterResult result = interpreter.interpret("/watch /jobs 0.2", null);
+		canceller.join();
+		assertTrue(result.message().contains("watch ended (cancelled)"));
+		// 20 new rows of the first poll, then job 19 finished and job 20 was submitted
+		assertEquals(21, countLines(result, "new\t"));
+		assertEquals(1, countLines(result, "updated\t"));
+	}
+
+	public void testAdaptivePolling() throws Exception {
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_WATCH_RATE, "2");
+		// a slow first poll backs off for at most a second
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_WATCH_INTERVAL_MAX, "1");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+
+		final List<InterpreterResult> results = Collections.synchronizedList(new ArrayList<InterpreterResult>());
+		Thread idleWatch = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				results.add(interpreter.interpret("/watch /executors 0.1", null));
+			}
+		});
+		Thread busyWatch = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				results.add(interpreter.interpret("/watch /jobs 0.1", null));
+			}
+		});
+		long start = System.currentTimeMillis();
+		idleWatch.start();
+		busyWatch.start();
+		InterpreterResult polling;
+		long deadline = start + 10000;
+		do {
+			Thread.sleep(200);
+			polling = interpreter.interpret("/polling", null);
+		} while (!isPollingSettled(polling) && System.currentTimeMillis() < deadline);
+		long elapsedMillis = System.currentTimeMillis() - start;
+		interpreter.cancel(null);
+		idleWatch.join();
+		busyWatch.join();
+
+		assertEquals(2, countRows(polling));
+		for (String row : polling.message().split("\n")) {
+			String[] columns = row.split("\t");
+			if ("/executors".equals(columns[0])) {
+				// nothing changes, the interval doubles after each poll
+				assertFalse(row, "0.1s".equals(columns[1]));
+				assertEquals("false", columns[5]);
+			} else if ("/jobs".equals(columns[0])) {
+				// job 19 is running, but the driver gets 2 requests per second, 2 at once
+				assertEquals(row, "0.1s", columns[1]);
+				assertEquals("true", columns[5]);
+				assertTrue(row, Integer.parseInt(columns[6]) <= 2 + 2 * elapsedMillis / 1000);
+				assertEquals("2", columns[8]);
+			}
+		}
+		assertEquals(2, results.size());
+	}
+
+	public void testAlerts() throws Exception {
+		server.setFailedTasksEvery(10);
+		interpreter.close();
+		Properties properties = SparkMonitoringLoadHarness.connectionProperties(server);
+		properties.put(SparkMonitoringInterpreter.DEFAULT_KEY + SparkMonitoringInterpreter.DOT
+				+ SparkMonitoringInterpreter.SPARK_MONITORING_ALERT + "gc", "executor.gcRatio > 2%");
+		interpreter = new SparkMonitoringInterpreter(properties);
+		interpreter.open();
+
+		InterpreterResult result = interpreter.interpret("/alerts add failures stage.failedTasks >= 10", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(2, countRows(interpreter.interpret("/alerts rules", null)));
+		assertEquals(InterpreterResult.Code.ERROR,
+				interpreter.interpret("/alerts add wrong stage.unknown > 1", null).code());
+
+		interpreter.interpret("/stages", null);
+		interpreter.interpret("/executors", null);
+		// every stage, and the executors but the driver (no task time)
+		int expected = 20 * server.getStagesPerJob() + server.getNumExecutors();
+		assertEquals(expected, countRows(interpreter.interpret("/alerts", null)));
+		// an alert fires once while its condition holds
+		interpreter.interpret("/stages", null);
+		assertEquals(expected, countRows(interpreter.interpret("/alerts", null)));
+
+		interpreter.interpret("/alerts remove gc", null);
+		assertEquals(20 * server.getStagesPerJob(), countRows(interpreter.interpret("/alerts", null)));
+		interpreter.interpret("/alerts clear", null);
+		assertEquals(0, countRows(interpreter.interpret("/alerts", null)));
+	}
+
+	public void testExport() throws Exception {
+		server.setNumApplications(2);
+		Path directory = Files.createTempDirectory("spark-monitoring-export");
+		try {
+			Path csv = directory.resolve("jobs.csv");
+			InterpreterResult result = interpreter.interpret("/export jobs " + csv, null);
+			assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+			List<String> lines = Files.readAllLines(csv, Charset.forName("UTF-8"));
+			assertTrue(lines.get(0).startsWith("applicationId,jobId,name"));
+			assertEquals(1 + 2 * 20, lines.size());
+
+			Path split = directory.resolve("stages");
+			result = interpreter.interpret("/export stages " + split + " columnar split", null);
+			assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+			// one file per application, all stages are submitted the same day
+			assertEquals(2, countRows(result));
+			Path file = split.resolve(server.applicationId(0)).resolve(
+					new SimpleDateFormat("yyyy-MM-dd").format(new Date(server.getBaseTimeMillis())) + ".col");
+			SparkMonitoringColumnarReader reader = new SparkMonitoringColumnarReader(file);
+			try {
+				assertEquals("stageId", reader.getColumns().get(1));
+				int rows = 0;
+				Object[] row;
+				while ((row = reader.next()) != null) {
+					assertEquals(server.applicationId(0), row[0]);
+					assertEquals((long) (20 * server.getStagesPerJob() - 1 - rows), row[1]);
+					rows++;
+				}
+				assertEquals(20 * server.getStagesPerJob(), rows);
+			} finally {
+				reader.close();
+			}
+		} finally {
+			deleteRecursively(directory.toFile());
+		}
+	}
+
+	private void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	public void testQuery() throws Exception {
+		server.setFailedTasksEvery(10);
+		InterpreterResult result = interpreter.interpret("select status, count(*) as jobs, sum(numFailedTasks) / "
+				+ "sum(numTasks) as failedRatio from jobs group by status order by jobs desc", null);
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		String[] lines = result.message().split("\n");
+		assertEquals("status\tjobs\tfailedRatio", lines[0]);
+		assertEquals("SUCCEEDED\t19\t0.1", lines[1]);
+		assertTrue(lines[2].startsWith("RUNNING\t1\t"));
+
+		result = interpreter.interpret("/query select id, name from stages where id >= 30 and name like 'map%' "
+				+ "order by id limit 3", null);
+		assertEquals(result.message(), InterpreterResult.Code.SUCCESS, result.code());
+		assertEquals(3, countRows(result));
+		assertTrue(result.message().split("\n")[1].startsWith("30\t"));
+
+		result = interpreter.interpret("select unknown from jobs", null);
+		assertEquals(InterpreterResult.Code.ERROR, result.code());
+	}
+
+	public void testParallelQuery() throws Exception {
+		List<SparkMonitoringJob> jobs = new ArrayList<>();
+		for (int i = 0; i < 4 * SparkMonitoringQuery.PARALLEL_THRESHOLD; i++) {
+			SparkMonitoringJob job = new SparkMonitoringJob();
+			job.setId(String.valueOf(i));
+			job.setDescription("query " + i % 3);
+			job.setNumTasks(10);
+			job.setNumFailedTasks(i % 2);
+			jobs.add(job);
+		}
+		SparkMonitoringQuery query = SparkMonitoringQuery.compile(
+				"select description, count(*), sum(numFailedTasks), max(id) from jobs group by description "
+						+ "order by description");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			String parallel = query.execute(jobs, executor);
+			assertEquals(query.execute(jobs, null), parallel);
+			assertTrue(parallel, parallel.contains("query 0\t13334\t6667\t39999"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testMultiCommandParagraph() throws Exception {
+		long requests = server.getRequestCount();
+		InterpreterResult result = interpreter.interpret("/applications\n/jobs\n\n/jobs\n/stages\n"
+				+ "select count(*)\n  from jobs\n/watch /jobs", null);
+		// /watch is refused in a batch, the paragraph fails
+		assertEquals(InterpreterResult.Code.ERROR, result.code());
+		assertEquals(InterpreterResult.Type.HTML, result.type());
+		String html = result.message();
+		assertEquals(6, html.split("<h5>").length - 1);
+		assertTrue(html.indexOf("<h5>/applications</h5>") < html.indexOf("<h5>/stages</h5>"));
+		assertTrue(html.contains("<h5>select count(*) from jobs</h5>"));
+		assertTrue(html.contains("<td>20</td>"));
+		assertTrue(html.contains("must be alone in its paragraph"));
+		// applications, jobs and stages fetched once each
+		assertEquals(3, server.getRequestCount() - requests);
+
+		result = interpreter.interpret("/applications\n/jobs", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+	}
+
+	public void testCoalescedFetches() throws Exception {
+		interpreter.interpret("/applications", null);
+		server.setLatencyMillis(500);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<InterpreterResult> results = Collections.synchronizedList(new ArrayList<InterpreterResult>());
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					results.add(interpreter.interpret("/jobs", null));
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		long requests = server.getRequestCount();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8, results.size());
+		for (InterpreterResult result : results) {
+			assertEquals(20, countRows(result));
+		}
+		// one request served the 8 callers, a late caller may start a second one
+		assertTrue(server.getRequestCount() - requests <= 2);
+	}
+
+	public void testRecordedFixtures() throws Exception {
+		server.loadFixture("/applications");
+		server.loadFixture("/applications/app-20160411083023-0000/jobs");
+		InterpreterResult result = interpreter.interpret("/jobs", null);
+		assertEquals(InterpreterResult.Code.SUCCESS, result.code());
+		assertTrue(result.message().contains("count at <console>:30"));
+		assertEquals(2, countRows(result));
+	}
+
+	public void testConcurrentLoad() throws Exception {
+		server.setLatencyMillis(2);
+		SparkMonitoringLoadHarness harness = new SparkMonitoringLoadHarness();
+		harness.setThreads(4);
+		harness.setIterations(10);
+		harness.setWarmupIterations(1);
+		SparkMonitoringLoadHarness.Report report = harness.run(interpreter);
+		assertEquals(40, report.getCalls());
+		assertEquals(0, report.getErrors());
+		assertTrue(report.getPercentileMillis(99) >= report.getPercentileMillis(50));
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zeppelin.interpreter.InterpreterResult;
+
+/**
+ * Load harness: drives SparkMonitoringInterpreter.interpret concurrently
+ * against a FakeSparkRestServer on localhost and reports latency percentiles
+ * and heap growth.
+ *
+ * Run from the test classpath, e.g.
+ * java ... SparkMonitoringLoadHarness [threads] [iterations] [jobs] [latencyMs]
+ */
+public class SparkMonitoringLoadHarness {
+
+	private int threads = 8;
+	private int iterations = 50;
+	private int warmupIterations = 5;
+	private List<String> commands = Arrays.asList("/applications", "/jobs", "/stages");
+
+	/**
+	 * Result of one load run
+	 */
+	public static class Report {
+		private long[] latencies;
+		private int errors;
+		private long heapBefore;
+		private long heapAfter;
+		private long elapsedMillis;
+
+		public int getCalls() {
+			return latencies.length;
+		}
+		public int getErrors() {
+			return errors;
+		}
+		/**
+		 * Latency percentile in milliseconds, p between 0 and 100
+		 */
+		public double getPercentileMillis(double p) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(p / 100D * latencies.length) - 1;
+			index = Math.max(0, Math.min(latencies.length - 1, index));
+			return latencies[index] / 1000000D;
+		}
+		public long getHeapGrowthBytes() {
+			return heapAfter - heapBefore;
+		}
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+		public double getThroughput() {
+			return elapsedMillis == 0 ? 0 : latencies.length * 1000D / elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("calls=%d errors=%d p50=%.2fms p99=%.2fms max=%.2fms throughput=%.1f/s heapGrowth=%dKB",
+					getCalls(), errors, getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(100),
+					getThroughput(), getHeapGrowthBytes() / 1024);
+		}
+	}
+
+	public static Properties connectionProperties(FakeSparkRestServer server) {
+		Properties properties = new Properties();
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_HOST, server.getHost());
+		properties.put(SparkMonitoringInterpreter.DEFAULT_SPARK_MONITORING_PORT, String.valueOf(server.getPort()));
+		return properties;
+	}
+
+	/**
+	 * Run the configured commands round robin from all threads against one
+	 * interpreter instance, as the parallel scheduler of Zeppelin would.
+	 */
+	public Report run(final SparkMonitoringInterpreter interpreter) throws Exception {
+		for (int i = 0; i < warmupIterations; i++) {
+			for (String command : commands) {
+				interpreter.interpret(command, null);
+			}
+		}
+		final Report report = new Report();
+		final AtomicInteger errors = new AtomicInteger();
+		report.heapBefore = usedHeap();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<long[]>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final int offset = t;
+			futures.add(executor.submit(new Callable<long[]>() {
+				@Override
+				public long[] call() {
+					long[] latencies = new long[iterations];
+					for (int i = 0; i < iterations; i++) {
+						String command = commands.get((offset + i) % commands.size());
+						long callStart = System.nanoTime();
+						InterpreterResult result = interpreter.interpret(command, null);
+						latencies[i] = System.nanoTime() - callStart;
+						if (result.code() != InterpreterResult.Code.SUCCESS) {
+							errors.incrementAndGet();
+						}
+					}
+					return latencies;
+				}
+			}));
+		}
+		long[] all = new long[threads * iterations];
+		int position = 0;
+		for (Future<long[]> future : futures) {
+			long[] latencies = future.get();
+			System.arraycopy(latencies, 0, all, position, latencies.length);
+			position += latencies.length;
+		}
+		report.elapsedMillis = (System.nanoTime() - start) / 1000000L;
+		executor.shutdown();
+
+		Arrays.sort(all);
+		report.latencies = all;
+		report.errors = errors.get();
+		report.heapAfter = usedHeap();
+		return report;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	public int getIterations() {
+		return iterations;
+	}
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+	public int getWarmupIterations() {
+		return warmupIterations;
+	}
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+	public List<String> getCommands() {
+		return commands;
+	}
+	public void setCommands(List<String> commands) {
+		this.commands = commands;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SparkMonitoringLoadHarness harness = new SparkMonitoringLoadHarness();
+		FakeSparkRestServer server = new FakeSparkRestServer();
+		if (args.length >= 1) {
+			harness.setThreads(Integer.parseInt(args[0]));
+		}
+		if (args.length >= 2) {
+			harness.setIterations(Integer.parseInt(args[1]));
+		}
+		if (args.length >= 3) {
+			server.setNumJobs(Integer.parseInt(args[2]));
+		}
+		if (args.length >= 4) {
+			server.setLatencyMillis(Long.parseLong(args[3]));
+		}
+		server.start();
+		try {
+			SparkMonitoringInterpreter interpreter = new SparkMonitoringInterpreter(connectionProperties(server));
+			interpreter.open();
+			Report report = harness.run(interpreter);
+			interpreter.close();
+			System.out.println(report);
+			System.out.println("requests served=" + server.getRequestCount());
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.apache.zeppelin.zeppelin_spark_monitoring;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * Eviction of the versioned snapshots under the memory budget
+ */
+public class SparkMonitoringSnapshotsTest extends TestCase {
+
+	private SparkMonitoringSnapshot publish(SparkMonitoringSnapshots snapshots, String key) {
+		return snapshots.publish(key, key, System.currentTimeMillis(),
+				Collections.<SparkMonitoringJob> emptyList(), Collections.<SparkMonitoringStage> emptyList(), 1, 0);
+	}
+
+	public void testLatestVersionsStayWhileRead() {
+		SparkMonitoringSnapshots snapshots = new SparkMonitoringSnapshots(10);
+		SparkMonitoringMemoryBudget budget = new SparkMonitoringMemoryBudget(0);
+		budget.register(snapshots);
+		for (int i = 0; i < 3; i++) {
+			publish(snapshots, "default|app-" + i);
+			publish(snapshots, "default|app-" + i);
+		}
+		budget.enforce();
+		// the old versions are dropped, the latest ones were just published
+		assertEquals(3, snapshots.size());
+		assertEquals(2, snapshots.getLatest("default|app-0").getVersion());
+		assertEquals(1, snapshots.getVersions("default|app-0").size());
+	}
+
+	public void testIdleApplicationsEvicted() {
+		SparkMonitoringSnapshots snapshots = new SparkMonitoringSnapshots(10, 0);
+		SparkMonitoringMemoryBudget budget = new SparkMonitoringMemoryBudget(0);
+		budget.register(snapshots);
+		for (int i = 0; i < 1000; i++) {
+			publish(snapshots, "default|app-" + i);
+		}
+		budget.enforce();
+		assertEquals(0, snapshots.size());
+		assertEquals(0, snapshots.estimateBytes());
+		// the versions of an evicted application restart
+		assertEquals(1, publish(snapshots, "default|app-0").getVersion());
+	}
+
+}